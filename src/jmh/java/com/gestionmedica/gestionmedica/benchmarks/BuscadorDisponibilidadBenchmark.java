@@ -0,0 +1,92 @@
+package com.gestionmedica.gestionmedica.benchmarks;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Búsqueda de slots libres en una especialidad de 200 médicos con horario
+ * COMPLETO todos los días, en un rango de 30 días, contra la base de datos
+ * HSQLDB en memoria de las pruebas. Objetivo: menos de 50 ms por búsqueda.
+ *
+ * Con la agenda llena no hay ningún slot libre: se cargan las citas de los
+ * 30 días y se recorren todos los slots de todos los médicos (el peor caso).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class BuscadorDisponibilidadBenchmark {
+
+    private static final int MEDICOS = 200;
+    private static final int DIAS = 30;
+    private static final int CANTIDAD = 20;
+
+    @Param({ "vacia", "llena" })
+    public String agenda;
+
+    private Integer especialidadId;
+    private LocalDate desde;
+    private LocalDate hasta;
+
+    @Setup
+    public void preparar() throws Exception {
+        BaseDatosPrueba.iniciar();
+        List<Integer> medicos = BaseDatosPrueba.crearMedicos(MEDICOS);
+        especialidadId = XPersistence.getManager().find(Medico.class, medicos.get(0))
+                .getEspecialidad().getIdEspecialidad();
+        XPersistence.commit();
+        desde = LocalDate.now().plusDays(1);
+        hasta = desde.plusDays(DIAS - 1);
+        if ("llena".equals(agenda)) {
+            llenar(medicos, BaseDatosPrueba.crearPacientes(1).get(0));
+        }
+    }
+
+    @Benchmark
+    public List<SlotLibre> buscar() {
+        return BuscadorDisponibilidad.buscar(especialidadId, desde, hasta, null, CANTIDAD);
+    }
+
+    @TearDown(Level.Iteration)
+    public void terminar() {
+        XPersistence.commit();
+    }
+
+    /**
+     * Ocupa todos los slots del rango por JDBC, sin pasar por los callbacks
+     * de Cita, y reconstruye AgendaDiaria como tras una importación.
+     */
+    private void llenar(List<Integer> medicos, Integer pacienteId) throws Exception {
+        TablaSlots tabla = TablaSlots.de(TurnoTrabajo.COMPLETO, TablaSlots.DURACION_POR_DEFECTO);
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement("INSERT INTO CITA (PACIENTE_IDPACIENTE, " +
+                        "MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT, SLOTRESERVADO, HORAINICIO, ESTADO, FECHAREGISTRO) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, 'REGISTRADA', CURRENT_DATE)")) {
+            for (Integer medicoId : medicos) {
+                for (LocalDate fecha = desde; !fecha.isAfter(hasta); fecha = fecha.plusDays(1)) {
+                    for (int slot = 1; slot <= tabla.getCantidad(); slot++) {
+                        ps.setInt(1, pacienteId);
+                        ps.setInt(2, medicoId);
+                        ps.setDate(3, Date.valueOf(fecha));
+                        ps.setInt(4, slot);
+                        ps.setInt(5, slot);
+                        ps.setTime(6, Time.valueOf(tabla.getHora(slot)));
+                        ps.addBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            new VerificadorAgenda(conexion).reconstruir();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.gestionmedica.gestionmedica.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Cálculos de horario que se repiten en cada render de Cita y HorarioDisponible.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class SlotsBenchmark {
+
+    @Param({ "MATUTINO", "NOCTURNO" })
+    public TurnoTrabajo turno;
+
+    private HorarioDisponible horario;
+    private TablaSlots tabla;
+    private int slot;
+
+    // Slots 1, 2 y 9 ocupados
+    private final long ocupados = 0b1_0000_0011L;
+
+    @Setup
+    public void preparar() {
+        horario = new HorarioDisponible();
+        horario.setTurno(turno);
+        tabla = TablaSlots.de(turno, TablaSlots.DURACION_POR_DEFECTO);
+        slot = tabla.getCantidad() / 2;
+    }
+
+    @Benchmark
+    public String tablaSlots() {
+        return tabla.construirTexto(ocupados);
+    }
+
+    @Benchmark
+    public String etiquetaSlot() {
+        return TablaSlots.de(turno, TablaSlots.DURACION_POR_DEFECTO).getEtiqueta(slot);
+    }
+
+    @Benchmark
+    public String rangoHorario() {
+        return horario.getRangoHorario();
+    }
+}
@@ -0,0 +1,52 @@
+package com.gestionmedica.gestionmedica.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import com.gestionmedica.gestionmedica.validadores.*;
+
+/**
+ * Validadores que se ejecutan en cada grabación de Paciente/Medico y en
+ * cada fila importada. Cada benchmark tiene su propio estado para que sus
+ * parámetros no se combinen con los de los demás.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValidadoresBenchmark {
+
+    @State(Scope.Thread)
+    public static class Cedulas {
+
+        @Param({ "1712345678", "17123A5678" })
+        public String cedula;
+    }
+
+    @State(Scope.Thread)
+    public static class Telefonos {
+
+        @Param({ "0991234567", "09912A4567" })
+        public String telefono;
+    }
+
+    @State(Scope.Thread)
+    public static class Nombres {
+
+        // "José Ñúñez Pérez" con escapes: el pom compila las fuentes como ISO-8859-1
+        @Param({ "Jos\u00e9 \u00d1\u00fa\u00f1ez P\u00e9rez", "Juan2" })
+        public String nombre;
+    }
+
+    @Benchmark
+    public boolean cedula(Cedulas estado) {
+        return ValidadorCedula.esValida(estado.cedula);
+    }
+
+    @Benchmark
+    public boolean telefono(Telefonos estado) {
+        return ValidadorTelefono.esValido(estado.telefono);
+    }
+
+    @Benchmark
+    public boolean nombre(Nombres estado) {
+        return ValidadorNombre.esValido(estado.nombre);
+    }
+}
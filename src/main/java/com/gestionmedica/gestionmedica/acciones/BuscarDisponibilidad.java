@@ -0,0 +1,65 @@
+package com.gestionmedica.gestionmedica.acciones;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.openxava.actions.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Busca los primeros slots libres de la especialidad elegida en
+ * BusquedaDisponibilidad y los muestra en el campo resultado.
+ */
+public class BuscarDisponibilidad extends ViewBaseAction {
+
+    private static final int DIAS_POR_DEFECTO = 14;
+    private static final int CANTIDAD_POR_DEFECTO = 10;
+
+    public void execute() throws Exception {
+        Integer especialidadId = (Integer) getView().getValue("especialidad.idEspecialidad");
+        if (especialidadId == null) {
+            addError("Seleccione una especialidad");
+            return;
+        }
+        LocalDate desde = (LocalDate) getView().getValue("desde");
+        if (desde == null) {
+            desde = LocalDate.now();
+            getView().setValue("desde", desde);
+        }
+        LocalDate hasta = (LocalDate) getView().getValue("hasta");
+        if (hasta == null) {
+            hasta = desde.plusDays(DIAS_POR_DEFECTO);
+            getView().setValue("hasta", hasta);
+        }
+        Integer cantidad = (Integer) getView().getValue("cantidad");
+        if (cantidad == null) {
+            cantidad = CANTIDAD_POR_DEFECTO;
+            getView().setValue("cantidad", cantidad);
+        }
+
+        List<SlotLibre> slots = BuscadorDisponibilidad.buscar(especialidadId, desde, hasta,
+                getTurno(), cantidad);
+        if (slots.isEmpty()) {
+            getView().setValue("resultado", "No hay slots libres en el rango indicado");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (SlotLibre slot : slots) {
+            if (sb.length() > 0) sb.append("\n");
+            sb.append(slot);
+        }
+        getView().setValue("resultado", sb.toString());
+    }
+
+    // Según la versión la vista guarda el enum o su ordinal
+    private TurnoTrabajo getTurno() {
+        Object turno = getView().getValue("turno");
+        if (turno instanceof TurnoTrabajo) {
+            return (TurnoTrabajo) turno;
+        }
+        if (turno instanceof Number) {
+            return TurnoTrabajo.values()[((Number) turno).intValue()];
+        }
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.gestionmedica.gestionmedica.acciones;
+
+import org.openxava.actions.*;
+
+/**
+ * Descarga el listado completo (citas del año en curso o pacientes) en
+ * CSV o XLSX desde ExportarServlet, que lo escribe en streaming en vez de
+ * cargar todas las filas como la exportación estándar de la lista.
+ */
+public class ExportarLista extends BaseAction implements IForwardAction {
+
+    private String lista;
+    private String formato;
+
+    public void execute() throws Exception {
+    }
+
+    public String getForwardURI() {
+        return "/exportar?lista=" + lista + "&formato=" + formato;
+    }
+
+    public boolean inNewWindow() {
+        return true;
+    }
+
+    public String getLista() {
+        return lista;
+    }
+
+    public void setLista(String lista) {
+        this.lista = lista;
+    }
+
+    public String getFormato() {
+        return formato;
+    }
+
+    public void setFormato(String formato) {
+        this.formato = formato;
+    }
+}
@@ -0,0 +1,28 @@
+package com.gestionmedica.gestionmedica.acciones;
+
+import org.openxava.actions.*;
+import org.openxava.jpa.XPersistence;
+import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.modelo.Cita;
+
+/**
+ * Grabar de Cita.
+ * Fuerza el flush dentro de la acción para que una violación de la
+ * restricción única del slot (dos recepcionistas reservando a la vez)
+ * llegue al usuario como el mensaje de validación habitual.
+ */
+public class GrabarCita extends SaveAction {
+
+    public void execute() throws Exception {
+        try {
+            super.execute();
+            XPersistence.getManager().flush();
+        } catch (Exception ex) {
+            if (!Cita.esSlotDuplicado(ex)) {
+                throw ex;
+            }
+            XPersistence.rollback();
+            throw new ValidationException("El médico ya tiene una cita en ese slot");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.gestionmedica.gestionmedica.acciones;
+
+import org.openxava.actions.*;
+import com.gestionmedica.gestionmedica.persistencia.*;
+
+/**
+ * Se ejecuta después de cada petición, cuando las acciones ya han grabado:
+ * si el módulo está en modo lista y configurado para la réplica, las
+ * consultas de la lista (sus filas y su cuenta) van a la réplica. Lo demás
+ * que se haga en la petición sigue en la principal.
+ */
+public class LeerDeReplica extends BaseAction {
+
+    public void execute() throws Exception {
+        if (getManager().isListMode() && EnrutadorLectura.esModuloEnReplica(getManager().getModuleName())) {
+            EnrutadorLectura.marcarLectura();
+        }
+    }
+}
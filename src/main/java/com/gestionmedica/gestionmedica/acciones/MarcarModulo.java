@@ -0,0 +1,15 @@
+package com.gestionmedica.gestionmedica.acciones;
+
+import org.openxava.actions.*;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+
+/**
+ * Se ejecuta antes de cada petición de un módulo para que las métricas de
+ * la petición queden asociadas a ese módulo.
+ */
+public class MarcarModulo extends BaseAction {
+
+    public void execute() throws Exception {
+        ContextoPeticion.setModulo(getManager().getModuleName());
+    }
+}
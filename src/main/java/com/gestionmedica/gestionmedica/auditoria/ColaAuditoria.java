@@ -0,0 +1,113 @@
+package com.gestionmedica.gestionmedica.auditoria;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+
+/**
+ * Auditoría de citas asíncrona: el listener de Cita (AuditorCita) deja los
+ * eventos aquí al confirmarse la transacción y EscritorAuditoria los graba
+ * en lotes desde su propio hilo, así la reserva no espera a la auditoría.
+ *
+ * La cola está acotada a CAPACIDAD eventos. Si se llena (base de datos
+ * caída o muy lenta) el evento se escribe en el RespaldoAuditoria en vez de
+ * frenar la petición. Al parar la aplicación lo que no se pudo grabar
+ * también va al respaldo, y al arrancar se recupera.
+ */
+public class ColaAuditoria {
+
+    public static final int CAPACIDAD = 10_000;
+    private static final long ESPERA_CIERRE_MS = 10_000;
+
+    private static final Logger log = Logger.getLogger(ColaAuditoria.class.getName());
+
+    private static final BlockingQueue<EventoCita> cola = new ArrayBlockingQueue<>(CAPACIDAD);
+
+    private static volatile RespaldoAuditoria respaldo;
+    private static EscritorAuditoria escritor;
+    private static Thread hilo;
+
+    /**
+     * Encola el evento cuando la transacción de la sesión JPA en curso se
+     * confirme; si se deshace, el evento se descarta.
+     */
+    public static void registrarAlConfirmar(EventoCita evento) {
+        XPersistence.getManager().unwrap(SessionImplementor.class).getActionQueue()
+                .registerProcess((confirmada, sesion) -> {
+                    if (confirmada) {
+                        registrar(evento);
+                    }
+                });
+    }
+
+    public static void registrar(EventoCita evento) {
+        if (cola.offer(evento)) {
+            return;
+        }
+        Metricas.registrar("auditoria/desbordadas", 1);
+        RespaldoAuditoria archivo = respaldo;
+        if (archivo != null) {
+            try {
+                archivo.guardar(Collections.singletonList(evento));
+                return;
+            } catch (IOException ex) {
+                log.log(Level.SEVERE, "No se pudo escribir " + archivo.getArchivo(), ex);
+            }
+        }
+        log.severe("Cola de auditoría llena, evento perdido: " + evento);
+    }
+
+    /**
+     * Recupera los respaldos pendientes y arranca el hilo escritor.
+     */
+    public static synchronized void iniciar(DataSource dataSource, File archivoRespaldo) {
+        if (hilo != null) {
+            return;
+        }
+        respaldo = new RespaldoAuditoria(archivoRespaldo);
+        escritor = new EscritorAuditoria(dataSource, cola, respaldo);
+        escritor.recuperar();
+        hilo = new Thread(escritor, "gestionmedica-auditoria");
+        hilo.setDaemon(true);
+        hilo.start();
+        log.info("Auditoría de citas en marcha; respaldo en " + archivoRespaldo.getAbsolutePath());
+    }
+
+    /**
+     * Graba lo pendiente esperando como mucho ESPERA_CIERRE_MS; lo que
+     * quede en la cola después va al respaldo.
+     */
+    public static synchronized void detener() {
+        if (hilo == null) {
+            return;
+        }
+        escritor.detener();
+        try {
+            hilo.join(ESPERA_CIERRE_MS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        List<EventoCita> restantes = new ArrayList<>();
+        cola.drainTo(restantes);
+        if (!restantes.isEmpty()) {
+            try {
+                respaldo.guardar(restantes);
+                log.warning(restantes.size() + " eventos de auditoría sin grabar guardados en " +
+                        respaldo.getArchivo());
+            } catch (IOException ex) {
+                log.log(Level.SEVERE, restantes.size() + " eventos de auditoría perdidos", ex);
+            }
+        }
+        hilo = null;
+    }
+}
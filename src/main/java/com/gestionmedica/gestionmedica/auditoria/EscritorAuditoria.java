@@ -0,0 +1,205 @@
+package com.gestionmedica.gestionmedica.auditoria;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Hilo que vacía la cola de auditoría en AUDITORIACITA con inserts en batch
+ * de hasta TAMANO_LOTE eventos, cada lote en su propia transacción.
+ *
+ * Si no hay conexión el lote se conserva y se reintenta tras PAUSA_ERROR_MS
+ * (mientras tanto la cola se va llenando). Si la base de datos rechaza el
+ * batch, el lote se graba fila a fila como en ImportadorCsv y las filas que
+ * fallan van al RespaldoAuditoria. Al detenerse graba lo que quede en la
+ * cola y, si no puede, lo deja en el respaldo.
+ */
+public class EscritorAuditoria implements Runnable {
+
+    public static final String COLUMNAS = "IDCITA, TIPO, INSTANTE, USUARIO, NODO, " +
+            "MEDICOANTERIOR_IDMEDICO, FECHAANTERIOR, NUMEROSLOTANTERIOR, ESTADOANTERIOR, " +
+            "MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT, ESTADO, TRANSICIONVALIDA";
+
+    private static final String SQL_INSERTAR = "INSERT INTO AUDITORIACITA (" + COLUMNAS + ") " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public static final int TAMANO_LOTE = 500;
+    // Lo que un evento espera como mucho a que se complete su lote
+    private static final long ESPERA_LOTE_MS = 1000;
+    private static final long PAUSA_ERROR_MS = 5000;
+
+    private static final Logger log = Logger.getLogger(EscritorAuditoria.class.getName());
+
+    private final DataSource dataSource;
+    private final BlockingQueue<EventoCita> cola;
+    private final RespaldoAuditoria respaldo;
+    private volatile boolean activo = true;
+
+    public EscritorAuditoria(DataSource dataSource, BlockingQueue<EventoCita> cola, RespaldoAuditoria respaldo) {
+        this.dataSource = dataSource;
+        this.cola = cola;
+        this.respaldo = respaldo;
+    }
+
+    public void run() {
+        List<EventoCita> lote = new ArrayList<>(TAMANO_LOTE);
+        while (activo || !cola.isEmpty() || !lote.isEmpty()) {
+            try {
+                if (lote.isEmpty() && !llenar(lote)) {
+                    continue;
+                }
+                escribir(lote);
+                lote.clear();
+            } catch (SQLException ex) {
+                if (!activo) {
+                    // Parando con la base de datos caída: todo al respaldo
+                    cola.drainTo(lote);
+                    guardarEnRespaldo(lote);
+                    return;
+                }
+                log.log(Level.WARNING, "No se pudo grabar la auditoría de citas, se reintenta", ex);
+                pausa(PAUSA_ERROR_MS);
+            }
+        }
+    }
+
+    /**
+     * Deja de esperar eventos nuevos; el hilo termina al vaciar la cola.
+     */
+    public void detener() {
+        activo = false;
+    }
+
+    /**
+     * Vuelve a grabar los eventos de respaldos anteriores. Se llama al
+     * arrancar, antes de empezar a vaciar la cola.
+     */
+    public void recuperar() {
+        for (File pendiente : respaldo.tomarPendientes()) {
+            try {
+                List<EventoCita> eventos = RespaldoAuditoria.leer(pendiente);
+                for (int i = 0; i < eventos.size(); i += TAMANO_LOTE) {
+                    escribir(eventos.subList(i, Math.min(i + TAMANO_LOTE, eventos.size())));
+                }
+                log.info("Recuperados " + eventos.size() + " eventos de auditoría de " + pendiente);
+                if (!pendiente.delete()) {
+                    log.warning("No se pudo borrar " + pendiente + ": sus eventos se grabarían otra vez");
+                }
+            } catch (IOException | SQLException | RuntimeException ex) {
+                // Se queda el archivo para el siguiente arranque
+                log.log(Level.SEVERE, "No se pudo recuperar la auditoría de " + pendiente, ex);
+            }
+        }
+    }
+
+    // false si no llegó ningún evento en ESPERA_LOTE_MS
+    private boolean llenar(List<EventoCita> lote) {
+        try {
+            EventoCita primero = cola.poll(ESPERA_LOTE_MS, TimeUnit.MILLISECONDS);
+            if (primero == null) {
+                return false;
+            }
+            lote.add(primero);
+            cola.drainTo(lote, TAMANO_LOTE - 1);
+            return true;
+        } catch (InterruptedException ex) {
+            activo = false;
+            cola.drainTo(lote);
+            return !lote.isEmpty();
+        }
+    }
+
+    private void escribir(List<EventoCita> lote) throws SQLException {
+        long inicio = System.currentTimeMillis();
+        Metricas.registrar("auditoria/cola", cola.size());
+        try (Connection conexion = dataSource.getConnection()) {
+            conexion.setAutoCommit(false);
+            try (PreparedStatement ps = conexion.prepareStatement(SQL_INSERTAR)) {
+                for (EventoCita evento : lote) {
+                    asignar(ps, evento);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conexion.commit();
+            } catch (SQLException ex) {
+                conexion.rollback();
+                insertarUnoAUno(conexion, lote);
+            }
+        }
+        Metricas.registrar("auditoria/lote.filas", lote.size());
+        Metricas.registrar("auditoria/lote.ms", System.currentTimeMillis() - inicio);
+    }
+
+    private void insertarUnoAUno(Connection conexion, List<EventoCita> lote) throws SQLException {
+        List<EventoCita> rechazados = new ArrayList<>();
+        try (PreparedStatement ps = conexion.prepareStatement(SQL_INSERTAR)) {
+            for (EventoCita evento : lote) {
+                try {
+                    asignar(ps, evento);
+                    ps.executeUpdate();
+                    conexion.commit();
+                } catch (SQLException ex) {
+                    conexion.rollback();
+                    log.log(Level.WARNING, "Evento de auditoría rechazado, va al respaldo: " + evento, ex);
+                    rechazados.add(evento);
+                }
+            }
+        }
+        guardarEnRespaldo(rechazados);
+    }
+
+    private static void asignar(PreparedStatement ps, EventoCita evento) throws SQLException {
+        AporteAgenda anterior = evento.getAnterior();
+        AporteAgenda actual = evento.getActual();
+        ps.setInt(1, evento.getIdCita());
+        ps.setString(2, evento.getTipo().name());
+        ps.setTimestamp(3, Timestamp.valueOf(evento.getInstante()));
+        ps.setString(4, evento.getUsuario());
+        ps.setString(5, evento.getNodo());
+        asignarAporte(ps, 6, anterior);
+        asignarAporte(ps, 10, actual);
+        ps.setObject(14, evento.getTransicionValida(), Types.BOOLEAN);
+    }
+
+    private static void asignarAporte(PreparedStatement ps, int indice, AporteAgenda aporte) throws SQLException {
+        ps.setObject(indice, aporte == null ? null : aporte.getMedicoId(), Types.INTEGER);
+        ps.setDate(indice + 1, aporte == null ? null : Date.valueOf(aporte.getFecha()));
+        ps.setObject(indice + 2, aporte == null ? null : aporte.getSlot(), Types.INTEGER);
+        ps.setString(indice + 3, aporte == null ? null : aporte.getEstado().name());
+    }
+
+    private void guardarEnRespaldo(List<EventoCita> eventos) {
+        if (eventos.isEmpty()) {
+            return;
+        }
+        try {
+            respaldo.guardar(eventos);
+            Metricas.registrar("auditoria/respaldadas", eventos.size());
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, eventos.size() + " eventos de auditoría perdidos, no se pudo escribir " +
+                    respaldo.getArchivo(), ex);
+        }
+    }
+
+    private void pausa(long milisegundos) {
+        try {
+            Thread.sleep(milisegundos);
+        } catch (InterruptedException ex) {
+            activo = false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.gestionmedica.gestionmedica.auditoria;
+
+import java.time.LocalDateTime;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+import com.gestionmedica.gestionmedica.validadores.*;
+
+/**
+ * Un evento de la auditoría de citas, con la cita antes y después
+ * (médico, fecha, slot y estado) como AporteAgenda.
+ */
+public final class EventoCita {
+
+    // Longitudes de AUDITORIACITA: un valor más largo haría rechazar el evento en cada reintento
+    private static final int LONGITUD_USUARIO = 60;
+    private static final int LONGITUD_NODO = 100;
+
+    private final Integer idCita;
+    private final TipoEventoCita tipo;
+    private final AporteAgenda anterior;
+    private final AporteAgenda actual;
+    private final String usuario;
+    private final String nodo;
+    private final LocalDateTime instante;
+
+    /**
+     * anterior es null en las altas y actual en los borrados.
+     */
+    public EventoCita(Integer idCita, TipoEventoCita tipo, AporteAgenda anterior, AporteAgenda actual,
+            String usuario, String nodo, LocalDateTime instante) {
+        this.idCita = idCita;
+        this.tipo = tipo;
+        this.anterior = anterior;
+        this.actual = actual;
+        this.usuario = recortar(usuario, LONGITUD_USUARIO);
+        this.nodo = recortar(nodo, LONGITUD_NODO);
+        this.instante = instante;
+    }
+
+    public Integer getIdCita() {
+        return idCita;
+    }
+
+    public TipoEventoCita getTipo() {
+        return tipo;
+    }
+
+    public AporteAgenda getAnterior() {
+        return anterior;
+    }
+
+    public AporteAgenda getActual() {
+        return actual;
+    }
+
+    public String getUsuario() {
+        return usuario;
+    }
+
+    public String getNodo() {
+        return nodo;
+    }
+
+    public LocalDateTime getInstante() {
+        return instante;
+    }
+
+    /**
+     * Si el cambio de estado cumple ValidadorEstadoCita; null si el evento no cambia el estado.
+     */
+    public Boolean getTransicionValida() {
+        if (tipo == TipoEventoCita.ALTA) {
+            return ValidadorEstadoCita.esTransicionValida(null, actual.getEstado());
+        }
+        if (tipo == TipoEventoCita.CAMBIO_ESTADO) {
+            return ValidadorEstadoCita.esTransicionValida(anterior.getEstado(), actual.getEstado());
+        }
+        return null;
+    }
+
+    private static String recortar(String valor, int longitud) {
+        return valor == null || valor.length() <= longitud ? valor : valor.substring(0, longitud);
+    }
+
+    public String toString() {
+        return tipo + " cita " + idCita + " por " + usuario + " a las " + instante;
+    }
+}
@@ -0,0 +1,116 @@
+package com.gestionmedica.gestionmedica.auditoria;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.gestionmedica.gestionmedica.exportacion.*;
+import com.gestionmedica.gestionmedica.importacion.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Archivo CSV local con los eventos de auditoría que no se pudieron grabar:
+ * los que quedan en la cola al parar la aplicación con la base de datos
+ * caída, los que no caben en la cola y las filas que la base de datos
+ * rechaza. Cada escritura se fuerza a disco.
+ *
+ * Al arrancar, tomarPendientes renombra el archivo para volver a grabar
+ * sus eventos; lo que vuelva a fallar se escribe en uno nuevo.
+ */
+public class RespaldoAuditoria {
+
+    private static final String SUFIJO_PENDIENTE = ".recuperando";
+
+    private final File archivo;
+
+    public RespaldoAuditoria(File archivo) {
+        this.archivo = archivo;
+    }
+
+    public File getArchivo() {
+        return archivo;
+    }
+
+    public synchronized void guardar(List<EventoCita> eventos) throws IOException {
+        if (eventos.isEmpty()) {
+            return;
+        }
+        try (FileOutputStream salida = new FileOutputStream(archivo, true)) {
+            // EscritorCsv empieza cada escritura con un BOM; leer lo quita
+            EscritorCsv escritor = new EscritorCsv(salida);
+            for (EventoCita evento : eventos) {
+                AporteAgenda anterior = evento.getAnterior();
+                AporteAgenda actual = evento.getActual();
+                escritor.fila(evento.getIdCita(), evento.getTipo(), evento.getInstante(), evento.getUsuario(),
+                        evento.getNodo(),
+                        anterior == null ? null : anterior.getMedicoId(),
+                        anterior == null ? null : anterior.getFecha(),
+                        anterior == null ? null : anterior.getSlot(),
+                        anterior == null ? null : anterior.getEstado(),
+                        actual == null ? null : actual.getMedicoId(),
+                        actual == null ? null : actual.getFecha(),
+                        actual == null ? null : actual.getSlot(),
+                        actual == null ? null : actual.getEstado());
+            }
+            escritor.terminar();
+            salida.getFD().sync();
+        }
+    }
+
+    /**
+     * Archivos con eventos por volver a grabar, incluidos los de un arranque
+     * anterior que no terminó de recuperarlos.
+     */
+    public synchronized List<File> tomarPendientes() {
+        File directorio = archivo.getAbsoluteFile().getParentFile();
+        if (archivo.exists()) {
+            archivo.renameTo(new File(directorio, archivo.getName() + "." + System.currentTimeMillis() + SUFIJO_PENDIENTE));
+        }
+        File[] pendientes = directorio.listFiles((dir, nombre) ->
+                nombre.startsWith(archivo.getName() + ".") && nombre.endsWith(SUFIJO_PENDIENTE));
+        if (pendientes == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(pendientes);
+        return new ArrayList<>(Arrays.asList(pendientes));
+    }
+
+    public static List<EventoCita> leer(File pendiente) throws IOException {
+        List<EventoCita> eventos = new ArrayList<>();
+        try (Reader entrada = new InputStreamReader(new FileInputStream(pendiente), StandardCharsets.UTF_8)) {
+            LectorCsv lector = new LectorCsv(entrada);
+            String[] campos;
+            while ((campos = lector.leerFila()) != null) {
+                if (!campos[0].isEmpty() && campos[0].charAt(0) == '\uFEFF') {
+                    campos[0] = campos[0].substring(1);
+                }
+                eventos.add(new EventoCita(Integer.valueOf(campos[0]), TipoEventoCita.valueOf(campos[1]),
+                        aporte(campos, 5), aporte(campos, 9), vacioANull(campos[3]), vacioANull(campos[4]),
+                        LocalDateTime.parse(campos[2])));
+            }
+        }
+        return eventos;
+    }
+
+    // Médico, fecha, slot y estado a partir de la columna indicada; null si no hay médico
+    private static AporteAgenda aporte(String[] campos, int desde) {
+        if (campos.length <= desde + 3 || campos[desde].isEmpty()) {
+            return null;
+        }
+        return new AporteAgenda(Integer.valueOf(campos[desde]), LocalDate.parse(campos[desde + 1]),
+                EstadoCita.valueOf(campos[desde + 3]), Integer.parseInt(campos[desde + 2]));
+    }
+
+    private static String vacioANull(String valor) {
+        return valor.isEmpty() ? null : valor;
+    }
+}
@@ -0,0 +1,60 @@
+package com.gestionmedica.gestionmedica.exportacion;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import com.gestionmedica.gestionmedica.importacion.*;
+
+/**
+ * CSV en UTF-8 con el mismo separador que las importaciones (csvSeparator de
+ * xava.properties). Los campos con separador, comillas o saltos de línea van
+ * entre comillas dobles.
+ */
+public class EscritorCsv implements EscritorFilas {
+
+    private final Writer salida;
+
+    public EscritorCsv(OutputStream salida) throws IOException {
+        this.salida = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), 64 * 1024);
+        // BOM para que Excel reconozca el UTF-8 (tildes y eñes)
+        this.salida.write('\uFEFF');
+    }
+
+    public void cabecera(String... columnas) throws IOException {
+        fila((Object[]) columnas);
+    }
+
+    public void fila(Object... valores) throws IOException {
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) {
+                salida.write(LectorCsv.SEPARADOR);
+            }
+            if (valores[i] != null) {
+                escribirCampo(valores[i].toString());
+            }
+        }
+        salida.write("\r\n");
+    }
+
+    public void terminar() throws IOException {
+        salida.flush();
+    }
+
+    private void escribirCampo(String campo) throws IOException {
+        boolean comillas = false;
+        for (int i = 0; i < campo.length() && !comillas; i++) {
+            char c = campo.charAt(i);
+            comillas = c == LectorCsv.SEPARADOR || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!comillas) {
+            salida.write(campo);
+            return;
+        }
+        salida.write('"');
+        salida.write(campo.replace("\"", "\"\""));
+        salida.write('"');
+    }
+}
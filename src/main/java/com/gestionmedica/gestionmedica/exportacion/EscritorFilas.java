@@ -0,0 +1,22 @@
+package com.gestionmedica.gestionmedica.exportacion;
+
+import java.io.IOException;
+
+/**
+ * Destino de una exportación fila a fila. Cada fila se escribe en cuanto
+ * llega, sin acumular el listado en memoria.
+ */
+public interface EscritorFilas {
+
+    void cabecera(String... columnas) throws IOException;
+
+    /**
+     * Valores de la fila; null se escribe vacío.
+     */
+    void fila(Object... valores) throws IOException;
+
+    /**
+     * Termina el archivo. No cierra el stream de salida.
+     */
+    void terminar() throws IOException;
+}
@@ -0,0 +1,101 @@
+package com.gestionmedica.gestionmedica.exportacion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * XLSX con el writer en streaming de POI (SXSSF): solo VENTANA_FILAS filas
+ * quedan en memoria; el resto se vuelca a un temporal comprimido que se
+ * copia a la salida al terminar.
+ */
+public class EscritorXlsx implements EscritorFilas {
+
+    private static final int VENTANA_FILAS = 200;
+    // Límite de filas de una hoja de Excel
+    private static final int MAX_FILAS_HOJA = 1_048_576;
+
+    private final OutputStream salida;
+    private final SXSSFWorkbook libro;
+    private final CellStyle estiloFecha;
+    private final CellStyle estiloHora;
+    private final CellStyle estiloCabecera;
+    private SXSSFSheet hoja;
+    private String[] columnas;
+    private int numeroFila;
+
+    public EscritorXlsx(OutputStream salida) {
+        this.salida = salida;
+        libro = new SXSSFWorkbook(VENTANA_FILAS);
+        libro.setCompressTempFiles(true);
+        estiloFecha = libro.createCellStyle();
+        estiloFecha.setDataFormat(libro.createDataFormat().getFormat("yyyy-mm-dd"));
+        estiloHora = libro.createCellStyle();
+        estiloHora.setDataFormat(libro.createDataFormat().getFormat("hh:mm"));
+        estiloCabecera = libro.createCellStyle();
+        Font negrita = libro.createFont();
+        negrita.setBold(true);
+        estiloCabecera.setFont(negrita);
+    }
+
+    public void cabecera(String... columnas) {
+        this.columnas = columnas;
+        nuevaHoja();
+    }
+
+    public void fila(Object... valores) {
+        if (hoja == null || numeroFila == MAX_FILAS_HOJA) {
+            nuevaHoja();
+        }
+        Row fila = hoja.createRow(numeroFila++);
+        for (int i = 0; i < valores.length; i++) {
+            Object valor = valores[i];
+            if (valor == null) {
+                continue;
+            }
+            Cell celda = fila.createCell(i);
+            if (valor instanceof Number) {
+                celda.setCellValue(((Number) valor).doubleValue());
+            } else if (valor instanceof LocalDate) {
+                celda.setCellValue((LocalDate) valor);
+                celda.setCellStyle(estiloFecha);
+            } else if (valor instanceof LocalTime) {
+                // Fracción del día, como guarda Excel las horas
+                celda.setCellValue(((LocalTime) valor).toSecondOfDay() / 86400.0);
+                celda.setCellStyle(estiloHora);
+            } else {
+                celda.setCellValue(valor.toString());
+            }
+        }
+    }
+
+    public void terminar() throws IOException {
+        try {
+            libro.write(salida);
+            salida.flush();
+        } finally {
+            libro.dispose();
+            libro.close();
+        }
+    }
+
+    private void nuevaHoja() {
+        hoja = libro.createSheet();
+        numeroFila = 0;
+        if (columnas != null) {
+            Row fila = hoja.createRow(numeroFila++);
+            for (int i = 0; i < columnas.length; i++) {
+                Cell celda = fila.createCell(i);
+                celda.setCellValue(columnas[i]);
+                celda.setCellStyle(estiloCabecera);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.gestionmedica.gestionmedica.exportacion;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Exporta los listados grandes (citas, pacientes) sin cargar entidades.
+ *
+ * Usa consultas de proyección con los nombres de médico y paciente ya
+ * unidos y la hora de inicio guardada en la cita, recorridas con un cursor
+ * de solo avance: la memoria no depende del número de filas y no hay
+ * consultas por fila (como las de toString o getHoraDelSlotTexto).
+ */
+public class ExportadorListas {
+
+    private static final int TAMANO_FETCH = 500;
+
+    /**
+     * Citas entre desde y hasta (ambas incluidas), de un médico o de todos
+     * si medicoId es null. Retorna el número de filas escritas.
+     */
+    public static int exportarCitas(LocalDate desde, LocalDate hasta, Integer medicoId, EscritorFilas escritor)
+            throws IOException {
+        Query<Object[]> query = sesion().createQuery(
+                "SELECT c.fechaCita, c.horaInicio, c.numeroSlot, m.nombre, m.apellido, " +
+                "p.cedula, p.nombre, p.apellido, c.estado, c.motivoConsulta " +
+                "FROM Cita c JOIN c.medico m JOIN c.paciente p WHERE " +
+                "c.fechaCita BETWEEN :desde AND :hasta" +
+                (medicoId == null ? "" : " AND m.idMedico = :medicoId") +
+                " ORDER BY c.fechaCita, c.numeroSlot", Object[].class)
+                .setParameter("desde", desde)
+                .setParameter("hasta", hasta);
+        if (medicoId != null) {
+            query.setParameter("medicoId", medicoId);
+        }
+        // Escapes Unicode: el proyecto compila con ISO-8859-1 y los archivos son UTF-8
+        escritor.cabecera("Fecha", "Hora", "Slot", "Nombre m\u00e9dico", "Apellido m\u00e9dico",
+                "C\u00e9dula paciente", "Nombre paciente", "Apellido paciente", "Estado", "Motivo de consulta");
+        return escribir(query, escritor);
+    }
+
+    /**
+     * Pacientes con las columnas de ImportadorPacientes, en su orden, más la
+     * fecha de registro al final: el CSV se puede volver a importar.
+     */
+    public static int exportarPacientes(EscritorFilas escritor) throws IOException {
+        Query<Object[]> query = sesion().createQuery(
+                "SELECT p.cedula, p.nombre, p.apellido, p.fechaNacimiento, p.telefono, p.correo, " +
+                "p.direccion, p.fechaRegistro FROM Paciente p ORDER BY p.apellidoBusqueda, p.nombreBusqueda", Object[].class);
+        escritor.cabecera("C\u00e9dula", "Nombre", "Apellido", "Fecha de nacimiento", "Tel\u00e9fono", "Correo",
+                "Direcci\u00f3n", "Fecha de registro");
+        return escribir(query, escritor);
+    }
+
+    private static int escribir(Query<Object[]> query, EscritorFilas escritor) throws IOException {
+        int filas = 0;
+        try (ScrollableResults resultados = query.setFetchSize(TAMANO_FETCH).setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (resultados.next()) {
+                escritor.fila(resultados.get());
+                filas++;
+            }
+        }
+        escritor.terminar();
+        return filas;
+    }
+
+    private static Session sesion() {
+        return XPersistence.getManager().unwrap(Session.class);
+    }
+}
@@ -0,0 +1,28 @@
+package com.gestionmedica.gestionmedica.filtros;
+
+import org.openxava.filters.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Normaliza (mayúsculas, sin acentos) los textos tecleados en los filtros
+ * de la lista. Junto con ReescritorFiltros, que compara los nombres con las
+ * columnas de búsqueda y quita los acentos del resto de columnas, "garcía",
+ * "GARCIA" y "García" encuentran lo mismo.
+ */
+public class FiltroBusqueda implements IFilter {
+
+    public Object filter(Object o) throws FilterException {
+        if (o instanceof Object[]) {
+            Object[] valores = ((Object[]) o).clone();
+            for (int i = 0; i < valores.length; i++) {
+                valores[i] = normalizar(valores[i]);
+            }
+            return valores;
+        }
+        return normalizar(o);
+    }
+
+    private static Object normalizar(Object valor) {
+        return valor instanceof String ? Normalizador.normalizar((String) valor) : valor;
+    }
+}
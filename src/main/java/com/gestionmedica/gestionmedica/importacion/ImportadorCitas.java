@@ -0,0 +1,306 @@
+package com.gestionmedica.gestionmedica.importacion;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.gestionmedica.gestionmedica.modelo.Cita;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Importación masiva de citas.
+ * Columnas: cedulaPaciente;cedulaMedico;fechaCita (aaaa-mm-dd);numeroSlot;estado;motivoConsulta
+ *
+ * Paciente, médico, horario y slots ya ocupados se resuelven con una
+ * consulta IN por bloque. Se aplican las reglas de Cita (slot en rango,
+ * horario activo, slot libre); la fecha pasada solo se rechaza para citas
+ * REGISTRADA, ya que al migrar se traen también citas atendidas o canceladas.
+ *
+ * Al terminar se reconstruye la agenda de los (médico, fecha) afectados, se
+ * recuentan sus meses en EstadisticaMensual y se avisa a los nodos
+ * (BusInvalidacion) para que recarguen su IndiceOcupacion.
+ */
+public class ImportadorCitas extends ImportadorCsv<ImportadorCitas.DatosCita> {
+
+    // (médico, fecha) con alguna cita importada, para la agenda y el aviso a los nodos
+    private final Map<Integer, Set<LocalDate>> afectadas = new HashMap<>();
+
+    // Versión de agenda de la transacción de inserción en curso
+    private long versionAgenda;
+
+    public ImportadorCitas(Connection conexion) {
+        super(conexion);
+    }
+
+    protected String getPrimeraColumna() {
+        return "cedulaPaciente";
+    }
+
+    protected DatosCita convertir(String[] campos) {
+        DatosCita cita = new DatosCita();
+        cita.cedulaPaciente = requerido(campo(campos, 0), "La cédula del paciente");
+        cita.cedulaMedico = requerido(campo(campos, 1), "La cédula del médico");
+        String fecha = requerido(campo(campos, 2), "La fecha de la cita");
+        try {
+            cita.fechaCita = LocalDate.parse(fecha);
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Fecha de cita no válida: " + fecha);
+        }
+        String slot = requerido(campo(campos, 3), "El slot");
+        try {
+            cita.numeroSlot = Integer.parseInt(slot);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Slot no válido: " + slot);
+        }
+        if (cita.numeroSlot < 1 || cita.numeroSlot > TablaSlots.MAX_SLOTS) {
+            throw new IllegalArgumentException("El slot debe estar entre 1 y " + TablaSlots.MAX_SLOTS);
+        }
+        String estado = campo(campos, 4);
+        try {
+            cita.estado = estado == null ? EstadoCita.REGISTRADA : EstadoCita.valueOf(estado.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Estado no válido: " + estado);
+        }
+        if (cita.estado == EstadoCita.REGISTRADA && cita.fechaCita.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("No puede agendar citas en fechas pasadas");
+        }
+        cita.motivoConsulta = campo(campos, 5);
+        if (cita.motivoConsulta != null && cita.motivoConsulta.length() > 500) {
+            throw new IllegalArgumentException("El motivo de consulta no puede superar 500 caracteres");
+        }
+        return cita;
+    }
+
+    protected void validarBloque(List<Registro<DatosCita>> bloque, ResultadoImportacion resultado)
+            throws SQLException {
+        Set<String> cedulasPacientes = new HashSet<>();
+        Set<String> cedulasMedicos = new HashSet<>();
+        for (Registro<DatosCita> registro : bloque) {
+            cedulasPacientes.add(registro.datos.cedulaPaciente);
+            cedulasMedicos.add(registro.datos.cedulaMedico);
+        }
+        Map<String, Integer> pacientes = buscarIds("SELECT CEDULA, IDPACIENTE FROM PACIENTE WHERE CEDULA IN ",
+                cedulasPacientes);
+        Map<String, Integer> medicos = buscarIds("SELECT CEDULA, IDMEDICO FROM MEDICO WHERE CEDULA IN ",
+                cedulasMedicos);
+        Map<String, TablaSlots> tablas = buscarTablasSlots(new HashSet<>(medicos.values()));
+
+        // Slots ocupados por citas ya existentes y por las anteriores del bloque
+        Set<String> slotsOcupados = buscarSlotsOcupados(bloque, medicos);
+        for (Iterator<Registro<DatosCita>> it = bloque.iterator(); it.hasNext();) {
+            Registro<DatosCita> registro = it.next();
+            DatosCita cita = registro.datos;
+            cita.pacienteId = pacientes.get(cita.cedulaPaciente);
+            cita.medicoId = medicos.get(cita.cedulaMedico);
+            if (cita.pacienteId == null) {
+                descartar(it, registro, "No existe un paciente con cédula " + cita.cedulaPaciente, resultado);
+                continue;
+            }
+            if (cita.medicoId == null) {
+                descartar(it, registro, "No existe un médico con cédula " + cita.cedulaMedico, resultado);
+                continue;
+            }
+            TablaSlots tabla = tablas.get(cita.medicoId + "|" + DiaSemana.desdeFecha(cita.fechaCita));
+            if (tabla == null) {
+                descartar(it, registro, "El médico no tiene horario activo para ese día", resultado);
+                continue;
+            }
+            if (!tabla.esValido(cita.numeroSlot)) {
+                descartar(it, registro, "El slot debe estar entre 1 y " + tabla.getCantidad(), resultado);
+                continue;
+            }
+            if (cita.estado != EstadoCita.CANCELADA &&
+                    !slotsOcupados.add(clave(cita.medicoId, cita.fechaCita, cita.numeroSlot))) {
+                descartar(it, registro, "El médico ya tiene una cita en ese slot", resultado);
+                continue;
+            }
+            cita.horaInicio = tabla.getHora(cita.numeroSlot);
+            afectadas.computeIfAbsent(cita.medicoId, m -> new HashSet<>()).add(cita.fechaCita);
+        }
+    }
+
+    protected void antesDeInsertar() throws SQLException {
+        versionAgenda = VersionAgenda.tomar(conexion);
+    }
+
+    protected String getSqlInsercion() {
+        return "INSERT INTO CITA (PACIENTE_IDPACIENTE, MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT, " +
+                "SLOTRESERVADO, HORAINICIO, ESTADO, MOTIVOCONSULTA, FECHAREGISTRO, VERSIONAGENDA) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    protected void asignarParametros(PreparedStatement ps, DatosCita cita) throws SQLException {
+        ps.setInt(1, cita.pacienteId);
+        ps.setInt(2, cita.medicoId);
+        ps.setDate(3, Date.valueOf(cita.fechaCita));
+        ps.setInt(4, cita.numeroSlot);
+        if (cita.estado == EstadoCita.CANCELADA) {
+            ps.setNull(5, Types.INTEGER);
+        } else {
+            ps.setInt(5, cita.numeroSlot);
+        }
+        ps.setTime(6, Time.valueOf(cita.horaInicio));
+        ps.setString(7, cita.estado.name());
+        ps.setString(8, cita.motivoConsulta);
+        ps.setDate(9, Date.valueOf(LocalDate.now()));
+        ps.setLong(10, versionAgenda);
+    }
+
+    protected String traducirError(SQLException ex) {
+        if (Cita.esSlotDuplicado(ex)) {
+            return "El médico ya tiene una cita en ese slot";
+        }
+        return ex.getMessage();
+    }
+
+    /**
+     * Las citas insertadas por JDBC no pasan por los callbacks de Cita: se
+     * reconstruye la agenda de lo importado, se recuentan sus meses desde
+     * ella y se avisa a los nodos.
+     */
+    protected void alTerminar() throws SQLException {
+        if (afectadas.isEmpty()) {
+            return;
+        }
+        new VerificadorAgenda(conexion).reconstruir(afectadas);
+        Map<Integer, Set<YearMonth>> meses = new HashMap<>();
+        afectadas.forEach((medicoId, fechas) -> fechas.forEach(fecha ->
+                meses.computeIfAbsent(medicoId, m -> new HashSet<>()).add(YearMonth.from(fecha))));
+        try {
+            new ConsolidadorEstadisticas(conexion).recontar(meses);
+            for (Integer medicoId : afectadas.keySet()) {
+                BusInvalidacion.publicar(conexion, BusInvalidacion.OCUPACION, null, medicoId);
+            }
+            conexion.commit();
+        } catch (SQLException ex) {
+            conexion.rollback();
+            throw ex;
+        }
+        // Por si la importación se hace desde el mismo proceso que la aplicación
+        afectadas.keySet().forEach(IndiceOcupacion::invalidarMedico);
+        afectadas.clear();
+    }
+
+    /**
+     * Claves "medicoId|fecha|slot" de las citas no canceladas que ya ocupan
+     * los médicos y fechas del bloque.
+     */
+    private Set<String> buscarSlotsOcupados(List<Registro<DatosCita>> bloque, Map<String, Integer> medicos)
+            throws SQLException {
+        Set<String> ocupados = new HashSet<>();
+        List<Integer> medicoIds = new ArrayList<>(new HashSet<>(medicos.values()));
+        Set<LocalDate> fechasBloque = new HashSet<>();
+        for (Registro<DatosCita> registro : bloque) {
+            fechasBloque.add(registro.datos.fechaCita);
+        }
+        if (medicoIds.isEmpty()) {
+            return ocupados;
+        }
+        List<LocalDate> fechas = new ArrayList<>(fechasBloque);
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT MEDICO_IDMEDICO, FECHACITA, SLOTRESERVADO FROM CITA " +
+                "WHERE SLOTRESERVADO IS NOT NULL AND MEDICO_IDMEDICO IN (" + marcadores(medicoIds.size()) + ") " +
+                "AND FECHACITA IN (" + marcadores(fechas.size()) + ")")) {
+            int i = 1;
+            for (Integer medicoId : medicoIds) {
+                ps.setInt(i++, medicoId);
+            }
+            for (LocalDate fecha : fechas) {
+                ps.setDate(i++, Date.valueOf(fecha));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ocupados.add(clave(rs.getInt(1), rs.getDate(2).toLocalDate(), rs.getInt(3)));
+                }
+            }
+        }
+        return ocupados;
+    }
+
+    private Map<String, Integer> buscarIds(String sql, Set<String> cedulas) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> lista = new ArrayList<>(cedulas);
+        try (PreparedStatement ps = conexion.prepareStatement(sql + "(" + marcadores(lista.size()) + ")")) {
+            for (int i = 0; i < lista.size(); i++) {
+                ps.setString(i + 1, lista.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Tabla de slots (turno activo y duración de la especialidad) por
+     * "medicoId|DIA" de los médicos del bloque
+     */
+    private Map<String, TablaSlots> buscarTablasSlots(Set<Integer> medicoIds) throws SQLException {
+        Map<String, TablaSlots> tablas = new HashMap<>();
+        if (medicoIds.isEmpty()) {
+            return tablas;
+        }
+        List<Integer> lista = new ArrayList<>(medicoIds);
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT H.MEDICO_IDMEDICO, H.DIASEMANA, H.TURNO, E.DURACIONSLOTMINUTOS FROM HORARIODISPONIBLE H " +
+                "JOIN MEDICO M ON M.IDMEDICO = H.MEDICO_IDMEDICO " +
+                "JOIN ESPECIALIDAD E ON E.IDESPECIALIDAD = M.ESPECIALIDAD_IDESPECIALIDAD " +
+                "WHERE H.ESTADO = 'ACTIVO' AND H.MEDICO_IDMEDICO IN (" + marcadores(lista.size()) + ")")) {
+            for (int i = 0; i < lista.size(); i++) {
+                ps.setInt(i + 1, lista.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int duracion = rs.getInt(4);
+                    tablas.putIfAbsent(rs.getInt(1) + "|" + rs.getString(2), TablaSlots.de(
+                            TurnoTrabajo.valueOf(rs.getString(3)), rs.wasNull() ? null : duracion));
+                }
+            }
+        }
+        return tablas;
+    }
+
+    private static String clave(Integer medicoId, LocalDate fecha, int slot) {
+        return medicoId + "|" + fecha + "|" + slot;
+    }
+
+    private static String requerido(String valor, String campo) {
+        if (valor == null) {
+            throw new IllegalArgumentException(campo + " es obligatorio");
+        }
+        return valor;
+    }
+
+    /**
+     * Fila de cita ya convertida y, tras validar el bloque, con sus ids resueltos
+     */
+    public static class DatosCita {
+
+        String cedulaPaciente;
+        String cedulaMedico;
+        LocalDate fechaCita;
+        int numeroSlot;
+        EstadoCita estado;
+        String motivoConsulta;
+        Integer pacienteId;
+        Integer medicoId;
+        LocalTime horaInicio;
+    }
+}
@@ -0,0 +1,198 @@
+package com.gestionmedica.gestionmedica.importacion;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import com.gestionmedica.gestionmedica.servicios.Normalizador;
+
+/**
+ * Base de las importaciones masivas desde CSV.
+ *
+ * Lee el archivo fila a fila, valida por bloques de TAMANO_BLOQUE filas e
+ * inserta cada bloque con un batch JDBC en su propia transacción, así la
+ * memoria no crece con el tamaño del archivo. Si el batch falla (p. ej. una
+ * restricción única violada por otro usuario entre la validación y el
+ * insert) el bloque se reintenta fila a fila para informar qué filas fallan.
+ *
+ * Se usa JDBC directo porque los identificadores son IDENTITY y con ellos
+ * Hibernate no agrupa inserts en batch.
+ */
+public abstract class ImportadorCsv<T> {
+
+    public static final int TAMANO_BLOQUE = 500;
+
+    protected final Connection conexion;
+
+    protected ImportadorCsv(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    public ResultadoImportacion importar(Reader entrada) throws IOException, SQLException {
+        ResultadoImportacion resultado = new ResultadoImportacion();
+        long inicio = System.currentTimeMillis();
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        try {
+            LectorCsv lector = new LectorCsv(entrada);
+            List<Registro<T>> bloque = new ArrayList<>(TAMANO_BLOQUE);
+            String[] campos = lector.leerFila();
+            // Los CSV de ExportadorListas (y de Excel) empiezan con un BOM
+            if (campos != null && campos[0].startsWith("\uFEFF")) {
+                campos[0] = campos[0].substring(1);
+            }
+            if (campos != null && Normalizador.normalizar(campos[0]).equals(
+                    Normalizador.normalizar(getPrimeraColumna()))) {
+                campos = lector.leerFila();
+            }
+            while (campos != null) {
+                resultado.filaLeida();
+                int fila = lector.getNumeroFila();
+                try {
+                    bloque.add(new Registro<>(fila, convertir(campos)));
+                } catch (RuntimeException ex) {
+                    resultado.error(fila, mensaje(ex));
+                }
+                if (bloque.size() == TAMANO_BLOQUE) {
+                    procesarBloque(bloque, resultado);
+                    bloque.clear();
+                }
+                campos = lector.leerFila();
+            }
+            if (!bloque.isEmpty()) {
+                procesarBloque(bloque, resultado);
+            }
+            alTerminar();
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+            resultado.setMilisegundos(System.currentTimeMillis() - inicio);
+        }
+        return resultado;
+    }
+
+    /**
+     * Nombre de la primera columna; si la primera fila lo contiene (sin
+     * distinguir mayúsculas ni acentos) se toma como cabecera.
+     */
+    protected abstract String getPrimeraColumna();
+
+    /**
+     * Convierte y valida una fila aislada. Lanza una excepción con el
+     * mensaje para el informe si la fila no es válida.
+     */
+    protected abstract T convertir(String[] campos);
+
+    /**
+     * Validaciones que necesitan la base de datos, hechas para todo el bloque
+     * con pocas consultas. Debe quitar del bloque las filas no válidas.
+     */
+    protected abstract void validarBloque(List<Registro<T>> bloque, ResultadoImportacion resultado)
+            throws SQLException;
+
+    protected abstract String getSqlInsercion();
+
+    protected abstract void asignarParametros(PreparedStatement ps, T datos) throws SQLException;
+
+    /**
+     * Mensaje para el informe cuando falla el insert de una fila.
+     */
+    protected String traducirError(SQLException ex) {
+        return ex.getMessage();
+    }
+
+    protected void alTerminar() throws SQLException {
+    }
+
+    /**
+     * Al empezar cada transacción de inserción, antes de asignar los parámetros.
+     */
+    protected void antesDeInsertar() throws SQLException {
+    }
+
+    private void procesarBloque(List<Registro<T>> bloque, ResultadoImportacion resultado) throws SQLException {
+        validarBloque(bloque, resultado);
+        if (bloque.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conexion.prepareStatement(getSqlInsercion())) {
+            antesDeInsertar();
+            for (Registro<T> registro : bloque) {
+                asignarParametros(ps, registro.datos);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conexion.commit();
+            resultado.filasImportadas(bloque.size());
+        } catch (SQLException ex) {
+            conexion.rollback();
+            insertarUnaAUna(bloque, resultado);
+        }
+    }
+
+    private void insertarUnaAUna(List<Registro<T>> bloque, ResultadoImportacion resultado) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(getSqlInsercion())) {
+            for (Registro<T> registro : bloque) {
+                try {
+                    antesDeInsertar();
+                    asignarParametros(ps, registro.datos);
+                    ps.executeUpdate();
+                    conexion.commit();
+                    resultado.filasImportadas(1);
+                } catch (SQLException ex) {
+                    conexion.rollback();
+                    resultado.error(registro.fila, traducirError(ex));
+                }
+            }
+        }
+    }
+
+    /**
+     * Quita del bloque un registro ya iterado y lo anota como error.
+     */
+    protected static <T> void descartar(Iterator<Registro<T>> it, Registro<T> registro,
+            String mensaje, ResultadoImportacion resultado) {
+        it.remove();
+        resultado.error(registro.fila, mensaje);
+    }
+
+    /**
+     * "?, ?, ..." con n marcadores para una cláusula IN.
+     */
+    protected static String marcadores(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    protected static String campo(String[] campos, int indice) {
+        if (indice >= campos.length || campos[indice].isEmpty()) {
+            return null;
+        }
+        return campos[indice];
+    }
+
+    private static String mensaje(RuntimeException ex) {
+        return ex.getMessage() == null ? ex.toString() : ex.getMessage();
+    }
+
+    /**
+     * Fila convertida junto a su número en el archivo
+     */
+    protected static final class Registro<T> {
+
+        final int fila;
+        final T datos;
+
+        Registro(int fila, T datos) {
+            this.fila = fila;
+            this.datos = datos;
+        }
+
+        public T getDatos() {
+            return datos;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.gestionmedica.gestionmedica.importacion;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import com.gestionmedica.gestionmedica.modelo.Paciente;
+import com.gestionmedica.gestionmedica.servicios.Normalizador;
+
+/**
+ * Importación masiva de pacientes.
+ * Columnas: cedula;nombre;apellido;fechaNacimiento (aaaa-mm-dd);telefono;correo;direccion
+ *
+ * Aplica las mismas validaciones que el formulario (Paciente.validarDatos)
+ * y resuelve las cédulas existentes con una consulta IN por bloque.
+ */
+public class ImportadorPacientes extends ImportadorCsv<Paciente> {
+
+    public ImportadorPacientes(Connection conexion) {
+        super(conexion);
+    }
+
+    protected String getPrimeraColumna() {
+        return "cedula";
+    }
+
+    protected Paciente convertir(String[] campos) {
+        Paciente paciente = new Paciente();
+        paciente.setCedula(campo(campos, 0));
+        paciente.setNombre(campo(campos, 1));
+        paciente.setApellido(campo(campos, 2));
+        String fecha = campo(campos, 3);
+        try {
+            paciente.setFechaNacimiento(fecha == null ? null : LocalDate.parse(fecha));
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Fecha de nacimiento no válida: " + fecha);
+        }
+        paciente.setTelefono(campo(campos, 4));
+        paciente.setCorreo(campo(campos, 5));
+        paciente.setDireccion(campo(campos, 6));
+
+        paciente.validarDatos();
+        if (paciente.getCorreo() == null) {
+            throw new IllegalArgumentException("El correo es obligatorio");
+        }
+        validarLongitud(paciente.getNombre(), 50, "El nombre");
+        validarLongitud(paciente.getApellido(), 50, "El apellido");
+        validarLongitud(paciente.getCorreo(), 100, "El correo");
+        validarLongitud(paciente.getDireccion(), 200, "La dirección");
+        return paciente;
+    }
+
+    protected void validarBloque(List<Registro<Paciente>> bloque, ResultadoImportacion resultado)
+            throws SQLException {
+        Set<String> existentes = new HashSet<>();
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT CEDULA FROM PACIENTE WHERE CEDULA IN (" + marcadores(bloque.size()) + ")")) {
+            int i = 1;
+            for (Registro<Paciente> registro : bloque) {
+                ps.setString(i++, registro.datos.getCedula());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    existentes.add(rs.getString(1));
+                }
+            }
+        }
+
+        Set<String> enBloque = new HashSet<>();
+        for (Iterator<Registro<Paciente>> it = bloque.iterator(); it.hasNext();) {
+            Registro<Paciente> registro = it.next();
+            String cedula = registro.datos.getCedula();
+            if (existentes.contains(cedula)) {
+                descartar(it, registro, "Cédula ya existente en la base de datos", resultado);
+            } else if (!enBloque.add(cedula)) {
+                descartar(it, registro, "Cédula repetida en el archivo", resultado);
+            }
+        }
+    }
+
+    protected String getSqlInsercion() {
+        return "INSERT INTO PACIENTE (CEDULA, NOMBRE, APELLIDO, FECHANACIMIENTO, TELEFONO, " +
+                "CORREO, DIRECCION, FECHAREGISTRO, APELLIDOBUSQUEDA, NOMBREBUSQUEDA) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    protected void asignarParametros(PreparedStatement ps, Paciente paciente) throws SQLException {
+        ps.setString(1, paciente.getCedula());
+        ps.setString(2, paciente.getNombre());
+        ps.setString(3, paciente.getApellido());
+        ps.setDate(4, Date.valueOf(paciente.getFechaNacimiento()));
+        ps.setString(5, paciente.getTelefono());
+        ps.setString(6, paciente.getCorreo());
+        ps.setString(7, paciente.getDireccion());
+        ps.setDate(8, Date.valueOf(LocalDate.now()));
+        ps.setString(9, Normalizador.normalizar(paciente.getApellido()));
+        ps.setString(10, Normalizador.normalizar(paciente.getNombre()));
+    }
+
+    protected String traducirError(SQLException ex) {
+        // La única restricción única de PACIENTE es la de la cédula
+        String mensaje = ex.getMessage();
+        if (mensaje != null && mensaje.toLowerCase().contains("unique")) {
+            return "Cédula ya existente en la base de datos";
+        }
+        return mensaje;
+    }
+
+    private static void validarLongitud(String valor, int maximo, String campo) {
+        if (valor != null && valor.length() > maximo) {
+            throw new IllegalArgumentException(campo + " no puede superar " + maximo + " caracteres");
+        }
+    }
+}
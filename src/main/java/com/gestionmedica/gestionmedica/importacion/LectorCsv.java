@@ -0,0 +1,76 @@
+package com.gestionmedica.gestionmedica.importacion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector de CSV fila a fila, sin cargar el archivo en memoria.
+ * Usa ';' como separador (el mismo csvSeparator de xava.properties) y
+ * admite campos entre comillas dobles con "" como comilla escapada.
+ */
+public class LectorCsv {
+
+    public static final char SEPARADOR = ';';
+
+    private final BufferedReader lector;
+    private int numeroFila;
+
+    public LectorCsv(Reader lector) {
+        this.lector = lector instanceof BufferedReader ? (BufferedReader) lector : new BufferedReader(lector);
+    }
+
+    /**
+     * Retorna los campos de la siguiente fila no vacía o null al final del archivo.
+     */
+    public String[] leerFila() throws IOException {
+        String linea;
+        do {
+            linea = lector.readLine();
+            if (linea == null) {
+                return null;
+            }
+            numeroFila++;
+        } while (linea.trim().isEmpty());
+        return separar(linea);
+    }
+
+    /**
+     * Número (desde 1) de la última fila leída, contando la cabecera.
+     */
+    public int getNumeroFila() {
+        return numeroFila;
+    }
+
+    static String[] separar(String linea) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c == '"') {
+                    if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                        campo.append('"');
+                        i++;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == SEPARADOR) {
+                campos.add(campo.toString().trim());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString().trim());
+        return campos.toArray(new String[0]);
+    }
+}
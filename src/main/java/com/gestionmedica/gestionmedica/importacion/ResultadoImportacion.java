@@ -0,0 +1,84 @@
+package com.gestionmedica.gestionmedica.importacion;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una importación: errores por fila y resumen de rendimiento.
+ */
+public class ResultadoImportacion {
+
+    // Se guardan como mucho estos errores; el resto solo se cuentan
+    private static final int MAX_ERRORES_GUARDADOS = 10000;
+
+    private final List<String> errores = new ArrayList<>();
+    private int filasLeidas;
+    private int filasImportadas;
+    private int filasConError;
+    private long milisegundos;
+
+    void filaLeida() {
+        filasLeidas++;
+    }
+
+    void filasImportadas(int cantidad) {
+        filasImportadas += cantidad;
+    }
+
+    void error(int fila, String mensaje) {
+        filasConError++;
+        if (errores.size() < MAX_ERRORES_GUARDADOS) {
+            errores.add("Fila " + fila + ": " + mensaje);
+        }
+    }
+
+    void setMilisegundos(long milisegundos) {
+        this.milisegundos = milisegundos;
+    }
+
+    public int getFilasLeidas() {
+        return filasLeidas;
+    }
+
+    public int getFilasImportadas() {
+        return filasImportadas;
+    }
+
+    public int getFilasConError() {
+        return filasConError;
+    }
+
+    public List<String> getErrores() {
+        return Collections.unmodifiableList(errores);
+    }
+
+    public long getMilisegundos() {
+        return milisegundos;
+    }
+
+    public double getFilasPorSegundo() {
+        if (milisegundos == 0) return filasLeidas;
+        return filasLeidas * 1000.0 / milisegundos;
+    }
+
+    /**
+     * Escribe el informe de errores seguido del resumen.
+     */
+    public void escribirInforme(PrintWriter salida) {
+        for (String error : errores) {
+            salida.println(error);
+        }
+        if (filasConError > errores.size()) {
+            salida.println("... y " + (filasConError - errores.size()) + " errores más");
+        }
+        salida.println(toString());
+        salida.flush();
+    }
+
+    public String toString() {
+        return String.format("Leídas: %d, importadas: %d, con error: %d, tiempo: %d ms (%.1f filas/s)",
+                filasLeidas, filasImportadas, filasConError, milisegundos, getFilasPorSegundo());
+    }
+}
@@ -0,0 +1,72 @@
+package com.gestionmedica.gestionmedica.instrumentacion;
+
+/**
+ * Contadores de la petición HTTP en curso (hilo actual): módulo de
+ * OpenXava, sentencias SQL, entidades cargadas y espera de conexiones.
+ * Lo abre y cierra FiltroMetricas; fuera de una petición no cuenta nada.
+ */
+public class ContextoPeticion {
+
+    public static final String SIN_MODULO = "otros";
+
+    private static final ThreadLocal<ContextoPeticion> actual = new ThreadLocal<>();
+
+    private final long inicio = System.nanoTime();
+    private String modulo;
+    private long sentencias;
+    private long entidades;
+    private long esperaConexion;
+
+    public static void iniciar() {
+        actual.set(new ContextoPeticion());
+    }
+
+    /**
+     * Cierra la petición y registra sus métricas bajo el módulo marcado.
+     */
+    public static void terminar() {
+        ContextoPeticion contexto = actual.get();
+        if (contexto == null) {
+            return;
+        }
+        actual.remove();
+        String modulo = contexto.modulo == null ? SIN_MODULO : contexto.modulo;
+        Metricas.registrar(modulo + "/peticion.us", (System.nanoTime() - contexto.inicio) / 1000);
+        Metricas.registrar(modulo + "/sentenciasSql", contexto.sentencias);
+        Metricas.registrar(modulo + "/entidadesCargadas", contexto.entidades);
+        Metricas.registrar(modulo + "/esperaConexion.us", contexto.esperaConexion / 1000);
+    }
+
+    public static void setModulo(String modulo) {
+        ContextoPeticion contexto = actual.get();
+        if (contexto != null) {
+            contexto.modulo = modulo;
+        }
+    }
+
+    public static String getModulo() {
+        ContextoPeticion contexto = actual.get();
+        return contexto == null || contexto.modulo == null ? SIN_MODULO : contexto.modulo;
+    }
+
+    static void sentenciaPreparada() {
+        ContextoPeticion contexto = actual.get();
+        if (contexto != null) {
+            contexto.sentencias++;
+        }
+    }
+
+    static void entidadCargada() {
+        ContextoPeticion contexto = actual.get();
+        if (contexto != null) {
+            contexto.entidades++;
+        }
+    }
+
+    static void esperaConexion(long nanos) {
+        ContextoPeticion contexto = actual.get();
+        if (contexto != null) {
+            contexto.esperaConexion += nanos;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.gestionmedica.gestionmedica.instrumentacion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma sin bloqueos con cubetas en potencias de 2.
+ * La cubeta i cuenta los valores en [2^(i-1), 2^i); la 0 cuenta los valores 0.
+ * Registrar un valor son tres operaciones atómicas, apto para dejarlo
+ * activo en producción. Los percentiles son aproximados (límite superior de la cubeta).
+ */
+public class Histograma {
+
+    private static final int CUBETAS = 40;
+
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong suma = new AtomicLong();
+    private final AtomicLong maximo = new AtomicLong();
+
+    public void registrar(long valor) {
+        if (valor < 0) valor = 0;
+        int cubeta = Math.min(CUBETAS - 1, 64 - Long.numberOfLeadingZeros(valor));
+        cubetas.incrementAndGet(cubeta);
+        total.incrementAndGet();
+        suma.addAndGet(valor);
+        long actual;
+        while (valor > (actual = maximo.get()) && !maximo.compareAndSet(actual, valor)) {
+            // reintentar
+        }
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public double getMedia() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) suma.get() / n;
+    }
+
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    /**
+     * Valor por debajo del cual queda la fracción p (0..1) de las muestras.
+     */
+    public long getPercentil(double p) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long objetivo = (long) Math.ceil(n * p);
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += cubetas.get(i);
+            if (acumulado >= objetivo) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, getMaximo());
+            }
+        }
+        return getMaximo();
+    }
+
+    public void reiniciar() {
+        for (int i = 0; i < CUBETAS; i++) {
+            cubetas.set(i, 0);
+        }
+        total.set(0);
+        suma.set(0);
+        maximo.set(0);
+    }
+
+    public String toString() {
+        return String.format("n=%d media=%.1f p50=%d p99=%d max=%d",
+                getTotal(), getMedia(), getPercentil(0.5), getPercentil(0.99), getMaximo());
+    }
+}
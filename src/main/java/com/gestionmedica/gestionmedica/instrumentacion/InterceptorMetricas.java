@@ -0,0 +1,25 @@
+package com.gestionmedica.gestionmedica.instrumentacion;
+
+import java.io.Serializable;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.type.Type;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Cuenta sentencias SQL y entidades cargadas en la petición en curso.
+ * Se configura en persistence.xml como interceptor y como StatementInspector;
+ * como solo puede haber un StatementInspector, también aplica ReescritorFiltros.
+ */
+public class InterceptorMetricas extends EmptyInterceptor implements StatementInspector {
+
+    public String inspect(String sql) {
+        ContextoPeticion.sentenciaPreparada();
+        return ReescritorFiltros.reescribir(sql);
+    }
+
+    public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        ContextoPeticion.entidadCargada();
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+package com.gestionmedica.gestionmedica.instrumentacion;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registro de histogramas de la aplicación, por nombre "modulo/medida".
+ * Se publica en texto en /metricas y, entre publicarJmx y retirarJmx (los
+ * llama InicioAplicacion), por JMX como gestionmedica:type=Metricas.
+ */
+public class Metricas implements MetricasMBean {
+
+    private static final Logger log = Logger.getLogger(Metricas.class.getName());
+
+    private static final String NOMBRE_JMX = "gestionmedica:type=Metricas";
+
+    private static final ConcurrentMap<String, Histograma> histogramas = new ConcurrentHashMap<>();
+
+    /**
+     * Registra el MBean. Si ya hay uno (de una carga anterior de la
+     * aplicación que no se detuvo bien) lo sustituye, para no dejar
+     * publicado el de un classloader descartado.
+     */
+    public static void publicarJmx() {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nombre = new ObjectName(NOMBRE_JMX);
+            if (servidor.isRegistered(nombre)) {
+                servidor.unregisterMBean(nombre);
+            }
+            servidor.registerMBean(new Metricas(), nombre);
+        } catch (Exception ex) {
+            log.log(Level.WARNING, "No se pudo registrar el MBean de métricas", ex);
+        }
+    }
+
+    public static void retirarJmx() {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nombre = new ObjectName(NOMBRE_JMX);
+            if (servidor.isRegistered(nombre)) {
+                servidor.unregisterMBean(nombre);
+            }
+        } catch (Exception ex) {
+            log.log(Level.WARNING, "No se pudo quitar el MBean de métricas", ex);
+        }
+    }
+
+    public static void registrar(String nombre, long valor) {
+        histogramas.computeIfAbsent(nombre, n -> new Histograma()).registrar(valor);
+    }
+
+    /**
+     * Marca de tiempo para pasar luego a registrarCallback.
+     */
+    public static long inicio() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra la duración (en microsegundos) de un callback de entidad bajo
+     * el módulo de la petición en curso.
+     */
+    public static void registrarCallback(String callback, long inicio) {
+        registrar(ContextoPeticion.getModulo() + "/" + callback + ".us", (System.nanoTime() - inicio) / 1000);
+    }
+
+    public static Histograma getHistograma(String nombre) {
+        return histogramas.get(nombre);
+    }
+
+    public static String texto() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Histograma> e : new TreeMap<>(histogramas).entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static void reiniciarTodo() {
+        for (Histograma histograma : histogramas.values()) {
+            histograma.reiniciar();
+        }
+    }
+
+    public String getResumen() {
+        return texto();
+    }
+
+    public void reiniciar() {
+        reiniciarTodo();
+    }
+}
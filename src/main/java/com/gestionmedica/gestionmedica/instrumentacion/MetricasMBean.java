@@ -0,0 +1,11 @@
+package com.gestionmedica.gestionmedica.instrumentacion;
+
+/**
+ * Vista JMX de las métricas (gestionmedica:type=Metricas)
+ */
+public interface MetricasMBean {
+
+    String getResumen();
+
+    void reiniciar();
+}
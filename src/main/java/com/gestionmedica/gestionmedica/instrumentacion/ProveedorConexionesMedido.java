@@ -0,0 +1,25 @@
+package com.gestionmedica.gestionmedica.instrumentacion;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.hibernate.engine.jdbc.connections.internal.DatasourceConnectionProviderImpl;
+import com.gestionmedica.gestionmedica.persistencia.*;
+
+/**
+ * Proveedor de conexiones del datasource jdbc/gestionmedicaDS que mide
+ * cuánto se espera al pool al pedir cada conexión.
+ *
+ * En las peticiones de lectura marcadas por EnrutadorLectura la envuelve
+ * para que las consultas de lista vayan a la réplica, si está configurada y al día.
+ */
+public class ProveedorConexionesMedido extends DatasourceConnectionProviderImpl {
+
+    public Connection getConnection() throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return EnrutadorLectura.enrutar(super.getConnection());
+        } finally {
+            ContextoPeticion.esperaConexion(System.nanoTime() - inicio);
+        }
+    }
+}
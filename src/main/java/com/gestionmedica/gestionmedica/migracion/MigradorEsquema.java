@@ -0,0 +1,512 @@
+package com.gestionmedica.gestionmedica.migracion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Migraciones versionadas del esquema, en lugar de hbm2ddl "update" en cada arranque.
+ *
+ * Los scripts están en db/migracion/V1.sql, V2.sql... y se aplican en orden,
+ * una sola vez. ESQUEMA_VERSION guarda cada versión aplicada con el CRC32 de
+ * su script; si un script ya aplicado se modifica, el arranque falla en vez
+ * de dejar bases de datos con esquemas distintos para la misma versión.
+ *
+ * Una base de datos creada por hbm2ddl antes de las migraciones (tiene CITA
+ * pero no ESQUEMA_VERSION) se toma como versión 1 y se sigue desde ahí, solo
+ * si sus tablas y columnas son las de V1. Las tablas de sistema de OpenXava
+ * que le falten se crean con las sentencias de V1.
+ *
+ * HSQLDB confirma cada sentencia DDL por su cuenta, así que un script que
+ * falla a medias no se puede deshacer. ESQUEMA_PROGRESO guarda cuántas
+ * sentencias del script ya se ejecutaron y el siguiente arranque sigue desde
+ * la que falló. Mientras migra, una instancia tiene la fila de
+ * ESQUEMA_BLOQUEO y las demás esperan a que la suelte.
+ *
+ * Para un cambio en el modelo se añade un script nuevo; nunca se edita uno publicado.
+ */
+public class MigradorEsquema {
+
+    private static final String RUTA = "db/migracion/V";
+    // Las crea OpenXava según los editores que se usen; hbm2ddl no creaba todas
+    private static final Set<String> TABLAS_SISTEMA = new HashSet<>(Arrays.asList(
+            "IMAGES", "OXDISCUSSIONCOMMENTS", "OXFILES", "OXEMAILSUBSCRIPTIONS"));
+    private static final Pattern TABLA_SENTENCIA = Pattern.compile(
+            "^CREATE\\s+(?:TABLE\\s+|(?:UNIQUE\\s+)?INDEX\\s+\\w+\\s+ON\\s+)(\\w+)", Pattern.CASE_INSENSITIVE);
+    // Lo que una instancia espera a que otra termine de migrar
+    private static final long ESPERA_BLOQUEO_MS = 10 * 60_000;
+    // Un bloqueo más antiguo es de una instancia que se cayó migrando
+    private static final long CADUCIDAD_BLOQUEO_MS = 60 * 60_000;
+    private static final long PAUSA_BLOQUEO_MS = 1000;
+
+    private static final Logger log = Logger.getLogger(MigradorEsquema.class.getName());
+    private static int basesTemporales;
+
+    private final Connection conexion;
+    private final String nodo = ManagementFactory.getRuntimeMXBean().getName() + "/" +
+            UUID.randomUUID().toString().substring(0, 8);
+
+    public MigradorEsquema(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Verifica las versiones aplicadas y aplica las pendientes. Retorna la versión final.
+     */
+    public int migrar() throws SQLException, IOException {
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        try {
+            crearTablasControl();
+            bloquear();
+            try {
+                return migrarBloqueado();
+            } finally {
+                desbloquear();
+            }
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+    }
+
+    private int migrarBloqueado() throws SQLException, IOException {
+        Map<Integer, Long> aplicadas = leerAplicadas();
+        int version = 1;
+        String script;
+        while ((script = leerScript(version)) != null) {
+            long checksum = checksum(script);
+            Long aplicado = aplicadas.get(version);
+            if (aplicado == null) {
+                aplicar(version, script, checksum);
+            } else if (aplicado != checksum) {
+                throw new IllegalStateException("El script de la versión " + version +
+                        " cambió después de aplicarse (checksum " + aplicado + " en la base de datos, " +
+                        checksum + " en el script)");
+            }
+            version++;
+        }
+        int ultima = version - 1;
+        for (Integer aplicada : aplicadas.keySet()) {
+            if (aplicada > ultima) {
+                throw new IllegalStateException("La base de datos está en la versión " + aplicada +
+                        ", más nueva que la aplicación (" + ultima + ")");
+            }
+        }
+        return ultima;
+    }
+
+    private void crearTablasControl() throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS ESQUEMA_BLOQUEO(ID INTEGER NOT NULL PRIMARY KEY, " +
+                    "NODO VARCHAR(200), DESDE TIMESTAMP NOT NULL)");
+            st.execute("CREATE TABLE IF NOT EXISTS ESQUEMA_PROGRESO(VERSION INTEGER NOT NULL PRIMARY KEY, " +
+                    "CHECKSUM BIGINT NOT NULL, SENTENCIAS INTEGER NOT NULL)");
+        }
+        conexion.commit();
+    }
+
+    /**
+     * Toma la fila de ESQUEMA_BLOQUEO, esperando como mucho ESPERA_BLOQUEO_MS
+     * a que otra instancia la suelte. No es un bloqueo de la transacción: cada
+     * DDL la confirma, así que la fila se inserta y se borra al terminar.
+     */
+    private void bloquear() throws SQLException {
+        long limite = System.currentTimeMillis() + ESPERA_BLOQUEO_MS;
+        while (true) {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO ESQUEMA_BLOQUEO(ID, NODO, DESDE) VALUES (1, ?, ?)")) {
+                ps.setString(1, nodo);
+                ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                ps.executeUpdate();
+                conexion.commit();
+                return;
+            } catch (SQLIntegrityConstraintViolationException ex) {
+                conexion.rollback();
+            }
+            String otro = null;
+            Timestamp desde = null;
+            try (Statement st = conexion.createStatement();
+                    ResultSet rs = st.executeQuery("SELECT NODO, DESDE FROM ESQUEMA_BLOQUEO WHERE ID = 1")) {
+                if (rs.next()) {
+                    otro = rs.getString(1);
+                    desde = rs.getTimestamp(2);
+                }
+            }
+            conexion.commit();
+            if (desde == null) {
+                continue;
+            }
+            if (System.currentTimeMillis() - desde.getTime() > CADUCIDAD_BLOQUEO_MS) {
+                log.warning("Se libera el bloqueo de migraci\u00f3n de " + otro + ", tomado el " + desde);
+                try (PreparedStatement ps = conexion.prepareStatement(
+                        "DELETE FROM ESQUEMA_BLOQUEO WHERE ID = 1 AND DESDE = ?")) {
+                    ps.setTimestamp(1, desde);
+                    ps.executeUpdate();
+                }
+                conexion.commit();
+                continue;
+            }
+            if (System.currentTimeMillis() > limite) {
+                throw new IllegalStateException("Otra instancia (" + otro + ") est\u00e1 migrando el esquema " +
+                        "desde " + desde + ". Si ya no est\u00e1 en marcha, borre la fila de ESQUEMA_BLOQUEO");
+            }
+            try {
+                Thread.sleep(PAUSA_BLOQUEO_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrumpido esperando el bloqueo de migraci\u00f3n", ex);
+            }
+        }
+    }
+
+    private void desbloquear() {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "DELETE FROM ESQUEMA_BLOQUEO WHERE ID = 1 AND NODO = ?")) {
+            ps.setString(1, nodo);
+            ps.executeUpdate();
+            conexion.commit();
+        } catch (SQLException ex) {
+            // La fila caduca sola tras CADUCIDAD_BLOQUEO_MS
+            log.log(Level.SEVERE, "No se pudo soltar el bloqueo de migraci\u00f3n", ex);
+        }
+    }
+
+    private Map<Integer, Long> leerAplicadas() throws SQLException, IOException {
+        Map<Integer, Long> aplicadas = new LinkedHashMap<>();
+        if (!existeTabla("ESQUEMA_VERSION")) {
+            // Antes de crear ESQUEMA_VERSION: si la verificación falla, el siguiente arranque vuelve a intentarlo
+            boolean existente = existeTabla("CITA");
+            String inicial = leerScript(1);
+            if (existente) {
+                prepararBaseExistente(inicial);
+            }
+            try (Statement st = conexion.createStatement()) {
+                st.execute("CREATE TABLE ESQUEMA_VERSION(VERSION INTEGER NOT NULL PRIMARY KEY, " +
+                        "DESCRIPCION VARCHAR(200), CHECKSUM BIGINT NOT NULL, APLICADA TIMESTAMP, MILISEGUNDOS BIGINT)");
+            }
+            if (existente) {
+                registrar(1, descripcion(inicial) + " (base de datos existente)", checksum(inicial), 0);
+            }
+            conexion.commit();
+        }
+        try (Statement st = conexion.createStatement();
+                ResultSet rs = st.executeQuery("SELECT VERSION, CHECKSUM FROM ESQUEMA_VERSION ORDER BY VERSION")) {
+            while (rs.next()) {
+                aplicadas.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return aplicadas;
+    }
+
+    /**
+     * Compara la base de datos existente con el esquema de V1, creado en una
+     * base de datos en memoria aparte. Falla si le falta una tabla de la
+     * aplicación o una columna, o si ya tiene tablas o columnas que añaden
+     * migraciones posteriores (la creó hbm2ddl con un modelo más nuevo y esas
+     * migraciones fallarían a medias). Después crea las tablas de sistema que falten.
+     */
+    private void prepararBaseExistente(String inicial) throws SQLException, IOException {
+        Map<String, Set<String>> esperado;
+        String url;
+        synchronized (MigradorEsquema.class) {
+            url = "jdbc:hsqldb:mem:gestionmedica-esquema-v1-" + (++basesTemporales);
+        }
+        try (Connection temporal = DriverManager.getConnection(url, "sa", "");
+                Statement st = temporal.createStatement()) {
+            for (String sentencia : separarSentencias(inicial)) {
+                st.execute(sentencia);
+            }
+            esperado = leerColumnas(temporal);
+            st.execute("SHUTDOWN");
+        }
+        Map<String, Set<String>> actual = leerColumnas(conexion);
+        List<String> diferencias = new ArrayList<>();
+        Set<String> sistemaQueFalta = new HashSet<>();
+        for (Map.Entry<String, Set<String>> tabla : esperado.entrySet()) {
+            Set<String> columnas = actual.get(tabla.getKey());
+            if (columnas == null) {
+                if (TABLAS_SISTEMA.contains(tabla.getKey())) {
+                    sistemaQueFalta.add(tabla.getKey());
+                } else {
+                    diferencias.add("falta la tabla " + tabla.getKey());
+                }
+                continue;
+            }
+            for (String columna : tabla.getValue()) {
+                if (!columnas.contains(columna)) {
+                    diferencias.add("falta la columna " + tabla.getKey() + "." + columna);
+                }
+            }
+            for (String columna : columnas) {
+                if (!tabla.getValue().contains(columna)) {
+                    diferencias.add("sobra la columna " + tabla.getKey() + "." + columna);
+                }
+            }
+        }
+        String script;
+        for (int version = 2; (script = leerScript(version)) != null; version++) {
+            for (String sentencia : separarSentencias(script)) {
+                Matcher tabla = TABLA_SENTENCIA.matcher(sentencia);
+                if (tabla.find() && sentencia.regionMatches(true, 0, "CREATE TABLE", 0, 12)
+                        && actual.containsKey(tabla.group(1).toUpperCase())) {
+                    diferencias.add("ya existe la tabla " + tabla.group(1).toUpperCase() + " de la versión " + version);
+                }
+            }
+        }
+        if (!diferencias.isEmpty()) {
+            throw new IllegalStateException("La base de datos existente no tiene el esquema de la versión 1 " +
+                    "y no se puede tomar como punto de partida: " + String.join(", ", diferencias));
+        }
+        try (Statement st = conexion.createStatement()) {
+            for (String sentencia : separarSentencias(inicial)) {
+                Matcher tabla = TABLA_SENTENCIA.matcher(sentencia);
+                if (tabla.find() && sistemaQueFalta.contains(tabla.group(1).toUpperCase())) {
+                    st.execute(sentencia);
+                }
+            }
+        }
+    }
+
+    /**
+     * Columnas de cada tabla del esquema actual, en mayúsculas.
+     */
+    private static Map<String, Set<String>> leerColumnas(Connection conexion) throws SQLException {
+        Map<String, Set<String>> columnas = new LinkedHashMap<>();
+        DatabaseMetaData metadatos = conexion.getMetaData();
+        try (ResultSet rs = metadatos.getTables(null, conexion.getSchema(), "%", new String[] { "TABLE" })) {
+            while (rs.next()) {
+                columnas.put(rs.getString("TABLE_NAME").toUpperCase(), new LinkedHashSet<>());
+            }
+        }
+        try (ResultSet rs = metadatos.getColumns(null, conexion.getSchema(), "%", "%")) {
+            while (rs.next()) {
+                Set<String> tabla = columnas.get(rs.getString("TABLE_NAME").toUpperCase());
+                if (tabla != null) {
+                    tabla.add(rs.getString("COLUMN_NAME").toUpperCase());
+                }
+            }
+        }
+        return columnas;
+    }
+
+    /**
+     * Ejecuta las sentencias del script desde la primera que falta según
+     * ESQUEMA_PROGRESO, guardando el progreso tras cada una.
+     */
+    private void aplicar(int version, String script, long checksum) throws SQLException {
+        List<String> sentencias = separarSentencias(script);
+        int hechas = leerProgreso(version, checksum);
+        verificarAntesDeAplicar(version);
+        long inicio = System.currentTimeMillis();
+        int siguiente = hechas;
+        try (Statement st = conexion.createStatement()) {
+            for (; siguiente < sentencias.size(); siguiente++) {
+                st.execute(sentencias.get(siguiente));
+                guardarProgreso(version, checksum, siguiente + 1);
+                conexion.commit();
+            }
+            registrar(version, descripcion(script), checksum, System.currentTimeMillis() - inicio);
+            try (PreparedStatement ps = conexion.prepareStatement("DELETE FROM ESQUEMA_PROGRESO WHERE VERSION = ?")) {
+                ps.setInt(1, version);
+                ps.executeUpdate();
+            }
+            conexion.commit();
+        } catch (SQLException ex) {
+            conexion.rollback();
+            throw new SQLException("Error aplicando la migraci\u00f3n V" + version + " en la sentencia " +
+                    (siguiente + 1) + " de " + sentencias.size() + " (se seguir\u00e1 desde ella): " +
+                    ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Sentencias del script ya ejecutadas en un intento anterior que falló a medias.
+     */
+    private int leerProgreso(int version, long checksum) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT CHECKSUM, SENTENCIAS FROM ESQUEMA_PROGRESO WHERE VERSION = ?")) {
+            ps.setInt(1, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                if (rs.getLong(1) != checksum) {
+                    throw new IllegalStateException("El script de la versi\u00f3n " + version + " cambi\u00f3 " +
+                            "despu\u00e9s de aplicarse en parte (" + rs.getInt(2) + " sentencias): hay que " +
+                            "deshacerlas a mano y borrar su fila de ESQUEMA_PROGRESO");
+                }
+                return rs.getInt(2);
+            }
+        }
+    }
+
+    private void guardarProgreso(int version, long checksum, int sentencias) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "UPDATE ESQUEMA_PROGRESO SET CHECKSUM = ?, SENTENCIAS = ? WHERE VERSION = ?")) {
+            ps.setLong(1, checksum);
+            ps.setInt(2, sentencias);
+            ps.setInt(3, version);
+            if (ps.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "INSERT INTO ESQUEMA_PROGRESO(VERSION, CHECKSUM, SENTENCIAS) VALUES (?, ?, ?)")) {
+            ps.setInt(1, version);
+            ps.setLong(2, checksum);
+            ps.setInt(3, sentencias);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Comprobaciones de los datos que un script necesita, antes de su primera
+     * sentencia: V2 crea una restricción única que falla si dos citas activas
+     * ocupan el mismo slot.
+     */
+    private void verificarAntesDeAplicar(int version) throws SQLException {
+        if (version != 2) {
+            return;
+        }
+        List<String> duplicados = new ArrayList<>();
+        try (Statement st = conexion.createStatement();
+                ResultSet rs = st.executeQuery("SELECT MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT, COUNT(*) FROM CITA " +
+                        "WHERE ESTADO <> 'CANCELADA' GROUP BY MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT " +
+                        "HAVING COUNT(*) > 1 ORDER BY FECHACITA, MEDICO_IDMEDICO, NUMEROSLOT")) {
+            while (rs.next()) {
+                duplicados.add("m\u00e9dico " + rs.getInt(1) + " el " + rs.getDate(2) + " slot " + rs.getInt(3) +
+                        " (" + rs.getInt(4) + " citas)");
+            }
+        }
+        conexion.commit();
+        if (!duplicados.isEmpty()) {
+            throw new IllegalStateException("No se puede aplicar la migraci\u00f3n V2: hay citas activas en el " +
+                    "mismo slot. Cancele o mueva las que sobran y vuelva a arrancar: " +
+                    String.join(", ", duplicados));
+        }
+    }
+
+    private void registrar(int version, String descripcion, long checksum, long milisegundos) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "INSERT INTO ESQUEMA_VERSION(VERSION, DESCRIPCION, CHECKSUM, APLICADA, MILISEGUNDOS) " +
+                "VALUES (?, ?, ?, ?, ?)")) {
+            ps.setInt(1, version);
+            ps.setString(2, descripcion);
+            ps.setLong(3, checksum);
+            ps.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            ps.setLong(5, milisegundos);
+            ps.executeUpdate();
+        }
+    }
+
+    private boolean existeTabla(String tabla) throws SQLException {
+        DatabaseMetaData metadatos = conexion.getMetaData();
+        try (ResultSet rs = metadatos.getTables(null, null, tabla, new String[] { "TABLE" })) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Contenido del script de esa versión, o null si no existe.
+     */
+    static String leerScript(int version) throws IOException {
+        try (InputStream entrada = MigradorEsquema.class.getClassLoader()
+                .getResourceAsStream(RUTA + version + ".sql")) {
+            if (entrada == null) {
+                return null;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int leidos;
+            while ((leidos = entrada.read(buffer)) != -1) {
+                bytes.write(buffer, 0, leidos);
+            }
+            // Sin \r, para que el checksum no dependa del fin de línea con que se hizo checkout
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8).replace("\r", "");
+        }
+    }
+
+    static long checksum(String script) {
+        CRC32 crc = new CRC32();
+        crc.update(script.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * La primera línea de comentario del script.
+     */
+    private static String descripcion(String script) {
+        String primera = script.split("\n", 2)[0];
+        String descripcion = primera.startsWith("--") ? primera.substring(2).trim() : "";
+        return descripcion.length() > 200 ? descripcion.substring(0, 200) : descripcion;
+    }
+
+    /**
+     * Sentencias separadas por ';', sin los comentarios ("--" hasta el fin de
+     * línea y "/* ... *\/"). Los ';' y "--" dentro de literales ('...', con ''
+     * como comilla) o de identificadores entre comillas dobles no cuentan.
+     */
+    static List<String> separarSentencias(String script) {
+        List<String> sentencias = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        int i = 0;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            if (c == '\'' || c == '"') {
+                int fin = script.indexOf(c, i + 1);
+                // Comilla sin cerrar: el resto es parte de la sentencia y falla al ejecutarla
+                fin = fin < 0 ? script.length() - 1 : fin;
+                actual.append(script, i, fin + 1);
+                i = fin + 1;
+            } else if (script.startsWith("--", i)) {
+                int fin = script.indexOf('\n', i);
+                i = fin < 0 ? script.length() : fin;
+            } else if (script.startsWith("/*", i)) {
+                int fin = script.indexOf("*/", i + 2);
+                i = fin < 0 ? script.length() : fin + 2;
+                actual.append(' ');
+            } else if (c == ';') {
+                agregar(sentencias, actual);
+                i++;
+            } else {
+                actual.append(c);
+                i++;
+            }
+        }
+        agregar(sentencias, actual);
+        return sentencias;
+    }
+
+    private static void agregar(List<String> sentencias, StringBuilder actual) {
+        String sentencia = actual.toString().trim();
+        if (!sentencia.isEmpty()) {
+            sentencias.add(sentencia);
+        }
+        actual.setLength(0);
+    }
+}
@@ -0,0 +1,80 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import javax.persistence.*;
+import org.openxava.annotations.*;
+import lombok.*;
+import java.time.LocalDate;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+import com.gestionmedica.gestionmedica.filtros.*;
+
+/**
+ * Resumen de un día de un médico: slots ocupados y citas por estado.
+ * La mantiene ActualizadorAgenda desde los callbacks de Cita, en la misma
+ * transacción; VerificadorAgenda la compara con las citas. Solo de consulta.
+ */
+@Entity
+@Getter
+@Setter
+@View(members = "medico; fecha;" +
+        "citas[registradas, atendidas, canceladas, noAsistidas];" +
+        "slots")
+@Tab(properties = "fecha, medico.nombre, medico.apellido, registradas, atendidas, canceladas, noAsistidas",
+        defaultOrder = "${fecha} asc, ${medico.apellido} asc",
+        filter = FiltroBusqueda.class)
+@Table(uniqueConstraints = @UniqueConstraint(name = "UK_AGENDA_MEDICO_FECHA",
+        columnNames = { "medico_idMedico", "fecha" }))
+public class AgendaDiaria {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Hidden
+    private Integer idAgenda;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @DescriptionsList(descriptionProperties = "nombre, apellido, especialidad.nombre")
+    @ReadOnly
+    private Medico medico;
+
+    @Column
+    @ReadOnly
+    private LocalDate fecha;
+
+    // Bit (slot - 1) encendido si el slot tiene una cita no cancelada
+    @Column
+    @Hidden
+    private Long slotsOcupados;
+
+    @Column
+    @ReadOnly
+    private Integer registradas;
+
+    @Column
+    @ReadOnly
+    private Integer atendidas;
+
+    @Column
+    @ReadOnly
+    private Integer canceladas;
+
+    @Column
+    @ReadOnly
+    private Integer noAsistidas;
+
+    /**
+     * Slots del día con su hora, marcando los ocupados
+     */
+    @Transient
+    @ReadOnly
+    @Stereotype("MEMO")
+    public String getSlots() {
+        if (medico == null || fecha == null)
+            return "";
+        TurnoTrabajo turno = CacheHorarios.getTurnoActivo(medico.getIdMedico(), DiaSemana.desdeFecha(fecha));
+        if (turno == null)
+            return "No hay horario activo para el médico ese día.";
+        Especialidad especialidad = medico.getEspecialidad();
+        return TablaSlots.de(turno, especialidad == null ? null : especialidad.getDuracionSlotMinutos())
+                .construirTexto(slotsOcupados == null ? 0 : slotsOcupados);
+    }
+}
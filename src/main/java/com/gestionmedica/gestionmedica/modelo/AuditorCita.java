@@ -0,0 +1,53 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import org.openxava.util.Users;
+import com.gestionmedica.gestionmedica.auditoria.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Listener de Cita que pasa a ColaAuditoria las altas, reprogramaciones,
+ * cambios de estado y borrados.
+ *
+ * JPA llama a los listeners antes que a los callbacks de la propia entidad,
+ * así que en @PostUpdate y @PostRemove aportePersistido() todavía tiene la
+ * cita tal como estaba antes del cambio.
+ */
+public class AuditorCita {
+
+    @PostPersist
+    public void alta(Cita cita) {
+        registrar(cita, TipoEventoCita.ALTA, null, cita.aporteActual());
+    }
+
+    @PostUpdate
+    public void cambio(Cita cita) {
+        AporteAgenda anterior = cita.aportePersistido();
+        AporteAgenda actual = cita.aporteActual();
+        if (anterior == null || actual == null) {
+            return;
+        }
+        if (anterior.getEstado() != actual.getEstado()) {
+            registrar(cita, TipoEventoCita.CAMBIO_ESTADO, anterior, actual);
+        }
+        if (!anterior.getMedicoId().equals(actual.getMedicoId()) || !anterior.getFecha().equals(actual.getFecha()) ||
+                anterior.getSlot() != actual.getSlot()) {
+            registrar(cita, TipoEventoCita.REPROGRAMACION, anterior, actual);
+        }
+    }
+
+    @PostRemove
+    public void borrado(Cita cita) {
+        registrar(cita, TipoEventoCita.BORRADO, cita.aportePersistido(), null);
+    }
+
+    private static void registrar(Cita cita, TipoEventoCita tipo, AporteAgenda anterior, AporteAgenda actual) {
+        if (tipo != TipoEventoCita.BORRADO && actual == null) {
+            return;
+        }
+        ColaAuditoria.registrarAlConfirmar(new EventoCita(cita.getIdCita(), tipo, anterior, actual,
+                Users.getCurrent(), BusInvalidacion.NODO, LocalDateTime.now()));
+    }
+}
@@ -0,0 +1,99 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import javax.persistence.*;
+import org.openxava.annotations.*;
+import lombok.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.filtros.*;
+
+/**
+ * Evento de la auditoría de citas: quién, cuándo y cómo estaba la cita
+ * antes y después. Lo graban EscritorAuditoria (desde AuditorCita) y
+ * CierreCitasVencidas. Solo crece y no referencia a CITA, así sobrevive al
+ * archivado y al borrado de la cita. Solo de consulta.
+ */
+@Entity
+@Getter
+@Setter
+@View(members = "evento[idCita, tipo; instante, usuario; transicionValida; nodo];" +
+        "anterior[medicoAnterior; fechaAnterior, numeroSlotAnterior, estadoAnterior];" +
+        "actual[medico; fechaCita, numeroSlot, estado]")
+@Tab(properties = "instante, idCita, tipo, estadoAnterior, estado, transicionValida, " +
+        "medico.nombre, medico.apellido, fechaAnterior, numeroSlotAnterior, fechaCita, numeroSlot, usuario",
+        defaultOrder = "${instante} desc",
+        filter = FiltroBusqueda.class)
+@Table(indexes = {
+        @Index(name = "IDX_AUDITORIA_CITA", columnList = "idCita, instante"),
+        @Index(name = "IDX_AUDITORIA_INSTANTE", columnList = "instante") })
+public class AuditoriaCita {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Hidden
+    private Long idAuditoria;
+
+    @Column
+    @ReadOnly
+    private Integer idCita;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    @ReadOnly
+    private TipoEventoCita tipo;
+
+    @Column
+    @ReadOnly
+    private LocalDateTime instante;
+
+    @Column(length = 60)
+    @ReadOnly
+    private String usuario;
+
+    // Proceso que atendió el cambio (BusInvalidacion.NODO)
+    @Column(length = 100)
+    @ReadOnly
+    private String nodo;
+
+    // null si el evento no cambia el estado
+    @Column
+    @ReadOnly
+    private Boolean transicionValida;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @DescriptionsList(descriptionProperties = "nombre, apellido, especialidad.nombre")
+    @ReadOnly
+    private Medico medicoAnterior;
+
+    @Column
+    @ReadOnly
+    private LocalDate fechaAnterior;
+
+    @Column
+    @ReadOnly
+    private Integer numeroSlotAnterior;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    @ReadOnly
+    private EstadoCita estadoAnterior;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @DescriptionsList(descriptionProperties = "nombre, apellido, especialidad.nombre")
+    @ReadOnly
+    private Medico medico;
+
+    @Column
+    @ReadOnly
+    private LocalDate fechaCita;
+
+    @Column
+    @ReadOnly
+    private Integer numeroSlot;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    @ReadOnly
+    private EstadoCita estado;
+}
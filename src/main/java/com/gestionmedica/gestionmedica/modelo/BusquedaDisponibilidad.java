@@ -0,0 +1,38 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import javax.persistence.*;
+import org.openxava.annotations.*;
+import lombok.*;
+import java.time.LocalDate;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Formulario (no persistente) para buscar los primeros slots libres de una
+ * especialidad. La búsqueda la hace la acción BuscarDisponibilidad.
+ */
+@Getter @Setter
+@View(members=
+    "criterios[" +
+        "especialidad; desde, hasta; turno, cantidad" +
+    "];" +
+    "resultado"
+)
+public class BusquedaDisponibilidad {
+    
+    @ManyToOne
+    @DescriptionsList(descriptionProperties="nombre")
+    @Required
+    private Especialidad especialidad;
+    
+    private LocalDate desde;
+    
+    private LocalDate hasta;
+    
+    private TurnoTrabajo turno;
+    
+    private Integer cantidad;
+    
+    @ReadOnly
+    @Stereotype("MEMO")
+    private String resultado;
+}
@@ -7,9 +7,12 @@ import org.openxava.validators.*;
 import lombok.*;
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.DayOfWeek;
 import java.time.format.DateTimeFormatter;
+import java.util.Objects;
 import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+import com.gestionmedica.gestionmedica.filtros.*;
 
 @Entity
 @Getter
@@ -24,15 +27,29 @@ import com.gestionmedica.gestionmedica.modelo.enums.*;
         "auditoria[" +
         "fechaRegistro; fechaCancelacion" +
         "]")
+@Tab(properties = "fechaCita, horaInicio, numeroSlot, medico.nombre, medico.apellido, " +
+        "paciente.cedula, paciente.nombre, paciente.apellido, estado",
+        defaultOrder = "${fechaCita} desc, ${numeroSlot} asc",
+        filter = FiltroBusqueda.class)
+@Table(uniqueConstraints = @UniqueConstraint(name = Cita.RESTRICCION_SLOT,
+        columnNames = { "medico_idMedico", "fechaCita", "slotReservado" }),
+        indexes = @Index(name = "IDX_CITA_MEDICO_FECHA_SLOT", columnList = "medico_idMedico, fechaCita, numeroSlot"))
+@EntityListeners(AuditorCita.class)
 public class Cita {
 
+    // Restricción única que impide dos citas no canceladas en el mismo slot
+    public static final String RESTRICCION_SLOT = "UK_CITA_SLOT_RESERVADO";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Hidden
     private Integer idCita;
 
+    // Sin combo: con muchos pacientes se teclea la cédula o se usa la búsqueda paginada
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
-    @DescriptionsList(descriptionProperties = "cedula, nombre, apellido")
+    @ReferenceView("Simple")
+    @NoCreate
+    @NoModify
     @Required
     private Paciente paciente;
 
@@ -49,6 +66,17 @@ public class Cita {
     @Required
     private Integer numeroSlot;
 
+    // Hora de inicio del slot fijada al agendar, para no consultar el horario por fila
+    @Column
+    @ReadOnly
+    private LocalTime horaInicio;
+
+    // Igual a numeroSlot mientras la cita no esté cancelada; null si lo está,
+    // así las canceladas no cuentan en la restricción única (los null no colisionan)
+    @Column
+    @Hidden
+    private Integer slotReservado;
+
     @Enumerated(EnumType.STRING)
     @Required
     private EstadoCita estado;
@@ -65,48 +93,125 @@ public class Cita {
     @ReadOnly
     private LocalDate fechaCancelacion;
 
-    // Duración fija de cada slot en minutos
-    private static final int DURACION_MINUTOS = 30;
-    // Máximo de slots por turno (8 horas = 480 min / 30 min = 16 slots)
-    private static final int MAX_SLOTS = 16;
+    // Versión de la transacción que la escribió por última vez, para /agenda:
+    // la asigna VersionAgenda antes del commit, JPA no la escribe
+    @Column(insertable = false, updatable = false)
+    @Hidden
+    private long versionAgenda;
+
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+
+    // Slot que la cita ocupa en el IndiceOcupacion según lo último persistido
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private SlotOcupado slotPersistido;
+
+    // Lo que la cita suma a AgendaDiaria según lo último persistido
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private AporteAgenda aportePersistido;
 
     @PrePersist
     protected void onCreate() {
-        fechaRegistro = LocalDate.now();
-        if (estado == null) {
-            estado = EstadoCita.REGISTRADA;
-        }
+        long inicio = Metricas.inicio();
+        try {
+            fechaRegistro = LocalDate.now();
+            if (estado == null) {
+                estado = EstadoCita.REGISTRADA;
+            }
+            actualizarSlotReservado();
 
-        validarFechaNoPasada();
-        validarSlotValido();
-        Integer medicoId = medico.getIdMedico();
-        validarHorarioMedico(medicoId);
-        validarDisponibilidad(medicoId);
+            validarFechaNoPasada();
+            Integer medicoId = medico.getIdMedico();
+            TablaSlots tabla = validarHorarioMedico(medicoId);
+            validarSlotValido(tabla);
+            validarDisponibilidad(medicoId);
+            horaInicio = tabla.getHora(numeroSlot);
+        } finally {
+            Metricas.registrarCallback("Cita.prePersist", inicio);
+        }
     }
 
     @PreUpdate
     protected void onUpdate() {
-        // Solo validar si las entidades están cargadas (evita
-        // LazyInitializationException)
-        if (medico != null && fechaCita != null && numeroSlot != null) {
-            validarFechaNoPasada();
-            validarSlotValido();
-
-            // Solo validar si podemos acceder al ID del médico
-            try {
-                Integer medicoId = medico.getIdMedico();
-                if (medicoId != null) {
-                    validarHorarioMedico(medicoId);
-                    validarDisponibilidad(medicoId);
+        long inicio = Metricas.inicio();
+        try {
+            actualizarSlotReservado();
+            // Solo validar si las entidades están cargadas (evita
+            // LazyInitializationException)
+            if (medico != null && fechaCita != null && numeroSlot != null) {
+                validarFechaNoPasada();
+
+                // Solo validar si podemos acceder al ID del médico
+                try {
+                    Integer medicoId = medico.getIdMedico();
+                    if (medicoId != null) {
+                        TablaSlots tabla = validarHorarioMedico(medicoId);
+                        // Una cita en un slot que ya no está en la tabla (los turnos de 6 h
+                        // tenían 16 slots y ahora 12) se puede atender o cancelar, no moverla a otro así
+                        if (!conservaSlot(medicoId)) {
+                            validarSlotValido(tabla);
+                        }
+                        if (!mantieneSlot(medicoId)) {
+                            validarDisponibilidad(medicoId);
+                        }
+                        if (tabla.esValido(numeroSlot)) {
+                            horaInicio = tabla.getHora(numeroSlot);
+                        }
+                    }
+                } catch (ValidationException e) {
+                    // Re-lanzar las excepciones de validación para que el usuario las vea
+                    throw e;
+                } catch (Exception e) {
+                    // Solo capturar excepciones de lazy loading u otros errores técnicos
+                    // Las ValidationException se propagan arriba
                 }
-            } catch (ValidationException e) {
-                // Re-lanzar las excepciones de validación para que el usuario las vea
-                throw e;
-            } catch (Exception e) {
-                // Solo capturar excepciones de lazy loading u otros errores técnicos
-                // Las ValidationException se propagan arriba
             }
+        } finally {
+            Metricas.registrarCallback("Cita.preUpdate", inicio);
+        }
+    }
+
+    @PostLoad
+    protected void onLoad() {
+        slotPersistido = slotActual();
+        aportePersistido = aporteActual();
+    }
+
+    @PostPersist
+    protected void onCreated() {
+        slotPersistido = slotActual();
+        aportePersistido = aporteActual();
+        ActualizadorAgenda.cambiar(null, aportePersistido);
+        VersionAgenda.marcarCita(idCita);
+    }
+
+    @PostUpdate
+    protected void onUpdated() {
+        SlotOcupado actual = slotActual();
+        if (slotPersistido != null && !slotPersistido.equals(actual)) {
+            slotPersistido.liberarAlConfirmar();
+        }
+        slotPersistido = actual;
+
+        AporteAgenda aporte = aporteActual();
+        ActualizadorAgenda.cambiar(aportePersistido, aporte);
+        aportePersistido = aporte;
+        VersionAgenda.marcarCita(idCita);
+    }
+
+    @PostRemove
+    protected void onRemoved() {
+        if (slotPersistido != null) {
+            slotPersistido.liberarAlConfirmar();
+            slotPersistido = null;
         }
+        ActualizadorAgenda.cambiar(aportePersistido, null);
+        aportePersistido = null;
+        // La cita ya no está pero el resumen de su día cambia: la versión avanza igual
+        VersionAgenda.marcarBorrado();
     }
 
     // ===== VALIDACIONES =====
@@ -122,133 +227,158 @@ public class Cita {
      * Obtiene el día de la semana derivado de la fecha
      */
     private DiaSemana obtenerDiaDesdeFecha() {
-        DayOfWeek diaSemanaFecha = fechaCita.getDayOfWeek();
-        String diaSemanaStr = convertirDiaSemana(diaSemanaFecha);
-        return DiaSemana.valueOf(diaSemanaStr);
+        return DiaSemana.desdeFecha(fechaCita);
     }
 
     /**
-     * Valida que el slot esté en rango válido (1-16)
+     * Valida que el slot exista en el turno del médico (1..cantidad de slots)
      */
-    private void validarSlotValido() {
-        if (numeroSlot == null || numeroSlot < 1 || numeroSlot > MAX_SLOTS) {
+    private void validarSlotValido(TablaSlots tabla) {
+        if (numeroSlot == null || !tabla.esValido(numeroSlot)) {
             throw new ValidationException(
-                    "El slot debe estar entre 1 y " + MAX_SLOTS);
+                    "El slot debe estar entre 1 y " + tabla.getCantidad());
         }
     }
 
     /**
-     * Valida que el médico tenga horario activo para ese día
+     * Valida que el médico tenga horario activo para ese día y retorna su tabla de slots
      */
-    private void validarHorarioMedico(Integer medicoId) {
-        DiaSemana diaDerido = obtenerDiaDesdeFecha();
-
+    private TablaSlots validarHorarioMedico(Integer medicoId) {
         if (medicoId == null) {
             throw new ValidationException("No se pudo obtener el ID del médico");
         }
 
-        HorarioDisponible horarioMedico = XPersistence.getManager()
-                .createQuery("SELECT h FROM HorarioDisponible h WHERE " +
-                        "h.medico.id = :medicoId AND " +
-                        "h.diaSemana = :diaSemana AND " +
-                        "h.estado = 'ACTIVO'", HorarioDisponible.class)
-                .setParameter("medicoId", medicoId)
-                .setParameter("diaSemana", diaDerido)
-                .getResultList()
-                .stream()
-                .findFirst()
-                .orElse(null);
-
-        if (horarioMedico == null) {
+        TablaSlots tabla = obtenerTablaSlots(medicoId);
+        if (tabla == null) {
             throw new ValidationException(
                     "El médico no tiene horario activo para ese día");
         }
+        return tabla;
     }
 
     /**
-     * Valida que no exista otra cita en el mismo slot
+     * Tabla de slots del turno activo del médico ese día con la duración de
+     * su especialidad, o null si no tiene horario
+     */
+    private TablaSlots obtenerTablaSlots(Integer medicoId) {
+        TurnoTrabajo turno = CacheHorarios.getTurnoActivo(medicoId, obtenerDiaDesdeFecha());
+        if (turno == null) {
+            return null;
+        }
+        Especialidad especialidad = medico.getEspecialidad();
+        return TablaSlots.de(turno, especialidad == null ? null : especialidad.getDuracionSlotMinutos());
+    }
+
+    /**
+     * Valida que no exista otra cita en el mismo slot y lo reserva en el
+     * IndiceOcupacion hasta que termine la transacción. Frente a reservas
+     * simultáneas desde otros nodos la garantía la da la restricción
+     * RESTRICCION_SLOT.
      */
     private void validarDisponibilidad(Integer medicoId) {
         if (medicoId == null) {
             throw new ValidationException("No se pudo obtener el ID del médico");
         }
 
-        Long count = XPersistence.getManager()
-                .createQuery("SELECT COUNT(c) FROM Cita c WHERE " +
-                        "c.medico.id = :medicoId AND " +
-                        "c.fechaCita = :fecha AND " +
-                        "c.numeroSlot = :slot AND " +
-                        "c.estado != 'CANCELADA' AND " +
-                        "c.idCita != :citaId", Long.class)
-                .setParameter("medicoId", medicoId)
-                .setParameter("fecha", fechaCita)
-                .setParameter("slot", numeroSlot)
-                .setParameter("citaId", idCita == null ? 0 : idCita)
-                .getSingleResult();
-
-        if (count > 0) {
+        if (!IndiceOcupacion.reservar(medicoId, fechaCita, numeroSlot)) {
             throw new ValidationException(
                     "El médico ya tiene una cita en ese slot");
         }
     }
 
-    private String convertirDiaSemana(DayOfWeek dia) {
-        switch (dia) {
-            case MONDAY:
-                return "LUNES";
-            case TUESDAY:
-                return "MARTES";
-            case WEDNESDAY:
-                return "MIERCOLES";
-            case THURSDAY:
-                return "JUEVES";
-            case FRIDAY:
-                return "VIERNES";
-            case SATURDAY:
-                return "SABADO";
-            case SUNDAY:
-                return "DOMINGO";
-            default:
-                return "";
+    /**
+     * Indica si la cita sigue ocupando el mismo slot que ya tenía persistido,
+     * en cuyo caso no hace falta volver a reservarlo.
+     */
+    private boolean mantieneSlot(Integer medicoId) {
+        if (estado == EstadoCita.CANCELADA) {
+            return true;
         }
+        return new SlotOcupado(medicoId, fechaCita, numeroSlot).equals(slotPersistido);
+    }
+
+    // Mismo médico, fecha y número de slot que lo último persistido, sea cual sea el estado
+    private boolean conservaSlot(Integer medicoId) {
+        return aportePersistido != null && medicoId.equals(aportePersistido.getMedicoId())
+                && fechaCita.equals(aportePersistido.getFecha()) && numeroSlot == aportePersistido.getSlot();
+    }
+
+    private void actualizarSlotReservado() {
+        slotReservado = estado == EstadoCita.CANCELADA ? null : numeroSlot;
     }
 
     /**
-     * Calcula la hora de inicio del slot
+     * Indica si la excepción (o alguna de sus causas) es una violación de
+     * RESTRICCION_SLOT, es decir, otra cita ocupó el slot a la vez.
      */
-    public LocalTime getHoraDelSlot() {
-        // Si no hay médico o fecha aún, no intentar conversión
-        if (medico == null || fechaCita == null || numeroSlot == null)
-            return null;
+    public static boolean esSlotDuplicado(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            String mensaje = t.getMessage();
+            if (mensaje != null && mensaje.toUpperCase().contains(RESTRICCION_SLOT)) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
 
-        HorarioDisponible horario = null;
-        try {
-            horario = XPersistence.getManager()
-                    .createQuery("SELECT h FROM HorarioDisponible h WHERE " +
-                            "h.medico.id = :medicoId AND " +
-                            "h.diaSemana = :diaSemana AND " +
-                            "h.estado = 'ACTIVO'", HorarioDisponible.class)
-                    .setParameter("medicoId", medico.getIdMedico())
-                    .setParameter("diaSemana", obtenerDiaDesdeFecha())
-                    .getResultList()
-                    .stream()
-                    .findFirst()
-                    .orElse(null);
-        } catch (Exception e) {
+    private SlotOcupado slotActual() {
+        if (estado == EstadoCita.CANCELADA || medico == null || fechaCita == null || numeroSlot == null) {
             return null;
         }
+        Integer medicoId = idMedicoSinCargar();
+        return medicoId == null ? null : new SlotOcupado(medicoId, fechaCita, numeroSlot);
+    }
 
-        if (horario == null)
+    // Para AuditorCita: la cita según lo último persistido
+    AporteAgenda aportePersistido() {
+        return aportePersistido;
+    }
+
+    AporteAgenda aporteActual() {
+        if (estado == null || medico == null || fechaCita == null || numeroSlot == null) {
             return null;
+        }
+        Integer medicoId = idMedicoSinCargar();
+        return medicoId == null ? null : new AporteAgenda(medicoId, fechaCita, estado, numeroSlot);
+    }
+
+    // Se lee el id sin inicializar el proxy del médico (se usa también en @PostLoad)
+    private Integer idMedicoSinCargar() {
+        return (Integer) XPersistence.getManager().getEntityManagerFactory()
+                .getPersistenceUnitUtil().getIdentifier(medico);
+    }
 
-        LocalTime inicio = horario.getHoraInicioTurno();
-        if (inicio == null)
+    /**
+     * Retorna la hora de inicio del slot. Usa la hora guardada al agendar y
+     * solo consulta el horario del médico para citas sin ella.
+     */
+    public LocalTime getHoraDelSlot() {
+        if (horaInicio != null)
+            return horaInicio;
+        return calcularHoraDelSlot();
+    }
+
+    /**
+     * Calcula la hora de inicio del slot a partir del horario activo del médico
+     */
+    private LocalTime calcularHoraDelSlot() {
+        // Si no hay médico o fecha aún, no intentar conversión
+        if (medico == null || fechaCita == null || numeroSlot == null)
             return null;
+
+        TablaSlots tabla = null;
         try {
-            return inicio.plusMinutes((numeroSlot - 1) * DURACION_MINUTOS);
+            tabla = obtenerTablaSlots(medico.getIdMedico());
         } catch (Exception e) {
             return null;
         }
+
+        if (tabla == null || !tabla.esValido(numeroSlot))
+            return null;
+        return tabla.getHora(numeroSlot);
     }
 
     @Transient
@@ -258,50 +388,24 @@ public class Cita {
         LocalTime hora = getHoraDelSlot();
         if (hora == null)
             return "";
-        try {
-            return hora.format(DateTimeFormatter.ofPattern("HH:mm"));
-        } catch (Exception e) {
-            return "";
-        }
+        return hora.format(FORMATO_HORA);
     }
 
     @Transient
     @ReadOnly
     public String getInformacionSlots() {
-        HorarioDisponible horario = null;
+        TablaSlots tabla = null;
         try {
-            horario = (HorarioDisponible) XPersistence.getManager()
-                    .createQuery("SELECT h FROM HorarioDisponible h WHERE " +
-                            "h.medico.id = :medicoId AND " +
-                            "h.diaSemana = :diaSemana AND " +
-                            "h.estado = 'ACTIVO'")
-                    .setParameter("medicoId", medico.getIdMedico())
-                    .setParameter("diaSemana", obtenerDiaDesdeFecha())
-                    .getResultList()
-                    .stream()
-                    .findFirst()
-                    .orElse(null);
+            tabla = obtenerTablaSlots(medico.getIdMedico());
         } catch (Exception e) {
             return "Error al obtener horario del médico";
         }
 
-        if (horario == null) {
+        if (tabla == null) {
             return "No hay horario activo para el médico en la fecha seleccionada.";
         }
 
-        LocalTime inicio = horario.getHoraInicioTurno();
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("HH:mm");
-        StringBuilder sb = new StringBuilder();
-        for (int s = 1; s <= MAX_SLOTS; s++) {
-            LocalTime slotStart = inicio.plusMinutes((s - 1) * DURACION_MINUTOS);
-            LocalTime slotEnd = slotStart.plusMinutes(DURACION_MINUTOS);
-            sb.append("Slot ").append(s).append(": ")
-                    .append(slotStart.format(fmt)).append(" - ")
-                    .append(slotEnd.format(fmt));
-            if (s < MAX_SLOTS)
-                sb.append("\n");
-        }
-        return sb.toString();
+        return tabla.construirTexto(IndiceOcupacion.getMascara(medico.getIdMedico(), fechaCita));
     }
 
     public String toString() {
@@ -312,4 +416,37 @@ public class Cita {
                 (medico != null ? medico.getNombre() : "-") + " - " +
                 (paciente != null ? paciente.getNombre() : "-");
     }
+
+    /**
+     * Slot ocupado por la cita en el IndiceOcupacion
+     */
+    private static final class SlotOcupado {
+
+        private final Integer medicoId;
+        private final LocalDate fecha;
+        private final int slot;
+
+        SlotOcupado(Integer medicoId, LocalDate fecha, int slot) {
+            this.medicoId = medicoId;
+            this.fecha = fecha;
+            this.slot = slot;
+        }
+
+        void liberarAlConfirmar() {
+            IndiceOcupacion.liberarAlConfirmar(medicoId, fecha, slot);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SlotOcupado))
+                return false;
+            SlotOcupado otro = (SlotOcupado) o;
+            return medicoId.equals(otro.medicoId) && fecha.equals(otro.fecha) && slot == otro.slot;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(medicoId, fecha, slot);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import javax.persistence.*;
+import org.openxava.annotations.*;
+import lombok.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.filtros.*;
+
+/**
+ * Cita cerrada (ATENDIDA o CANCELADA) movida fuera de CITA por ArchivadorCitas.
+ * Conserva el id original de la cita. Solo de consulta.
+ */
+@Entity
+@Getter
+@Setter
+@View(members = "paciente;" +
+        "agendamiento[" +
+        "medico; fechaCita; numeroSlot; horaInicio" +
+        "];" +
+        "detalles[" +
+        "motivoConsulta; estado" +
+        "];" +
+        "auditoria[" +
+        "fechaRegistro; fechaCancelacion; fechaArchivo" +
+        "]")
+@Tab(properties = "fechaCita, horaInicio, numeroSlot, medico.nombre, medico.apellido, " +
+        "paciente.cedula, paciente.nombre, paciente.apellido, estado, fechaArchivo",
+        defaultOrder = "${fechaCita} desc, ${numeroSlot} asc",
+        filter = FiltroBusqueda.class)
+@Table(indexes = {
+        @Index(name = "IDX_CITAHIST_MEDICO_FECHA", columnList = "medico_idMedico, fechaCita"),
+        @Index(name = "IDX_CITAHIST_PACIENTE", columnList = "paciente_idPaciente") })
+public class CitaHistorica {
+
+    @Id
+    @Hidden
+    private Integer idCita;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @ReferenceView("Simple")
+    @NoCreate
+    @NoModify
+    @ReadOnly
+    private Paciente paciente;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @DescriptionsList(descriptionProperties = "nombre, apellido, especialidad.nombre")
+    @ReadOnly
+    private Medico medico;
+
+    @Column
+    @ReadOnly
+    private LocalDate fechaCita;
+
+    @Column
+    @ReadOnly
+    private Integer numeroSlot;
+
+    @Column
+    @ReadOnly
+    private LocalTime horaInicio;
+
+    @Enumerated(EnumType.STRING)
+    @ReadOnly
+    private EstadoCita estado;
+
+    @Column(length = 500)
+    @Stereotype("MEMO")
+    @ReadOnly
+    private String motivoConsulta;
+
+    @Column
+    @ReadOnly
+    private LocalDate fechaRegistro;
+
+    @Column
+    @ReadOnly
+    private LocalDate fechaCancelacion;
+
+    @Column
+    @ReadOnly
+    private LocalDate fechaArchivo;
+}
@@ -2,11 +2,19 @@ package com.gestionmedica.gestionmedica.modelo;
 
 import javax.persistence.*;
 import org.openxava.annotations.*;
+import org.openxava.jpa.XPersistence;
+import org.openxava.validators.ValidationException;
 import lombok.*;
+import java.time.LocalDate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import com.gestionmedica.gestionmedica.servicios.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "especialidad")
 @Getter @Setter
-@View(members="nombre; descripcion") // Layout vertical
+@View(members="nombre; descripcion; duracionSlotMinutos") // Layout vertical
 public class Especialidad {
     
     @Id
@@ -21,4 +29,81 @@ public class Especialidad {
     @Column(length=500)
     @Stereotype("MEMO")
     private String descripcion;
-}
\ No newline at end of file
+    
+    // Duración de cada slot de los médicos de la especialidad (ver TablaSlots)
+    @Column
+    private Integer duracionSlotMinutos;
+    
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Integer duracionCargada;
+    
+    @PostLoad
+    protected void onLoad() {
+        duracionCargada = duracionSlotMinutos;
+    }
+    
+    @PrePersist
+    protected void onCreate() {
+        if (duracionSlotMinutos == null) {
+            duracionSlotMinutos = TablaSlots.DURACION_POR_DEFECTO;
+        }
+        validarDuracion();
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        if (duracionSlotMinutos == null) {
+            duracionSlotMinutos = TablaSlots.DURACION_POR_DEFECTO;
+        }
+        validarDuracion();
+        if (duracionCargada != null && !duracionCargada.equals(duracionSlotMinutos)) {
+            validarSinCitasPendientes();
+        }
+    }
+    
+    @PostUpdate
+    protected void onUpdated() {
+        if (duracionCargada != null && !duracionCargada.equals(duracionSlotMinutos)) {
+            ActualizadorEstadisticas.recalcularCapacidadEspecialidad(idEspecialidad);
+        }
+        duracionCargada = duracionSlotMinutos;
+        onChanged();
+    }
+    
+    // Avisa a los demás nodos para que descarten la especialidad de sus cachés
+    @PostPersist
+    @PostRemove
+    protected void onChanged() {
+        BusInvalidacion.publicar(BusInvalidacion.ESPECIALIDAD, idEspecialidad, null);
+    }
+    
+    private void validarDuracion() {
+        if (!TablaSlots.esDuracionValida(duracionSlotMinutos)) {
+            throw new ValidationException(
+                "La duración del slot debe estar entre " + TablaSlots.DURACION_MINIMA +
+                " y " + TablaSlots.DURACION_MAXIMA + " minutos");
+        }
+    }
+    
+    /**
+     * Las citas guardan el número de slot: con otra duración el mismo número
+     * sería otra hora, así que no se cambia mientras haya citas por atender.
+     */
+    private void validarSinCitasPendientes() {
+        Long pendientes = XPersistence.getManager()
+            .createQuery("SELECT COUNT(c) FROM Cita c WHERE " +
+                         "c.medico.especialidad.idEspecialidad = :id AND " +
+                         "c.fechaCita >= :hoy AND " +
+                         "c.estado = 'REGISTRADA'", Long.class)
+            .setParameter("id", idEspecialidad)
+            .setParameter("hoy", LocalDate.now())
+            .getSingleResult();
+        if (pendientes > 0) {
+            throw new ValidationException(
+                "No se puede cambiar la duración del slot: hay " + pendientes +
+                " citas pendientes de médicos de esta especialidad");
+        }
+    }
+}
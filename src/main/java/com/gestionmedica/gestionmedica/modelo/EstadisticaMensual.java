@@ -0,0 +1,86 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import javax.persistence.*;
+import org.hibernate.annotations.Formula;
+import org.openxava.annotations.*;
+import lombok.*;
+import java.math.BigDecimal;
+import com.gestionmedica.gestionmedica.filtros.*;
+
+/**
+ * Ocupación y estados de las citas de un médico en un mes.
+ * La mantiene ActualizadorEstadisticas junto con AgendaDiaria y la rehace
+ * ConsolidadorEstadisticas; los listados y gráficos no tocan CITA. Solo de consulta.
+ */
+@Entity
+@Getter
+@Setter
+@View(members = "medico; periodo[anyo, mes];" +
+        "citas[capacidad, ocupados; registradas, atendidas, canceladas, noAsistidas];" +
+        "tasas[porcentajeOcupacion, porcentajeCancelacion, porcentajeAsistencia]")
+@Tab(properties = "anyo, mes, medico.especialidad.nombre, medico.nombre, medico.apellido, capacidad, ocupados, " +
+        "registradas, atendidas, canceladas, noAsistidas, porcentajeOcupacion, porcentajeCancelacion, " +
+        "porcentajeAsistencia",
+        defaultOrder = "${anyo} desc, ${mes} desc, ${medico.apellido} asc",
+        filter = FiltroBusqueda.class)
+@Table(uniqueConstraints = @UniqueConstraint(name = "UK_ESTADISTICA_MEDICO_MES",
+        columnNames = { "medico_idMedico", "anyo", "mes" }))
+public class EstadisticaMensual {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Hidden
+    private Integer idEstadistica;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @DescriptionsList(descriptionProperties = "nombre, apellido, especialidad.nombre")
+    @ReadOnly
+    private Medico medico;
+
+    @Column
+    @ReadOnly
+    private Integer anyo;
+
+    @Column
+    @ReadOnly
+    private Integer mes;
+
+    // Slots ofrecidos en el mes según los horarios activos del médico
+    @Column
+    @ReadOnly
+    private Integer capacidad;
+
+    @Column
+    @ReadOnly
+    private Integer registradas;
+
+    @Column
+    @ReadOnly
+    private Integer atendidas;
+
+    @Column
+    @ReadOnly
+    private Integer canceladas;
+
+    @Column
+    @ReadOnly
+    private Integer noAsistidas;
+
+    // Las no asistidas conservan su slot
+    @Formula("REGISTRADAS + ATENDIDAS + NOASISTIDAS")
+    @ReadOnly
+    private Integer ocupados;
+
+    @Formula("ROUND(100.0 * (REGISTRADAS + ATENDIDAS + NOASISTIDAS) / NULLIF(CAPACIDAD, 0), 1)")
+    @ReadOnly
+    private BigDecimal porcentajeOcupacion;
+
+    @Formula("ROUND(100.0 * CANCELADAS / NULLIF(REGISTRADAS + ATENDIDAS + CANCELADAS + NOASISTIDAS, 0), 1)")
+    @ReadOnly
+    private BigDecimal porcentajeCancelacion;
+
+    // Atendidas sobre las no canceladas; CierreCitasVencidas cierra como no asistidas las no atendidas
+    @Formula("ROUND(100.0 * ATENDIDAS / NULLIF(REGISTRADAS + ATENDIDAS + NOASISTIDAS, 0), 1)")
+    @ReadOnly
+    private BigDecimal porcentajeAsistencia;
+}
@@ -4,14 +4,24 @@ import javax.persistence.*;
 import org.openxava.annotations.*;
 import org.openxava.jpa.XPersistence;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.util.List;
 import org.openxava.annotations.ReadOnly;
 import javax.persistence.Transient;
 import com.gestionmedica.gestionmedica.modelo.enums.*;
 import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.servicios.*;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "horarioDisponible")
+@Table(indexes = {
+    @Index(name="IDX_HORARIO_MEDICO_DIA_ESTADO", columnList="medico_idMedico, diaSemana, estado")
+})
 @Getter @Setter
 @View(members=
     "medico;" +
@@ -44,11 +54,28 @@ public class HorarioDisponible {
     @Required
     private EstadoHorario estado;
     
+    // Médico al que pertenecía el horario al cargarlo, para invalidar su caché si cambia
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Integer medicoIdCargado;
+    
+    // Turno al cargarlo: las citas pendientes guardan la hora de su slot en ese turno
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private TurnoTrabajo turnoCargado;
+    
     @PrePersist
     protected void onCreate() {
-        validarTurnoUnicoPorDia();
-        if (estado == null) {
-            estado = EstadoHorario.ACTIVO;
+        long inicio = Metricas.inicio();
+        try {
+            validarTurnoUnicoPorDia();
+            if (estado == null) {
+                estado = EstadoHorario.ACTIVO;
+            }
+        } finally {
+            Metricas.registrarCallback("HorarioDisponible.prePersist", inicio);
         }
     }
     
@@ -58,6 +85,46 @@ public class HorarioDisponible {
         if (estado == null) {
             estado = EstadoHorario.ACTIVO;
         }
+        if (turnoCargado != null && turnoCargado != turno) {
+            validarSinCitasPendientes();
+        }
+    }
+    
+    @PostLoad
+    protected void onLoad() {
+        medicoIdCargado = idMedico();
+        turnoCargado = turno;
+    }
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    protected void onChanged() {
+        Integer medicoId = idMedico();
+        if (medicoIdCargado != null) {
+            CacheHorarios.invalidarMedicoAlTerminar(medicoIdCargado);
+            ActualizadorEstadisticas.recalcularCapacidad(medicoIdCargado);
+            if (!medicoIdCargado.equals(medicoId)) {
+                BusInvalidacion.publicar(BusInvalidacion.HORARIO, idHorario, medicoIdCargado);
+            }
+        }
+        if (medicoId != null) {
+            CacheHorarios.invalidarMedicoAlTerminar(medicoId);
+            if (!medicoId.equals(medicoIdCargado)) {
+                ActualizadorEstadisticas.recalcularCapacidad(medicoId);
+            }
+            // Los demás nodos descartan el horario y los turnos del médico
+            BusInvalidacion.publicar(BusInvalidacion.HORARIO, idHorario, medicoId);
+        }
+        medicoIdCargado = medicoId;
+        turnoCargado = turno;
+    }
+    
+    // Lee el id sin inicializar el proxy del médico
+    private Integer idMedico() {
+        if (medico == null) return null;
+        return (Integer) XPersistence.getManager().getEntityManagerFactory()
+            .getPersistenceUnitUtil().getIdentifier(medico);
     }
     
     private void validarTurnoUnicoPorDia() {
@@ -78,41 +145,48 @@ public class HorarioDisponible {
         }
     }
     
+    /**
+     * Las citas guardan el número de slot y su hora de inicio: con otro turno
+     * el mismo número sería otra hora, así que no se cambia mientras el médico
+     * tenga citas por atender ese día de la semana.
+     */
+    private void validarSinCitasPendientes() {
+        List<Object[]> porFecha = XPersistence.getManager()
+            .createQuery("SELECT c.fechaCita, COUNT(c) FROM Cita c WHERE " +
+                         "c.medico.idMedico = :medicoId AND " +
+                         "c.fechaCita >= :hoy AND " +
+                         "c.estado = 'REGISTRADA' GROUP BY c.fechaCita", Object[].class)
+            .setParameter("medicoId", idMedico())
+            .setParameter("hoy", LocalDate.now())
+            // Sin volcar la sesión: se llama desde @PreUpdate
+            .setFlushMode(FlushModeType.COMMIT)
+            .getResultList();
+        long pendientes = 0;
+        for (Object[] fila : porFecha) {
+            if (DiaSemana.desdeFecha((LocalDate) fila[0]) == diaSemana) {
+                pendientes += (Long) fila[1];
+            }
+        }
+        if (pendientes > 0) {
+            throw new ValidationException(
+                "No se puede cambiar el turno: el m\u00e9dico tiene " + pendientes +
+                " citas pendientes en " + diaSemana);
+        }
+    }
+    
     /**
      * Retorna la hora de inicio del turno asociado
      */
     @Hidden
     public LocalTime getHoraInicioTurno() {
-        switch(turno) {
-            case MATUTINO:
-                return LocalTime.of(8, 0);
-            case VESPERTINO:
-                return LocalTime.of(14, 0);
-            case NOCTURNO:
-                return LocalTime.of(20, 0);
-            case COMPLETO:
-                return LocalTime.of(8, 0);
-            default:
-                return LocalTime.of(8, 0);
-        }
+        return getHoraInicioTurno(turno);
     }
     
     /**
-     * Retorna la hora de fin del turno asociado
+     * Retorna la hora de inicio de un turno
      */
-    private LocalTime getHoraFinTurno() {
-        switch(turno) {
-            case MATUTINO:
-                return LocalTime.of(14, 0);
-            case VESPERTINO:
-                return LocalTime.of(20, 0);
-            case NOCTURNO:
-                return LocalTime.of(2, 0);
-            case COMPLETO:
-                return LocalTime.of(20, 0);
-            default:
-                return LocalTime.of(20, 0);
-        }
+    public static LocalTime getHoraInicioTurno(TurnoTrabajo turno) {
+        return turno.getInicio();
     }
     
     /**
@@ -122,17 +196,7 @@ public class HorarioDisponible {
     @ReadOnly
     public String getRangoHorario() {
         if (turno == null) return "";
-        LocalTime inicio = null;
-        LocalTime fin = null;
-        try {
-            inicio = getHoraInicioTurno();
-            fin = getHoraFinTurno();
-        } catch (Exception e) {
-            return "";
-        }
-        if (inicio == null || fin == null) return "";
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("HH:mm");
-        return inicio.format(fmt) + " - " + fin.format(fmt);
+        return turno.getRango();
     }
     
     /**
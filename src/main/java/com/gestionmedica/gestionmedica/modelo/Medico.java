@@ -4,12 +4,24 @@ import javax.persistence.*;
 import org.openxava.annotations.*;
 import org.openxava.jpa.XPersistence;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import com.gestionmedica.gestionmedica.modelo.enums.*;
 import com.gestionmedica.gestionmedica.validadores.*;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+import com.gestionmedica.gestionmedica.servicios.*;
 import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.filtros.*;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "medico")
+@Table(indexes = {
+    @Index(name="IDX_MEDICO_APELLIDO_BUSQ", columnList="apellidoBusqueda, nombreBusqueda"),
+    @Index(name="IDX_MEDICO_NOMBRE_BUSQ", columnList="nombreBusqueda")
+})
 @Getter @Setter
+@Tab(filter=FiltroBusqueda.class)
 @View(members=
     "datosPersonales[" +
         "cedula; nombre; apellido;" +
@@ -49,6 +61,15 @@ public class Medico {
     @Stereotype("EMAIL")
     private String correo;
     
+    // Apellido y nombre normalizados (mayúsculas, sin acentos) para filtrar la lista (ver ReescritorFiltros)
+    @Column(length=100)
+    @Hidden
+    private String apellidoBusqueda;
+    
+    @Column(length=100)
+    @Hidden
+    private String nombreBusqueda;
+    
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @DescriptionsList(descriptionProperties="nombre")
     @Required
@@ -60,23 +81,58 @@ public class Medico {
     
     @PrePersist
     protected void onCreate() {
-        validarDatos();
-        validarCedulaNoExista();
-        if (estado == null) {
-            estado = EstadoMedico.ACTIVO;
+        long inicio = Metricas.inicio();
+        try {
+            validarDatos();
+            validarCedulaNoExista();
+            if (estado == null) {
+                estado = EstadoMedico.ACTIVO;
+            }
+            actualizarBusqueda();
+        } finally {
+            Metricas.registrarCallback("Medico.prePersist", inicio);
         }
     }
     
+    @PreUpdate
+    protected void onUpdate() {
+        actualizarBusqueda();
+    }
+    
+    private void actualizarBusqueda() {
+        apellidoBusqueda = Normalizador.normalizar(apellido);
+        nombreBusqueda = Normalizador.normalizar(nombre);
+    }
+    
+    // La especialidad determina la duración de slot y con ella la capacidad del mes
+    @PostUpdate
+    protected void onUpdated() {
+        ActualizadorEstadisticas.recalcularCapacidad(idMedico);
+        onChanged();
+    }
+    
+    // Avisa a los demás nodos para que descarten el médico de sus cachés
+    @PostPersist
+    @PostRemove
+    protected void onChanged() {
+        BusInvalidacion.publicar(BusInvalidacion.MEDICO, idMedico, idMedico);
+    }
+    
    
     
     private void validarCedulaNoExista() {
-        Long count = XPersistence.getManager()
-            .createQuery("SELECT COUNT(m) FROM Medico m WHERE m.cedula = :cedula", Long.class)
-            .setParameter("cedula", cedula)
-            .getSingleResult();
+        long inicio = Metricas.inicio();
+        try {
+            Long count = XPersistence.getManager()
+                .createQuery("SELECT COUNT(m) FROM Medico m WHERE m.cedula = :cedula", Long.class)
+                .setParameter("cedula", cedula)
+                .getSingleResult();
         
-        if (count > 0) {
-            throw new ValidationException("Cédula ya existente en la base de datos");
+            if (count > 0) {
+                throw new ValidationException("Cédula ya existente en la base de datos");
+            }
+        } finally {
+            Metricas.registrarCallback("Medico.validarCedulaNoExista", inicio);
         }
     }
     
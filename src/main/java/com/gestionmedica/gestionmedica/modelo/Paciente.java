@@ -6,18 +6,31 @@ import org.openxava.jpa.XPersistence;
 import lombok.*;
 import java.time.LocalDate;
 import com.gestionmedica.gestionmedica.validadores.*;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+import com.gestionmedica.gestionmedica.servicios.*;
 import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.filtros.*;
 
 @Entity
+@Table(indexes = {
+    @Index(name="IDX_PACIENTE_APELLIDO_BUSQ", columnList="apellidoBusqueda, nombreBusqueda"),
+    @Index(name="IDX_PACIENTE_NOMBRE_BUSQ", columnList="nombreBusqueda")
+})
 @Getter @Setter
-@View(members=
-    "datosPersonales[" +
-        "cedula; nombre; apellido; fechaNacimiento;" +
-    "];" +
-    "datosContacto[" +
-        "telefono; correo; direccion" +
-    "]"
-)
+@Views({
+    @View(members=
+        "datosPersonales[" +
+            "cedula; nombre; apellido; fechaNacimiento;" +
+        "];" +
+        "datosContacto[" +
+            "telefono; correo; direccion" +
+        "]"
+    ),
+    // Para elegir el paciente desde Cita tecleando la cédula
+    @View(name="Simple", members="cedula, nombre, apellido")
+})
+@Tab(properties="cedula, apellido, nombre, telefono, correo", defaultOrder="${apellido} asc, ${nombre} asc",
+    filter=FiltroBusqueda.class)
 public class Paciente {
     
     @Id
@@ -27,6 +40,7 @@ public class Paciente {
     
     @Column(length=10, unique=true)
     @Required
+    @SearchKey
     private String cedula;
     
     @Column(length=50)
@@ -57,27 +71,81 @@ public class Paciente {
     @Hidden
     private LocalDate fechaRegistro;
     
+    // Apellido y nombre normalizados (mayúsculas, sin acentos) para buscar por prefijo y filtrar la lista
+    @Column(length=50)
+    @Hidden
+    private String apellidoBusqueda;
+    
+    @Column(length=50)
+    @Hidden
+    private String nombreBusqueda;
+    
+    // Nombre según lo último persistido, para renovar la agenda si cambia
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String nombreCargado;
+    
     @PrePersist
     protected void onCreate() {
-        validarDatos();
-        validarCedulaNoExista();
-        fechaRegistro = LocalDate.now();
+        long inicio = Metricas.inicio();
+        try {
+            validarDatos();
+            validarCedulaNoExista();
+            fechaRegistro = LocalDate.now();
+            actualizarBusqueda();
+        } finally {
+            Metricas.registrarCallback("Paciente.prePersist", inicio);
+        }
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        actualizarBusqueda();
+    }
+    
+    @PostLoad
+    protected void onLoad() {
+        nombreCargado = nombre + " " + apellido;
+    }
+    
+    // Las agendas de /agenda muestran el nombre del paciente en sus citas
+    @PostUpdate
+    protected void onUpdated() {
+        String actual = nombre + " " + apellido;
+        if (nombreCargado != null && !nombreCargado.equals(actual)) {
+            VersionAgenda.marcarPaciente(idPaciente);
+        }
+        nombreCargado = actual;
+    }
+    
+    private void actualizarBusqueda() {
+        apellidoBusqueda = Normalizador.normalizar(apellido);
+        nombreBusqueda = Normalizador.normalizar(nombre);
     }
     
    
     
     private void validarCedulaNoExista() {
-        Long count = XPersistence.getManager()
-            .createQuery("SELECT COUNT(p) FROM Paciente p WHERE p.cedula = :cedula", Long.class)
-            .setParameter("cedula", cedula)
-            .getSingleResult();
+        long inicio = Metricas.inicio();
+        try {
+            Long count = XPersistence.getManager()
+                .createQuery("SELECT COUNT(p) FROM Paciente p WHERE p.cedula = :cedula", Long.class)
+                .setParameter("cedula", cedula)
+                .getSingleResult();
         
-        if (count > 0) {
-            throw new ValidationException("Cédula ya existente en la base de datos");
+            if (count > 0) {
+                throw new ValidationException("Cédula ya existente en la base de datos");
+            }
+        } finally {
+            Metricas.registrarCallback("Paciente.validarCedulaNoExista", inicio);
         }
     }
     
-    private void validarDatos() {
+    /**
+     * Valida los datos del paciente; la usa también la importación masiva
+     */
+    public void validarDatos() {
         if (!ValidadorCedula.esValida(cedula)) {
             throw new ValidationException("La cédula debe tener exactamente 10 dígitos numéricos");
         }
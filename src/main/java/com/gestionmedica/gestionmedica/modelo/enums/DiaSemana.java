@@ -1,5 +1,7 @@
 package com.gestionmedica.gestionmedica.modelo.enums;
 
+import java.time.LocalDate;
+
 public enum DiaSemana {
     LUNES,
     MARTES,
@@ -7,5 +9,12 @@ public enum DiaSemana {
     JUEVES,
     VIERNES,
     SABADO,
-    DOMINGO
+    DOMINGO;
+
+    /**
+     * Día de la semana de una fecha (el orden coincide con DayOfWeek)
+     */
+    public static DiaSemana desdeFecha(LocalDate fecha) {
+        return values()[fecha.getDayOfWeek().getValue() - 1];
+    }
 }
\ No newline at end of file
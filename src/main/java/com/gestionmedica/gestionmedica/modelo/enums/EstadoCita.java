@@ -4,4 +4,5 @@ public enum EstadoCita {
     REGISTRADA,    // Cita recién creada
     ATENDIDA,    // Médico/sistema confirmó
     CANCELADA,     // Fue cancelada
+    NO_ASISTIO,    // Pasó el día sin que se atendiera; conserva su slot
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package com.gestionmedica.gestionmedica.modelo.enums;
+
+public enum TipoEventoCita {
+    ALTA,            // Cita agendada
+    REPROGRAMACION,  // Cambio de médico, fecha o slot
+    CAMBIO_ESTADO,   // REGISTRADA -> ATENDIDA o CANCELADA (u otra, que queda marcada como no válida)
+    BORRADO          // Cita eliminada
+}
@@ -1,8 +1,51 @@
 package com.gestionmedica.gestionmedica.modelo.enums;
 
+import java.time.LocalTime;
+
 public enum TurnoTrabajo {
-    MATUTINO,   // 08:00 - 14:00
-    VESPERTINO, // 14:00 - 20:00
-    NOCTURNO,   // 20:00 - 02:00
-    COMPLETO    // 08:00 - 20:00
-}
\ No newline at end of file
+    MATUTINO(8, 6),    // 08:00 - 14:00
+    VESPERTINO(14, 6), // 14:00 - 20:00
+    NOCTURNO(20, 6),   // 20:00 - 02:00
+    COMPLETO(8, 12);   // 08:00 - 20:00
+
+    private final int inicioMinutos;
+    private final int duracionMinutos;
+    private final LocalTime inicio;
+    private final LocalTime fin;
+    private final String rango;
+
+    TurnoTrabajo(int horaInicio, int horas) {
+        this.inicioMinutos = horaInicio * 60;
+        this.duracionMinutos = horas * 60;
+        this.inicio = LocalTime.of(horaInicio, 0);
+        // plusMinutes da la vuelta a medianoche (NOCTURNO termina a las 02:00)
+        this.fin = inicio.plusMinutes(duracionMinutos);
+        this.rango = String.format("%02d:00 - %02d:00", horaInicio, fin.getHour());
+    }
+
+    /**
+     * Minutos desde las 00:00 hasta el inicio del turno
+     */
+    public int getInicioMinutos() {
+        return inicioMinutos;
+    }
+
+    public int getDuracionMinutos() {
+        return duracionMinutos;
+    }
+
+    public LocalTime getInicio() {
+        return inicio;
+    }
+
+    public LocalTime getFin() {
+        return fin;
+    }
+
+    /**
+     * Rango ya formateado, p. ej. "08:00 - 14:00"
+     */
+    public String getRango() {
+        return rango;
+    }
+}
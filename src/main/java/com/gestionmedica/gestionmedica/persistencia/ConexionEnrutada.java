@@ -0,0 +1,99 @@
+package com.gestionmedica.gestionmedica.persistencia;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Conexión de una petición de lectura (ver EnrutadorLectura). Todo va a la
+ * conexión principal, transacción incluida, salvo los SELECT que prepara la
+ * lista de OpenXava (JPATabProvider: las filas y su cuenta), que van a una
+ * conexión de la réplica pedida la primera vez que hace falta.
+ *
+ * Así una escritura en la misma transacción, después de mostrar la lista,
+ * no acaba en la réplica de solo lectura.
+ */
+class ConexionEnrutada implements InvocationHandler {
+
+    private static final String LISTA = "org.openxava.tab.impl.JPATabProvider";
+
+    private final Connection principal;
+    private Connection replica;
+    private boolean replicaPedida;
+
+    private ConexionEnrutada(Connection principal) {
+        this.principal = principal;
+    }
+
+    static Connection crear(Connection principal) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConexionEnrutada(principal));
+    }
+
+    public Object invoke(Object proxy, Method metodo, Object[] args) throws Throwable {
+        switch (metodo.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "prepareStatement":
+                if (esConsultaDeLista((String) args[0])) {
+                    Connection lectura = getReplica();
+                    if (lectura != null) {
+                        return invocar(lectura, metodo, args);
+                    }
+                }
+                break;
+            case "close":
+                cerrarReplica();
+                break;
+            default:
+        }
+        return invocar(principal, metodo, args);
+    }
+
+    /**
+     * Un SELECT preparado desde JPATabProvider.
+     */
+    static boolean esConsultaDeLista(String sql) {
+        if (!sql.regionMatches(true, 0, "select", 0, 6)) {
+            return false;
+        }
+        for (StackTraceElement llamada : new Throwable().getStackTrace()) {
+            if (LISTA.equals(llamada.getClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Connection getReplica() {
+        if (!replicaPedida) {
+            replicaPedida = true;
+            replica = EnrutadorLectura.getConexionReplica();
+        }
+        return replica;
+    }
+
+    private void cerrarReplica() {
+        if (replica != null) {
+            try {
+                replica.close();
+            } catch (SQLException ex) {
+                // La principal se cierra igualmente
+            }
+            replica = null;
+        }
+    }
+
+    private static Object invocar(Connection conexion, Method metodo, Object[] args) throws Throwable {
+        try {
+            return metodo.invoke(conexion, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
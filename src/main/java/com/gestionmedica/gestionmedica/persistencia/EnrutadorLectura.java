@@ -0,0 +1,168 @@
+package com.gestionmedica.gestionmedica.persistencia;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+
+/**
+ * Decide si las consultas de lista de la petición en curso se leen de la
+ * réplica de solo lectura (jdbc/gestionmedicaReplicaDS) en vez del
+ * datasource principal.
+ *
+ * Una petición se marca como de lectura cuando muestra la lista de un
+ * módulo configurado (LeerDeReplica) o genera un informe o exportación
+ * (FiltroReplica). En ella solo los SELECT de la lista de OpenXava van a la
+ * réplica (ver ConexionEnrutada); el resto, escrituras incluidas, sigue en
+ * la principal. Aun marcada, se usa la principal si no hay réplica, si
+ * falla o si su retraso supera el máximo configurado.
+ *
+ * El retraso se mide con LATIDOREPLICA: la aplicación escribe cada
+ * INTERVALO_LATIDO_MS la hora en la principal y se compara con la que ha
+ * llegado a la réplica. Incluye, por tanto, hasta un intervalo de latido.
+ */
+public class EnrutadorLectura {
+
+    public static final long INTERVALO_LATIDO_MS = 5000;
+    private static final long COMPROBAR_CADA_MS = 5000;
+
+    private static final Logger log = Logger.getLogger(EnrutadorLectura.class.getName());
+
+    private static final ThreadLocal<Boolean> lectura = new ThreadLocal<>();
+
+    private static volatile DataSource replica;
+    private static volatile Set<String> modulos = Collections.emptySet();
+    private static volatile long retrasoMaximoMs;
+    private static volatile boolean todosLosModulos;
+
+    private static final Object comprobacion = new Object();
+    private static volatile long comprobadoEn;
+    private static volatile boolean replicaAlDia;
+
+    /**
+     * modulos: nombres separados por comas, o "*" para todos.
+     * Con replica null no se enruta nada.
+     */
+    public static void configurar(DataSource replica, String modulos, long retrasoMaximoMs) {
+        Set<String> nombres = new HashSet<>();
+        if (modulos != null) {
+            for (String modulo : modulos.split(",")) {
+                if (!modulo.trim().isEmpty()) {
+                    nombres.add(modulo.trim());
+                }
+            }
+        }
+        EnrutadorLectura.todosLosModulos = nombres.contains("*");
+        EnrutadorLectura.modulos = nombres;
+        EnrutadorLectura.retrasoMaximoMs = retrasoMaximoMs;
+        EnrutadorLectura.comprobadoEn = 0;
+        EnrutadorLectura.replica = replica;
+    }
+
+    public static boolean hayReplica() {
+        return replica != null;
+    }
+
+    public static boolean esModuloEnReplica(String modulo) {
+        return replica != null && modulo != null && (todosLosModulos || modulos.contains(modulo));
+    }
+
+    /**
+     * Las consultas de lista que se hagan desde ahora en esta petición pueden ir a la réplica.
+     */
+    public static void marcarLectura() {
+        lectura.set(Boolean.TRUE);
+    }
+
+    public static void limpiar() {
+        lectura.remove();
+    }
+
+    /**
+     * En una petición marcada, envuelve la conexión principal para que las
+     * consultas de lista vayan a la réplica; si no, la retorna tal cual.
+     */
+    public static Connection enrutar(Connection principal) {
+        if (replica == null || lectura.get() == null) {
+            return principal;
+        }
+        return ConexionEnrutada.crear(principal);
+    }
+
+    /**
+     * Conexión de solo lectura de la réplica si la petición está marcada y la
+     * réplica está al día; null si hay que usar la principal.
+     */
+    static Connection getConexionReplica() {
+        DataSource origen = replica;
+        if (origen == null || lectura.get() == null || !estaAlDia(origen)) {
+            return null;
+        }
+        try {
+            Connection conexion = origen.getConnection();
+            conexion.setReadOnly(true);
+            Metricas.registrar("replica/conexiones", 1);
+            return conexion;
+        } catch (SQLException ex) {
+            log.log(Level.WARNING, "Réplica no disponible, se usa la base de datos principal", ex);
+            replicaAlDia = false;
+            return null;
+        }
+    }
+
+    private static boolean estaAlDia(DataSource origen) {
+        if (System.currentTimeMillis() - comprobadoEn > COMPROBAR_CADA_MS) {
+            synchronized (comprobacion) {
+                if (System.currentTimeMillis() - comprobadoEn > COMPROBAR_CADA_MS) {
+                    replicaAlDia = medirRetraso(origen) <= retrasoMaximoMs;
+                    comprobadoEn = System.currentTimeMillis();
+                }
+            }
+        }
+        return replicaAlDia;
+    }
+
+    private static long medirRetraso(DataSource origen) {
+        try (Connection conexion = origen.getConnection();
+                PreparedStatement ps = conexion.prepareStatement("SELECT INSTANTE FROM LATIDOREPLICA WHERE ID = 1");
+                ResultSet rs = ps.executeQuery()) {
+            long retraso = rs.next() ? System.currentTimeMillis() - rs.getLong(1) : Long.MAX_VALUE;
+            Metricas.registrar("replica/retraso.ms", retraso);
+            return retraso;
+        } catch (SQLException ex) {
+            log.log(Level.WARNING, "No se pudo medir el retraso de la réplica", ex);
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Latido periódico sobre la base de datos principal.
+     */
+    public static Runnable latido(DataSource principal) {
+        return () -> {
+            try (Connection conexion = principal.getConnection();
+                    PreparedStatement ps = conexion.prepareStatement(
+                            "UPDATE LATIDOREPLICA SET INSTANTE = ? WHERE ID = 1")) {
+                ps.setLong(1, System.currentTimeMillis());
+                ps.executeUpdate();
+            } catch (SQLException ex) {
+                log.log(Level.WARNING, "No se pudo escribir el latido de la réplica", ex);
+            }
+        };
+    }
+
+    /**
+     * Lista de módulos legible para el log
+     */
+    public static String describir() {
+        return todosLosModulos ? "todos los módulos" : Arrays.toString(modulos.toArray());
+    }
+}
@@ -0,0 +1,26 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Mueve las citas atendidas y canceladas antiguas a CitaHistorica.
+ *
+ * Uso: ArchivarCitas [diasAntiguedad] [urlJdbc]
+ * Por defecto archiva las de más de un año en la base de datos de DBServer
+ * (arranca antes gestionmedica para que exista la tabla CitaHistorica).
+ * Si se interrumpe, volver a lanzarlo continúa donde quedó.
+ */
+public class ArchivarCitas {
+
+	public static void main(String[] args) throws Exception {
+		int dias = args.length > 0 ? Integer.parseInt(args[0]) : ArchivadorCitas.DIAS_ANTIGUEDAD_DEFECTO;
+		String url = args.length > 1 ? args[1] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			long inicio = System.currentTimeMillis();
+			int movidas = new ArchivadorCitas(conexion).archivar(dias);
+			System.out.println("Citas archivadas: " + movidas + " en " + (System.currentTimeMillis() - inicio) + " ms");
+		}
+	}
+
+}
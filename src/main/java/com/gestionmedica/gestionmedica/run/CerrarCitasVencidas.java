@@ -0,0 +1,24 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Cierra (como no asistidas) las citas registradas de días pasados, igual que
+ * la tarea diaria de la aplicación.
+ *
+ * Uso: CerrarCitasVencidas [urlJdbc]
+ * Por defecto usa la base de datos de DBServer (arranca antes gestionmedica).
+ */
+public class CerrarCitasVencidas {
+
+	public static void main(String[] args) throws Exception {
+		String url = args.length > 0 ? args[0] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			long inicio = System.currentTimeMillis();
+			int cerradas = new CierreCitasVencidas(conexion).cerrar();
+			System.out.println("Citas cerradas: " + cerradas + " en " + (System.currentTimeMillis() - inicio) + " ms");
+		}
+	}
+
+}
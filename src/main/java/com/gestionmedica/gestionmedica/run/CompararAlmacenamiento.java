@@ -0,0 +1,111 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.*;
+import java.time.LocalDate;
+
+/**
+ * Compara tiempo de arranque y heap de una tabla de citas en modo MEMORY y
+ * en modo CACHED, con bases de datos HSQLDB en archivo creadas en un directorio temporal.
+ *
+ * Uso: CompararAlmacenamiento [citas=1000000]
+ * Conviene lanzarlo con el mismo -Xmx que la aplicación.
+ */
+public class CompararAlmacenamiento {
+
+	private static final int MEDICOS = 200;
+	private static final int SLOTS_POR_DIA = 16;
+	private static final int TAMANO_BATCH = 10000;
+
+	public static void main(String[] args) throws Exception {
+		int citas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		File directorio = Files.createTempDirectory("gestionmedica-almacenamiento").toFile();
+		System.out.println("Citas: " + citas + ", directorio: " + directorio);
+		System.out.printf("%-8s %12s %12s %14s%n", "Modo", "Carga (s)", "Arranque (ms)", "Heap (MB)");
+		for (String modo : new String[] { "MEMORY", "CACHED" }) {
+			String url = "jdbc:hsqldb:file:" + new File(directorio, modo.toLowerCase()).getPath();
+			long inicio = System.nanoTime();
+			crear(url, modo, citas);
+			double carga = (System.nanoTime() - inicio) / 1e9;
+
+			long heapAntes = heapUsado();
+			inicio = System.nanoTime();
+			try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+				long arranque = (System.nanoTime() - inicio) / 1_000_000;
+				long heap = (heapUsado() - heapAntes) / (1024 * 1024);
+				System.out.printf("%-8s %12.1f %12d %14d%n", modo, carga, arranque, heap);
+				consultar(conexion, modo);
+				conexion.createStatement().execute("SHUTDOWN");
+			}
+		}
+	}
+
+	private static void crear(String url, String modo, int citas) throws SQLException {
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "");
+				Statement st = conexion.createStatement()) {
+			// Mismas columnas que genera Hibernate para Cita
+			st.execute("CREATE " + modo + " TABLE CITA(IDCITA INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+					"ESTADO VARCHAR(255), FECHACANCELACION DATE, FECHACITA DATE, FECHAREGISTRO DATE, " +
+					"MOTIVOCONSULTA VARCHAR(500), NUMEROSLOT INTEGER, HORAINICIO TIME, SLOTRESERVADO INTEGER, " +
+					"MEDICO_IDMEDICO INTEGER NOT NULL, PACIENTE_IDPACIENTE INTEGER NOT NULL)");
+			st.execute("CREATE INDEX IDX_CITA_MEDICO_FECHA_SLOT ON CITA(MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT)");
+			conexion.setAutoCommit(false);
+			LocalDate primerDia = LocalDate.now().minusYears(3);
+			try (PreparedStatement ps = conexion.prepareStatement(
+					"INSERT INTO CITA(ESTADO, FECHACITA, FECHAREGISTRO, MOTIVOCONSULTA, NUMEROSLOT, SLOTRESERVADO, " +
+					"MEDICO_IDMEDICO, PACIENTE_IDPACIENTE) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+				for (int i = 0; i < citas; i++) {
+					int slot = 1 + i % SLOTS_POR_DIA;
+					Date fecha = Date.valueOf(primerDia.plusDays(i / (SLOTS_POR_DIA * MEDICOS)));
+					ps.setString(1, "ATENDIDA");
+					ps.setDate(2, fecha);
+					ps.setDate(3, fecha);
+					ps.setString(4, "Control general");
+					ps.setInt(5, slot);
+					ps.setInt(6, slot);
+					ps.setInt(7, 1 + (i / SLOTS_POR_DIA) % MEDICOS);
+					ps.setInt(8, 1 + i % 50000);
+					ps.addBatch();
+					if (i % TAMANO_BATCH == TAMANO_BATCH - 1) {
+						ps.executeBatch();
+						conexion.commit();
+					}
+				}
+				// HSQLDB rechaza executeBatch sin filas pendientes
+				if (citas % TAMANO_BATCH != 0) {
+					ps.executeBatch();
+				}
+				conexion.commit();
+			}
+			st.execute("SHUTDOWN");
+		}
+	}
+
+	// Consulta típica de disponibilidad: slots ocupados de un médico un día
+	private static void consultar(Connection conexion, String modo) throws SQLException {
+		try (PreparedStatement ps = conexion.prepareStatement(
+				"SELECT COUNT(*) FROM CITA WHERE MEDICO_IDMEDICO = ? AND FECHACITA = ? AND ESTADO <> 'CANCELADA'")) {
+			long inicio = System.nanoTime();
+			int consultas = 1000;
+			for (int i = 0; i < consultas; i++) {
+				ps.setInt(1, 1 + i % MEDICOS);
+				ps.setDate(2, Date.valueOf(LocalDate.now().minusYears(3).plusDays(i % 300)));
+				try (ResultSet rs = ps.executeQuery()) {
+					rs.next();
+				}
+			}
+			System.out.printf("%-8s consulta de disponibilidad: %.1f us de media%n",
+					modo, (System.nanoTime() - inicio) / 1000.0 / consultas);
+		}
+	}
+
+	private static long heapUsado() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import java.time.YearMonth;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Rehace las estadísticas mensuales de un rango de meses desde la agenda diaria.
+ *
+ * Uso: ConsolidarEstadisticas [desde aaaa-mm] [hasta aaaa-mm] [urlJdbc]
+ * Por defecto los últimos 12 meses hasta el actual, en la base de datos de
+ * DBServer (arranca antes gestionmedica).
+ */
+public class ConsolidarEstadisticas {
+
+	public static void main(String[] args) throws Exception {
+		YearMonth hasta = args.length > 1 ? YearMonth.parse(args[1]) : YearMonth.now();
+		YearMonth desde = args.length > 0 ? YearMonth.parse(args[0]) : hasta.minusMonths(11);
+		String url = args.length > 2 ? args[2] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			long inicio = System.currentTimeMillis();
+			int filas = new ConsolidadorEstadisticas(conexion).reconstruir(desde, hasta);
+			System.out.println("Estadísticas de " + desde + " a " + hasta + ": " + filas + " filas en " +
+					(System.currentTimeMillis() - inicio) + " ms");
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import java.util.List;
+import com.gestionmedica.gestionmedica.migracion.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Convierte una base de datos HSQLDB existente al modo CACHED (tablas grandes
+ * en disco), aplicando antes las migraciones pendientes (que crean los índices).
+ * Se ejecuta una vez; repetirlo no hace nada.
+ *
+ * Uso: ConvertirTablasCached [urlJdbc]
+ * Por defecto usa la base de datos de DBServer (arranca antes gestionmedica).
+ */
+public class ConvertirTablasCached {
+
+	public static void main(String[] args) throws Exception {
+		String url = args.length > 0 ? args[0] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			new MigradorEsquema(conexion).migrar();
+			List<String> cambios = new AlmacenamientoHsqldb(conexion).convertir();
+			if (cambios.isEmpty()) {
+				System.out.println("La base de datos ya estaba en modo CACHED");
+			}
+			for (String cambio : cambios) {
+				System.out.println(cambio);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import com.gestionmedica.gestionmedica.importacion.*;
+
+/**
+ * Importa pacientes o citas desde un CSV a la base de datos de la aplicación.
+ *
+ * Uso: ImportarCsv pacientes|citas archivo.csv [urlJdbc]
+ * Por defecto usa la base de datos de DBServer (arranca antes gestionmedica).
+ */
+
+public class ImportarCsv {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Uso: ImportarCsv pacientes|citas archivo.csv [urlJdbc]");
+			System.exit(1);
+		}
+		String url = args.length > 2 ? args[2] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "");
+				Reader entrada = new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8)) {
+			ImportadorCsv<?> importador = "citas".equalsIgnoreCase(args[0]) ?
+					new ImportadorCitas(conexion) : new ImportadorPacientes(conexion);
+			ResultadoImportacion resultado = importador.importar(entrada);
+			resultado.escribirInforme(new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import com.gestionmedica.gestionmedica.migracion.*;
+
+/**
+ * Aplica las migraciones pendientes del esquema sin arrancar la aplicación.
+ *
+ * Uso: MigrarEsquema [urlJdbc]
+ * Por defecto usa la base de datos de DBServer.
+ */
+public class MigrarEsquema {
+
+	public static void main(String[] args) throws Exception {
+		String url = args.length > 0 ? args[0] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			long inicio = System.currentTimeMillis();
+			int version = new MigradorEsquema(conexion).migrar();
+			System.out.println("Esquema en la versión " + version + " (" + (System.currentTimeMillis() - inicio) + " ms)");
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Recalcula las columnas de búsqueda (apellido y nombre normalizados) de
+ * pacientes y médicos ya existentes.
+ *
+ * Uso: NormalizarBusquedas [urlJdbc]
+ * Por defecto usa la base de datos de DBServer (arranca antes gestionmedica).
+ */
+public class NormalizarBusquedas {
+
+	public static void main(String[] args) throws Exception {
+		String url = args.length > 0 ? args[0] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			long inicio = System.currentTimeMillis();
+			int actualizadas = new RellenadorBusqueda(conexion).rellenar();
+			System.out.println("Filas actualizadas: " + actualizadas + " en " + (System.currentTimeMillis() - inicio) + " ms");
+		}
+	}
+
+}
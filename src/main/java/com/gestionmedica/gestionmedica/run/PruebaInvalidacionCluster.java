@@ -0,0 +1,205 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.hsqldb.server.Server;
+import com.gestionmedica.gestionmedica.migracion.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Prueba del BusInvalidacion con varias JVM sobre un servidor HSQLDB embebido.
+ *
+ * Arranca un servidor HSQLDB en memoria, aplica las migraciones y lanza N
+ * procesos hijo (esta misma clase en modo "nodo") que leen CAMBIOCACHE.
+ * Publica cambios, algunos desde una transacción que tarda varios
+ * intervalos en confirmar, y comprueba que cada nodo recibe cada cambio una
+ * sola vez y dentro de INTERVALO_MS más un margen. Termina con código 1 si no.
+ *
+ * Uso: PruebaInvalidacionCluster [nodos=3] [cambios=200] [puerto=9137]
+ */
+public class PruebaInvalidacionCluster {
+
+	private static final long MARGEN_ENTREGA_MS = 1000;
+	private static final long ESPERA_MAXIMA_MS = 30_000;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && "nodo".equals(args[0])) {
+			nodo(args[1]);
+			return;
+		}
+		Map<String, String> parametros = new HashMap<>();
+		for (String arg : args) {
+			String[] partes = arg.split("=", 2);
+			parametros.put(partes[0], partes.length > 1 ? partes[1] : "");
+		}
+		int nodos = Integer.parseInt(parametros.getOrDefault("nodos", "3"));
+		int cambios = Integer.parseInt(parametros.getOrDefault("cambios", "200"));
+		int puerto = Integer.parseInt(parametros.getOrDefault("puerto", "9137"));
+		System.exit(new PruebaInvalidacionCluster().ejecutar(nodos, cambios, puerto) ? 0 : 1);
+	}
+
+	private boolean ejecutar(int nodos, int cambios, int puerto) throws Exception {
+		Server servidor = new Server();
+		// Sin la traza del servidor, que tapa el resultado
+		servidor.setLogWriter(null);
+		servidor.setErrWriter(null);
+		servidor.setDatabaseName(0, "cluster");
+		servidor.setDatabasePath(0, "mem:cluster");
+		servidor.setPort(puerto);
+		servidor.setSilent(true);
+		servidor.setNoSystemExit(true);
+		servidor.start();
+		String url = "jdbc:hsqldb:hsql://localhost:" + puerto + "/cluster";
+		List<Process> procesos = new ArrayList<>();
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			new MigradorEsquema(conexion).migrar();
+			// Con MVCC la transacción lenta no bloquea la tabla y los ids se confirman desordenados
+			try (Statement st = conexion.createStatement()) {
+				st.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+			}
+
+			// Recepciones por nodo: identificador -> instante de llegada
+			List<Map<Integer, Long>> recibidos = new ArrayList<>();
+			List<Integer> duplicados = Collections.synchronizedList(new ArrayList<>());
+			CountDownLatch listos = new CountDownLatch(nodos);
+			for (int i = 0; i < nodos; i++) {
+				Process proceso = new ProcessBuilder(
+						new File(System.getProperty("java.home"), "bin/java").getPath(),
+						"-cp", System.getProperty("java.class.path"),
+						PruebaInvalidacionCluster.class.getName(), "nodo", url)
+						.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				procesos.add(proceso);
+				Map<Integer, Long> recepciones = new ConcurrentHashMap<>();
+				recibidos.add(recepciones);
+				leerSalida(proceso, recepciones, duplicados, listos);
+			}
+			if (!listos.await(ESPERA_MAXIMA_MS, TimeUnit.MILLISECONDS)) {
+				System.out.println("Los nodos no arrancaron a tiempo");
+				return false;
+			}
+
+			Map<Integer, Long> enviados = new HashMap<>();
+			// Transacción lenta: su id es menor que los publicados después, pero confirma más tarde
+			Connection lenta = DriverManager.getConnection(url, "sa", "");
+			lenta.setAutoCommit(false);
+			BusInvalidacion.publicar(lenta, BusInvalidacion.HORARIO, 0, 0);
+			for (int i = 1; i <= cambios; i++) {
+				BusInvalidacion.publicar(conexion, BusInvalidacion.MEDICO, i, i);
+				enviados.put(i, System.currentTimeMillis());
+				if (i % 50 == 0) {
+					Thread.sleep(BusInvalidacion.INTERVALO_MS / 2);
+				}
+			}
+			Thread.sleep(3 * BusInvalidacion.INTERVALO_MS);
+			lenta.commit();
+			enviados.put(0, System.currentTimeMillis());
+			lenta.close();
+
+			long limite = System.currentTimeMillis() + ESPERA_MAXIMA_MS;
+			while (System.currentTimeMillis() < limite && !todosRecibidos(recibidos, enviados.size())) {
+				Thread.sleep(100);
+			}
+			return informar(recibidos, enviados, duplicados);
+		} finally {
+			for (Process proceso : procesos) {
+				proceso.getOutputStream().close();
+				proceso.waitFor(5, TimeUnit.SECONDS);
+				proceso.destroyForcibly();
+			}
+			servidor.stop();
+		}
+	}
+
+	private static void leerSalida(Process proceso, Map<Integer, Long> recepciones, List<Integer> duplicados,
+			CountDownLatch listos) {
+		Thread lector = new Thread(() -> {
+			try (BufferedReader salida = new BufferedReader(
+					new InputStreamReader(proceso.getInputStream(), StandardCharsets.UTF_8))) {
+				String linea;
+				while ((linea = salida.readLine()) != null) {
+					if ("LISTO".equals(linea)) {
+						listos.countDown();
+					} else if (linea.startsWith("CAMBIO ")) {
+						String[] partes = linea.split(" ");
+						Integer id = Integer.valueOf(partes[1]);
+						if (recepciones.putIfAbsent(id, Long.valueOf(partes[2])) != null) {
+							duplicados.add(id);
+						}
+					}
+				}
+			} catch (IOException ex) {
+				// El proceso terminó
+			}
+		});
+		lector.setDaemon(true);
+		lector.start();
+	}
+
+	private static boolean todosRecibidos(List<Map<Integer, Long>> recibidos, int total) {
+		for (Map<Integer, Long> recepciones : recibidos) {
+			if (recepciones.size() < total) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean informar(List<Map<Integer, Long>> recibidos, Map<Integer, Long> enviados,
+			List<Integer> duplicados) {
+		boolean correcto = duplicados.isEmpty();
+		long limiteEntrega = BusInvalidacion.INTERVALO_MS + MARGEN_ENTREGA_MS;
+		for (int nodo = 0; nodo < recibidos.size(); nodo++) {
+			Map<Integer, Long> recepciones = recibidos.get(nodo);
+			long maximo = 0;
+			int perdidos = 0;
+			for (Map.Entry<Integer, Long> envio : enviados.entrySet()) {
+				Long llegada = recepciones.get(envio.getKey());
+				if (llegada == null) {
+					perdidos++;
+				} else {
+					maximo = Math.max(maximo, llegada - envio.getValue());
+				}
+			}
+			System.out.printf("Nodo %d: recibidos %d/%d, retraso m\u00e1ximo %d ms%n",
+					nodo + 1, recepciones.size(), enviados.size(), maximo);
+			correcto = correcto && perdidos == 0 && maximo <= limiteEntrega;
+		}
+		if (!duplicados.isEmpty()) {
+			System.out.println("Cambios recibidos m\u00e1s de una vez: " + duplicados);
+		}
+		System.out.println(correcto ? "OK" : "ERROR: retraso mayor de " + limiteEntrega + " ms o cambios perdidos");
+		return correcto;
+	}
+
+	/**
+	 * Proceso hijo: lee CAMBIOCACHE como un nodo de la aplicación y escribe
+	 * cada cambio recibido. Termina cuando el padre cierra su entrada.
+	 */
+	private static void nodo(String url) throws Exception {
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl(url);
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+		BusInvalidacion bus = new BusInvalidacion(dataSource, cambio -> {
+			synchronized (System.out) {
+				System.out.println("CAMBIO " + cambio.getIdentificador() + " " + System.currentTimeMillis());
+				System.out.flush();
+			}
+		});
+		ScheduledExecutorService lectura = Executors.newSingleThreadScheduledExecutor();
+		bus.run();
+		lectura.scheduleWithFixedDelay(bus, BusInvalidacion.INTERVALO_MS, BusInvalidacion.INTERVALO_MS,
+				TimeUnit.MILLISECONDS);
+		System.out.println("LISTO");
+		System.out.flush();
+		while (System.in.read() >= 0) {
+			// Esperar a que el padre cierre la entrada
+		}
+		lectura.shutdownNow();
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import java.util.*;
+import org.hsqldb.server.Server;
+
+/**
+ * Réplica de lectura para probar en local el enrutado de EnrutadorLectura.
+ *
+ * Arranca otra HSQLDB en memoria y cada cierto tiempo copia en ella todas las
+ * tablas de la base de datos principal, así la réplica va por detrás como una
+ * réplica asíncrona real (el retraso se ve en replica/retraso.ms).
+ * Descomenta jdbc/gestionmedicaReplicaDS en context.xml para usarla.
+ *
+ * Uso: ReplicaLocal [segundos entre copias] [puerto] [urlJdbc principal]
+ * Por defecto cada 10 s, en el puerto 1667, copiando la base de datos de
+ * DBServer (arranca antes gestionmedica).
+ */
+public class ReplicaLocal {
+
+	public static void main(String[] args) throws Exception {
+		int segundos = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int puerto = args.length > 1 ? Integer.parseInt(args[1]) : 1667;
+		String origen = args.length > 2 ? args[2] : "jdbc:hsqldb:hsql://localhost:1666";
+
+		Server servidor = new Server();
+		servidor.setLogWriter(null);
+		servidor.setErrWriter(null);
+		servidor.setDatabaseName(0, "");
+		servidor.setDatabasePath(0, "mem:replica");
+		servidor.setPort(puerto);
+		servidor.setSilent(true);
+		servidor.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(servidor::shutdown));
+
+		String destino = "jdbc:hsqldb:hsql://localhost:" + puerto;
+		try (Connection principal = DriverManager.getConnection(origen, "sa", "");
+				Connection replica = DriverManager.getConnection(destino, "sa", "")) {
+			crearEsquema(principal, replica);
+			System.out.println("R\u00e9plica en " + destino + ", copia de " + origen + " cada " + segundos + " s");
+			while (true) {
+				long inicio = System.currentTimeMillis();
+				int filas = copiar(principal, replica);
+				System.out.println("Copiadas " + filas + " filas en " + (System.currentTimeMillis() - inicio) + " ms");
+				Thread.sleep(segundos * 1000L);
+			}
+		}
+	}
+
+	/**
+	 * Repite en la réplica el script de la principal; las sentencias del usuario
+	 * SA y de configuración que ya existen en la réplica fallan y se ignoran.
+	 */
+	private static void crearEsquema(Connection principal, Connection replica) throws SQLException {
+		List<String> sentencias = new ArrayList<>();
+		try (Statement st = principal.createStatement(); ResultSet rs = st.executeQuery("SCRIPT")) {
+			while (rs.next()) {
+				String sql = rs.getString(1);
+				if (!sql.startsWith("INSERT ")) {
+					sentencias.add(sql);
+				}
+			}
+		}
+		try (Statement st = replica.createStatement()) {
+			for (String sql : sentencias) {
+				try {
+					st.execute(sql);
+				} catch (SQLException ex) {
+					// ya existe en la réplica
+				}
+			}
+		}
+	}
+
+	private static int copiar(Connection principal, Connection replica) throws SQLException {
+		List<String> tablas = new ArrayList<>();
+		try (Statement st = principal.createStatement(); ResultSet rs = st.executeQuery(
+				"SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES " +
+				"WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_TYPE = 'BASE TABLE'")) {
+			while (rs.next()) {
+				tablas.add(rs.getString(1));
+			}
+		}
+		int filas = 0;
+		replica.setAutoCommit(false);
+		try (Statement st = replica.createStatement()) {
+			st.execute("SET DATABASE REFERENTIAL INTEGRITY FALSE");
+			for (String tabla : tablas) {
+				st.executeUpdate("DELETE FROM " + tabla);
+				filas += copiarTabla(principal, replica, tabla);
+			}
+			replica.commit();
+			st.execute("SET DATABASE REFERENTIAL INTEGRITY TRUE");
+		} catch (SQLException ex) {
+			replica.rollback();
+			throw ex;
+		} finally {
+			replica.setAutoCommit(true);
+		}
+		return filas;
+	}
+
+	private static int copiarTabla(Connection principal, Connection replica, String tabla) throws SQLException {
+		int filas = 0;
+		try (Statement st = principal.createStatement()) {
+			st.setFetchSize(1000);
+			try (ResultSet rs = st.executeQuery("SELECT * FROM " + tabla)) {
+				int columnas = rs.getMetaData().getColumnCount();
+				String marcadores = String.join(", ", Collections.nCopies(columnas, "?"));
+				try (PreparedStatement ps = replica.prepareStatement(
+						"INSERT INTO " + tabla + " VALUES (" + marcadores + ")")) {
+					while (rs.next()) {
+						for (int i = 1; i <= columnas; i++) {
+							Object valor = rs.getObject(i);
+							if (valor instanceof Blob) {
+								Blob blob = (Blob) valor;
+								valor = blob.getBytes(1, (int) blob.length());
+							} else if (valor instanceof Clob) {
+								Clob clob = (Clob) valor;
+								valor = clob.getSubString(1, (int) clob.length());
+							}
+							ps.setObject(i, valor);
+						}
+						ps.addBatch();
+						if (++filas % 1000 == 0) {
+							ps.executeBatch();
+						}
+					}
+					// HSQLDB rechaza executeBatch sin filas pendientes (tabla vacía o múltiplo de 1000)
+					if (filas % 1000 != 0) {
+						ps.executeBatch();
+					}
+				}
+			}
+		}
+		return filas;
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.gestionmedica.gestionmedica.run;
+
+import java.sql.*;
+import java.util.List;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Compara AgendaDiaria con la reconstruida desde las citas e informa las diferencias.
+ *
+ * Uso: VerificarAgenda [reparar] [urlJdbc]
+ * Con "reparar" reescribe la agenda si encuentra diferencias.
+ * Por defecto usa la base de datos de DBServer (arranca antes gestionmedica).
+ */
+public class VerificarAgenda {
+
+	public static void main(String[] args) throws Exception {
+		boolean reparar = args.length > 0 && "reparar".equalsIgnoreCase(args[0]);
+		String url = args.length > 1 ? args[1] : "jdbc:hsqldb:hsql://localhost:1666";
+		try (Connection conexion = DriverManager.getConnection(url, "sa", "")) {
+			VerificadorAgenda verificador = new VerificadorAgenda(conexion);
+			List<String> diferencias = verificador.verificar(reparar);
+			for (String diferencia : diferencias) {
+				System.out.println(diferencia);
+			}
+			System.out.println("Días con diferencias: " + verificador.getTotalDiferencias() +
+					(reparar && verificador.getTotalDiferencias() > 0 ? " (agenda reconstruida)" : ""));
+			System.exit(verificador.getTotalDiferencias() == 0 || reparar ? 0 : 1);
+		}
+	}
+
+}
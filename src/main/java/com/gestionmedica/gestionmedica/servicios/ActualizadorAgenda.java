@@ -0,0 +1,112 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Objects;
+import org.hibernate.Session;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Mantiene AgendaDiaria al día a partir de los callbacks de Cita.
+ *
+ * Resta el aporte anterior de la cita y suma el nuevo con un UPDATE
+ * relativo (columna = columna + delta) sobre la conexión de la sesión, así
+ * va en la misma transacción que la cita y dos transacciones que tocan el
+ * mismo día no se pisan. La máscara de slots también se suma y resta: la
+ * restricción única de Cita impide que un mismo bit se sume dos veces.
+ * Si otra transacción crea a la vez la fila del día, el INSERT falla por la
+ * restricción única y se repite el UPDATE tras volver a un punto de
+ * guardado, porque hay bases de datos (PostgreSQL) que tras un error
+ * rechazan el resto de la transacción.
+ * En la misma operación actualiza EstadisticaMensual (ActualizadorEstadisticas).
+ */
+public class ActualizadorAgenda {
+
+    private static final String SQL_ACTUALIZAR =
+            "UPDATE AGENDADIARIA SET SLOTSOCUPADOS = SLOTSOCUPADOS + ?, REGISTRADAS = REGISTRADAS + ?, " +
+            "ATENDIDAS = ATENDIDAS + ?, CANCELADAS = CANCELADAS + ?, NOASISTIDAS = NOASISTIDAS + ? " +
+            "WHERE MEDICO_IDMEDICO = ? AND FECHA = ?";
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO AGENDADIARIA (SLOTSOCUPADOS, REGISTRADAS, ATENDIDAS, CANCELADAS, NOASISTIDAS, " +
+            "MEDICO_IDMEDICO, FECHA) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Cambia en la agenda el aporte anterior de una cita por el actual;
+     * cualquiera de los dos puede ser null (cita nueva o borrada).
+     */
+    public static void cambiar(AporteAgenda anterior, AporteAgenda actual) {
+        if (Objects.equals(anterior, actual)) {
+            return;
+        }
+        XPersistence.getManager().unwrap(Session.class).doWork(conexion -> {
+            if (anterior != null) {
+                aplicar(conexion, anterior, -1);
+                ActualizadorEstadisticas.aplicar(conexion, anterior, -1);
+            }
+            if (actual != null) {
+                aplicar(conexion, actual, 1);
+                ActualizadorEstadisticas.aplicar(conexion, actual, 1);
+            }
+        });
+    }
+
+    private static void aplicar(Connection conexion, AporteAgenda aporte, int signo) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(SQL_ACTUALIZAR)) {
+            asignar(ps, aporte, signo);
+            if (ps.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement ps = conexion.prepareStatement(SQL_INSERTAR)) {
+            asignar(ps, aporte, signo);
+            insertarOActualizar(conexion, ps, () -> {
+                try (PreparedStatement actualizar = conexion.prepareStatement(SQL_ACTUALIZAR)) {
+                    asignar(actualizar, aporte, signo);
+                    return actualizar.executeUpdate();
+                }
+            });
+        }
+    }
+
+    /**
+     * Ejecuta el INSERT ya preparado de una fila que no existía; si falla
+     * porque otra transacción la creó a la vez, vuelve al punto de guardado
+     * previo y ejecuta actualizar, que debe encontrarla.
+     */
+    static void insertarOActualizar(Connection conexion, PreparedStatement insertar, Actualizacion actualizar)
+            throws SQLException {
+        Savepoint antesDeInsertar = conexion.setSavepoint();
+        try {
+            insertar.executeUpdate();
+        } catch (SQLException ex) {
+            conexion.rollback(antesDeInsertar);
+            if (actualizar.ejecutar() == 0) {
+                throw ex;
+            }
+            return;
+        }
+        conexion.releaseSavepoint(antesDeInsertar);
+    }
+
+    /**
+     * UPDATE de respaldo de insertarOActualizar; retorna las filas actualizadas.
+     */
+    interface Actualizacion {
+        int ejecutar() throws SQLException;
+    }
+
+    private static void asignar(PreparedStatement ps, AporteAgenda aporte, int signo) throws SQLException {
+        ps.setLong(1, signo * aporte.getBitSlot());
+        ps.setInt(2, aporte.getEstado() == EstadoCita.REGISTRADA ? signo : 0);
+        ps.setInt(3, aporte.getEstado() == EstadoCita.ATENDIDA ? signo : 0);
+        ps.setInt(4, aporte.getEstado() == EstadoCita.CANCELADA ? signo : 0);
+        ps.setInt(5, aporte.getEstado() == EstadoCita.NO_ASISTIO ? signo : 0);
+        ps.setInt(6, aporte.getMedicoId());
+        ps.setDate(7, Date.valueOf(aporte.getFecha()));
+    }
+}
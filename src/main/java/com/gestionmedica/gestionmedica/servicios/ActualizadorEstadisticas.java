@@ -0,0 +1,166 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import org.hibernate.Session;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Mantiene EstadisticaMensual con el mismo esquema que ActualizadorAgenda:
+ * UPDATE relativo de los contadores del mes sobre la conexión de la sesión.
+ *
+ * La capacidad del mes se calcula con los horarios activos al crear la
+ * fila y se recalcula para el mes en curso y los siguientes cuando cambian
+ * los horarios, el médico o la duración de slot de su especialidad; los
+ * meses pasados conservan la capacidad que tenían.
+ */
+public class ActualizadorEstadisticas {
+
+    private static final String SQL_ACTUALIZAR =
+            "UPDATE ESTADISTICAMENSUAL SET REGISTRADAS = REGISTRADAS + ?, ATENDIDAS = ATENDIDAS + ?, " +
+            "CANCELADAS = CANCELADAS + ?, NOASISTIDAS = NOASISTIDAS + ? " +
+            "WHERE MEDICO_IDMEDICO = ? AND ANYO = ? AND MES = ?";
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO ESTADISTICAMENSUAL (REGISTRADAS, ATENDIDAS, CANCELADAS, NOASISTIDAS, MEDICO_IDMEDICO, ANYO, MES, " +
+            "CAPACIDAD) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_HORARIOS =
+            "SELECT H.MEDICO_IDMEDICO, H.DIASEMANA, H.TURNO, E.DURACIONSLOTMINUTOS FROM HORARIODISPONIBLE H " +
+            "JOIN MEDICO M ON M.IDMEDICO = H.MEDICO_IDMEDICO " +
+            "JOIN ESPECIALIDAD E ON E.IDESPECIALIDAD = M.ESPECIALIDAD_IDESPECIALIDAD " +
+            "WHERE H.ESTADO = 'ACTIVO'";
+
+    /**
+     * Suma (signo 1) o resta (signo -1) el aporte de una cita a su mes.
+     * Lo llama ActualizadorAgenda en la misma transacción que la cita.
+     */
+    static void aplicar(Connection conexion, AporteAgenda aporte, int signo) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(SQL_ACTUALIZAR)) {
+            asignar(ps, aporte, signo);
+            if (ps.executeUpdate() > 0) {
+                return;
+            }
+        }
+        YearMonth mes = YearMonth.from(aporte.getFecha());
+        int capacidad = capacidad(cargarSlotsPorDia(conexion, aporte.getMedicoId())
+                .get(aporte.getMedicoId()), mes);
+        try (PreparedStatement ps = conexion.prepareStatement(SQL_INSERTAR)) {
+            asignar(ps, aporte, signo);
+            ps.setInt(8, capacidad);
+            // Si otra transacción creó la fila del mes a la vez, se actualiza esa
+            ActualizadorAgenda.insertarOActualizar(conexion, ps, () -> {
+                try (PreparedStatement actualizar = conexion.prepareStatement(SQL_ACTUALIZAR)) {
+                    asignar(actualizar, aporte, signo);
+                    return actualizar.executeUpdate();
+                }
+            });
+        }
+    }
+
+    /**
+     * Recalcula la capacidad del mes en curso y siguientes de un médico.
+     */
+    public static void recalcularCapacidad(Integer medicoId) {
+        recalcularCapacidad("MEDICO_IDMEDICO = ?", medicoId);
+    }
+
+    /**
+     * Recalcula la capacidad del mes en curso y siguientes de los médicos de una especialidad.
+     */
+    public static void recalcularCapacidadEspecialidad(Integer especialidadId) {
+        recalcularCapacidad("MEDICO_IDMEDICO IN (SELECT IDMEDICO FROM MEDICO WHERE ESPECIALIDAD_IDESPECIALIDAD = ?)",
+                especialidadId);
+    }
+
+    private static void recalcularCapacidad(String condicion, Integer id) {
+        YearMonth actual = YearMonth.now();
+        XPersistence.getManager().unwrap(Session.class).doWork(conexion -> {
+            Map<Integer, Map<DiaSemana, Integer>> slotsPorDia = new HashMap<>();
+            int pendientes = 0;
+            try (PreparedStatement consulta = conexion.prepareStatement(
+                    "SELECT IDESTADISTICA, MEDICO_IDMEDICO, ANYO, MES FROM ESTADISTICAMENSUAL WHERE " + condicion +
+                    " AND ANYO * 12 + MES >= ?");
+                    PreparedStatement actualizar = conexion.prepareStatement(
+                            "UPDATE ESTADISTICAMENSUAL SET CAPACIDAD = ? WHERE IDESTADISTICA = ?")) {
+                consulta.setInt(1, id);
+                consulta.setInt(2, actual.getYear() * 12 + actual.getMonthValue());
+                try (ResultSet rs = consulta.executeQuery()) {
+                    while (rs.next()) {
+                        Integer medicoId = rs.getInt(2);
+                        if (!slotsPorDia.containsKey(medicoId)) {
+                            slotsPorDia.putAll(cargarSlotsPorDia(conexion, medicoId));
+                            slotsPorDia.putIfAbsent(medicoId, null);
+                        }
+                        actualizar.setInt(1, capacidad(slotsPorDia.get(medicoId), YearMonth.of(rs.getInt(3), rs.getInt(4))));
+                        actualizar.setInt(2, rs.getInt(1));
+                        actualizar.addBatch();
+                        pendientes++;
+                    }
+                }
+                // HSQLDB rechaza executeBatch sin filas
+                if (pendientes > 0) {
+                    actualizar.executeBatch();
+                }
+            }
+        });
+    }
+
+    /**
+     * Slots por día de la semana de los horarios activos, por médico.
+     * Con medicoId null carga los de todos los médicos.
+     */
+    static Map<Integer, Map<DiaSemana, Integer>> cargarSlotsPorDia(Connection conexion, Integer medicoId)
+            throws SQLException {
+        Map<Integer, Map<DiaSemana, Integer>> resultado = new HashMap<>();
+        try (PreparedStatement ps = conexion.prepareStatement(
+                SQL_HORARIOS + (medicoId == null ? "" : " AND H.MEDICO_IDMEDICO = ?"))) {
+            if (medicoId != null) {
+                ps.setInt(1, medicoId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int duracion = rs.getInt(4);
+                    TablaSlots tabla = TablaSlots.de(TurnoTrabajo.valueOf(rs.getString(3)),
+                            rs.wasNull() ? null : duracion);
+                    // Solo hay un horario activo por día (ver HorarioDisponible)
+                    resultado.computeIfAbsent(rs.getInt(1), id -> new EnumMap<>(DiaSemana.class))
+                            .putIfAbsent(DiaSemana.valueOf(rs.getString(2)), tabla.getCantidad());
+                }
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Slots ofrecidos en el mes con los slots por día de un médico (null si no tiene horarios)
+     */
+    static int capacidad(Map<DiaSemana, Integer> slotsPorDia, YearMonth mes) {
+        if (slotsPorDia == null) {
+            return 0;
+        }
+        int capacidad = 0;
+        for (LocalDate dia = mes.atDay(1); !dia.isAfter(mes.atEndOfMonth()); dia = dia.plusDays(1)) {
+            capacidad += slotsPorDia.getOrDefault(DiaSemana.desdeFecha(dia), 0);
+        }
+        return capacidad;
+    }
+
+    private static void asignar(PreparedStatement ps, AporteAgenda aporte, int signo) throws SQLException {
+        ps.setInt(1, aporte.getEstado() == EstadoCita.REGISTRADA ? signo : 0);
+        ps.setInt(2, aporte.getEstado() == EstadoCita.ATENDIDA ? signo : 0);
+        ps.setInt(3, aporte.getEstado() == EstadoCita.CANCELADA ? signo : 0);
+        ps.setInt(4, aporte.getEstado() == EstadoCita.NO_ASISTIO ? signo : 0);
+        ps.setInt(5, aporte.getMedicoId());
+        ps.setInt(6, aporte.getFecha().getYear());
+        ps.setInt(7, aporte.getFecha().getMonthValue());
+    }
+}
@@ -0,0 +1,75 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Modo de almacenamiento para instalaciones grandes sobre el HSQLDB de DBServer.
+ *
+ * Por defecto las tablas son MEMORY: todas las filas viven en el heap y
+ * se reconstruyen desde el .script en cada arranque. En modo CACHED las tablas
+ * grandes se guardan en el .data (leído con NIO) y solo una caché de filas
+ * queda en memoria. Los índices que usan las consultas los crean las
+ * migraciones (V5), que deben estar aplicadas antes.
+ *
+ * Es idempotente: las tablas ya CACHED se saltan.
+ */
+public class AlmacenamientoHsqldb {
+
+    // Tablas que crecen con el uso; los catálogos pequeños se quedan en memoria
+    public static final List<String> TABLAS_GRANDES =
+            Arrays.asList("CITA", "CITAHISTORICA", "PACIENTE", "MEDICO", "HORARIODISPONIBLE");
+
+    // Filas de tablas CACHED que se mantienen en memoria
+    private static final int FILAS_EN_CACHE = 50000;
+
+    private final Connection conexion;
+
+    public AlmacenamientoHsqldb(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Pasa las tablas grandes a CACHED, deja CACHED como tipo por defecto para
+     * las tablas que se creen después.
+     * Retorna la lista de cambios hechos.
+     */
+    public List<String> convertir() throws SQLException {
+        List<String> cambios = new ArrayList<>();
+        try (Statement st = conexion.createStatement()) {
+            st.execute("SET DATABASE DEFAULT TABLE TYPE CACHED");
+            st.execute("SET FILES NIO TRUE");
+            st.execute("SET FILES CACHE ROWS " + FILAS_EN_CACHE);
+            for (String tabla : TABLAS_GRANDES) {
+                String tipo = getTipoTabla(tabla);
+                if (tipo != null && !"CACHED".equals(tipo)) {
+                    st.execute("SET TABLE PUBLIC." + tabla + " TYPE CACHED");
+                    cambios.add("Tabla " + tabla + ": " + tipo + " -> CACHED");
+                }
+            }
+            // Escribe el .script sin las filas de las tablas CACHED
+            st.execute("CHECKPOINT");
+        }
+        return cambios;
+    }
+
+    /**
+     * MEMORY, CACHED, TEXT... o null si la tabla no existe.
+     */
+    public String getTipoTabla(String tabla) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT HSQLDB_TYPE FROM INFORMATION_SCHEMA.SYSTEM_TABLES " +
+                "WHERE TABLE_SCHEM = 'PUBLIC' AND TABLE_NAME = ?")) {
+            ps.setString(1, tabla);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
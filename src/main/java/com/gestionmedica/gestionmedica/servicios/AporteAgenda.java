@@ -0,0 +1,64 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.time.LocalDate;
+import java.util.Objects;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Lo que una cita suma a la AgendaDiaria de su médico y fecha:
+ * uno al contador de su estado y, si no está cancelada, el bit de su slot.
+ */
+public final class AporteAgenda {
+
+    private final Integer medicoId;
+    private final LocalDate fecha;
+    private final EstadoCita estado;
+    private final int slot;
+
+    public AporteAgenda(Integer medicoId, LocalDate fecha, EstadoCita estado, int slot) {
+        this.medicoId = medicoId;
+        this.fecha = fecha;
+        this.estado = estado;
+        this.slot = slot;
+    }
+
+    public Integer getMedicoId() {
+        return medicoId;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public EstadoCita getEstado() {
+        return estado;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Bit del slot en la máscara de ocupados, 0 si la cita está cancelada
+     */
+    public long getBitSlot() {
+        if (estado == EstadoCita.CANCELADA || slot < 1 || slot > TablaSlots.MAX_SLOTS) {
+            return 0;
+        }
+        return 1L << (slot - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof AporteAgenda))
+            return false;
+        AporteAgenda otro = (AporteAgenda) o;
+        return medicoId.equals(otro.medicoId) && fecha.equals(otro.fecha) &&
+                estado == otro.estado && slot == otro.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(medicoId, fecha, estado, slot);
+    }
+}
@@ -0,0 +1,115 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Mueve a CITAHISTORICA las citas ATENDIDA, CANCELADA y NO_ASISTIO
+ * anteriores a una antigüedad dada, para que CITA (tabla MEMORY, cargada en
+ * heap) no crezca con el histórico.
+ *
+ * Trabaja por lotes de TAMANO_LOTE ids consecutivos: cada lote se copia y se
+ * borra de CITA en una sola transacción, así la memoria no depende del total
+ * y si el proceso se interrumpe basta con relanzarlo; continúa por las citas
+ * que quedaron en CITA. Un lote que otra transacción cambia a la vez se
+ * reintenta hasta MAX_INTENTOS_LOTE veces.
+ *
+ * No avisa a IndiceOcupacion: solo se archivan citas de días pasados, que ya
+ * no se pueden reservar, y en la agenda del día las archivadas siguen contando.
+ * El tipo de tabla de CITAHISTORICA lo decide AlmacenamientoHsqldb.
+ */
+public class ArchivadorCitas {
+
+    public static final int TAMANO_LOTE = 1000;
+    public static final int DIAS_ANTIGUEDAD_DEFECTO = 365;
+    public static final int MAX_INTENTOS_LOTE = 3;
+
+    private static final String CONDICION =
+            "estado IN ('ATENDIDA', 'CANCELADA', 'NO_ASISTIO') AND fechaCita < ? " +
+            "AND idCita > ? AND idCita <= ?";
+
+    private final Connection conexion;
+
+    public ArchivadorCitas(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Archiva las citas cerradas con más de diasAntiguedad días. Retorna cuántas movió.
+     */
+    public int archivar(int diasAntiguedad) throws SQLException {
+        Date limite = Date.valueOf(LocalDate.now().minusDays(diasAntiguedad));
+        Date hoy = Date.valueOf(LocalDate.now());
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        int movidas = 0;
+        try {
+            int desde = 0;
+            int intentos = 0;
+            Integer hasta;
+            while ((hasta = finDelLote(limite, desde)) != null) {
+                try (PreparedStatement copiar = conexion.prepareStatement(
+                        "INSERT INTO CitaHistorica (idCita, paciente_idPaciente, medico_idMedico, fechaCita, " +
+                        "numeroSlot, horaInicio, estado, motivoConsulta, fechaRegistro, fechaCancelacion, fechaArchivo) " +
+                        "SELECT idCita, paciente_idPaciente, medico_idMedico, fechaCita, numeroSlot, horaInicio, " +
+                        "estado, motivoConsulta, fechaRegistro, fechaCancelacion, ? FROM Cita WHERE " + CONDICION);
+                        PreparedStatement borrar = conexion.prepareStatement(
+                        "DELETE FROM Cita WHERE " + CONDICION)) {
+                    copiar.setDate(1, hoy);
+                    asignarCondicion(copiar, 2, limite, desde, hasta);
+                    asignarCondicion(borrar, 1, limite, desde, hasta);
+                    int copiadas = copiar.executeUpdate();
+                    int borradas = borrar.executeUpdate();
+                    if (copiadas != borradas) {
+                        // Otra transacción cambió el lote entre ambas sentencias
+                        conexion.rollback();
+                        if (++intentos < MAX_INTENTOS_LOTE) {
+                            continue;
+                        }
+                        throw new SQLException("Las citas " + (desde + 1) + " a " + hasta + " cambiaron durante " +
+                                "el archivo en " + intentos + " intentos; se archivaron " + movidas);
+                    }
+                    conexion.commit();
+                    movidas += borradas;
+                } catch (SQLException ex) {
+                    conexion.rollback();
+                    throw ex;
+                }
+                desde = hasta;
+                intentos = 0;
+            }
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+        return movidas;
+    }
+
+    /**
+     * Id de la última cita del siguiente lote a archivar, o null si no quedan.
+     */
+    private Integer finDelLote(Date limite, int desde) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT MAX(idCita) FROM (SELECT idCita FROM Cita WHERE " +
+                "estado IN ('ATENDIDA', 'CANCELADA', 'NO_ASISTIO') AND fechaCita < ? AND idCita > ? " +
+                "ORDER BY idCita LIMIT " + TAMANO_LOTE + ")")) {
+            ps.setDate(1, limite);
+            ps.setInt(2, desde);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                int maximo = rs.getInt(1);
+                return rs.wasNull() ? null : maximo;
+            }
+        }
+    }
+
+    private static void asignarCondicion(PreparedStatement ps, int indice, Date limite, int desde, int hasta)
+            throws SQLException {
+        ps.setDate(indice, limite);
+        ps.setInt(indice + 1, desde);
+        ps.setInt(indice + 2, hasta);
+    }
+}
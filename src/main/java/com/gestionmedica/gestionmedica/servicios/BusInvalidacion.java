@@ -0,0 +1,195 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.hibernate.Session;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Invalidación de cachés entre los nodos que comparten la base de datos.
+ *
+ * Los callbacks de Medico, Especialidad y HorarioDisponible añaden una fila
+ * a CAMBIOCACHE en su misma transacción (si se deshace, no hay aviso); los
+ * procesos que escriben citas por JDBC avisan con OCUPACION y el médico. Cada
+ * nodo lee cada INTERVALO_MS las filas posteriores a su marca por la clave
+ * primaria y aplica las de otros nodos; la caché de otro nodo queda como
+ * mucho INTERVALO_MS desactualizada tras el commit.
+ *
+ * Los identificadores se asignan al insertar y no al confirmar, así que una
+ * transacción lenta puede confirmar un id menor que otro ya leído. Por eso
+ * la marca solo avanza sobre filas con más de MARGEN_MS de antigüedad y las
+ * más recientes se recuerdan para no aplicarlas dos veces; una transacción
+ * que tarde más de MARGEN_MS entre el cambio y el commit podría no avisar.
+ */
+public class BusInvalidacion implements Runnable {
+
+    public static final String MEDICO = "MEDICO";
+    public static final String ESPECIALIDAD = "ESPECIALIDAD";
+    public static final String HORARIO = "HORARIO";
+    // Citas escritas fuera de JPA: la ocupación del médico (o de todos, sin médico) está desactualizada
+    public static final String OCUPACION = "OCUPACION";
+
+    public static final long INTERVALO_MS = 2000;
+    private static final long MARGEN_MS = 60_000;
+    // Las filas se borran pasado un día; una vez por hora basta
+    private static final int HORAS_RETENCION = 24;
+    private static final long PURGA_CADA_MS = 3_600_000;
+
+    // Identifica a este proceso en CAMBIOCACHE para ignorar sus propios avisos
+    public static final String NODO = ManagementFactory.getRuntimeMXBean().getName() + "/" +
+            UUID.randomUUID().toString().substring(0, 8);
+
+    private static final Logger log = Logger.getLogger(BusInvalidacion.class.getName());
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO CAMBIOCACHE (ENTIDAD, IDENTIFICADOR, MEDICO, NODO) VALUES (?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+    private final Consumer<Cambio> aplicador;
+    private final Set<Long> aplicados = new HashSet<>();
+    private long marca = -1;
+    private long ultimaPurga;
+
+    /**
+     * aplicador recibe los cambios de otros nodos, en orden de id.
+     */
+    public BusInvalidacion(DataSource dataSource, Consumer<Cambio> aplicador) {
+        this.dataSource = dataSource;
+        this.aplicador = aplicador;
+    }
+
+    /**
+     * Registra un cambio en la transacción de la sesión JPA en curso (desde callbacks).
+     */
+    public static void publicar(String entidad, Integer identificador, Integer medicoId) {
+        XPersistence.getManager().unwrap(Session.class)
+                .doWork(conexion -> publicar(conexion, entidad, identificador, medicoId));
+    }
+
+    public static void publicar(Connection conexion, String entidad, Integer identificador, Integer medicoId)
+            throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(SQL_INSERTAR)) {
+            ps.setString(1, entidad);
+            ps.setObject(2, identificador, Types.INTEGER);
+            ps.setObject(3, medicoId, Types.INTEGER);
+            ps.setString(4, NODO);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Una lectura de CAMBIOCACHE. Los errores se registran y se reintenta en
+     * la siguiente ejecución, desde la misma marca.
+     */
+    public synchronized void run() {
+        try (Connection conexion = dataSource.getConnection()) {
+            if (marca < 0) {
+                // Al arrancar las cachés están vacías: solo interesan los cambios posteriores
+                marca = ultimoId(conexion);
+                return;
+            }
+            leerCambios(conexion);
+            long ahora = System.currentTimeMillis();
+            if (ahora - ultimaPurga > PURGA_CADA_MS) {
+                ultimaPurga = ahora;
+                try (Statement st = conexion.createStatement()) {
+                    st.executeUpdate("DELETE FROM CAMBIOCACHE WHERE FECHA < DATEADD('hour', -" +
+                            HORAS_RETENCION + ", CURRENT_TIMESTAMP)");
+                }
+            }
+        } catch (Exception ex) {
+            log.log(Level.WARNING, "No se pudieron leer los cambios de caché de otros nodos", ex);
+        }
+    }
+
+    private void leerCambios(Connection conexion) throws SQLException {
+        long nuevaMarca = marca;
+        boolean confirmados = true;
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT IDCAMBIO, ENTIDAD, IDENTIFICADOR, MEDICO, NODO, " +
+                "FECHA < DATEADD('second', -" + MARGEN_MS / 1000 + ", CURRENT_TIMESTAMP) " +
+                "FROM CAMBIOCACHE WHERE IDCAMBIO > ? ORDER BY IDCAMBIO")) {
+            ps.setLong(1, marca);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    // La marca avanza mientras las filas sean anteriores al margen
+                    confirmados = confirmados && rs.getBoolean(6);
+                    if (confirmados) {
+                        nuevaMarca = id;
+                    }
+                    if (aplicados.add(id) && !NODO.equals(rs.getString(5))) {
+                        aplicar(new Cambio(rs.getString(2), entero(rs, 3), entero(rs, 4)));
+                    }
+                }
+            }
+        }
+        marca = nuevaMarca;
+        aplicados.removeIf(id -> id <= marca);
+    }
+
+    private void aplicar(Cambio cambio) {
+        try {
+            aplicador.accept(cambio);
+        } catch (RuntimeException ex) {
+            log.log(Level.WARNING, "Error aplicando " + cambio, ex);
+        }
+    }
+
+    private static long ultimoId(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement();
+                ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(IDCAMBIO), 0) FROM CAMBIOCACHE")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static Integer entero(ResultSet rs, int columna) throws SQLException {
+        int valor = rs.getInt(columna);
+        return rs.wasNull() ? null : valor;
+    }
+
+    /**
+     * Cambio de una entidad: su id y, si aplica, el del médico afectado
+     */
+    public static final class Cambio {
+
+        private final String entidad;
+        private final Integer identificador;
+        private final Integer medicoId;
+
+        public Cambio(String entidad, Integer identificador, Integer medicoId) {
+            this.entidad = entidad;
+            this.identificador = identificador;
+            this.medicoId = medicoId;
+        }
+
+        public String getEntidad() {
+            return entidad;
+        }
+
+        public Integer getIdentificador() {
+            return identificador;
+        }
+
+        public Integer getMedicoId() {
+            return medicoId;
+        }
+
+        public String toString() {
+            return entidad + " " + identificador + (medicoId == null ? "" : " (médico " + medicoId + ")");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.TypedQuery;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Busca los primeros slots libres de cualquier médico de una especialidad
+ * en un rango de fechas.
+ *
+ * Hace siempre dos consultas (horarios activos y máscaras de slots ocupados
+ * de AgendaDiaria en el rango) y el cruce de slots en memoria, sin importar
+ * cuántos médicos o días haya. AgendaDiaria tiene una fila por médico y día
+ * en vez de una por cita: con 200 médicos y 30 días llenos son 6.000 filas
+ * en lugar de 144.000.
+ */
+public class BuscadorDisponibilidad {
+
+    /**
+     * Retorna hasta cantidad slots libres ordenados por fecha, hora y médico.
+     * turno es opcional; las fechas anteriores a hoy y las horas ya pasadas
+     * de hoy se ignoran.
+     */
+    public static List<SlotLibre> buscar(Integer especialidadId, LocalDate desde, LocalDate hasta,
+            TurnoTrabajo turno, int cantidad) {
+        List<SlotLibre> libres = new ArrayList<>();
+        LocalDateTime ahora = LocalDateTime.now();
+        if (desde.isBefore(ahora.toLocalDate())) {
+            desde = ahora.toLocalDate();
+        }
+        if (cantidad <= 0 || hasta.isBefore(desde)) {
+            return libres;
+        }
+
+        Map<DiaSemana, List<Horario>> horariosPorDia = cargarHorarios(especialidadId, turno);
+        if (horariosPorDia.isEmpty()) {
+            return libres;
+        }
+        Map<String, Long> ocupados = cargarOcupados(especialidadId, desde, hasta);
+
+        int minutoActual = ahora.getHour() * 60 + ahora.getMinute();
+        List<Candidato> delDia = new ArrayList<>();
+        for (LocalDate fecha = desde; !fecha.isAfter(hasta) && libres.size() < cantidad; fecha = fecha.plusDays(1)) {
+            List<Horario> horarios = horariosPorDia.get(DiaSemana.desdeFecha(fecha));
+            if (horarios == null) {
+                continue;
+            }
+            boolean hoy = fecha.equals(ahora.toLocalDate());
+            delDia.clear();
+            for (Horario horario : horarios) {
+                Long mascara = ocupados.get(clave(horario.medicoId, fecha));
+                long ocupado = mascara == null ? 0 : mascara;
+                TablaSlots tabla = horario.tabla;
+                for (int s = 1; s <= tabla.getCantidad(); s++) {
+                    if ((ocupado & (1L << (s - 1))) != 0) {
+                        continue;
+                    }
+                    // Minutos sin dar la vuelta a medianoche: los slots
+                    // nocturnos tras las 00:00 quedan al final del día
+                    int minutos = tabla.getMinutoInicio(s);
+                    if (hoy && minutos < minutoActual) {
+                        continue;
+                    }
+                    delDia.add(new Candidato(minutos, new SlotLibre(horario.medicoId, horario.medico, fecha, s,
+                            tabla.getHora(s))));
+                }
+            }
+            delDia.sort(Comparator.comparingInt((Candidato c) -> c.minutos)
+                    .thenComparing(c -> c.slot.getMedico()));
+            for (Candidato candidato : delDia) {
+                if (libres.size() == cantidad) {
+                    break;
+                }
+                libres.add(candidato.slot);
+            }
+        }
+        return libres;
+    }
+
+    private static Map<DiaSemana, List<Horario>> cargarHorarios(Integer especialidadId, TurnoTrabajo turno) {
+        TypedQuery<Object[]> query = XPersistence.getManager()
+                .createQuery("SELECT m.idMedico, m.nombre, m.apellido, h.diaSemana, h.turno, " +
+                        "m.especialidad.duracionSlotMinutos " +
+                        "FROM HorarioDisponible h JOIN h.medico m WHERE " +
+                        "m.especialidad.idEspecialidad = :especialidadId AND " +
+                        "m.estado = 'ACTIVO' AND " +
+                        "h.estado = 'ACTIVO'" +
+                        (turno == null ? "" : " AND h.turno = :turno"), Object[].class)
+                .setParameter("especialidadId", especialidadId)
+                // Catálogo de cambio poco frecuente: usa la caché de consultas de Hibernate
+                .setHint("org.hibernate.cacheable", true);
+        if (turno != null) {
+            query.setParameter("turno", turno);
+        }
+        Map<DiaSemana, List<Horario>> horarios = new EnumMap<>(DiaSemana.class);
+        for (Object[] fila : query.getResultList()) {
+            Horario horario = new Horario((Integer) fila[0], "Dr. " + fila[1] + " " + fila[2],
+                    TablaSlots.de((TurnoTrabajo) fila[4], (Integer) fila[5]));
+            horarios.computeIfAbsent((DiaSemana) fila[3], d -> new ArrayList<>()).add(horario);
+        }
+        return horarios;
+    }
+
+    /**
+     * Máscara de slots ocupados por "medicoId|fecha". AgendaDiaria se
+     * actualiza en la misma transacción que la cita (ActualizadorAgenda).
+     */
+    private static Map<String, Long> cargarOcupados(Integer especialidadId, LocalDate desde, LocalDate hasta) {
+        List<Object[]> filas = XPersistence.getManager()
+                .createQuery("SELECT a.medico.idMedico, a.fecha, a.slotsOcupados FROM AgendaDiaria a WHERE " +
+                        "a.medico.especialidad.idEspecialidad = :especialidadId AND " +
+                        "a.fecha BETWEEN :desde AND :hasta AND " +
+                        "a.slotsOcupados <> 0", Object[].class)
+                .setParameter("especialidadId", especialidadId)
+                .setParameter("desde", desde)
+                .setParameter("hasta", hasta)
+                .getResultList();
+        Map<String, Long> ocupados = new HashMap<>(filas.size() * 2);
+        for (Object[] fila : filas) {
+            ocupados.put(clave((Integer) fila[0], (LocalDate) fila[1]), (Long) fila[2]);
+        }
+        return ocupados;
+    }
+
+    private static String clave(Integer medicoId, LocalDate fecha) {
+        return medicoId + "|" + fecha;
+    }
+
+    private static final class Horario {
+
+        private final Integer medicoId;
+        private final String medico;
+        private final TablaSlots tabla;
+
+        Horario(Integer medicoId, String medico, TablaSlots tabla) {
+            this.medicoId = medicoId;
+            this.medico = medico;
+            this.tabla = tabla;
+        }
+    }
+
+    private static final class Candidato {
+
+        private final int minutos;
+        private final SlotLibre slot;
+
+        Candidato(int minutos, SlotLibre slot) {
+            this.minutos = minutos;
+            this.slot = slot;
+        }
+    }
+}
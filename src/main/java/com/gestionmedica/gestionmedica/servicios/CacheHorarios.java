@@ -0,0 +1,146 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.FlushModeType;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Caché del turno activo de cada médico por día de la semana.
+ * Evita repetir la consulta a HorarioDisponible al validar y al mostrar
+ * los slots de una cita. Tiene tamaño acotado (LRU) y se invalida desde
+ * los callbacks de HorarioDisponible al terminar su transacción.
+ */
+public class CacheHorarios {
+
+    private static final int MAX_ENTRADAS = 2000;
+
+    private static final Map<Clave, Optional<TurnoTrabajo>> turnos =
+            new LinkedHashMap<Clave, Optional<TurnoTrabajo>>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Clave, Optional<TurnoTrabajo>> mayor) {
+                    return size() > MAX_ENTRADAS;
+                }
+            };
+
+    // Cambia con cada invalidación para no guardar resultados leídos antes de ella
+    private static final AtomicLong version = new AtomicLong();
+    private static final AtomicLong aciertos = new AtomicLong();
+    private static final AtomicLong fallos = new AtomicLong();
+
+    /**
+     * Retorna el turno del horario activo del médico ese día, o null si no tiene.
+     */
+    public static TurnoTrabajo getTurnoActivo(Integer medicoId, DiaSemana diaSemana) {
+        Clave clave = new Clave(medicoId, diaSemana);
+        Optional<TurnoTrabajo> turno;
+        synchronized (turnos) {
+            turno = turnos.get(clave);
+        }
+        if (turno != null) {
+            aciertos.incrementAndGet();
+            return turno.orElse(null);
+        }
+        fallos.incrementAndGet();
+        long versionLeida = version.get();
+        turno = Optional.ofNullable(cargarTurno(medicoId, diaSemana));
+        synchronized (turnos) {
+            if (version.get() == versionLeida) {
+                turnos.put(clave, turno);
+            }
+        }
+        return turno.orElse(null);
+    }
+
+    public static boolean tieneHorarioActivo(Integer medicoId, DiaSemana diaSemana) {
+        return getTurnoActivo(medicoId, diaSemana) != null;
+    }
+
+    /**
+     * Descarta los turnos cacheados del médico para todos los días.
+     */
+    public static void invalidarMedico(Integer medicoId) {
+        synchronized (turnos) {
+            version.incrementAndGet();
+            for (DiaSemana dia : DiaSemana.values()) {
+                turnos.remove(new Clave(medicoId, dia));
+            }
+        }
+    }
+
+    /**
+     * Invalida ahora, para que la propia transacción vea su cambio, y otra
+     * vez al terminar: una lectura de otro hilo que empezó antes del commit
+     * pudo leer los turnos anteriores y no debe guardarse, y si la
+     * transacción se deshace lo que ella leyó tampoco vale.
+     */
+    public static void invalidarMedicoAlTerminar(Integer medicoId) {
+        invalidarMedico(medicoId);
+        TrasTransaccion.alTerminar(confirmada -> invalidarMedico(medicoId));
+    }
+
+    public static void invalidarTodo() {
+        synchronized (turnos) {
+            version.incrementAndGet();
+            turnos.clear();
+        }
+    }
+
+    public static long getAciertos() {
+        return aciertos.get();
+    }
+
+    public static long getFallos() {
+        return fallos.get();
+    }
+
+    public static int getTamano() {
+        synchronized (turnos) {
+            return turnos.size();
+        }
+    }
+
+    private static TurnoTrabajo cargarTurno(Integer medicoId, DiaSemana diaSemana) {
+        List<TurnoTrabajo> resultado = XPersistence.getManager()
+                .createQuery("SELECT h.turno FROM HorarioDisponible h WHERE " +
+                        "h.medico.id = :medicoId AND " +
+                        "h.diaSemana = :diaSemana AND " +
+                        "h.estado = 'ACTIVO'", TurnoTrabajo.class)
+                .setParameter("medicoId", medicoId)
+                .setParameter("diaSemana", diaSemana)
+                .setMaxResults(1)
+                // Sin volcar la sesión: se llama desde los callbacks de Cita
+                .setFlushMode(FlushModeType.COMMIT)
+                .getResultList();
+        return resultado.isEmpty() ? null : resultado.get(0);
+    }
+
+    private static final class Clave {
+
+        private final Integer medicoId;
+        private final DiaSemana diaSemana;
+
+        Clave(Integer medicoId, DiaSemana diaSemana) {
+            this.medicoId = medicoId;
+            this.diaSemana = diaSemana;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Clave)) return false;
+            Clave otra = (Clave) o;
+            return Objects.equals(medicoId, otra.medicoId) && diaSemana == otra.diaSemana;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(medicoId, diaSemana);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import com.gestionmedica.gestionmedica.auditoria.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.validadores.*;
+
+/**
+ * Pasa a un estado final las citas REGISTRADA de días ya pasados.
+ *
+ * Usa UPDATE masivos por lotes de TAMANO_LOTE ids consecutivos en vez de
+ * entidades: Cita.onUpdate volvería a validar la fecha y rechazaría
+ * cualquier cita pasada. Como los callbacks no se ejecutan, cada lote
+ * ajusta en la misma transacción AGENDADIARIA y ESTADISTICAMENSUAL con los
+ * agregados de sus citas, igual que haría ActualizadorAgenda cita a cita,
+ * y anota el cambio de estado en AUDITORIACITA, como haría AuditorCita.
+ *
+ * Un lote que otra transacción cambia a la vez se reintenta hasta
+ * MAX_INTENTOS_LOTE veces. Si cancela citas avisa a los nodos por
+ * BusInvalidacion (OCUPACION, sin médico), porque sus slots se liberan;
+ * con el estado por defecto (NO_ASISTIO) los slots siguen ocupados.
+ */
+public class CierreCitasVencidas {
+
+    public static final int TAMANO_LOTE = 1000;
+    public static final int MAX_INTENTOS_LOTE = 3;
+
+    // Una cita pasada sin atender no se canceló: conserva su slot y no cuenta como cancelada
+    public static final EstadoCita ESTADO_CIERRE_DEFECTO = EstadoCita.NO_ASISTIO;
+
+    private static final String CONDICION =
+            "ESTADO = 'REGISTRADA' AND FECHACITA < ? AND IDCITA > ? AND IDCITA <= ?";
+
+    private static final String SQL_AGENDA =
+            "MERGE INTO AGENDADIARIA A USING (SELECT MEDICO_IDMEDICO AS MEDICO, FECHACITA AS FECHA, COUNT(*) AS N, " +
+            "SUM(CASE WHEN NUMEROSLOT BETWEEN 1 AND " + TablaSlots.MAX_SLOTS +
+            " THEN CAST(POWER(2, NUMEROSLOT - 1) AS BIGINT) ELSE 0 END) AS BITS " +
+            "FROM CITA WHERE " + CONDICION + " GROUP BY MEDICO_IDMEDICO, FECHACITA) C " +
+            "ON A.MEDICO_IDMEDICO = C.MEDICO AND A.FECHA = C.FECHA WHEN MATCHED THEN UPDATE SET " +
+            "REGISTRADAS = A.REGISTRADAS - C.N, %s";
+
+    private static final String SQL_ESTADISTICAS =
+            "MERGE INTO ESTADISTICAMENSUAL E USING (SELECT MEDICO_IDMEDICO AS MEDICO, YEAR(FECHACITA) AS ANYO, " +
+            "MONTH(FECHACITA) AS MES, COUNT(*) AS N FROM CITA WHERE " + CONDICION +
+            " GROUP BY MEDICO_IDMEDICO, YEAR(FECHACITA), MONTH(FECHACITA)) C " +
+            "ON E.MEDICO_IDMEDICO = C.MEDICO AND E.ANYO = C.ANYO AND E.MES = C.MES WHEN MATCHED THEN UPDATE SET " +
+            "REGISTRADAS = E.REGISTRADAS - C.N, %s";
+
+    // Usuario de los eventos de auditoría de este cierre
+    public static final String USUARIO_AUDITORIA = "cierreCitasVencidas";
+
+    private static final String SQL_AUDITORIA =
+            "INSERT INTO AUDITORIACITA (" + EscritorAuditoria.COLUMNAS + ") SELECT IDCITA, '" +
+            TipoEventoCita.CAMBIO_ESTADO + "', CURRENT_TIMESTAMP, ?, ?, MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT, " +
+            "ESTADO, MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT, ?, TRUE FROM CITA WHERE " + CONDICION;
+
+    private final Connection conexion;
+    private final EstadoCita estadoCierre;
+
+    public CierreCitasVencidas(Connection conexion) {
+        this(conexion, ESTADO_CIERRE_DEFECTO);
+    }
+
+    public CierreCitasVencidas(Connection conexion, EstadoCita estadoCierre) {
+        if (!ValidadorEstadoCita.esTransicionValida(EstadoCita.REGISTRADA, estadoCierre)) {
+            throw new IllegalArgumentException("Transición no permitida: REGISTRADA -> " + estadoCierre);
+        }
+        this.conexion = conexion;
+        this.estadoCierre = estadoCierre;
+    }
+
+    /**
+     * Cierra las citas REGISTRADA anteriores a hoy. Retorna cuántas cerró.
+     */
+    public int cerrar() throws SQLException {
+        LocalDate hoy = LocalDate.now();
+        Date limite = Date.valueOf(hoy);
+        boolean cancelar = estadoCierre == EstadoCita.CANCELADA;
+        String sqlCita = "UPDATE CITA SET VERSIONAGENDA = ?, ESTADO = ?" +
+                (cancelar ? ", FECHACANCELACION = ?, SLOTRESERVADO = NULL" : "") + " WHERE " + CONDICION;
+        String columna = columnaContador(estadoCierre);
+        // Las canceladas dejan de ocupar su slot en la agenda
+        String sqlAgenda = String.format(SQL_AGENDA, columna + " = A." + columna + " + C.N" +
+                (cancelar ? ", SLOTSOCUPADOS = A.SLOTSOCUPADOS - C.BITS" : ""));
+        String sqlEstadisticas = String.format(SQL_ESTADISTICAS, columna + " = E." + columna + " + C.N");
+
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        int cerradas = 0;
+        try {
+            int desde = 0;
+            int intentos = 0;
+            int[] lote;
+            while ((lote = siguienteLote(limite, desde)) != null) {
+                int hasta = lote[0];
+                try (PreparedStatement agenda = conexion.prepareStatement(sqlAgenda);
+                        PreparedStatement estadisticas = conexion.prepareStatement(sqlEstadisticas);
+                        PreparedStatement auditoria = conexion.prepareStatement(SQL_AUDITORIA);
+                        PreparedStatement citas = conexion.prepareStatement(sqlCita)) {
+                    asignarCondicion(agenda, 1, limite, desde, hasta);
+                    agenda.executeUpdate();
+                    asignarCondicion(estadisticas, 1, limite, desde, hasta);
+                    estadisticas.executeUpdate();
+                    auditoria.setString(1, USUARIO_AUDITORIA);
+                    auditoria.setString(2, BusInvalidacion.NODO);
+                    auditoria.setString(3, estadoCierre.name());
+                    asignarCondicion(auditoria, 4, limite, desde, hasta);
+                    auditoria.executeUpdate();
+                    // Lo último antes del commit: el contador queda bloqueado lo menos posible
+                    long version = VersionAgenda.tomar(conexion);
+                    int indice = 1;
+                    citas.setLong(indice++, version);
+                    citas.setString(indice++, estadoCierre.name());
+                    if (cancelar) {
+                        citas.setDate(indice++, Date.valueOf(hoy));
+                    }
+                    asignarCondicion(citas, indice, limite, desde, hasta);
+                    int actualizadas = citas.executeUpdate();
+                    if (actualizadas != lote[1]) {
+                        // Otra transacción cambió el lote entre la consulta y los UPDATE
+                        conexion.rollback();
+                        if (++intentos < MAX_INTENTOS_LOTE) {
+                            continue;
+                        }
+                        throw new SQLException("Las citas " + (desde + 1) + " a " + hasta + " cambiaron durante " +
+                                "el cierre en " + intentos + " intentos; se cerraron " + cerradas);
+                    }
+                    if (cancelar) {
+                        // Con el lote: si se confirma, los demás nodos se enteran
+                        BusInvalidacion.publicar(conexion, BusInvalidacion.OCUPACION, null, null);
+                    }
+                    conexion.commit();
+                    cerradas += actualizadas;
+                } catch (SQLException ex) {
+                    conexion.rollback();
+                    throw ex;
+                }
+                desde = hasta;
+                intentos = 0;
+            }
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+        if (cerradas > 0 && cancelar) {
+            // Los avisos propios se ignoran: desde la aplicación (TareaCierreCitas) se invalida aquí
+            IndiceOcupacion.invalidarTodo();
+        }
+        return cerradas;
+    }
+
+    /**
+     * Id de la última cita del siguiente lote y número de citas del lote, o null si no quedan.
+     */
+    private int[] siguienteLote(Date limite, int desde) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT MAX(IDCITA), COUNT(*) FROM (SELECT IDCITA FROM CITA WHERE " +
+                "ESTADO = 'REGISTRADA' AND FECHACITA < ? AND IDCITA > ? " +
+                "ORDER BY IDCITA LIMIT " + TAMANO_LOTE + ")")) {
+            ps.setDate(1, limite);
+            ps.setInt(2, desde);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                int maximo = rs.getInt(1);
+                return rs.wasNull() ? null : new int[] { maximo, rs.getInt(2) };
+            }
+        }
+    }
+
+    /**
+     * Columna de AGENDADIARIA y ESTADISTICAMENSUAL que cuenta las citas del estado.
+     */
+    private static String columnaContador(EstadoCita estado) {
+        switch (estado) {
+            case ATENDIDA:
+                return "ATENDIDAS";
+            case CANCELADA:
+                return "CANCELADAS";
+            case NO_ASISTIO:
+                return "NOASISTIDAS";
+            default:
+                throw new IllegalArgumentException("Estado sin contador de cierre: " + estado);
+        }
+    }
+
+    private static void asignarCondicion(PreparedStatement ps, int indice, Date limite, int desde, int hasta)
+            throws SQLException {
+        ps.setDate(indice, limite);
+        ps.setInt(indice + 1, desde);
+        ps.setInt(indice + 2, hasta);
+    }
+}
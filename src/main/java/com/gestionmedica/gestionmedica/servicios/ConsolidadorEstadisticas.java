@@ -0,0 +1,165 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.Map;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Rehace EstadisticaMensual para un rango de meses (carga inicial o tras
+ * reparar la agenda). Los contadores salen de AGENDADIARIA, que ya está
+ * agregada por día e incluye las citas archivadas, así que no recorre CITA;
+ * si hay dudas sobre la agenda conviene pasar antes VerificadorAgenda.
+ *
+ * Crea también la fila de los médicos con horario activo y sin citas en el
+ * mes, para que su ocupación aparezca como 0 %. La capacidad se calcula con
+ * los horarios activos actuales.
+ *
+ * recontar hace lo mismo solo para algunos (médico, mes), p. ej. tras una
+ * importación por JDBC, sin tocar la capacidad de las filas que ya existen.
+ */
+public class ConsolidadorEstadisticas {
+
+    private static final String SQL_CONTADORES =
+            "INSERT INTO ESTADISTICAMENSUAL (MEDICO_IDMEDICO, ANYO, MES, CAPACIDAD, REGISTRADAS, ATENDIDAS, CANCELADAS, " +
+            "NOASISTIDAS) SELECT MEDICO_IDMEDICO, YEAR(FECHA), MONTH(FECHA), 0, SUM(REGISTRADAS), SUM(ATENDIDAS), " +
+            "SUM(CANCELADAS), SUM(NOASISTIDAS) " +
+            "FROM AGENDADIARIA WHERE FECHA BETWEEN ? AND ? GROUP BY MEDICO_IDMEDICO, YEAR(FECHA), MONTH(FECHA)";
+
+    private static final String SQL_SIN_CITAS =
+            "INSERT INTO ESTADISTICAMENSUAL (MEDICO_IDMEDICO, ANYO, MES, CAPACIDAD, REGISTRADAS, ATENDIDAS, CANCELADAS, " +
+            "NOASISTIDAS) SELECT DISTINCT H.MEDICO_IDMEDICO, ?, ?, 0, 0, 0, 0, 0 FROM HORARIODISPONIBLE H WHERE H.ESTADO = 'ACTIVO' " +
+            "AND NOT EXISTS (SELECT 1 FROM ESTADISTICAMENSUAL E WHERE E.MEDICO_IDMEDICO = H.MEDICO_IDMEDICO " +
+            "AND E.ANYO = ? AND E.MES = ?)";
+
+    private final Connection conexion;
+
+    public ConsolidadorEstadisticas(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Borra y vuelve a generar los meses de desde a hasta (incluidos) en una
+     * transacción. Retorna el número de filas generadas.
+     */
+    public int reconstruir(YearMonth desde, YearMonth hasta) throws SQLException {
+        int desdeClave = desde.getYear() * 12 + desde.getMonthValue();
+        int hastaClave = hasta.getYear() * 12 + hasta.getMonthValue();
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "DELETE FROM ESTADISTICAMENSUAL WHERE ANYO * 12 + MES BETWEEN ? AND ?")) {
+                ps.setInt(1, desdeClave);
+                ps.setInt(2, hastaClave);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conexion.prepareStatement(SQL_CONTADORES)) {
+                ps.setDate(1, Date.valueOf(desde.atDay(1)));
+                ps.setDate(2, Date.valueOf(hasta.atEndOfMonth()));
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conexion.prepareStatement(SQL_SIN_CITAS)) {
+                for (YearMonth mes = desde; !mes.isAfter(hasta); mes = mes.plusMonths(1)) {
+                    ps.setInt(1, mes.getYear());
+                    ps.setInt(2, mes.getMonthValue());
+                    ps.setInt(3, mes.getYear());
+                    ps.setInt(4, mes.getMonthValue());
+                    ps.executeUpdate();
+                }
+            }
+            int filas = asignarCapacidades(desdeClave, hastaClave);
+            conexion.commit();
+            return filas;
+        } catch (SQLException | RuntimeException ex) {
+            conexion.rollback();
+            throw ex;
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Vuelve a contar desde AGENDADIARIA los meses de cada médico, en la
+     * transacción de la conexión y sin confirmarla. Crea la fila del mes si
+     * no existe, con la capacidad de los horarios activos.
+     */
+    public void recontar(Map<Integer, ? extends Collection<YearMonth>> mesesPorMedico) throws SQLException {
+        try (PreparedStatement contar = conexion.prepareStatement(
+                        "SELECT COALESCE(SUM(REGISTRADAS), 0), COALESCE(SUM(ATENDIDAS), 0), " +
+                        "COALESCE(SUM(CANCELADAS), 0), COALESCE(SUM(NOASISTIDAS), 0) FROM AGENDADIARIA " +
+                        "WHERE MEDICO_IDMEDICO = ? " +
+                        "AND FECHA BETWEEN ? AND ?");
+                PreparedStatement actualizar = conexion.prepareStatement(
+                        "UPDATE ESTADISTICAMENSUAL SET REGISTRADAS = ?, ATENDIDAS = ?, CANCELADAS = ?, NOASISTIDAS = ? " +
+                        "WHERE MEDICO_IDMEDICO = ? AND ANYO = ? AND MES = ?");
+                PreparedStatement insertar = conexion.prepareStatement(
+                        "INSERT INTO ESTADISTICAMENSUAL (REGISTRADAS, ATENDIDAS, CANCELADAS, NOASISTIDAS, " +
+                        "MEDICO_IDMEDICO, ANYO, MES, CAPACIDAD) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (Map.Entry<Integer, ? extends Collection<YearMonth>> medico : mesesPorMedico.entrySet()) {
+                Map<DiaSemana, Integer> slotsPorDia = null;
+                for (YearMonth mes : medico.getValue()) {
+                    contar.setInt(1, medico.getKey());
+                    contar.setDate(2, Date.valueOf(mes.atDay(1)));
+                    contar.setDate(3, Date.valueOf(mes.atEndOfMonth()));
+                    int[] contadores = new int[4];
+                    try (ResultSet rs = contar.executeQuery()) {
+                        rs.next();
+                        for (int i = 0; i < contadores.length; i++) {
+                            contadores[i] = rs.getInt(i + 1);
+                        }
+                    }
+                    for (PreparedStatement ps : new PreparedStatement[] { actualizar, insertar }) {
+                        for (int i = 0; i < contadores.length; i++) {
+                            ps.setInt(i + 1, contadores[i]);
+                        }
+                        ps.setInt(5, medico.getKey());
+                        ps.setInt(6, mes.getYear());
+                        ps.setInt(7, mes.getMonthValue());
+                    }
+                    if (actualizar.executeUpdate() == 0) {
+                        if (slotsPorDia == null) {
+                            slotsPorDia = ActualizadorEstadisticas.cargarSlotsPorDia(conexion, medico.getKey())
+                                    .get(medico.getKey());
+                        }
+                        insertar.setInt(8, ActualizadorEstadisticas.capacidad(slotsPorDia, mes));
+                        insertar.executeUpdate();
+                    }
+                }
+            }
+        }
+    }
+
+    private int asignarCapacidades(int desdeClave, int hastaClave) throws SQLException {
+        Map<Integer, Map<DiaSemana, Integer>> slotsPorDia = ActualizadorEstadisticas.cargarSlotsPorDia(conexion, null);
+        int filas = 0;
+        try (PreparedStatement consulta = conexion.prepareStatement(
+                "SELECT IDESTADISTICA, MEDICO_IDMEDICO, ANYO, MES FROM ESTADISTICAMENSUAL " +
+                "WHERE ANYO * 12 + MES BETWEEN ? AND ?");
+                PreparedStatement actualizar = conexion.prepareStatement(
+                        "UPDATE ESTADISTICAMENSUAL SET CAPACIDAD = ? WHERE IDESTADISTICA = ?")) {
+            consulta.setInt(1, desdeClave);
+            consulta.setInt(2, hastaClave);
+            try (ResultSet rs = consulta.executeQuery()) {
+                while (rs.next()) {
+                    actualizar.setInt(1, ActualizadorEstadisticas.capacidad(slotsPorDia.get(rs.getInt(2)),
+                            YearMonth.of(rs.getInt(3), rs.getInt(4))));
+                    actualizar.setInt(2, rs.getInt(1));
+                    actualizar.addBatch();
+                    if (++filas % 500 == 0) {
+                        actualizar.executeBatch();
+                    }
+                }
+            }
+            if (filas % 500 != 0) {
+                actualizar.executeBatch();
+            }
+        }
+        return filas;
+    }
+}
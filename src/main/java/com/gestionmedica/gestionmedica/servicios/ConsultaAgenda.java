@@ -0,0 +1,199 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Consultas de /agenda sobre CITA para varios médicos y un rango de días,
+ * por el índice IDX_CITA_MEDICO_FECHA_SLOT.
+ *
+ * resumir da por médico y día el número de citas y su versión mayor
+ * (VersionAgenda): basta para saber si la agenda cambió sin leer las citas.
+ */
+public class ConsultaAgenda {
+
+    private final Connection conexion;
+
+    public ConsultaAgenda(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Días del rango que tienen alguna cita, ordenados por médico y fecha.
+     */
+    public List<ResumenDia> resumir(List<Integer> medicos, LocalDate desde, LocalDate hasta) throws SQLException {
+        List<ResumenDia> dias = new ArrayList<>();
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT MEDICO_IDMEDICO, FECHACITA, COUNT(*), MAX(VERSIONAGENDA) FROM CITA " +
+                "WHERE MEDICO_IDMEDICO IN (" + marcadores(medicos.size()) + ") AND FECHACITA BETWEEN ? AND ? " +
+                "GROUP BY MEDICO_IDMEDICO, FECHACITA ORDER BY MEDICO_IDMEDICO, FECHACITA")) {
+            asignarRango(ps, medicos, desde, hasta);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    dias.add(new ResumenDia(rs.getInt(1), rs.getDate(2).toLocalDate(), rs.getInt(3), rs.getLong(4)));
+                }
+            }
+        }
+        return dias;
+    }
+
+    /**
+     * Citas del rango con versión mayor que despuesDe (-1 para todas), de
+     * cualquier estado: las canceladas hacen falta para quitarlas al sincronizar.
+     */
+    public List<CitaAgenda> citas(List<Integer> medicos, LocalDate desde, LocalDate hasta, long despuesDe)
+            throws SQLException {
+        List<CitaAgenda> citas = new ArrayList<>();
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT C.IDCITA, C.MEDICO_IDMEDICO, C.FECHACITA, C.NUMEROSLOT, C.HORAINICIO, C.ESTADO, " +
+                "C.VERSIONAGENDA, P.IDPACIENTE, P.NOMBRE, P.APELLIDO " +
+                "FROM CITA C JOIN PACIENTE P ON P.IDPACIENTE = C.PACIENTE_IDPACIENTE " +
+                "WHERE C.MEDICO_IDMEDICO IN (" + marcadores(medicos.size()) + ") AND C.FECHACITA BETWEEN ? AND ? " +
+                "AND C.VERSIONAGENDA > ? ORDER BY C.FECHACITA, C.MEDICO_IDMEDICO, C.NUMEROSLOT")) {
+            int i = asignarRango(ps, medicos, desde, hasta);
+            ps.setLong(i, despuesDe);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Time hora = rs.getTime(5);
+                    citas.add(new CitaAgenda(rs.getInt(1), rs.getInt(2), rs.getDate(3).toLocalDate(),
+                            rs.getInt(4), hora == null ? null : hora.toLocalTime(),
+                            EstadoCita.valueOf(rs.getString(6)), rs.getLong(7),
+                            rs.getInt(8), rs.getString(9), rs.getString(10)));
+                }
+            }
+        }
+        return citas;
+    }
+
+    // Retorna el índice del siguiente parámetro
+    private static int asignarRango(PreparedStatement ps, List<Integer> medicos, LocalDate desde, LocalDate hasta)
+            throws SQLException {
+        int i = 1;
+        for (Integer medico : medicos) {
+            ps.setInt(i++, medico);
+        }
+        ps.setDate(i++, Date.valueOf(desde));
+        ps.setDate(i++, Date.valueOf(hasta));
+        return i;
+    }
+
+    private static String marcadores(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    /**
+     * Número de citas y versión mayor de un médico en un día
+     */
+    public static class ResumenDia {
+
+        private final Integer medicoId;
+        private final LocalDate fecha;
+        private final int citas;
+        private final long version;
+
+        public ResumenDia(Integer medicoId, LocalDate fecha, int citas, long version) {
+            this.medicoId = medicoId;
+            this.fecha = fecha;
+            this.citas = citas;
+            this.version = version;
+        }
+
+        public Integer getMedicoId() {
+            return medicoId;
+        }
+
+        public LocalDate getFecha() {
+            return fecha;
+        }
+
+        public int getCitas() {
+            return citas;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    public static class CitaAgenda {
+
+        private final Integer idCita;
+        private final Integer medicoId;
+        private final LocalDate fecha;
+        private final int numeroSlot;
+        private final LocalTime horaInicio;
+        private final EstadoCita estado;
+        private final long version;
+        private final Integer idPaciente;
+        private final String nombrePaciente;
+        private final String apellidoPaciente;
+
+        public CitaAgenda(Integer idCita, Integer medicoId, LocalDate fecha, int numeroSlot, LocalTime horaInicio,
+                EstadoCita estado, long version, Integer idPaciente, String nombrePaciente,
+                String apellidoPaciente) {
+            this.idCita = idCita;
+            this.medicoId = medicoId;
+            this.fecha = fecha;
+            this.numeroSlot = numeroSlot;
+            this.horaInicio = horaInicio;
+            this.estado = estado;
+            this.version = version;
+            this.idPaciente = idPaciente;
+            this.nombrePaciente = nombrePaciente;
+            this.apellidoPaciente = apellidoPaciente;
+        }
+
+        public Integer getIdCita() {
+            return idCita;
+        }
+
+        public Integer getMedicoId() {
+            return medicoId;
+        }
+
+        public LocalDate getFecha() {
+            return fecha;
+        }
+
+        public int getNumeroSlot() {
+            return numeroSlot;
+        }
+
+        /**
+         * Hora guardada al agendar; null en citas antiguas sin ella
+         */
+        public LocalTime getHoraInicio() {
+            return horaInicio;
+        }
+
+        public EstadoCita getEstado() {
+            return estado;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Integer getIdPaciente() {
+            return idPaciente;
+        }
+
+        public String getNombrePaciente() {
+            return nombrePaciente;
+        }
+
+        public String getApellidoPaciente() {
+            return apellidoPaciente;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Resumen de la caché de segundo nivel y de las cachés propias de la aplicación.
+ */
+public class EstadisticasCache {
+
+    private static final String[] REGIONES = { "especialidad", "medico", "horarioDisponible",
+            "default-query-results-region" };
+
+    public static Statistics getEstadisticasHibernate() {
+        return XPersistence.getManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    public static String resumen() {
+        Statistics estadisticas = getEstadisticasHibernate();
+        StringBuilder sb = new StringBuilder();
+        for (String region : REGIONES) {
+            CacheRegionStatistics r = region.startsWith("default-") ?
+                    estadisticas.getQueryRegionStatistics(region) :
+                    estadisticas.getDomainDataRegionStatistics(region);
+            if (r == null) continue;
+            sb.append(region).append(": aciertos=").append(r.getHitCount())
+                    .append(", fallos=").append(r.getMissCount())
+                    .append(", escrituras=").append(r.getPutCount())
+                    .append(", elementos=").append(r.getElementCountInMemory())
+                    .append("\n");
+        }
+        sb.append("consultas cacheadas: aciertos=").append(estadisticas.getQueryCacheHitCount())
+                .append(", fallos=").append(estadisticas.getQueryCacheMissCount()).append("\n");
+        sb.append("CacheHorarios: aciertos=").append(CacheHorarios.getAciertos())
+                .append(", fallos=").append(CacheHorarios.getFallos())
+                .append(", elementos=").append(CacheHorarios.getTamano());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,304 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.persistence.FlushModeType;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Índice en memoria de la ocupación de slots de las citas.
+ * Guarda una máscara de bits por (médico, fecha): el bit (slot - 1) está
+ * encendido si el slot tiene una cita no cancelada o una reserva de una
+ * transacción de este proceso que aún no terminó.
+ *
+ * Las máscaras se cargan bajo demanda desde la tabla Cita, fuera del mapa.
+ * Una reserva deshecha libera su slot al terminar la transacción, y un slot
+ * solo se libera (cancelación, reprogramación, borrado) cuando la
+ * transacción se confirma; así el índice no da por libre un slot que la
+ * base de datos tiene ocupado.
+ *
+ * La base de datos sigue siendo la fuente de verdad: un slot ocupado sin
+ * reserva en curso (cambio de otro nodo o de un proceso por lotes) se
+ * comprueba en la tabla Cita antes de rechazarlo, y frente a las reservas
+ * simultáneas de otros nodos está la restricción única de Cita.
+ */
+public class IndiceOcupacion {
+
+    // Un long admite hasta 64 slots por día (ver TablaSlots)
+    public static final int MAX_SLOTS_INDICE = 64;
+
+    // Al superar este número de entradas se descartan las fechas pasadas
+    private static final int LIMITE_ENTRADAS = 10000;
+    // Intentos de carga si mientras tanto termina una transacción sobre la misma fecha
+    private static final int INTENTOS_CARGA = 3;
+    // Una reserva en curso más antigua se da por perdida (sesión cerrada sin commit ni rollback)
+    private static final long MAX_RESERVA_EN_CURSO_MS = 5 * 60_000;
+
+    private static final ConcurrentMap<Clave, Ocupacion> ocupaciones = new ConcurrentHashMap<>();
+
+    /**
+     * Marca el slot como ocupado por la transacción JPA en curso. Si se
+     * deshace, el slot se libera al terminar. Retorna false si el slot está
+     * ocupado por otra reserva en curso o por una cita no cancelada.
+     */
+    public static boolean reservar(Integer medicoId, LocalDate fecha, int slot) {
+        Clave clave = new Clave(medicoId, fecha);
+        Ocupacion ocupacion = obtener(clave);
+        int resultado = ocupacion.reservar(slot, false);
+        if (resultado == Ocupacion.OCUPADO && !ocupadoEnBaseDeDatos(clave, slot)) {
+            // Marca de una cita ya cancelada o movida fuera de este proceso
+            resultado = ocupacion.reservar(slot, true);
+        }
+        if (resultado != Ocupacion.RESERVADO) {
+            return false;
+        }
+        TrasTransaccion.alTerminar(confirmada -> ocupacion.terminar(slot, confirmada));
+        return true;
+    }
+
+    /**
+     * Libera el slot cuando se confirme la transacción JPA en curso.
+     */
+    public static void liberarAlConfirmar(Integer medicoId, LocalDate fecha, int slot) {
+        TrasTransaccion.alConfirmar(() -> liberar(medicoId, fecha, slot));
+    }
+
+    /**
+     * Libera el slot salvo que lo tenga una reserva en curso. Si la máscara
+     * no está cargada no hay nada que hacer.
+     */
+    public static void liberar(Integer medicoId, LocalDate fecha, int slot) {
+        Ocupacion ocupacion = ocupaciones.get(new Clave(medicoId, fecha));
+        if (ocupacion != null) {
+            ocupacion.liberar(slot);
+        }
+    }
+
+    public static boolean estaOcupado(Integer medicoId, LocalDate fecha, int slot) {
+        return (getMascara(medicoId, fecha) & bit(slot)) != 0;
+    }
+
+    public static long getMascara(Integer medicoId, LocalDate fecha) {
+        return obtener(new Clave(medicoId, fecha)).getOcupados();
+    }
+
+    /**
+     * Retorna los slots libres (1..maxSlots) del médico en la fecha.
+     */
+    public static List<Integer> getSlotsLibres(Integer medicoId, LocalDate fecha, int maxSlots) {
+        long mascara = getMascara(medicoId, fecha);
+        List<Integer> libres = new ArrayList<>();
+        for (int s = 1; s <= maxSlots; s++) {
+            if ((mascara & bit(s)) == 0) {
+                libres.add(s);
+            }
+        }
+        return libres;
+    }
+
+    /**
+     * Hace que la próxima consulta vuelva a cargar la máscara de la base de
+     * datos, conservando las reservas en curso.
+     */
+    public static void invalidar(Integer medicoId, LocalDate fecha) {
+        Ocupacion ocupacion = ocupaciones.get(new Clave(medicoId, fecha));
+        if (ocupacion != null) {
+            ocupacion.caducar();
+        }
+    }
+
+    public static void invalidarMedico(Integer medicoId) {
+        ocupaciones.forEach((clave, ocupacion) -> {
+            if (clave.medicoId == medicoId) {
+                ocupacion.caducar();
+            }
+        });
+    }
+
+    public static void invalidarTodo() {
+        ocupaciones.values().forEach(Ocupacion::caducar);
+    }
+
+    private static Ocupacion obtener(Clave clave) {
+        Ocupacion ocupacion = ocupaciones.get(clave);
+        if (ocupacion == null) {
+            if (ocupaciones.size() > LIMITE_ENTRADAS) {
+                purgarFechasPasadas();
+            }
+            Ocupacion nueva = new Ocupacion();
+            ocupacion = ocupaciones.putIfAbsent(clave, nueva);
+            if (ocupacion == null) {
+                ocupacion = nueva;
+            }
+        }
+        // La consulta se hace sin bloquear el mapa ni la entrada
+        for (int intento = 0; intento < INTENTOS_CARGA && !ocupacion.isVigente(); intento++) {
+            int generacion = ocupacion.getGeneracion();
+            ocupacion.cargar(cargarMascara(clave), generacion);
+        }
+        return ocupacion;
+    }
+
+    private static long cargarMascara(Clave clave) {
+        List<Integer> slots = XPersistence.getManager()
+                .createQuery("SELECT c.numeroSlot FROM Cita c WHERE " +
+                        "c.medico.id = :medicoId AND " +
+                        "c.fechaCita = :fecha AND " +
+                        "c.estado != 'CANCELADA'", Integer.class)
+                .setParameter("medicoId", clave.medicoId)
+                .setParameter("fecha", clave.fecha)
+                // Sin volcar la sesión: se llama desde los callbacks de Cita
+                .setFlushMode(FlushModeType.COMMIT)
+                .getResultList();
+        long mascara = 0;
+        for (Integer slot : slots) {
+            if (slot != null && slot >= 1 && slot <= MAX_SLOTS_INDICE) {
+                mascara |= bit(slot);
+            }
+        }
+        return mascara;
+    }
+
+    private static boolean ocupadoEnBaseDeDatos(Clave clave, int slot) {
+        return XPersistence.getManager()
+                .createQuery("SELECT COUNT(c) FROM Cita c WHERE " +
+                        "c.medico.id = :medicoId AND " +
+                        "c.fechaCita = :fecha AND " +
+                        "c.numeroSlot = :slot AND " +
+                        "c.estado != 'CANCELADA'", Long.class)
+                .setParameter("medicoId", clave.medicoId)
+                .setParameter("fecha", clave.fecha)
+                .setParameter("slot", slot)
+                .setFlushMode(FlushModeType.COMMIT)
+                .getSingleResult() > 0;
+    }
+
+    private static void purgarFechasPasadas() {
+        LocalDate hoy = LocalDate.now();
+        ocupaciones.entrySet().removeIf(entrada ->
+                entrada.getKey().fecha.isBefore(hoy) && !entrada.getValue().tieneReservasEnCurso());
+    }
+
+    private static long bit(int slot) {
+        if (slot < 1 || slot > MAX_SLOTS_INDICE) {
+            throw new IllegalArgumentException("Slot fuera de rango: " + slot);
+        }
+        return 1L << (slot - 1);
+    }
+
+    /**
+     * Ocupación de un (médico, fecha). Las reservas en curso se guardan con
+     * su instante para no bloquear un slot si su transacción nunca terminó.
+     */
+    private static final class Ocupacion {
+
+        static final int RESERVADO = 0;
+        static final int EN_CURSO = 1;
+        static final int OCUPADO = 2;
+
+        private long ocupados;
+        private final Map<Integer, Long> reservasEnCurso = new HashMap<>(4);
+        private boolean vigente;
+        // Cambia al terminar una transacción; una carga que empezó antes no se aplica
+        private int generacion;
+
+        /**
+         * Con forzar se reserva aunque el bit esté encendido, si no es de una reserva en curso.
+         */
+        synchronized int reservar(int slot, boolean forzar) {
+            long bit = bit(slot);
+            if ((ocupados & bit) != 0) {
+                Long desde = reservasEnCurso.get(slot);
+                if (desde != null && System.currentTimeMillis() - desde < MAX_RESERVA_EN_CURSO_MS) {
+                    return EN_CURSO;
+                }
+                if (!forzar) {
+                    return OCUPADO;
+                }
+            }
+            ocupados |= bit;
+            reservasEnCurso.put(slot, System.currentTimeMillis());
+            return RESERVADO;
+        }
+
+        synchronized void terminar(int slot, boolean confirmada) {
+            reservasEnCurso.remove(slot);
+            if (!confirmada) {
+                ocupados &= ~bit(slot);
+            }
+            generacion++;
+        }
+
+        synchronized void liberar(int slot) {
+            if (!reservasEnCurso.containsKey(slot)) {
+                ocupados &= ~bit(slot);
+            }
+            generacion++;
+        }
+
+        synchronized void cargar(long mascara, int generacionAlEmpezar) {
+            if (generacionAlEmpezar != generacion) {
+                return;
+            }
+            long enCurso = 0;
+            for (Integer slot : reservasEnCurso.keySet()) {
+                enCurso |= bit(slot);
+            }
+            ocupados = mascara | enCurso;
+            vigente = true;
+        }
+
+        synchronized void caducar() {
+            vigente = false;
+        }
+
+        synchronized boolean isVigente() {
+            return vigente;
+        }
+
+        synchronized int getGeneracion() {
+            return generacion;
+        }
+
+        synchronized long getOcupados() {
+            return ocupados;
+        }
+
+        synchronized boolean tieneReservasEnCurso() {
+            return !reservasEnCurso.isEmpty();
+        }
+    }
+
+    private static final class Clave {
+
+        private final int medicoId;
+        private final LocalDate fecha;
+
+        Clave(Integer medicoId, LocalDate fecha) {
+            if (medicoId == null || fecha == null) {
+                throw new IllegalArgumentException("Médico y fecha son obligatorios");
+            }
+            this.medicoId = medicoId;
+            this.fecha = fecha;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Clave)) return false;
+            Clave otra = (Clave) o;
+            return medicoId == otra.medicoId && fecha.equals(otra.fecha);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(medicoId, fecha);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import javax.persistence.EntityManager;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.*;
+
+/**
+ * Aplica en este nodo un cambio hecho en otro (ver BusInvalidacion): quita
+ * la entidad de la caché de segundo nivel, los turnos del médico de
+ * CacheHorarios o su ocupación de IndiceOcupacion, y las consultas
+ * cacheadas, que pueden incluir la entidad.
+ *
+ * Se ejecuta en el hilo de tareas programadas: usa un EntityManager propio,
+ * solo para llegar a la caché, y no la sesión de XPersistence del hilo.
+ */
+public class InvalidadorCaches {
+
+    public static void aplicar(BusInvalidacion.Cambio cambio) {
+        EntityManager manager = XPersistence.createManager();
+        try {
+            Cache cache = manager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+            Integer id = cambio.getIdentificador();
+            switch (cambio.getEntidad()) {
+                case BusInvalidacion.MEDICO:
+                    cache.evictEntityData(Medico.class, id);
+                    CacheHorarios.invalidarMedico(id);
+                    break;
+                case BusInvalidacion.ESPECIALIDAD:
+                    cache.evictEntityData(Especialidad.class, id);
+                    break;
+                case BusInvalidacion.HORARIO:
+                    cache.evictEntityData(HorarioDisponible.class, id);
+                    if (cambio.getMedicoId() != null) {
+                        CacheHorarios.invalidarMedico(cambio.getMedicoId());
+                    }
+                    break;
+                case BusInvalidacion.OCUPACION:
+                    if (cambio.getMedicoId() != null) {
+                        IndiceOcupacion.invalidarMedico(cambio.getMedicoId());
+                    } else {
+                        IndiceOcupacion.invalidarTodo();
+                    }
+                    break;
+                default:
+                    // Entidad desconocida (nodo con otra versión): se descarta todo
+                    cache.evictAllRegions();
+                    CacheHorarios.invalidarTodo();
+                    IndiceOcupacion.invalidarTodo();
+            }
+            cache.evictDefaultQueryRegion();
+        } finally {
+            manager.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.text.Normalizer;
+
+/**
+ * Normaliza textos para búsquedas: mayúsculas y sin acentos (á -> A, ñ -> N),
+ * de modo que las columnas de búsqueda se puedan comparar por prefijo con un índice.
+ */
+public class Normalizador {
+
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        String recortado = texto.trim();
+        StringBuilder sb = null;
+        for (int i = 0; i < recortado.length(); i++) {
+            char c = recortado.charAt(i);
+            char n = normalizar(c);
+            if (n != c && sb == null) {
+                sb = new StringBuilder(recortado.length());
+                sb.append(recortado, 0, i);
+            }
+            if (sb != null) {
+                sb.append(n);
+            }
+        }
+        return sb == null ? recortado : sb.toString();
+    }
+
+    private static char normalizar(char c) {
+        if (c < 128) {
+            return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+        }
+        // Descompone (á = a + acento) y se queda con la letra base
+        String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        return Character.toUpperCase(base.charAt(0));
+    }
+}
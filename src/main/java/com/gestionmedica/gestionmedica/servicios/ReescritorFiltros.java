@@ -0,0 +1,83 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reescribe el SQL de los filtros de lista para usar las columnas de búsqueda.
+ *
+ * Con toUpperForStringArgumentsInConditions OpenXava filtra con
+ * upper(columna) like ? (o =, <>, not like), que no puede usar índices.
+ * Solo se tocan esas condiciones, y solo en las consultas de lista de las
+ * entidades cuyo @Tab normaliza los valores con FiltroBusqueda (la tabla
+ * del primer FROM); el resto del SQL queda igual. En las tablas PACIENTE y MEDICO:
+ * - upper(apellido) y upper(nombre) pasan a APELLIDOBUSQUEDA y
+ *   NOMBREBUSQUEDA, ya normalizadas e indexadas;
+ * - upper(cedula) pasa a la columna sin más: solo tiene dígitos.
+ * En el resto de columnas se quitan los acentos con TRANSLATE para que el
+ * filtro se comporte igual. Los valores los normaliza FiltroBusqueda.
+ *
+ * Lo aplica InterceptorMetricas, que es el StatementInspector configurado.
+ */
+public class ReescritorFiltros {
+
+    // Las entidades con @Tab(filter = FiltroBusqueda.class)
+    private static final Set<String> TABLAS_FILTRADAS = new HashSet<>(Arrays.asList("paciente", "medico",
+            "cita", "citahistorica", "agendadiaria", "estadisticamensual", "auditoriacita"));
+
+    private static final Pattern TABLA_PRINCIPAL = Pattern.compile("\\bfrom\\s+(\\w+)\\s+\\w+_",
+            Pattern.CASE_INSENSITIVE);
+    // Alias que genera Hibernate: nombre de la entidad en minúsculas (hasta 10 letras), número y "_"
+    private static final Pattern UPPER = Pattern.compile(
+            "upper\\((\\w+_)\\.(\\w+)\\)(?=\\s*(?:=|<>|(?:not\\s+)?like\\s)\\s*\\?)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern ALIAS_BUSQUEDA = Pattern.compile("(?:paciente|medico)\\d+_", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COLUMNA_BUSQUEDA = Pattern.compile("apellido|nombre|cedula", Pattern.CASE_INSENSITIVE);
+
+    private static final String DESDE;
+    private static final String HACIA;
+
+    static {
+        // Mayúsculas acentuadas de Latin-1 y Latin Extended-A con su letra base (ver Normalizador)
+        StringBuilder desde = new StringBuilder();
+        StringBuilder hacia = new StringBuilder();
+        for (char c = '\u00C0'; c <= '\u017F'; c++) {
+            String base = Normalizador.normalizar(String.valueOf(c));
+            if (Character.isUpperCase(c) && base.length() == 1 && base.charAt(0) < 128) {
+                desde.append(c);
+                hacia.append(base.charAt(0));
+            }
+        }
+        DESDE = desde.toString();
+        HACIA = hacia.toString();
+    }
+
+    public static String reescribir(String sql) {
+        if (sql.indexOf("upper(") < 0) {
+            return sql;
+        }
+        Matcher tabla = TABLA_PRINCIPAL.matcher(sql);
+        if (!tabla.find() || !TABLAS_FILTRADAS.contains(tabla.group(1).toLowerCase())) {
+            return sql;
+        }
+        Matcher m = UPPER.matcher(sql);
+        StringBuffer sb = new StringBuffer(sql.length() + 64);
+        while (m.find()) {
+            String alias = m.group(1);
+            String columna = m.group(2);
+            String reemplazo;
+            if (ALIAS_BUSQUEDA.matcher(alias).matches() && COLUMNA_BUSQUEDA.matcher(columna).matches()) {
+                columna = columna.toLowerCase();
+                reemplazo = alias + "." + (columna.equals("cedula") ? columna : columna + "Busqueda");
+            } else {
+                reemplazo = "translate(upper(" + alias + "." + columna + "), '" + DESDE + "', '" + HACIA + "')";
+            }
+            m.appendReplacement(sb, Matcher.quoteReplacement(reemplazo));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+}
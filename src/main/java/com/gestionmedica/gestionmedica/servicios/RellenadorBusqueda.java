@@ -0,0 +1,78 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Recalcula con Normalizador las columnas de búsqueda de PACIENTE y MEDICO.
+ *
+ * Las migraciones las rellenan con TRANSLATE, que solo cubre las vocales
+ * acentuadas, la Ñ y la Ç; este proceso trata cualquier letra y corrige las
+ * filas escritas sin pasar por la entidad. Recorre cada tabla por lotes de
+ * TAMANO_LOTE ids y solo actualiza las filas que cambian, con un commit por lote.
+ */
+public class RellenadorBusqueda {
+
+    public static final int TAMANO_LOTE = 1000;
+
+    private final Connection conexion;
+
+    public RellenadorBusqueda(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Retorna el número de filas actualizadas en las dos tablas.
+     */
+    public int rellenar() throws SQLException {
+        return rellenar("PACIENTE", "IDPACIENTE") + rellenar("MEDICO", "IDMEDICO");
+    }
+
+    private int rellenar(String tabla, String id) throws SQLException {
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        int actualizadas = 0;
+        try (PreparedStatement consulta = conexion.prepareStatement(
+                "SELECT " + id + ", APELLIDO, NOMBRE, APELLIDOBUSQUEDA, NOMBREBUSQUEDA FROM " + tabla +
+                " WHERE " + id + " > ? ORDER BY " + id + " LIMIT " + TAMANO_LOTE);
+                PreparedStatement actualizar = conexion.prepareStatement(
+                "UPDATE " + tabla + " SET APELLIDOBUSQUEDA = ?, NOMBREBUSQUEDA = ? WHERE " + id + " = ?")) {
+            int desde = 0;
+            int leidas;
+            do {
+                leidas = 0;
+                int pendientes = 0;
+                consulta.setInt(1, desde);
+                try (ResultSet rs = consulta.executeQuery()) {
+                    while (rs.next()) {
+                        leidas++;
+                        desde = rs.getInt(1);
+                        String apellido = Normalizador.normalizar(rs.getString(2));
+                        String nombre = Normalizador.normalizar(rs.getString(3));
+                        if (!Objects.equals(apellido, rs.getString(4)) || !Objects.equals(nombre, rs.getString(5))) {
+                            actualizar.setString(1, apellido);
+                            actualizar.setString(2, nombre);
+                            actualizar.setInt(3, desde);
+                            actualizar.addBatch();
+                            pendientes++;
+                        }
+                    }
+                }
+                if (pendientes > 0) {
+                    actualizar.executeBatch();
+                    actualizadas += pendientes;
+                }
+                conexion.commit();
+            } while (leidas == TAMANO_LOTE);
+        } catch (SQLException ex) {
+            conexion.rollback();
+            throw ex;
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+        return actualizadas;
+    }
+}
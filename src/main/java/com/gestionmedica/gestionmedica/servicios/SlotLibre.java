@@ -0,0 +1,48 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Slot libre encontrado por BuscadorDisponibilidad
+ */
+public class SlotLibre {
+
+    private final Integer medicoId;
+    private final String medico;
+    private final LocalDate fecha;
+    private final int numeroSlot;
+    private final LocalTime hora;
+
+    public SlotLibre(Integer medicoId, String medico, LocalDate fecha, int numeroSlot, LocalTime hora) {
+        this.medicoId = medicoId;
+        this.medico = medico;
+        this.fecha = fecha;
+        this.numeroSlot = numeroSlot;
+        this.hora = hora;
+    }
+
+    public Integer getMedicoId() {
+        return medicoId;
+    }
+
+    public String getMedico() {
+        return medico;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public int getNumeroSlot() {
+        return numeroSlot;
+    }
+
+    public LocalTime getHora() {
+        return hora;
+    }
+
+    public String toString() {
+        return fecha + " " + hora + " (Slot " + numeroSlot + ") - " + medico;
+    }
+}
@@ -0,0 +1,132 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Horario de slots de un turno para una duración de slot dada.
+ *
+ * Inmutable y compartida: hay una sola instancia por (turno, duración),
+ * creada la primera vez que se pide, con las horas de inicio y las
+ * etiquetas ya calculadas. Consultar la hora o la etiqueta de un slot es
+ * leer un array, sin crear objetos.
+ *
+ * Los minutos de inicio se cuentan desde las 00:00 del día de la cita sin
+ * dar la vuelta a medianoche (un slot NOCTURNO de las 00:30 vale 1470), de
+ * modo que ordenan bien; las horas y etiquetas sí dan la vuelta.
+ */
+public final class TablaSlots {
+
+    public static final int DURACION_POR_DEFECTO = 30;
+    public static final int DURACION_MINIMA = 15;
+    public static final int DURACION_MAXIMA = 120;
+    // Con la duración mínima, COMPLETO (12 h) tiene 48 slots: caben en la máscara long de IndiceOcupacion
+    public static final int MAX_SLOTS = IndiceOcupacion.MAX_SLOTS_INDICE;
+
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+
+    // Índices [turno][duración]. Sin sincronizar: dos hilos pueden crear la
+    // misma tabla a la vez pero son iguales, y los campos final garantizan
+    // que quien lea la referencia ve la tabla completa.
+    private static final TablaSlots[][] tablas =
+            new TablaSlots[TurnoTrabajo.values().length][DURACION_MAXIMA + 1];
+
+    private final TurnoTrabajo turno;
+    private final int duracion;
+    private final int[] minutosInicio;
+    private final LocalTime[] horas;
+    private final String[] etiquetas;
+    private final String[] rangos;
+
+    private TablaSlots(TurnoTrabajo turno, int duracion) {
+        this.turno = turno;
+        this.duracion = duracion;
+        int cantidad = turno.getDuracionMinutos() / duracion;
+        minutosInicio = new int[cantidad + 1];
+        horas = new LocalTime[cantidad + 1];
+        etiquetas = new String[cantidad + 1];
+        rangos = new String[cantidad + 1];
+        for (int s = 1; s <= cantidad; s++) {
+            int minutos = turno.getInicioMinutos() + (s - 1) * duracion;
+            minutosInicio[s] = minutos;
+            horas[s] = hora(minutos);
+            etiquetas[s] = horas[s].format(FORMATO_HORA);
+            rangos[s] = etiquetas[s] + " - " + hora(minutos + duracion).format(FORMATO_HORA);
+        }
+    }
+
+    /**
+     * Tabla del turno para la duración de slot dada; null o fuera de rango usa la duración por defecto.
+     */
+    public static TablaSlots de(TurnoTrabajo turno, Integer duracion) {
+        int minutos = duracion == null || !esDuracionValida(duracion) ? DURACION_POR_DEFECTO : duracion;
+        TablaSlots tabla = tablas[turno.ordinal()][minutos];
+        if (tabla == null) {
+            tabla = new TablaSlots(turno, minutos);
+            tablas[turno.ordinal()][minutos] = tabla;
+        }
+        return tabla;
+    }
+
+    public static boolean esDuracionValida(int duracion) {
+        return duracion >= DURACION_MINIMA && duracion <= DURACION_MAXIMA;
+    }
+
+    public TurnoTrabajo getTurno() {
+        return turno;
+    }
+
+    public int getDuracion() {
+        return duracion;
+    }
+
+    public int getCantidad() {
+        return horas.length - 1;
+    }
+
+    public boolean esValido(int slot) {
+        return slot >= 1 && slot < horas.length;
+    }
+
+    public LocalTime getHora(int slot) {
+        return horas[slot];
+    }
+
+    /**
+     * Hora de inicio del slot como "HH:mm"
+     */
+    public String getEtiqueta(int slot) {
+        return etiquetas[slot];
+    }
+
+    /**
+     * "HH:mm - HH:mm"
+     */
+    public String getRango(int slot) {
+        return rangos[slot];
+    }
+
+    public int getMinutoInicio(int slot) {
+        return minutosInicio[slot];
+    }
+
+    /**
+     * Texto con todos los slots, marcando los ocupados según la máscara (bit s-1 para el slot s)
+     */
+    public String construirTexto(long ocupados) {
+        StringBuilder sb = new StringBuilder(getCantidad() * 32);
+        for (int s = 1; s < rangos.length; s++) {
+            if (s > 1)
+                sb.append('\n');
+            sb.append("Slot ").append(s).append(": ").append(rangos[s]);
+            if ((ocupados & (1L << (s - 1))) != 0)
+                sb.append(" (ocupado)");
+        }
+        return sb.toString();
+    }
+
+    private static LocalTime hora(int minutos) {
+        return LocalTime.ofSecondOfDay((minutos % (24 * 60)) * 60L);
+    }
+}
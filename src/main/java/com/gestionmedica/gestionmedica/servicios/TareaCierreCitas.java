@@ -0,0 +1,94 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+
+/**
+ * Ejecución programada de CierreCitasVencidas (ver InicioAplicacion).
+ * Cada ejecución registra las citas cerradas y su duración en las métricas
+ * (cierreCitas/filas y cierreCitas/duracion.ms) y en el log.
+ *
+ * Todos los nodos la programan a la misma hora, pero solo la ejecuta el que
+ * toma la fila de BLOQUEOTAREA; los demás se la saltan. La fila queda
+ * tomada DURACION_BLOQUEO_MS, también tras terminar, para que un nodo algo
+ * más lento no repita la ejecución; solo se suelta si el cierre falla, así
+ * otro nodo puede reintentarlo (p. ej. al arrancar).
+ */
+public class TareaCierreCitas implements Runnable {
+
+    private static final Logger log = Logger.getLogger(TareaCierreCitas.class.getName());
+
+    public static final String NOMBRE_BLOQUEO = "cierreCitas";
+    private static final long DURACION_BLOQUEO_MS = 60 * 60_000;
+
+    private final DataSource dataSource;
+
+    public TareaCierreCitas(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void run() {
+        long inicio = System.currentTimeMillis();
+        // Las excepciones no deben escapar: cancelarían las siguientes ejecuciones
+        try (Connection conexion = dataSource.getConnection()) {
+            if (!bloquear(conexion)) {
+                log.info("Cierre de citas vencidas tomado por otro nodo: se omite");
+                return;
+            }
+            int cerradas;
+            try {
+                cerradas = new CierreCitasVencidas(conexion).cerrar();
+            } catch (SQLException | RuntimeException ex) {
+                desbloquear(conexion);
+                throw ex;
+            }
+            long milisegundos = System.currentTimeMillis() - inicio;
+            Metricas.registrar("cierreCitas/filas", cerradas);
+            Metricas.registrar("cierreCitas/duracion.ms", milisegundos);
+            log.info("Citas vencidas cerradas: " + cerradas + " en " + milisegundos + " ms");
+        } catch (Exception ex) {
+            log.log(Level.SEVERE, "Error cerrando las citas vencidas", ex);
+        }
+    }
+
+    /**
+     * Toma la fila de BLOQUEOTAREA si está libre o caducada; retorna si la tomó.
+     */
+    private static boolean bloquear(Connection conexion) throws SQLException {
+        long ahora = System.currentTimeMillis();
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "UPDATE BLOQUEOTAREA SET NODO = ?, HASTA = ? WHERE NOMBRE = ? AND HASTA < ?")) {
+            ps.setString(1, BusInvalidacion.NODO);
+            ps.setTimestamp(2, new Timestamp(ahora + DURACION_BLOQUEO_MS));
+            ps.setString(3, NOMBRE_BLOQUEO);
+            ps.setTimestamp(4, new Timestamp(ahora));
+            int tomada = ps.executeUpdate();
+            if (!conexion.getAutoCommit()) {
+                conexion.commit();
+            }
+            return tomada > 0;
+        }
+    }
+
+    private static void desbloquear(Connection conexion) {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "UPDATE BLOQUEOTAREA SET HASTA = ? WHERE NOMBRE = ? AND NODO = ?")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            ps.setString(2, NOMBRE_BLOQUEO);
+            ps.setString(3, BusInvalidacion.NODO);
+            ps.executeUpdate();
+            if (!conexion.getAutoCommit()) {
+                conexion.commit();
+            }
+        } catch (SQLException ex) {
+            // La fila caduca sola tras DURACION_BLOQUEO_MS
+            log.log(Level.WARNING, "No se pudo soltar el bloqueo del cierre de citas", ex);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.util.function.Consumer;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Acciones que se ejecutan al terminar la transacción de la sesión JPA en
+ * curso, para que las cachés en memoria solo reflejen lo que la base de
+ * datos confirmó. No deben lanzar excepciones: Hibernate dejaría sin
+ * ejecutar las siguientes.
+ */
+public class TrasTransaccion {
+
+    /**
+     * accion recibe true si la transacción se confirmó y false si se deshizo.
+     */
+    public static void alTerminar(Consumer<Boolean> accion) {
+        XPersistence.getManager().unwrap(SessionImplementor.class).getActionQueue()
+                .registerProcess((confirmada, sesion) -> accion.accept(confirmada));
+    }
+
+    public static void alConfirmar(Runnable accion) {
+        alTerminar(confirmada -> {
+            if (confirmada) {
+                accion.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reconstruye AgendaDiaria desde cero a partir de CITA y CITAHISTORICA y la
+ * compara con la mantenida por ActualizadorAgenda, informando cada
+ * (médico, fecha) que no coincida. Opcionalmente la repara.
+ *
+ * Las citas archivadas siguen contando: la agenda es el registro del día.
+ */
+public class VerificadorAgenda {
+
+    // La máscara se obtiene sumando 2^(slot-1): los slots activos de un día no se repiten
+    // (restricción única de Cita) y con 48 slots como mucho el double es exacto
+    private static final String SQL_ESPERADA = esperada("");
+
+    private static final String SQL_ESPERADA_DIA =
+            esperada(" WHERE MEDICO_IDMEDICO = ? AND FECHACITA = ?");
+
+    private static final String SQL_DIFERENCIAS =
+            "SELECT COALESCE(E.MEDICO, A.MEDICO_IDMEDICO), COALESCE(E.FECHA, A.FECHA), " +
+            "COALESCE(E.SLOTS, 0), COALESCE(A.SLOTSOCUPADOS, 0), " +
+            "COALESCE(E.REGISTRADAS, 0), COALESCE(A.REGISTRADAS, 0), " +
+            "COALESCE(E.ATENDIDAS, 0), COALESCE(A.ATENDIDAS, 0), " +
+            "COALESCE(E.CANCELADAS, 0), COALESCE(A.CANCELADAS, 0), " +
+            "COALESCE(E.NOASISTIDAS, 0), COALESCE(A.NOASISTIDAS, 0) " +
+            "FROM (" + SQL_ESPERADA + ") E FULL OUTER JOIN AGENDADIARIA A " +
+            "ON A.MEDICO_IDMEDICO = E.MEDICO AND A.FECHA = E.FECHA " +
+            "WHERE COALESCE(E.SLOTS, 0) <> COALESCE(A.SLOTSOCUPADOS, 0) " +
+            "OR COALESCE(E.REGISTRADAS, 0) <> COALESCE(A.REGISTRADAS, 0) " +
+            "OR COALESCE(E.ATENDIDAS, 0) <> COALESCE(A.ATENDIDAS, 0) " +
+            "OR COALESCE(E.CANCELADAS, 0) <> COALESCE(A.CANCELADAS, 0) " +
+            "OR COALESCE(E.NOASISTIDAS, 0) <> COALESCE(A.NOASISTIDAS, 0) " +
+            "ORDER BY 2, 1";
+
+    // Se guardan como mucho estas diferencias en el informe; el resto solo se cuentan
+    private static final int MAX_DIFERENCIAS = 1000;
+
+    private final Connection conexion;
+    private int totalDiferencias;
+
+    public VerificadorAgenda(Connection conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Retorna las diferencias encontradas (hasta MAX_DIFERENCIAS). Si reparar
+     * es true y hay alguna, reescribe la agenda completa con la reconstruida.
+     */
+    public List<String> verificar(boolean reparar) throws SQLException {
+        List<String> diferencias = new ArrayList<>();
+        totalDiferencias = 0;
+        try (Statement st = conexion.createStatement();
+                ResultSet rs = st.executeQuery(SQL_DIFERENCIAS)) {
+            while (rs.next()) {
+                totalDiferencias++;
+                if (diferencias.size() < MAX_DIFERENCIAS) {
+                    diferencias.add(String.format(
+                            "Médico %d, %s: slots %s/%s, registradas %d/%d, atendidas %d/%d, canceladas %d/%d, " +
+                            "no asistidas %d/%d (esperado/agenda)",
+                            rs.getInt(1), rs.getDate(2),
+                            Long.toBinaryString(rs.getLong(3)), Long.toBinaryString(rs.getLong(4)),
+                            rs.getInt(5), rs.getInt(6), rs.getInt(7), rs.getInt(8), rs.getInt(9), rs.getInt(10),
+                            rs.getInt(11), rs.getInt(12)));
+                }
+            }
+        }
+        if (reparar && totalDiferencias > 0) {
+            reconstruir();
+        }
+        return diferencias;
+    }
+
+    public int getTotalDiferencias() {
+        return totalDiferencias;
+    }
+
+    /**
+     * Borra la agenda y la vuelve a generar desde las citas, en una transacción.
+     */
+    public void reconstruir() throws SQLException {
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        try (Statement st = conexion.createStatement()) {
+            st.executeUpdate("DELETE FROM AGENDADIARIA");
+            st.executeUpdate("INSERT INTO AGENDADIARIA " +
+                    "(MEDICO_IDMEDICO, FECHA, SLOTSOCUPADOS, REGISTRADAS, ATENDIDAS, CANCELADAS, NOASISTIDAS) " +
+                    "SELECT MEDICO, FECHA, SLOTS, REGISTRADAS, ATENDIDAS, CANCELADAS, NOASISTIDAS " +
+                    "FROM (" + SQL_ESPERADA + ") E");
+            conexion.commit();
+        } catch (SQLException ex) {
+            conexion.rollback();
+            throw ex;
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Vuelve a generar desde las citas solo la agenda de las fechas de cada
+     * médico, en una transacción (p. ej. tras una importación por JDBC).
+     */
+    public void reconstruir(Map<Integer, ? extends Collection<LocalDate>> fechasPorMedico) throws SQLException {
+        if (fechasPorMedico.isEmpty()) {
+            return;
+        }
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        try (PreparedStatement borrar = conexion.prepareStatement(
+                        "DELETE FROM AGENDADIARIA WHERE MEDICO_IDMEDICO = ? AND FECHA = ?");
+                PreparedStatement insertar = conexion.prepareStatement("INSERT INTO AGENDADIARIA " +
+                        "(MEDICO_IDMEDICO, FECHA, SLOTSOCUPADOS, REGISTRADAS, ATENDIDAS, CANCELADAS, NOASISTIDAS) " +
+                        "SELECT MEDICO, FECHA, SLOTS, REGISTRADAS, ATENDIDAS, CANCELADAS, NOASISTIDAS " +
+                        "FROM (" + SQL_ESPERADA_DIA + ") E")) {
+            for (Map.Entry<Integer, ? extends Collection<LocalDate>> medico : fechasPorMedico.entrySet()) {
+                for (LocalDate fecha : medico.getValue()) {
+                    borrar.setInt(1, medico.getKey());
+                    borrar.setDate(2, Date.valueOf(fecha));
+                    borrar.addBatch();
+                    for (int i = 0; i < 2; i++) {
+                        insertar.setInt(2 * i + 1, medico.getKey());
+                        insertar.setDate(2 * i + 2, Date.valueOf(fecha));
+                    }
+                    insertar.addBatch();
+                }
+            }
+            borrar.executeBatch();
+            insertar.executeBatch();
+            conexion.commit();
+        } catch (SQLException ex) {
+            conexion.rollback();
+            throw ex;
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Agenda reconstruida desde CITA y CITAHISTORICA, con el filtro aplicado a ambas
+    private static String esperada(String filtro) {
+        return "SELECT MEDICO_IDMEDICO AS MEDICO, FECHACITA AS FECHA, " +
+                "SUM(CASE WHEN ESTADO <> 'CANCELADA' THEN CAST(POWER(2, NUMEROSLOT - 1) AS BIGINT) ELSE 0 END) AS SLOTS, " +
+                "SUM(CASE WHEN ESTADO = 'REGISTRADA' THEN 1 ELSE 0 END) AS REGISTRADAS, " +
+                "SUM(CASE WHEN ESTADO = 'ATENDIDA' THEN 1 ELSE 0 END) AS ATENDIDAS, " +
+                "SUM(CASE WHEN ESTADO = 'CANCELADA' THEN 1 ELSE 0 END) AS CANCELADAS, " +
+                "SUM(CASE WHEN ESTADO = 'NO_ASISTIO' THEN 1 ELSE 0 END) AS NOASISTIDAS " +
+                "FROM (SELECT MEDICO_IDMEDICO, FECHACITA, ESTADO, NUMEROSLOT FROM CITA" + filtro +
+                " UNION ALL SELECT MEDICO_IDMEDICO, FECHACITA, ESTADO, NUMEROSLOT FROM CITAHISTORICA" + filtro +
+                ") C GROUP BY MEDICO_IDMEDICO, FECHACITA";
+    }
+}
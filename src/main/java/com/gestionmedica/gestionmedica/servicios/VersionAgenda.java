@@ -0,0 +1,161 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Versión monótona de la agenda para /agenda (AgendaServlet).
+ *
+ * Cada transacción que cambia citas toma una versión nueva de CONTADORAGENDA
+ * y la pone en CITA.VERSIONAGENDA de las citas que escribe; un borrado solo
+ * la toma. Los callbacks de Cita y Paciente marcan lo que cambió y la
+ * versión se asigna justo antes del commit, después del último flush, con
+ * un UPDATE por cita. Las escrituras JDBC masivas (CierreCitasVencidas,
+ * ImportadorCitas) la toman con tomar() al final de cada lote y la pasan
+ * como parámetro de sus sentencias.
+ *
+ * Tomarla es un UPDATE de la única fila de CONTADORAGENDA, que queda
+ * bloqueada hasta el commit o el rollback, con LOCKS y con MVCC. Así las
+ * versiones se confirman en orden: si una lectura ve una cita con versión
+ * v, todas las transacciones con versión menor ya terminaron, y un cliente
+ * que sincroniza desde v no se salta ninguna. Como se toma al final, las
+ * transacciones solo se esperan entre sí durante su commit, no mientras
+ * validan y reservan slots.
+ */
+public class VersionAgenda {
+
+    // La versión actual se lee como mucho una vez por este intervalo
+    private static final long VIGENCIA_MS = 1000;
+
+    // Al cambiar el nombre de un paciente se renuevan sus citas desde hace estos días
+    private static final int DIAS_ATRAS_PACIENTE = 14;
+
+    // Lo que la transacción JPA del hilo marcó, pendiente de versión
+    private static final ThreadLocal<Marcas> marcas = new ThreadLocal<>();
+
+    private static volatile long versionLeida = -1;
+    private static volatile long leidaEn;
+
+    /**
+     * La cita recibe la versión de la transacción en curso al confirmarse.
+     */
+    public static void marcarCita(Integer idCita) {
+        marcas().citas.add(idCita);
+    }
+
+    /**
+     * La transacción en curso borró una cita: no hay fila que marcar, pero la
+     * versión avanza para que cambie la ETag de la agenda.
+     */
+    public static void marcarBorrado() {
+        marcas();
+    }
+
+    /**
+     * Las citas recientes y futuras del paciente, que muestran su nombre en
+     * la agenda, reciben la versión de la transacción en curso al confirmarse.
+     */
+    public static void marcarPaciente(Integer idPaciente) {
+        marcas().pacientes.add(idPaciente);
+    }
+
+    private static Marcas marcas() {
+        SessionImplementor sesion = XPersistence.getManager().unwrap(SessionImplementor.class);
+        Marcas actuales = marcas.get();
+        // Una sesión que se cerró sin terminar su transacción no llega a asignarlas
+        if (actuales == null || actuales.sesion != sesion) {
+            Marcas nuevas = new Marcas(sesion);
+            sesion.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) s -> asignar(s, nuevas));
+            marcas.set(nuevas);
+            TrasTransaccion.alTerminar(confirmada -> marcas.remove());
+            actuales = nuevas;
+        }
+        return actuales;
+    }
+
+    // Antes del commit y después del último flush: el contador queda bloqueado solo hasta el commit
+    private static void asignar(SessionImplementor sesion, Marcas pendientes) {
+        sesion.doWork(conexion -> {
+            long version = tomar(conexion);
+            if (!pendientes.citas.isEmpty()) {
+                try (PreparedStatement ps = conexion.prepareStatement(
+                        "UPDATE CITA SET VERSIONAGENDA = ? WHERE IDCITA = ?")) {
+                    for (Integer idCita : pendientes.citas) {
+                        ps.setLong(1, version);
+                        ps.setInt(2, idCita);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            if (!pendientes.pacientes.isEmpty()) {
+                try (PreparedStatement ps = conexion.prepareStatement(
+                        "UPDATE CITA SET VERSIONAGENDA = ? WHERE PACIENTE_IDPACIENTE = ? AND FECHACITA >= ?")) {
+                    for (Integer idPaciente : pendientes.pacientes) {
+                        ps.setLong(1, version);
+                        ps.setInt(2, idPaciente);
+                        ps.setDate(3, Date.valueOf(LocalDate.now().minusDays(DIAS_ATRAS_PACIENTE)));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+        });
+    }
+
+    /**
+     * Nueva versión en la transacción de la conexión, que no debe estar en
+     * autocommit: la fila del contador queda bloqueada hasta que termine.
+     */
+    public static long tomar(Connection conexion) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "UPDATE CONTADORAGENDA SET VERSION = VERSION + 1 WHERE ID = 1")) {
+            ps.executeUpdate();
+        }
+        return leer(conexion);
+    }
+
+    /**
+     * Última versión confirmada (0 si ninguna). Se reutiliza durante VIGENCIA_MS.
+     */
+    public static long actual(Connection conexion) throws SQLException {
+        long ahora = System.currentTimeMillis();
+        if (versionLeida >= 0 && ahora - leidaEn < VIGENCIA_MS) {
+            return versionLeida;
+        }
+        long version = leer(conexion);
+        leidaEn = ahora;
+        versionLeida = version;
+        return version;
+    }
+
+    private static long leer(Connection conexion) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement("SELECT VERSION FROM CONTADORAGENDA WHERE ID = 1");
+                ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Citas y pacientes que cambiaron en la transacción de una sesión
+     */
+    private static class Marcas {
+
+        final SessionImplementor sesion;
+        final Set<Integer> citas = new LinkedHashSet<>();
+        final Set<Integer> pacientes = new LinkedHashSet<>();
+
+        Marcas(SessionImplementor sesion) {
+            this.sesion = sesion;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.gestionmedica.gestionmedica.validadores;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Primitivas de validación por recorrido de caracteres, sin expresiones
+ * regulares ni asignaciones, y validación por lotes.
+ * Las usan los validadores para no compilar un Pattern en cada llamada.
+ */
+public class MotorValidacion {
+
+    /**
+     * Equivale a valor.matches("^\\d{n}$"): exactamente n dígitos ASCII.
+     */
+    public static boolean sonDigitos(String valor, int n) {
+        if (valor == null || valor.length() != n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            char c = valor.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Equivale a valor.matches("^[a-záéíóúñA-ZÁÉÍÓÚÑ\\s]+$").
+     */
+    public static boolean sonLetrasOEspacios(String valor) {
+        if (valor == null || valor.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < valor.length(); i++) {
+            if (!esLetraOEspacio(valor.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indica si la cadena está vacía tras quitar los espacios, como trim().isEmpty().
+     */
+    public static boolean estaEnBlanco(String valor) {
+        for (int i = 0; i < valor.length(); i++) {
+            if (valor.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Valida un lote de valores sin lanzar excepciones.
+     * Retorna las posiciones (ascendentes) de los valores que no cumplen la regla.
+     */
+    public static int[] posicionesInvalidas(String[] valores, Predicate<String> regla) {
+        int[] posiciones = new int[valores.length];
+        int invalidos = 0;
+        for (int i = 0; i < valores.length; i++) {
+            if (!regla.test(valores[i])) {
+                posiciones[invalidos++] = i;
+            }
+        }
+        return invalidos == posiciones.length ? posiciones : Arrays.copyOf(posiciones, invalidos);
+    }
+
+    private static boolean esLetraOEspacio(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return true;
+        }
+        switch (c) {
+            // á é í ó ú ñ Á É Í Ó Ú Ñ (escapados para no depender de la codificación del fuente)
+            case '\u00e1': case '\u00e9': case '\u00ed': case '\u00f3': case '\u00fa': case '\u00f1':
+            case '\u00c1': case '\u00c9': case '\u00cd': case '\u00d3': case '\u00da': case '\u00d1':
+            // \s de java.util.regex: [ \t\n\x0B\f\r]
+            case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
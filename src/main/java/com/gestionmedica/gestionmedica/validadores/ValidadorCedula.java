@@ -10,6 +10,14 @@ public class ValidadorCedula {
         if (cedula == null) {
             return false;
         }
-        return cedula.matches("^\\d{10}$");
+        return MotorValidacion.sonDigitos(cedula, 10);
+    }
+    
+    /**
+     * Valida un lote de cédulas (p. ej. la columna de un bloque importado).
+     * Retorna las posiciones de las no válidas.
+     */
+    public static int[] posicionesInvalidas(String[] cedulas) {
+        return MotorValidacion.posicionesInvalidas(cedulas, ValidadorCedula::esValida);
     }
 }
@@ -11,7 +11,7 @@ public class ValidadorEstadoCita {
     
     /**
      * Verifica si la transición de estado es válida.
-     * Estados permitidos: REGISTRADA -> ATENDIDA o CANCELADA (una sola vez)
+     * Estados permitidos: REGISTRADA -> ATENDIDA, CANCELADA o NO_ASISTIO (una sola vez)
      */
     public static boolean esTransicionValida(EstadoCita estadoAnterior, EstadoCita estadoNuevo) {
         if (estadoAnterior == null) {
@@ -19,10 +19,11 @@ public class ValidadorEstadoCita {
         }
         
         if (estadoAnterior == EstadoCita.REGISTRADA) {
-            return estadoNuevo == EstadoCita.ATENDIDA || estadoNuevo == EstadoCita.CANCELADA;
+            return estadoNuevo == EstadoCita.ATENDIDA || estadoNuevo == EstadoCita.CANCELADA ||
+                    estadoNuevo == EstadoCita.NO_ASISTIO;
         }
         
-        // No se permite cambiar de ATENDIDA o CANCELADA a otro estado
+        // No se permite cambiar de ATENDIDA, CANCELADA o NO_ASISTIO a otro estado
         return false;
     }
     
@@ -7,9 +7,16 @@ package com.gestionmedica.gestionmedica.validadores;
 public class ValidadorNombre {
     
     public static boolean esValido(String nombre) {
-        if (nombre == null || nombre.trim().isEmpty()) {
+        if (nombre == null || MotorValidacion.estaEnBlanco(nombre)) {
             return false;
         }
-        return nombre.matches("^[a-záéíóúñA-ZÁÉÍÓÚÑ\\s]+$");
+        return MotorValidacion.sonLetrasOEspacios(nombre);
+    }
+    
+    /**
+     * Valida un lote de nombres. Retorna las posiciones de los no válidos.
+     */
+    public static int[] posicionesInvalidas(String[] nombres) {
+        return MotorValidacion.posicionesInvalidas(nombres, ValidadorNombre::esValido);
     }
 }
@@ -10,6 +10,13 @@ public class ValidadorTelefono {
         if (telefono == null) {
             return false;
         }
-        return telefono.matches("^\\d{10}$");
+        return MotorValidacion.sonDigitos(telefono, 10);
+    }
+    
+    /**
+     * Valida un lote de teléfonos. Retorna las posiciones de los no válidos.
+     */
+    public static int[] posicionesInvalidas(String[] telefonos) {
+        return MotorValidacion.posicionesInvalidas(telefonos, ValidadorTelefono::esValido);
     }
 }
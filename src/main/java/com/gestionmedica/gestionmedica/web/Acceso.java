@@ -0,0 +1,16 @@
+package com.gestionmedica.gestionmedica.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Control de acceso de los servlets propios, que quedan fuera de los
+ * módulos de OpenXava: exige la sesión iniciada en NaviOX.
+ */
+public class Acceso {
+
+    public static boolean estaAutenticado(HttpServletRequest request) {
+        HttpSession sesion = request.getSession(false);
+        return sesion != null && sesion.getAttribute("naviox.user") != null;
+    }
+}
@@ -0,0 +1,360 @@
+package com.gestionmedica.gestionmedica.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hibernate.Session;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+import com.gestionmedica.gestionmedica.servicios.ConsultaAgenda.CitaAgenda;
+import com.gestionmedica.gestionmedica.servicios.ConsultaAgenda.ResumenDia;
+
+/**
+ * Agenda de uno o varios médicos en JSON, para pantallas de sala de espera
+ * y otros clientes que la consultan a menudo:
+ * GET /agenda?medico=id[,id...][&desde=aaaa-mm-dd][&dias=n][&since=version]
+ *
+ * Por defecto la semana en curso (de lunes a domingo). Los días llevan el
+ * turno del horario activo con sus slots (CacheHorarios) y las citas, de
+ * cualquier estado, su hora. "version" es la mayor de las citas del rango;
+ * con since=version en la siguiente petición solo van las citas cambiadas
+ * después. Los borrados no llegan como citas: se ven en el número de citas
+ * de cada día.
+ *
+ * La ETag identifica el contenido y vale para ambos modos: con If-None-Match
+ * la respuesta es 304 si nada cambió. Las respuestas completas se guardan
+ * por médicos y rango, y mientras la versión de la agenda (VersionAgenda)
+ * no cambie no se consulta CITA.
+ */
+public class AgendaServlet extends HttpServlet {
+
+    private static final int MAX_MEDICOS = 50;
+    private static final int MAX_DIAS = 14;
+    private static final int MAX_RESPUESTAS = 500;
+    // Pasado este tiempo se vuelve a resumir CITA aunque la versión no cambie
+    private static final long EDAD_MAXIMA_MS = 60_000;
+
+    private static final Map<String, Respuesta> respuestas =
+            new LinkedHashMap<String, Respuesta>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Respuesta> mayor) {
+                    return size() > MAX_RESPUESTAS;
+                }
+            };
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Acceso.estaAutenticado(request)) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        List<Integer> medicos;
+        LocalDate desde;
+        int dias;
+        Long since;
+        try {
+            medicos = medicos(request.getParameterValues("medico"));
+            String valor = request.getParameter("dias");
+            dias = valor == null || valor.isEmpty() ? 7 : Integer.parseInt(valor);
+            valor = request.getParameter("desde");
+            desde = valor == null || valor.isEmpty() ?
+                    LocalDate.now().with(DayOfWeek.MONDAY) : LocalDate.parse(valor);
+            valor = request.getParameter("since");
+            since = valor == null || valor.isEmpty() ? null : Long.valueOf(valor);
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+            return;
+        }
+        if (medicos.isEmpty() || medicos.size() > MAX_MEDICOS || dias < 1 || dias > MAX_DIAS) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Hay que indicar entre 1 y " + MAX_MEDICOS + " médicos y entre 1 y " + MAX_DIAS + " días");
+            return;
+        }
+
+        Respuesta respuesta;
+        String cuerpo;
+        try {
+            Plantilla plantilla = Plantilla.de(medicos, desde, dias);
+            if (plantilla == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "Médico no encontrado");
+                return;
+            }
+            Session sesion = XPersistence.getManager().unwrap(Session.class);
+            respuesta = sesion.doReturningWork(conexion -> obtener(conexion, plantilla));
+            if (coincide(request.getHeader("If-None-Match"), respuesta.etag)) {
+                Metricas.registrar("agenda/noModificadas", 1);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                response.setHeader("ETag", respuesta.etag);
+                return;
+            }
+            cuerpo = since == null ? respuesta.cuerpo :
+                    sesion.doReturningWork(conexion -> cambios(conexion, plantilla, respuesta, since));
+        } finally {
+            XPersistence.commit();
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("ETag", respuesta.etag);
+        // Se puede guardar pero hay que revalidar siempre con If-None-Match
+        response.setHeader("Cache-Control", "private, no-cache");
+        response.getWriter().print(cuerpo);
+    }
+
+    /**
+     * Respuesta completa guardada si sigue valiendo; si no, resume CITA y
+     * solo vuelve a leer las citas cuando el resumen cambió.
+     */
+    private static Respuesta obtener(Connection conexion, Plantilla plantilla) throws SQLException {
+        long version = VersionAgenda.actual(conexion);
+        Respuesta guardada;
+        synchronized (respuestas) {
+            guardada = respuestas.get(plantilla.clave);
+        }
+        long ahora = System.currentTimeMillis();
+        if (guardada != null && guardada.version == version && guardada.huella.equals(plantilla.huella) &&
+                ahora - guardada.calculadaEn < EDAD_MAXIMA_MS) {
+            return guardada;
+        }
+
+        ConsultaAgenda consulta = new ConsultaAgenda(conexion);
+        List<ResumenDia> resumen = consulta.resumir(plantilla.medicos, plantilla.desde, plantilla.hasta);
+        String medicosJson = plantilla.medicosJson(resumen);
+        StringBuilder versiones = new StringBuilder(medicosJson);
+        long versionMayor = 0;
+        for (ResumenDia dia : resumen) {
+            versiones.append('|').append(dia.getMedicoId()).append(' ').append(dia.getFecha())
+                    .append(' ').append(dia.getVersion());
+            versionMayor = Math.max(versionMayor, dia.getVersion());
+        }
+        String etag = etag(versiones.toString());
+
+        Respuesta respuesta;
+        if (guardada != null && guardada.etag.equals(etag)) {
+            respuesta = new Respuesta(version, ahora, plantilla.huella, etag, medicosJson, versionMayor,
+                    guardada.cuerpo);
+        } else {
+            Metricas.registrar("agenda/lecturasCitas", 1);
+            List<CitaAgenda> citas = consulta.citas(plantilla.medicos, plantilla.desde, plantilla.hasta, -1);
+            respuesta = new Respuesta(version, ahora, plantilla.huella, etag, medicosJson, versionMayor,
+                    plantilla.cuerpo(versionMayor, true, medicosJson, citas));
+        }
+        synchronized (respuestas) {
+            respuestas.put(plantilla.clave, respuesta);
+        }
+        return respuesta;
+    }
+
+    private static String cambios(Connection conexion, Plantilla plantilla, Respuesta respuesta, long since)
+            throws SQLException {
+        List<CitaAgenda> citas = new ArrayList<>();
+        if (since < respuesta.versionMayor) {
+            Metricas.registrar("agenda/lecturasCitas", 1);
+            citas = new ConsultaAgenda(conexion).citas(plantilla.medicos, plantilla.desde, plantilla.hasta, since);
+        }
+        return plantilla.cuerpo(respuesta.versionMayor, false, respuesta.medicosJson, citas);
+    }
+
+    private static List<Integer> medicos(String[] valores) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        if (valores != null) {
+            for (String valor : valores) {
+                for (String id : valor.split(",")) {
+                    if (!id.trim().isEmpty()) {
+                        ids.add(Integer.valueOf(id.trim()));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String valor : ifNoneMatch.split(",")) {
+            String v = valor.trim();
+            if (v.equals("*") || v.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String etag(String contenido) {
+        try {
+            byte[] resumen = MessageDigest.getInstance("SHA-256").digest(contenido.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", resumen[i]));
+            }
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Médicos y días pedidos con el turno de cada día, todo de cachés en memoria.
+     * La huella cambia si cambia el nombre, la especialidad o el horario.
+     */
+    private static final class Plantilla {
+
+        private final List<Integer> medicos;
+        private final LocalDate desde;
+        private final LocalDate hasta;
+        private final String clave;
+        private final List<Medico> entidades = new ArrayList<>();
+        // [médico][día], null si ese día no tiene horario activo
+        private final TablaSlots[][] tablas;
+        private String huella;
+
+        private Plantilla(List<Integer> medicos, LocalDate desde, int dias) {
+            this.medicos = medicos;
+            this.desde = desde;
+            this.hasta = desde.plusDays(dias - 1);
+            this.clave = medicos + " " + desde + " " + dias;
+            this.tablas = new TablaSlots[medicos.size()][dias];
+        }
+
+        static Plantilla de(List<Integer> medicos, LocalDate desde, int dias) {
+            Plantilla plantilla = new Plantilla(medicos, desde, dias);
+            StringBuilder huella = new StringBuilder();
+            for (int m = 0; m < medicos.size(); m++) {
+                Medico medico = XPersistence.getManager().find(Medico.class, medicos.get(m));
+                if (medico == null) {
+                    return null;
+                }
+                plantilla.entidades.add(medico);
+                Especialidad especialidad = medico.getEspecialidad();
+                Integer duracion = especialidad == null ? null : especialidad.getDuracionSlotMinutos();
+                huella.append(medico.getNombre()).append(' ').append(medico.getApellido()).append(' ')
+                        .append(especialidad == null ? "" : especialidad.getNombre()).append(':');
+                for (int d = 0; d < dias; d++) {
+                    TurnoTrabajo turno = CacheHorarios.getTurnoActivo(medico.getIdMedico(),
+                            DiaSemana.desdeFecha(desde.plusDays(d)));
+                    plantilla.tablas[m][d] = turno == null ? null : TablaSlots.de(turno, duracion);
+                    huella.append(turno == null ? "-" : turno.name() + "/" + plantilla.tablas[m][d].getDuracion())
+                            .append(' ');
+                }
+                huella.append('|');
+            }
+            plantilla.huella = huella.toString();
+            return plantilla;
+        }
+
+        String medicosJson(List<ResumenDia> resumen) {
+            int dias = tablas.length == 0 ? 0 : tablas[0].length;
+            int[][] citas = new int[medicos.size()][dias];
+            for (ResumenDia dia : resumen) {
+                int d = (int) (dia.getFecha().toEpochDay() - desde.toEpochDay());
+                citas[medicos.indexOf(dia.getMedicoId())][d] = dia.getCitas();
+            }
+            StringBuilder sb = new StringBuilder("[");
+            for (int m = 0; m < medicos.size(); m++) {
+                Medico medico = entidades.get(m);
+                Especialidad especialidad = medico.getEspecialidad();
+                if (m > 0) sb.append(',');
+                sb.append("{\"id\":").append(medico.getIdMedico())
+                        .append(",\"nombre\":").append(Json.texto(medico.getNombre()))
+                        .append(",\"apellido\":").append(Json.texto(medico.getApellido()))
+                        .append(",\"especialidad\":").append(Json.texto(especialidad == null ? null : especialidad.getNombre()))
+                        .append(",\"dias\":[");
+                for (int d = 0; d < dias; d++) {
+                    TablaSlots tabla = tablas[m][d];
+                    if (d > 0) sb.append(',');
+                    sb.append("{\"fecha\":\"").append(desde.plusDays(d)).append('"');
+                    if (tabla == null) {
+                        sb.append(",\"turno\":null");
+                    } else {
+                        sb.append(",\"turno\":\"").append(tabla.getTurno()).append('"')
+                                .append(",\"duracionSlot\":").append(tabla.getDuracion())
+                                .append(",\"slots\":[");
+                        for (int s = 1; s <= tabla.getCantidad(); s++) {
+                            if (s > 1) sb.append(',');
+                            sb.append('"').append(tabla.getEtiqueta(s)).append('"');
+                        }
+                        sb.append(']');
+                    }
+                    sb.append(",\"citas\":").append(citas[m][d]).append('}');
+                }
+                sb.append("]}");
+            }
+            return sb.append(']').toString();
+        }
+
+        String cuerpo(long version, boolean completa, String medicosJson, List<CitaAgenda> citas) {
+            StringBuilder sb = new StringBuilder(256 + citas.size() * 160);
+            sb.append("{\"version\":").append(version)
+                    .append(",\"completa\":").append(completa)
+                    .append(",\"desde\":\"").append(desde)
+                    .append("\",\"hasta\":\"").append(hasta)
+                    .append("\",\"medicos\":").append(medicosJson)
+                    .append(",\"citas\":[");
+            for (int i = 0; i < citas.size(); i++) {
+                CitaAgenda cita = citas.get(i);
+                TablaSlots tabla = tablas[medicos.indexOf(cita.getMedicoId())]
+                        [(int) (cita.getFecha().toEpochDay() - desde.toEpochDay())];
+                String hora = cita.getHoraInicio() != null ? cita.getHoraInicio().toString() :
+                        tabla != null && tabla.esValido(cita.getNumeroSlot()) ?
+                                tabla.getEtiqueta(cita.getNumeroSlot()) : null;
+                if (i > 0) sb.append(',');
+                sb.append("{\"id\":").append(cita.getIdCita())
+                        .append(",\"medico\":").append(cita.getMedicoId())
+                        .append(",\"fecha\":\"").append(cita.getFecha())
+                        .append("\",\"slot\":").append(cita.getNumeroSlot())
+                        .append(",\"hora\":").append(Json.texto(hora))
+                        .append(",\"estado\":\"").append(cita.getEstado())
+                        .append("\",\"paciente\":{\"id\":").append(cita.getIdPaciente())
+                        .append(",\"nombre\":").append(Json.texto(cita.getNombrePaciente()))
+                        .append(",\"apellido\":").append(Json.texto(cita.getApellidoPaciente()))
+                        .append("},\"version\":").append(cita.getVersion()).append('}');
+            }
+            return sb.append("]}").toString();
+        }
+    }
+
+    /**
+     * Respuesta completa guardada para unos médicos y rango
+     */
+    private static final class Respuesta {
+
+        final long version;
+        final long calculadaEn;
+        final String huella;
+        final String etag;
+        final String medicosJson;
+        // Versión mayor entre las citas del rango: con since igual o mayor no hay cambios
+        final long versionMayor;
+        final String cuerpo;
+
+        Respuesta(long version, long calculadaEn, String huella, String etag, String medicosJson,
+                long versionMayor, String cuerpo) {
+            this.version = version;
+            this.calculadaEn = calculadaEn;
+            this.huella = huella;
+            this.etag = etag;
+            this.medicosJson = medicosJson;
+            this.versionMayor = versionMayor;
+            this.cuerpo = cuerpo;
+        }
+    }
+}
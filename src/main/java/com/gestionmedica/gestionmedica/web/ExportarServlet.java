@@ -0,0 +1,70 @@
+package com.gestionmedica.gestionmedica.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.exportacion.*;
+
+/**
+ * Exportación en streaming de listados grandes:
+ * GET /exportar?lista=citas|pacientes&formato=csv|xlsx[&desde=aaaa-mm-dd&hasta=aaaa-mm-dd&medico=id]
+ *
+ * Para citas, sin fechas exporta el año en curso. El archivo se escribe
+ * directamente en la respuesta mientras se recorre la consulta.
+ */
+public class ExportarServlet extends HttpServlet {
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Acceso.estaAutenticado(request)) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        String lista = request.getParameter("lista");
+        boolean xlsx = "xlsx".equalsIgnoreCase(request.getParameter("formato"));
+        boolean citas = "citas".equals(lista);
+        if (!citas && !"pacientes".equals(lista)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "lista debe ser citas o pacientes");
+            return;
+        }
+        LocalDate desde;
+        LocalDate hasta;
+        Integer medicoId;
+        try {
+            int anyo = LocalDate.now().getYear();
+            desde = fecha(request.getParameter("desde"), LocalDate.of(anyo, 1, 1));
+            hasta = fecha(request.getParameter("hasta"), LocalDate.of(anyo, 12, 31));
+            String medico = request.getParameter("medico");
+            medicoId = medico == null || medico.isEmpty() ? null : Integer.valueOf(medico);
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+            return;
+        }
+
+        String nombre = lista + (citas ? "-" + desde + "-" + hasta : "") + (xlsx ? ".xlsx" : ".csv");
+        response.setContentType(xlsx ?
+                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet" : "text/csv; charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + nombre + "\"");
+        OutputStream salida = response.getOutputStream();
+        try {
+            EscritorFilas escritor = xlsx ? new EscritorXlsx(salida) : new EscritorCsv(salida);
+            if (citas) {
+                ExportadorListas.exportarCitas(desde, hasta, medicoId, escritor);
+            } else {
+                ExportadorListas.exportarPacientes(escritor);
+            }
+        } finally {
+            XPersistence.commit();
+        }
+    }
+
+    private static LocalDate fecha(String valor, LocalDate defecto) {
+        return valor == null || valor.isEmpty() ? defecto : LocalDate.parse(valor);
+    }
+}
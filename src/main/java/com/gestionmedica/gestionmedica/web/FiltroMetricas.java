@@ -0,0 +1,33 @@
+package com.gestionmedica.gestionmedica.web;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+
+/**
+ * Abre y cierra el ContextoPeticion de cada petición HTTP para medir su
+ * latencia, sentencias SQL, entidades cargadas y espera de conexiones.
+ */
+public class FiltroMetricas implements Filter {
+
+    public void init(FilterConfig config) throws ServletException {
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        ContextoPeticion.iniciar();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ContextoPeticion.terminar();
+        }
+    }
+
+    public void destroy() {
+    }
+}
@@ -0,0 +1,59 @@
+package com.gestionmedica.gestionmedica.web;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import com.gestionmedica.gestionmedica.persistencia.*;
+
+/**
+ * Marca como de lectura (ver EnrutadorLectura) las peticiones de informes
+ * y exportaciones cuyas rutas empiezan por alguna del parámetro "rutas",
+ * si su módulo está configurado para la réplica. Al terminar cualquier
+ * petición quita la marca.
+ */
+public class FiltroReplica implements Filter {
+
+    private String[] rutas = new String[0];
+
+    public void init(FilterConfig config) throws ServletException {
+        String valor = config.getInitParameter("rutas");
+        if (valor != null) {
+            rutas = valor.trim().split("\\s*,\\s*");
+        }
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        try {
+            if (EnrutadorLectura.hayReplica() && esLectura((HttpServletRequest) request)) {
+                EnrutadorLectura.marcarLectura();
+            }
+            chain.doFilter(request, response);
+        } finally {
+            EnrutadorLectura.limpiar();
+        }
+    }
+
+    public void destroy() {
+    }
+
+    private boolean esLectura(HttpServletRequest request) {
+        String ruta = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        for (String prefijo : rutas) {
+            if (!prefijo.isEmpty() && ruta.startsWith(prefijo)) {
+                // Los informes de OpenXava llevan el módulo; las exportaciones propias, la lista
+                String modulo = request.getParameter("module");
+                if (modulo == null) {
+                    modulo = "citas".equals(request.getParameter("lista")) ? "Cita" : "Paciente";
+                }
+                return EnrutadorLectura.esModuloEnReplica(modulo);
+            }
+        }
+        return false;
+    }
+}
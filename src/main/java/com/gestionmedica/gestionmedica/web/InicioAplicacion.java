@@ -0,0 +1,131 @@
+package com.gestionmedica.gestionmedica.web;
+
+import java.io.File;
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.sql.DataSource;
+import com.gestionmedica.gestionmedica.auditoria.*;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+import com.gestionmedica.gestionmedica.migracion.*;
+import com.gestionmedica.gestionmedica.persistencia.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Aplica las migraciones del esquema al arrancar, antes de que JPA abra la
+ * primera sesión (persistence.xml ya no genera ni actualiza el esquema).
+ * Si una migración falla la aplicación no arranca.
+ *
+ * Después publica las métricas por JMX, arranca la auditoría de citas,
+ * configura la réplica de lectura, si la hay, y programa las tareas
+ * periódicas; todo se detiene al parar la aplicación.
+ */
+public class InicioAplicacion implements ServletContextListener {
+
+    private static final Logger log = Logger.getLogger(InicioAplicacion.class.getName());
+
+    private static final String DATASOURCE = "java:comp/env/jdbc/gestionmedicaDS";
+    // Opcional, en context.xml; con las mismas tablas que la principal
+    private static final String DATASOURCE_REPLICA = "java:comp/env/jdbc/gestionmedicaReplicaDS";
+    private static final long RETRASO_MAXIMO_SEGUNDOS_DEFECTO = 30;
+    // Respaldo de la auditoría si no se indica auditoria.archivoRespaldo en web.xml
+    private static final String ARCHIVO_RESPALDO_AUDITORIA = "gestionmedica-auditoria-pendiente.csv";
+
+    // Cierre diario de citas vencidas, de madrugada; también poco después de arrancar
+    private static final LocalTime HORA_CIERRE_CITAS = LocalTime.of(0, 15);
+    private static final long RETARDO_INICIAL_MINUTOS = 1;
+
+    private ScheduledExecutorService tareas;
+
+    public void contextInitialized(ServletContextEvent evento) {
+        long inicio = System.currentTimeMillis();
+        DataSource dataSource;
+        try {
+            dataSource = (DataSource) new InitialContext().lookup(DATASOURCE);
+            try (Connection conexion = dataSource.getConnection()) {
+                int version = new MigradorEsquema(conexion).migrar();
+                log.info("Esquema en la versión " + version + " (" + (System.currentTimeMillis() - inicio) + " ms)");
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException("No se pudo migrar el esquema de la base de datos", ex);
+        }
+        Metricas.publicarJmx();
+        ColaAuditoria.iniciar(dataSource, archivoRespaldoAuditoria(evento.getServletContext()));
+        DataSource replica = configurarReplica(evento.getServletContext());
+        programarTareas(dataSource, replica);
+    }
+
+    public void contextDestroyed(ServletContextEvent evento) {
+        if (tareas != null) {
+            tareas.shutdownNow();
+        }
+        ColaAuditoria.detener();
+        Metricas.retirarJmx();
+    }
+
+    // Junto a los logs de Tomcat, que sobreviven a los reinicios
+    private static File archivoRespaldoAuditoria(ServletContext contexto) {
+        String ruta = contexto.getInitParameter("auditoria.archivoRespaldo");
+        if (ruta != null && !ruta.trim().isEmpty()) {
+            return new File(ruta.trim());
+        }
+        String catalina = System.getProperty("catalina.base");
+        File directorio = catalina == null ? new File(System.getProperty("user.dir")) : new File(catalina, "logs");
+        return new File(directorio, ARCHIVO_RESPALDO_AUDITORIA);
+    }
+
+    private static DataSource configurarReplica(ServletContext contexto) {
+        DataSource replica;
+        try {
+            replica = (DataSource) new InitialContext().lookup(DATASOURCE_REPLICA);
+        } catch (NamingException ex) {
+            log.info("Sin réplica de lectura: todas las consultas van a la base de datos principal");
+            return null;
+        }
+        String segundos = contexto.getInitParameter("replica.retrasoMaximoSegundos");
+        long retrasoMaximo = segundos == null ? RETRASO_MAXIMO_SEGUNDOS_DEFECTO : Long.parseLong(segundos.trim());
+        EnrutadorLectura.configurar(replica, contexto.getInitParameter("replica.modulos"), retrasoMaximo * 1000);
+        log.info("Réplica de lectura para " + EnrutadorLectura.describir() +
+                " con un retraso máximo de " + retrasoMaximo + " s");
+        return replica;
+    }
+
+    private void programarTareas(DataSource dataSource, DataSource replica) {
+        // Dos hilos: un cierre de citas largo no debe retrasar la invalidación de cachés
+        AtomicInteger hilos = new AtomicInteger();
+        tareas = Executors.newScheduledThreadPool(2, tarea -> {
+            Thread hilo = new Thread(tarea, "gestionmedica-tareas-" + hilos.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        // En todos los nodos: TareaCierreCitas se asegura de que en cada ejecución cierre solo uno
+        TareaCierreCitas cierre = new TareaCierreCitas(dataSource);
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime siguiente = ahora.toLocalDate().atTime(HORA_CIERRE_CITAS);
+        if (!siguiente.isAfter(ahora)) {
+            siguiente = siguiente.plusDays(1);
+        }
+        tareas.schedule(cierre, RETARDO_INICIAL_MINUTOS, TimeUnit.MINUTES);
+        tareas.scheduleAtFixedRate(cierre, Duration.between(ahora, siguiente).toMinutes(),
+                TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES);
+
+        BusInvalidacion bus = new BusInvalidacion(dataSource, InvalidadorCaches::aplicar);
+        tareas.scheduleWithFixedDelay(bus, 0, BusInvalidacion.INTERVALO_MS, TimeUnit.MILLISECONDS);
+
+        if (replica != null) {
+            tareas.scheduleWithFixedDelay(EnrutadorLectura.latido(dataSource), 0,
+                    EnrutadorLectura.INTERVALO_LATIDO_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
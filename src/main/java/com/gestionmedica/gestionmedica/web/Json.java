@@ -0,0 +1,34 @@
+package com.gestionmedica.gestionmedica.web;
+
+/**
+ * Utilidades mínimas para escribir JSON a mano en los servlets.
+ */
+public class Json {
+
+    /**
+     * Cadena JSON entre comillas con los caracteres especiales escapados, o null.
+     */
+    public static String texto(String valor) {
+        if (valor == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(valor.length() + 2).append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
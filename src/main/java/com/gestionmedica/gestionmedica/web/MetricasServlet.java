@@ -0,0 +1,41 @@
+package com.gestionmedica.gestionmedica.web;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+
+/**
+ * Métricas en texto plano: GET /metricas las consulta y POST /metricas las
+ * devuelve y las pone a cero (un GET no cambia estado: lo pueden repetir
+ * proxies, navegadores o enlaces).
+ */
+public class MetricasServlet extends HttpServlet {
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Acceso.estaAutenticado(request)) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        escribir(response);
+    }
+
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!Acceso.estaAutenticado(request)) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        escribir(response);
+        Metricas.reiniciarTodo();
+    }
+
+    private static void escribir(HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().print(Metricas.texto());
+    }
+}
@@ -0,0 +1,41 @@
+-- Esquema inicial (el que generaba hbm2ddl antes de las migraciones)
+CREATE TABLE ESPECIALIDAD(IDESPECIALIDAD INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    DESCRIPCION VARCHAR(500), NOMBRE VARCHAR(100));
+
+CREATE TABLE MEDICO(IDMEDICO INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    APELLIDO VARCHAR(100), CEDULA VARCHAR(10), CORREO VARCHAR(100), ESTADO VARCHAR(255), NOMBRE VARCHAR(100),
+    TELEFONO VARCHAR(15), ESPECIALIDAD_IDESPECIALIDAD INTEGER NOT NULL,
+    CONSTRAINT UK_MEDICO_CEDULA UNIQUE(CEDULA),
+    CONSTRAINT FK_MEDICO_ESPECIALIDAD FOREIGN KEY(ESPECIALIDAD_IDESPECIALIDAD) REFERENCES ESPECIALIDAD(IDESPECIALIDAD));
+
+CREATE TABLE PACIENTE(IDPACIENTE INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    APELLIDO VARCHAR(100), CEDULA VARCHAR(10), CORREO VARCHAR(100), DIRECCION VARCHAR(200), FECHANACIMIENTO DATE,
+    FECHAREGISTRO DATE, NOMBRE VARCHAR(100), TELEFONO VARCHAR(15),
+    CONSTRAINT UK_PACIENTE_CEDULA UNIQUE(CEDULA));
+
+CREATE TABLE HORARIODISPONIBLE(IDHORARIO INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    DIASEMANA VARCHAR(255), ESTADO VARCHAR(255), TURNO VARCHAR(255), MEDICO_IDMEDICO INTEGER NOT NULL,
+    CONSTRAINT FK_HORARIO_MEDICO FOREIGN KEY(MEDICO_IDMEDICO) REFERENCES MEDICO(IDMEDICO));
+
+CREATE TABLE CITA(IDCITA INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    ESTADO VARCHAR(255), FECHACANCELACION DATE, FECHACITA DATE, FECHAREGISTRO DATE, MOTIVOCONSULTA VARCHAR(500),
+    NUMEROSLOT INTEGER, MEDICO_IDMEDICO INTEGER NOT NULL, PACIENTE_IDPACIENTE INTEGER NOT NULL,
+    CONSTRAINT FK_CITA_MEDICO FOREIGN KEY(MEDICO_IDMEDICO) REFERENCES MEDICO(IDMEDICO),
+    CONSTRAINT FK_CITA_PACIENTE FOREIGN KEY(PACIENTE_IDPACIENTE) REFERENCES PACIENTE(IDPACIENTE));
+
+-- Tablas de sistema de OpenXava: galería de imágenes, discusiones, archivos adjuntos y suscripciones por correo
+CREATE TABLE IMAGES(ID VARCHAR(32) NOT NULL PRIMARY KEY, GALLERY VARCHAR(32), IMAGE VARBINARY(16777216));
+
+CREATE TABLE OXDISCUSSIONCOMMENTS(ID VARCHAR(32) NOT NULL PRIMARY KEY, COMMENT CLOB(16M), DISCUSSIONID VARCHAR(32),
+    TIME TIMESTAMP, USERNAME VARCHAR(30));
+
+CREATE INDEX IDX_OXDISCUSSION_DISCUSSIONID ON OXDISCUSSIONCOMMENTS(DISCUSSIONID);
+
+CREATE TABLE OXFILES(ID VARCHAR(32) NOT NULL PRIMARY KEY, DATA VARBINARY(16777216), LIBRARYID VARCHAR(32),
+    NAME VARCHAR(255));
+
+CREATE INDEX IDX_OXFILES_LIBRARYID ON OXFILES(LIBRARYID);
+
+CREATE TABLE OXEMAILSUBSCRIPTIONS(MODULE VARCHAR(80) NOT NULL, EMAIL VARCHAR(50) NOT NULL, PRIMARY KEY(MODULE, EMAIL));
+
+CREATE INDEX IDX_OXEMAILSUBSCRIPTIONS_MODULE ON OXEMAILSUBSCRIPTIONS(MODULE);
@@ -0,0 +1,20 @@
+-- Columnas normalizadas de médico e índices por nombre para los filtros de lista (ver ReescritorFiltros)
+ALTER TABLE MEDICO ADD COLUMN APELLIDOBUSQUEDA VARCHAR(100);
+
+ALTER TABLE MEDICO ADD COLUMN NOMBREBUSQUEDA VARCHAR(100);
+
+UPDATE MEDICO SET
+    APELLIDOBUSQUEDA = LEFT(TRANSLATE(UPPER(TRIM(APELLIDO)), 'ÁÀÂÄÉÈÊËÍÌÎÏÓÒÔÖÚÙÛÜÑÇ', 'AAAAEEEEIIIIOOOOUUUUNC'), 100),
+    NOMBREBUSQUEDA = LEFT(TRANSLATE(UPPER(TRIM(NOMBRE)), 'ÁÀÂÄÉÈÊËÍÌÎÏÓÒÔÖÚÙÛÜÑÇ', 'AAAAEEEEIIIIOOOOUUUUNC'), 100);
+
+-- Pacientes importados por CSV antes de que ImportadorPacientes rellenara las columnas
+UPDATE PACIENTE SET
+    APELLIDOBUSQUEDA = LEFT(TRANSLATE(UPPER(TRIM(APELLIDO)), 'ÁÀÂÄÉÈÊËÍÌÎÏÓÒÔÖÚÙÛÜÑÇ', 'AAAAEEEEIIIIOOOOUUUUNC'), 50),
+    NOMBREBUSQUEDA = LEFT(TRANSLATE(UPPER(TRIM(NOMBRE)), 'ÁÀÂÄÉÈÊËÍÌÎÏÓÒÔÖÚÙÛÜÑÇ', 'AAAAEEEEIIIIOOOOUUUUNC'), 50)
+WHERE APELLIDOBUSQUEDA IS NULL OR NOMBREBUSQUEDA IS NULL;
+
+CREATE INDEX IDX_MEDICO_APELLIDO_BUSQ ON MEDICO(APELLIDOBUSQUEDA, NOMBREBUSQUEDA);
+
+CREATE INDEX IDX_MEDICO_NOMBRE_BUSQ ON MEDICO(NOMBREBUSQUEDA);
+
+CREATE INDEX IDX_PACIENTE_NOMBRE_BUSQ ON PACIENTE(NOMBREBUSQUEDA);
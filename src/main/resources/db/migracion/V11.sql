@@ -0,0 +1,4 @@
+-- Latido para medir el retraso de la réplica de lectura (ver EnrutadorLectura)
+CREATE TABLE LATIDOREPLICA(ID INTEGER NOT NULL PRIMARY KEY, INSTANTE BIGINT NOT NULL);
+
+INSERT INTO LATIDOREPLICA (ID, INSTANTE) VALUES (1, 0);
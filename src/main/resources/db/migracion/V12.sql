@@ -0,0 +1,4 @@
+-- Versión de agenda de cada cita para las ETag y la sincronización incremental de /agenda (ver VersionAgenda)
+CREATE SEQUENCE SEQ_VERSION_AGENDA AS BIGINT START WITH 1;
+
+ALTER TABLE CITA ADD COLUMN VERSIONAGENDA BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,12 @@
+-- Auditoría de citas: altas, reprogramaciones, cambios de estado y borrados (ver ColaAuditoria)
+-- Sin claves foráneas: es un registro que solo crece y no debe fallar ni frenar el archivado
+CREATE TABLE AUDITORIACITA(IDAUDITORIA BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    IDCITA INTEGER NOT NULL, TIPO VARCHAR(20) NOT NULL, INSTANTE TIMESTAMP NOT NULL,
+    USUARIO VARCHAR(60), NODO VARCHAR(100),
+    MEDICOANTERIOR_IDMEDICO INTEGER, FECHAANTERIOR DATE, NUMEROSLOTANTERIOR INTEGER, ESTADOANTERIOR VARCHAR(20),
+    MEDICO_IDMEDICO INTEGER, FECHACITA DATE, NUMEROSLOT INTEGER, ESTADO VARCHAR(20),
+    TRANSICIONVALIDA BOOLEAN);
+
+CREATE INDEX IDX_AUDITORIA_CITA ON AUDITORIACITA(IDCITA, INSTANTE);
+
+CREATE INDEX IDX_AUDITORIA_INSTANTE ON AUDITORIACITA(INSTANTE);
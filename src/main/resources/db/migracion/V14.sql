@@ -0,0 +1,7 @@
+-- La versión de agenda pasa de SEQ_VERSION_AGENDA a una fila que cada transacción bloquea hasta su commit (ver VersionAgenda)
+CREATE TABLE CONTADORAGENDA(ID INTEGER NOT NULL PRIMARY KEY, VERSION BIGINT NOT NULL);
+
+INSERT INTO CONTADORAGENDA (ID, VERSION) SELECT 1, CAST(NEXT_VALUE AS BIGINT) - 1 FROM INFORMATION_SCHEMA.SEQUENCES
+    WHERE SEQUENCE_SCHEMA = 'PUBLIC' AND SEQUENCE_NAME = 'SEQ_VERSION_AGENDA';
+
+DROP SEQUENCE SEQ_VERSION_AGENDA;
@@ -0,0 +1,4 @@
+-- Citas que pasaron sin atenderse (NO_ASISTIO, ver CierreCitasVencidas): no son canceladas y conservan su slot
+ALTER TABLE AGENDADIARIA ADD COLUMN NOASISTIDAS INTEGER DEFAULT 0 NOT NULL;
+
+ALTER TABLE ESTADISTICAMENSUAL ADD COLUMN NOASISTIDAS INTEGER DEFAULT 0 NOT NULL;
@@ -0,0 +1,4 @@
+-- Turno de las tareas programadas entre nodos: solo las ejecuta el que toma la fila (ver TareaCierreCitas)
+CREATE TABLE BLOQUEOTAREA(NOMBRE VARCHAR(50) NOT NULL PRIMARY KEY, NODO VARCHAR(200), HASTA TIMESTAMP NOT NULL);
+
+INSERT INTO BLOQUEOTAREA (NOMBRE, NODO, HASTA) VALUES ('cierreCitas', NULL, TIMESTAMP '2000-01-01 00:00:00');
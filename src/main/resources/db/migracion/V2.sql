@@ -0,0 +1,27 @@
+-- Slot reservado y hora de inicio persistidos en CITA
+ALTER TABLE CITA ADD COLUMN HORAINICIO TIME;
+
+ALTER TABLE CITA ADD COLUMN SLOTRESERVADO INTEGER;
+
+UPDATE CITA SET SLOTRESERVADO = NUMEROSLOT WHERE ESTADO <> 'CANCELADA';
+
+-- Falla si ya hay dos citas activas en el mismo slot: hay que resolverlas a mano antes
+ALTER TABLE CITA ADD CONSTRAINT UK_CITA_SLOT_RESERVADO UNIQUE(MEDICO_IDMEDICO, FECHACITA, SLOTRESERVADO);
+
+-- Hora del slot según el turno activo del médico ese día (DAYOFWEEK: 1 = domingo)
+UPDATE CITA C SET HORAINICIO = (
+    SELECT CASE H.TURNO
+               WHEN 'VESPERTINO' THEN TIME '14:00:00'
+               WHEN 'NOCTURNO' THEN TIME '20:00:00'
+               ELSE TIME '08:00:00'
+           END + INTERVAL '30' MINUTE * (C.NUMEROSLOT - 1)
+    FROM HORARIODISPONIBLE H
+    WHERE H.MEDICO_IDMEDICO = C.MEDICO_IDMEDICO
+      AND H.ESTADO = 'ACTIVO'
+      AND H.DIASEMANA = CASE DAYOFWEEK(C.FECHACITA)
+                            WHEN 1 THEN 'DOMINGO' WHEN 2 THEN 'LUNES' WHEN 3 THEN 'MARTES'
+                            WHEN 4 THEN 'MIERCOLES' WHEN 5 THEN 'JUEVES' WHEN 6 THEN 'VIERNES'
+                            ELSE 'SABADO'
+                        END
+    LIMIT 1)
+WHERE C.HORAINICIO IS NULL AND C.ESTADO <> 'CANCELADA';
@@ -0,0 +1,10 @@
+-- Columnas normalizadas para buscar pacientes por apellido y nombre (ver Normalizador)
+ALTER TABLE PACIENTE ADD COLUMN APELLIDOBUSQUEDA VARCHAR(50);
+
+ALTER TABLE PACIENTE ADD COLUMN NOMBREBUSQUEDA VARCHAR(50);
+
+UPDATE PACIENTE SET
+    APELLIDOBUSQUEDA = LEFT(TRANSLATE(UPPER(TRIM(APELLIDO)), 'ÁÀÂÄÉÈÊËÍÌÎÏÓÒÔÖÚÙÛÜÑÇ', 'AAAAEEEEIIIIOOOOUUUUNC'), 50),
+    NOMBREBUSQUEDA = LEFT(TRANSLATE(UPPER(TRIM(NOMBRE)), 'ÁÀÂÄÉÈÊËÍÌÎÏÓÒÔÖÚÙÛÜÑÇ', 'AAAAEEEEIIIIOOOOUUUUNC'), 50);
+
+CREATE INDEX IDX_PACIENTE_APELLIDO_BUSQ ON PACIENTE(APELLIDOBUSQUEDA, NOMBREBUSQUEDA);
@@ -0,0 +1,11 @@
+-- Archivo de citas cerradas (ver ArchivadorCitas)
+CREATE TABLE CITAHISTORICA(IDCITA INTEGER NOT NULL PRIMARY KEY,
+    ESTADO VARCHAR(255), FECHAARCHIVO DATE, FECHACANCELACION DATE, FECHACITA DATE, FECHAREGISTRO DATE,
+    HORAINICIO TIME, MOTIVOCONSULTA VARCHAR(500), NUMEROSLOT INTEGER,
+    MEDICO_IDMEDICO INTEGER NOT NULL, PACIENTE_IDPACIENTE INTEGER NOT NULL,
+    CONSTRAINT FK_CITAHIST_MEDICO FOREIGN KEY(MEDICO_IDMEDICO) REFERENCES MEDICO(IDMEDICO),
+    CONSTRAINT FK_CITAHIST_PACIENTE FOREIGN KEY(PACIENTE_IDPACIENTE) REFERENCES PACIENTE(IDPACIENTE));
+
+CREATE INDEX IDX_CITAHIST_MEDICO_FECHA ON CITAHISTORICA(MEDICO_IDMEDICO, FECHACITA);
+
+CREATE INDEX IDX_CITAHIST_PACIENTE ON CITAHISTORICA(PACIENTE_IDPACIENTE);
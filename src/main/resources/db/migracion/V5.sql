@@ -0,0 +1,4 @@
+-- Índices de las consultas de disponibilidad y horarios
+CREATE INDEX IDX_CITA_MEDICO_FECHA_SLOT ON CITA(MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT);
+
+CREATE INDEX IDX_HORARIO_MEDICO_DIA_ESTADO ON HORARIODISPONIBLE(MEDICO_IDMEDICO, DIASEMANA, ESTADO);
@@ -0,0 +1,4 @@
+-- Duración del slot configurable por especialidad (ver TablaSlots)
+ALTER TABLE ESPECIALIDAD ADD COLUMN DURACIONSLOTMINUTOS INTEGER DEFAULT 30;
+
+UPDATE ESPECIALIDAD SET DURACIONSLOTMINUTOS = 30 WHERE DURACIONSLOTMINUTOS IS NULL;
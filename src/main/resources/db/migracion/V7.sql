@@ -0,0 +1,18 @@
+-- Agenda diaria por médico (ver ActualizadorAgenda y VerificadorAgenda)
+CREATE TABLE AGENDADIARIA(IDAGENDA INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    FECHA DATE NOT NULL, SLOTSOCUPADOS BIGINT DEFAULT 0 NOT NULL, REGISTRADAS INTEGER DEFAULT 0 NOT NULL,
+    ATENDIDAS INTEGER DEFAULT 0 NOT NULL, CANCELADAS INTEGER DEFAULT 0 NOT NULL, MEDICO_IDMEDICO INTEGER NOT NULL,
+    CONSTRAINT UK_AGENDA_MEDICO_FECHA UNIQUE(MEDICO_IDMEDICO, FECHA),
+    CONSTRAINT FK_AGENDA_MEDICO FOREIGN KEY(MEDICO_IDMEDICO) REFERENCES MEDICO(IDMEDICO));
+
+CREATE INDEX IDX_AGENDA_FECHA ON AGENDADIARIA(FECHA);
+
+INSERT INTO AGENDADIARIA (MEDICO_IDMEDICO, FECHA, SLOTSOCUPADOS, REGISTRADAS, ATENDIDAS, CANCELADAS)
+SELECT MEDICO_IDMEDICO, FECHACITA,
+    SUM(CASE WHEN ESTADO <> 'CANCELADA' THEN CAST(POWER(2, NUMEROSLOT - 1) AS BIGINT) ELSE 0 END),
+    SUM(CASE WHEN ESTADO = 'REGISTRADA' THEN 1 ELSE 0 END),
+    SUM(CASE WHEN ESTADO = 'ATENDIDA' THEN 1 ELSE 0 END),
+    SUM(CASE WHEN ESTADO = 'CANCELADA' THEN 1 ELSE 0 END)
+FROM (SELECT MEDICO_IDMEDICO, FECHACITA, ESTADO, NUMEROSLOT FROM CITA
+      UNION ALL SELECT MEDICO_IDMEDICO, FECHACITA, ESTADO, NUMEROSLOT FROM CITAHISTORICA) C
+GROUP BY MEDICO_IDMEDICO, FECHACITA;
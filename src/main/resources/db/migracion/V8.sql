@@ -0,0 +1,14 @@
+-- Estadísticas mensuales por médico (ver ActualizadorEstadisticas y ConsolidadorEstadisticas)
+CREATE TABLE ESTADISTICAMENSUAL(IDESTADISTICA INTEGER GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    ANYO INTEGER NOT NULL, MES INTEGER NOT NULL, CAPACIDAD INTEGER DEFAULT 0 NOT NULL,
+    REGISTRADAS INTEGER DEFAULT 0 NOT NULL, ATENDIDAS INTEGER DEFAULT 0 NOT NULL, CANCELADAS INTEGER DEFAULT 0 NOT NULL,
+    MEDICO_IDMEDICO INTEGER NOT NULL,
+    CONSTRAINT UK_ESTADISTICA_MEDICO_MES UNIQUE(MEDICO_IDMEDICO, ANYO, MES),
+    CONSTRAINT FK_ESTADISTICA_MEDICO FOREIGN KEY(MEDICO_IDMEDICO) REFERENCES MEDICO(IDMEDICO));
+
+CREATE INDEX IDX_ESTADISTICA_MES ON ESTADISTICAMENSUAL(ANYO, MES);
+
+-- Contadores de la historia existente; la capacidad la completa ConsolidarEstadisticas
+INSERT INTO ESTADISTICAMENSUAL (MEDICO_IDMEDICO, ANYO, MES, CAPACIDAD, REGISTRADAS, ATENDIDAS, CANCELADAS)
+SELECT MEDICO_IDMEDICO, YEAR(FECHA), MONTH(FECHA), 0, SUM(REGISTRADAS), SUM(ATENDIDAS), SUM(CANCELADAS)
+FROM AGENDADIARIA GROUP BY MEDICO_IDMEDICO, YEAR(FECHA), MONTH(FECHA);
@@ -0,0 +1,6 @@
+-- Avisos de invalidación de cachés entre nodos (ver BusInvalidacion)
+CREATE TABLE CAMBIOCACHE(IDCAMBIO BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) NOT NULL PRIMARY KEY,
+    ENTIDAD VARCHAR(20) NOT NULL, IDENTIFICADOR INTEGER, MEDICO INTEGER, NODO VARCHAR(100) NOT NULL,
+    FECHA TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL);
+
+CREATE INDEX IDX_CAMBIOCACHE_FECHA ON CAMBIOCACHE(FECHA);
@@ -0,0 +1,198 @@
+package com.gestionmedica.gestionmedica.auditoria;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.sql.DataSource;
+import junit.framework.TestCase;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Auditoría asíncrona de citas contra la base de datos de prueba: eventos
+ * del listener al confirmar, respaldo con la base de datos caída y su
+ * recuperación, y filas rechazadas.
+ */
+public class ColaAuditoriaTest extends TestCase {
+
+    private File directorio;
+    private File archivo;
+    private JDBCDataSource dataSource;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        directorio = File.createTempFile("auditoria", "");
+        directorio.delete();
+        directorio.mkdir();
+        archivo = new File(directorio, "pendiente.csv");
+        dataSource = new JDBCDataSource();
+        dataSource.setUrl(BaseDatosPrueba.getUrl());
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+    }
+
+    protected void tearDown() {
+        ColaAuditoria.detener();
+        BaseDatosPrueba.deshacer();
+        for (File resto : directorio.listFiles()) {
+            resto.delete();
+        }
+        directorio.delete();
+    }
+
+    public void testEventosDelListenerAlConfirmar() throws Exception {
+        Integer medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        Integer pacienteId = BaseDatosPrueba.crearPacientes(1).get(0);
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        ColaAuditoria.iniciar(dataSource, archivo);
+
+        Integer idCita = BaseDatosPrueba.nuevaCita(medicoId, pacienteId, fecha, 1).getIdCita();
+        XPersistence.commit();
+        XPersistence.getManager().find(Cita.class, idCita).setEstado(EstadoCita.ATENDIDA);
+        XPersistence.commit();
+        XPersistence.getManager().find(Cita.class, idCita).setNumeroSlot(2);
+        XPersistence.commit();
+        // Deshecho: no se audita
+        XPersistence.getManager().find(Cita.class, idCita).setNumeroSlot(3);
+        XPersistence.getManager().flush();
+        XPersistence.rollback();
+        XPersistence.getManager().remove(XPersistence.getManager().find(Cita.class, idCita));
+        XPersistence.commit();
+        ColaAuditoria.detener();
+
+        List<List<Object>> filas = auditoria(idCita);
+        assertEquals(Arrays.asList(
+                Arrays.asList("ALTA", null, null, null, medicoId, 1, "REGISTRADA", true),
+                Arrays.asList("CAMBIO_ESTADO", medicoId, 1, "REGISTRADA", medicoId, 1, "ATENDIDA", true),
+                Arrays.asList("REPROGRAMACION", medicoId, 1, "ATENDIDA", medicoId, 2, "ATENDIDA", null),
+                Arrays.asList("BORRADO", medicoId, 2, "ATENDIDA", null, null, null, null)), filas);
+        assertFalse(archivo.exists());
+    }
+
+    public void testRespaldoConLaBaseDeDatosCaidaYRecuperacion() throws Exception {
+        RespaldoAuditoria respaldo = new RespaldoAuditoria(archivo);
+        DataSource caida = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] { DataSource.class }, (proxy, metodo, args) -> {
+                    throw new SQLException("Base de datos ca\u00edda");
+                });
+        int idCita = -(int) (System.currentTimeMillis() % 1_000_000);
+        // Dos paradas seguidas: dos escrituras en el mismo archivo, cada una con su BOM
+        for (int parada = 0; parada < 2; parada++) {
+            BlockingQueue<EventoCita> cola = new ArrayBlockingQueue<>(10);
+            cola.add(evento(idCita, "usuario;\"con\" separador", BusInvalidacion.NODO));
+            cola.add(new EventoCita(idCita, TipoEventoCita.BORRADO, aporte(EstadoCita.REGISTRADA), null, null,
+                    BusInvalidacion.NODO, LocalDateTime.now()));
+            EscritorAuditoria escritor = new EscritorAuditoria(caida, cola, respaldo);
+            escritor.detener();
+            escritor.run();
+            assertTrue(cola.isEmpty());
+        }
+        assertEquals(4, RespaldoAuditoria.leer(archivo).size());
+
+        new EscritorAuditoria(dataSource, new ArrayBlockingQueue<>(1), respaldo).recuperar();
+        assertEquals(0, directorio.listFiles().length);
+        List<List<Object>> filas = auditoria(idCita);
+        assertEquals(4, filas.size());
+        assertEquals(Arrays.asList("ALTA", null, null, null, 7, 3, "REGISTRADA", true), filas.get(0));
+        assertEquals(Arrays.asList("BORRADO", 7, 3, "REGISTRADA", null, null, null, null), filas.get(1));
+        assertEquals(2, ((Number) BaseDatosPrueba.consultar("SELECT COUNT(*) FROM AUDITORIACITA " +
+                "WHERE IDCITA = ? AND USUARIO = ?", idCita, "usuario;\"con\" separador")).intValue());
+    }
+
+    public void testNodoLargoSeRecortaALaColumna() throws Exception {
+        int idCita = -(int) (System.currentTimeMillis() % 1_000_000) - 1_000_000;
+        char[] largo = new char[150];
+        Arrays.fill(largo, 'n');
+        BlockingQueue<EventoCita> cola = new ArrayBlockingQueue<>(10);
+        cola.add(evento(idCita, "admin", new String(largo)));
+        EscritorAuditoria escritor = new EscritorAuditoria(dataSource, cola, new RespaldoAuditoria(archivo));
+        escritor.detener();
+        escritor.run();
+
+        assertEquals(1, auditoria(idCita).size());
+        assertFalse(archivo.exists());
+    }
+
+    public void testFilaRechazadaVaAlRespaldo() throws Exception {
+        // Base de datos propia con USUARIO más corto, para que una fila del lote no quepa
+        JDBCDataSource estrecha = new JDBCDataSource();
+        estrecha.setUrl("jdbc:hsqldb:mem:auditoria-rechazos");
+        estrecha.setUser("sa");
+        estrecha.setPassword("");
+        try (Connection conexion = estrecha.getConnection(); Statement st = conexion.createStatement()) {
+            st.execute("DROP TABLE AUDITORIACITA IF EXISTS");
+            st.execute("CREATE TABLE AUDITORIACITA(IDCITA INTEGER NOT NULL, TIPO VARCHAR(20) NOT NULL, " +
+                    "INSTANTE TIMESTAMP NOT NULL, USUARIO VARCHAR(5), NODO VARCHAR(100), " +
+                    "MEDICOANTERIOR_IDMEDICO INTEGER, FECHAANTERIOR DATE, NUMEROSLOTANTERIOR INTEGER, " +
+                    "ESTADOANTERIOR VARCHAR(20), MEDICO_IDMEDICO INTEGER, FECHACITA DATE, NUMEROSLOT INTEGER, " +
+                    "ESTADO VARCHAR(20), TRANSICIONVALIDA BOOLEAN)");
+        }
+        BlockingQueue<EventoCita> cola = new ArrayBlockingQueue<>(10);
+        cola.add(evento(1, "admin", BusInvalidacion.NODO));
+        cola.add(evento(2, "administrador", BusInvalidacion.NODO));
+        cola.add(evento(3, "admin", BusInvalidacion.NODO));
+        EscritorAuditoria escritor = new EscritorAuditoria(estrecha, cola, new RespaldoAuditoria(archivo));
+        escritor.detener();
+        escritor.run();
+
+        try (Connection conexion = estrecha.getConnection(); Statement st = conexion.createStatement();
+                ResultSet rs = st.executeQuery("SELECT IDCITA FROM AUDITORIACITA ORDER BY IDCITA")) {
+            List<Integer> grabadas = new ArrayList<>();
+            while (rs.next()) {
+                grabadas.add(rs.getInt(1));
+            }
+            assertEquals(Arrays.asList(1, 3), grabadas);
+        }
+        List<EventoCita> rechazados = RespaldoAuditoria.leer(archivo);
+        assertEquals(1, rechazados.size());
+        assertEquals(Integer.valueOf(2), rechazados.get(0).getIdCita());
+        assertEquals("administrador", rechazados.get(0).getUsuario());
+    }
+
+    private static EventoCita evento(int idCita, String usuario, String nodo) {
+        return new EventoCita(idCita, TipoEventoCita.ALTA, null, aporte(EstadoCita.REGISTRADA), usuario, nodo,
+                LocalDateTime.now());
+    }
+
+    private static AporteAgenda aporte(EstadoCita estado) {
+        return new AporteAgenda(7, LocalDate.now(), estado, 3);
+    }
+
+    /**
+     * Tipo, médico, slot y estado anteriores y actuales, y transición válida, por orden de grabación
+     */
+    private static List<List<Object>> auditoria(int idCita) throws Exception {
+        List<List<Object>> filas = new ArrayList<>();
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement("SELECT TIPO, MEDICOANTERIOR_IDMEDICO, " +
+                        "NUMEROSLOTANTERIOR, ESTADOANTERIOR, MEDICO_IDMEDICO, NUMEROSLOT, ESTADO, TRANSICIONVALIDA " +
+                        "FROM AUDITORIACITA WHERE IDCITA = ? ORDER BY IDAUDITORIA")) {
+            ps.setInt(1, idCita);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    List<Object> fila = new ArrayList<>();
+                    for (int i = 1; i <= 8; i++) {
+                        fila.add(rs.getObject(i));
+                    }
+                    filas.add(fila);
+                }
+            }
+        }
+        return filas;
+    }
+}
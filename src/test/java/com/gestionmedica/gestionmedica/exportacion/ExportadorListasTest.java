@@ -0,0 +1,120 @@
+package com.gestionmedica.gestionmedica.exportacion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.importacion.*;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Exportación de citas en CSV y XLSX contra la base de datos de prueba, y
+ * CSV de pacientes que se vuelve a importar.
+ */
+public class ExportadorListasTest extends TestCase {
+
+    private Integer medicoId;
+    private LocalDate fecha;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        List<Integer> pacientes = BaseDatosPrueba.crearPacientes(3);
+        fecha = LocalDate.now().plusDays(1);
+        for (int i = 0; i < pacientes.size(); i++) {
+            BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(i), fecha, i + 1)
+                    .setMotivoConsulta("Control" + LectorCsv.SEPARADOR + " \"anual\"");
+        }
+        XPersistence.commit();
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testCsv() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        int filas = ExportadorListas.exportarCitas(fecha, fecha, medicoId, new EscritorCsv(salida));
+        XPersistence.commit();
+
+        assertEquals(3, filas);
+        String[] lineas = new String(salida.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(4, lineas.length);
+        assertTrue(lineas[0], lineas[0].startsWith("\uFEFFFecha" + LectorCsv.SEPARADOR + "Hora"));
+        assertTrue(lineas[0], lineas[0].contains("Nombre m\u00e9dico"));
+        String s = String.valueOf(LectorCsv.SEPARADOR);
+        assertTrue(lineas[1], lineas[1].startsWith(fecha + s + LocalTime.of(8, 0) + s + "1" + s + "Medico" + s));
+        assertTrue(lineas[1], lineas[1].endsWith(s + "REGISTRADA" + s + "\"Control" + s + " \"\"anual\"\"\""));
+    }
+
+    public void testXlsx() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        int filas = ExportadorListas.exportarCitas(fecha, fecha, medicoId, new EscritorXlsx(salida));
+        XPersistence.commit();
+
+        assertEquals(3, filas);
+        try (XSSFWorkbook libro = new XSSFWorkbook(new ByteArrayInputStream(salida.toByteArray()))) {
+            Sheet hoja = libro.getSheetAt(0);
+            assertEquals(3, hoja.getLastRowNum());
+            assertEquals("Nombre m\u00e9dico", hoja.getRow(0).getCell(3).getStringCellValue());
+            Row fila = hoja.getRow(3);
+            assertEquals(fecha, fila.getCell(0).getLocalDateTimeCellValue().toLocalDate());
+            assertTrue(DateUtil.isCellDateFormatted(fila.getCell(0)));
+            assertEquals(LocalTime.of(9, 0).toSecondOfDay() / 86400.0, fila.getCell(1).getNumericCellValue(), 1e-9);
+            assertEquals(3.0, fila.getCell(2).getNumericCellValue());
+            assertEquals("REGISTRADA", fila.getCell(8).getStringCellValue());
+        }
+    }
+
+    public void testCsvDePacientesSeVuelveAImportar() throws Exception {
+        List<Integer> ids = BaseDatosPrueba.crearPacientes(2);
+        List<String> cedulas = new ArrayList<>();
+        for (Integer id : ids) {
+            cedulas.add(XPersistence.getManager().find(Paciente.class, id).getCedula());
+        }
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        ExportadorListas.exportarPacientes(new EscritorCsv(salida));
+        XPersistence.commit();
+
+        // La cabecera con el BOM y las filas de los dos pacientes, que se borran antes de importarlas
+        String[] lineas = new String(salida.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+        StringBuilder archivo = new StringBuilder(lineas[0]).append("\r\n");
+        for (String linea : lineas) {
+            if (linea.startsWith(cedulas.get(0)) || linea.startsWith(cedulas.get(1))) {
+                archivo.append(linea).append("\r\n");
+            }
+        }
+        ResultadoImportacion resultado;
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "DELETE FROM PACIENTE WHERE IDPACIENTE IN (?, ?)")) {
+                ps.setInt(1, ids.get(0));
+                ps.setInt(2, ids.get(1));
+                assertEquals(2, ps.executeUpdate());
+            }
+            resultado = new ImportadorPacientes(conexion).importar(new StringReader(archivo.toString()));
+        }
+
+        assertEquals(resultado.getErrores().toString(), 0, resultado.getFilasConError());
+        assertEquals(2, resultado.getFilasImportadas());
+        for (String cedula : cedulas) {
+            assertEquals("Paciente", BaseDatosPrueba.consultar("SELECT NOMBRE FROM PACIENTE WHERE CEDULA = ?", cedula));
+            assertEquals(Date.valueOf("1980-01-01"),
+                    BaseDatosPrueba.consultar("SELECT FECHANACIMIENTO FROM PACIENTE WHERE CEDULA = ?", cedula));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.gestionmedica.gestionmedica.importacion;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Importación de citas contra la base de datos de prueba: slots ya
+ * ocupados, agenda y estadísticas mensuales de lo importado y aviso a los
+ * nodos.
+ */
+public class ImportadorCitasTest extends TestCase {
+
+    private Integer medicoId;
+    private String cedulaMedico;
+    private List<Integer> pacientes;
+    private LocalDate fecha;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        pacientes = BaseDatosPrueba.crearPacientes(3);
+        cedulaMedico = XPersistence.getManager().find(Medico.class, medicoId).getCedula();
+        fecha = LocalDate.now().plusDays(2);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testSlotOcupadoEnLaBaseDeDatos() throws Exception {
+        BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), fecha, 2);
+        XPersistence.commit();
+        assertFalse(IndiceOcupacion.estaOcupado(medicoId, fecha, 3));
+        XPersistence.commit();
+
+        ResultadoImportacion resultado;
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            resultado = new ImportadorCitas(conexion).importar(new StringReader(
+                    "cedulaPaciente;cedulaMedico;fechaCita;numeroSlot;estado;motivoConsulta\n" +
+                    fila(1, 2) + fila(2, 3)));
+        }
+        assertEquals(1, resultado.getFilasImportadas());
+        assertEquals(1, resultado.getFilasConError());
+        assertTrue(resultado.getErrores().get(0), resultado.getErrores().get(0).contains("ya tiene una cita"));
+
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement(
+                        "SELECT SLOTSOCUPADOS, REGISTRADAS FROM AGENDADIARIA WHERE MEDICO_IDMEDICO = ? AND FECHA = ?")) {
+            ps.setInt(1, medicoId);
+            ps.setDate(2, Date.valueOf(fecha));
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(0b110, rs.getLong(1));
+                assertEquals(2, rs.getInt(2));
+            }
+        }
+        assertEquals(1, avisosOcupacion());
+        assertTrue(IndiceOcupacion.estaOcupado(medicoId, fecha, 3));
+    }
+
+    public void testEstadisticasMensualesIncluyenLoImportado() throws Exception {
+        BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), fecha, 2);
+        XPersistence.commit();
+        YearMonth mes = YearMonth.from(fecha);
+        List<Integer> antes = estadistica(mes);
+        assertEquals(1, antes.get(1).intValue());
+        LocalDate otroMes = mes.plusMonths(2).atDay(1);
+
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            new ImportadorCitas(conexion).importar(new StringReader(
+                    "cedulaPaciente;cedulaMedico;fechaCita;numeroSlot;estado;motivoConsulta\n" +
+                    fila(1, fecha, 3, "REGISTRADA") + fila(2, fecha, 4, "CANCELADA") +
+                    fila(1, otroMes, 1, "REGISTRADA")));
+        }
+
+        // La capacidad de la fila que ya existía no cambia
+        assertEquals(Arrays.asList(antes.get(0), 2, 0, 1), estadistica(mes));
+        assertEquals(Arrays.asList(otroMes.lengthOfMonth() * 24, 1, 0, 0), estadistica(YearMonth.from(otroMes)));
+    }
+
+    private String fila(int paciente, int slot) {
+        return fila(paciente, fecha, slot, "REGISTRADA");
+    }
+
+    private String fila(int paciente, LocalDate fecha, int slot, String estado) {
+        String cedula = XPersistence.getManager().find(Paciente.class, pacientes.get(paciente)).getCedula();
+        return cedula + ";" + cedulaMedico + ";" + fecha + ";" + slot + ";" + estado + ";Importada\n";
+    }
+
+    /**
+     * Capacidad, registradas, atendidas y canceladas del médico en el mes
+     */
+    private List<Integer> estadistica(YearMonth mes) throws Exception {
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement("SELECT CAPACIDAD, REGISTRADAS, ATENDIDAS, " +
+                        "CANCELADAS FROM ESTADISTICAMENSUAL WHERE MEDICO_IDMEDICO = ? AND ANYO = ? AND MES = ?")) {
+            ps.setInt(1, medicoId);
+            ps.setInt(2, mes.getYear());
+            ps.setInt(3, mes.getMonthValue());
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue("Sin fila para " + mes, rs.next());
+                return Arrays.asList(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4));
+            }
+        }
+    }
+
+    private int avisosOcupacion() throws Exception {
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement(
+                        "SELECT COUNT(*) FROM CAMBIOCACHE WHERE ENTIDAD = ? AND MEDICO = ?")) {
+            ps.setString(1, BusInvalidacion.OCUPACION);
+            ps.setInt(2, medicoId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.gestionmedica.gestionmedica.instrumentacion;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.TestCase;
+
+/**
+ * El MBean de métricas solo está publicado entre publicarJmx y retirarJmx.
+ */
+public class MetricasTest extends TestCase {
+
+    public void testPublicarYRetirar() throws Exception {
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        ObjectName nombre = new ObjectName("gestionmedica:type=Metricas");
+        Metricas.registrar("prueba/medida", 5);
+        assertFalse(servidor.isRegistered(nombre));
+
+        Metricas.publicarJmx();
+        // Una segunda publicación (recarga sin detener) sustituye a la primera
+        Metricas.publicarJmx();
+        assertTrue(servidor.isRegistered(nombre));
+        assertTrue(((String) servidor.getAttribute(nombre, "Resumen")).contains("prueba/medida"));
+
+        Metricas.retirarJmx();
+        assertFalse(servidor.isRegistered(nombre));
+    }
+}
@@ -0,0 +1,206 @@
+package com.gestionmedica.gestionmedica.migracion;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import junit.framework.TestCase;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Separación de los scripts, arranque sobre una base de datos creada por
+ * hbm2ddl, scripts que fallan a medias, bloqueo entre instancias y
+ * coincidencia del esquema migrado con el modelo.
+ */
+public class MigradorEsquemaTest extends TestCase {
+
+    public void testSepararSentenciasRespetaLiteralesYComentarios() {
+        String script = "-- Descripción\n" +
+                "INSERT INTO T VALUES ('a;b', 'no -- es comentario', 'it''s;');\n" +
+                "/* bloque ; con punto y coma */ UPDATE T SET \"C;1\" = 1; -- al final de la línea\n" +
+                "DELETE FROM T\n" +
+                "  WHERE X = ';'\n" +
+                ";CREATE INDEX I ON T(C)";
+        assertEquals(Arrays.asList(
+                "INSERT INTO T VALUES ('a;b', 'no -- es comentario', 'it''s;')",
+                "UPDATE T SET \"C;1\" = 1",
+                "DELETE FROM T\n  WHERE X = ';'",
+                "CREATE INDEX I ON T(C)"),
+                MigradorEsquema.separarSentencias(script));
+    }
+
+    public void testBaseExistenteSeTomaComoVersion1() throws Exception {
+        try (Connection conexion = DriverManager.getConnection("jdbc:hsqldb:mem:migrador-existente", "sa", "")) {
+            crearComoHbm2ddl(conexion, null);
+
+            int version = new MigradorEsquema(conexion).migrar();
+
+            assertTrue(version > 1);
+            assertEquals("Esquema inicial (el que generaba hbm2ddl antes de las migraciones) (base de datos existente)",
+                    consultar(conexion, "SELECT DESCRIPCION FROM ESQUEMA_VERSION WHERE VERSION = 1"));
+            // Las tablas de sistema que hbm2ddl no creaba se crean al tomarla como versión 1
+            assertEquals("0", consultar(conexion, "SELECT COUNT(*) FROM OXFILES"));
+            conexion.createStatement().execute("SHUTDOWN");
+        }
+    }
+
+    public void testBaseDeUnaVersionIntermediaNoSeTomaComoVersion1() throws Exception {
+        try (Connection conexion = DriverManager.getConnection("jdbc:hsqldb:mem:migrador-intermedia", "sa", "")) {
+            crearComoHbm2ddl(conexion, "ALTER TABLE CITA ADD COLUMN HORAINICIO TIME");
+
+            try {
+                new MigradorEsquema(conexion).migrar();
+                fail("Tomó como versión 1 una base de datos con columnas de la versión 2");
+            } catch (IllegalStateException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("sobra la columna CITA.HORAINICIO"));
+            }
+            // Sin ESQUEMA_VERSION, para que el siguiente arranque vuelva a verificarla
+            assertEquals("0", consultar(conexion, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES " +
+                    "WHERE TABLE_NAME = 'ESQUEMA_VERSION'"));
+            conexion.createStatement().execute("SHUTDOWN");
+        }
+    }
+
+    public void testSlotsDuplicadosFallanAntesDeTocarElEsquema() throws Exception {
+        try (Connection conexion = DriverManager.getConnection("jdbc:hsqldb:mem:migrador-duplicados", "sa", "")) {
+            crearComoHbm2ddl(conexion, null);
+            crearCitasEnElMismoSlot(conexion);
+
+            try {
+                new MigradorEsquema(conexion).migrar();
+                fail("Aplic\u00f3 V2 con dos citas activas en el mismo slot");
+            } catch (IllegalStateException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("slot 3 (2 citas)"));
+            }
+            assertEquals("0", consultar(conexion, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS " +
+                    "WHERE TABLE_NAME = 'CITA' AND COLUMN_NAME = 'HORAINICIO'"));
+            assertEquals("1", consultar(conexion, "SELECT MAX(VERSION) FROM ESQUEMA_VERSION"));
+
+            conexion.createStatement().execute("UPDATE CITA SET ESTADO = 'CANCELADA' WHERE IDCITA = 2");
+            assertTrue(new MigradorEsquema(conexion).migrar() > 2);
+            assertEquals("0", consultar(conexion, "SELECT COUNT(*) FROM ESQUEMA_BLOQUEO"));
+            conexion.createStatement().execute("SHUTDOWN");
+        }
+    }
+
+    public void testScriptQueFalloAMediasSigueDondeSeQuedo() throws Exception {
+        try (Connection conexion = DriverManager.getConnection("jdbc:hsqldb:mem:migrador-a-medias", "sa", "")) {
+            crearComoHbm2ddl(conexion, null);
+            crearCitasEnElMismoSlot(conexion);
+            try {
+                new MigradorEsquema(conexion).migrar();
+                fail();
+            } catch (IllegalStateException ex) {
+                // Deja la base de datos en la versión 1
+            }
+            // Como si V2 hubiera fallado en ADD CONSTRAINT: sus DDL anteriores ya están confirmados
+            String v2 = MigradorEsquema.leerScript(2);
+            List<String> sentencias = MigradorEsquema.separarSentencias(v2);
+            try (Statement st = conexion.createStatement()) {
+                for (String sentencia : sentencias.subList(0, 3)) {
+                    st.execute(sentencia);
+                }
+                st.execute("INSERT INTO ESQUEMA_PROGRESO VALUES (2, " + MigradorEsquema.checksum(v2) + ", 3)");
+                st.execute("UPDATE CITA SET ESTADO = 'CANCELADA', SLOTRESERVADO = NULL WHERE IDCITA = 2");
+            }
+
+            assertTrue(new MigradorEsquema(conexion).migrar() > 2);
+            assertEquals("0", consultar(conexion, "SELECT COUNT(*) FROM ESQUEMA_PROGRESO"));
+            assertEquals("3", consultar(conexion, "SELECT SLOTRESERVADO FROM CITA WHERE IDCITA = 1"));
+            conexion.createStatement().execute("SHUTDOWN");
+        }
+    }
+
+    public void testEsperaMientrasOtraInstanciaMigra() throws Exception {
+        String url = "jdbc:hsqldb:mem:migrador-bloqueo";
+        try (Connection conexion = DriverManager.getConnection(url, "sa", "");
+                Connection otra = DriverManager.getConnection(url, "sa", "")) {
+            new MigradorEsquema(conexion).migrar();
+            conexion.createStatement().execute("INSERT INTO ESQUEMA_BLOQUEO VALUES (1, 'otra', CURRENT_TIMESTAMP)");
+
+            CompletableFuture<Integer> migracion = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new MigradorEsquema(otra).migrar();
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            try {
+                migracion.get(300, TimeUnit.MILLISECONDS);
+                fail("Migr\u00f3 con el bloqueo tomado por otra instancia");
+            } catch (TimeoutException ex) {
+                // Esperando a que la otra instancia suelte el bloqueo
+            }
+            conexion.createStatement().execute("DELETE FROM ESQUEMA_BLOQUEO");
+            assertTrue(migracion.get(5, TimeUnit.SECONDS) > 2);
+            conexion.createStatement().execute("SHUTDOWN");
+        }
+    }
+
+    public void testEsquemaMigradoCoincideConElModelo() throws Exception {
+        BaseDatosPrueba.iniciar();
+        Map<String, Object> propiedades = new HashMap<>();
+        propiedades.put("hibernate.connection.url", BaseDatosPrueba.getUrl());
+        propiedades.put("hibernate.connection.username", "sa");
+        propiedades.put("hibernate.connection.password", "");
+        propiedades.put("hibernate.hbm2ddl.auto", "validate");
+        // Falla con SchemaManagementException si falta una tabla o una columna del modelo
+        EntityManagerFactory fabrica = Persistence.createEntityManagerFactory("junit", propiedades);
+        fabrica.close();
+    }
+
+    /**
+     * El esquema de V1 sin las tablas de sistema que hbm2ddl no creaba, más un cambio opcional.
+     */
+    private static void crearComoHbm2ddl(Connection conexion, String cambio) throws Exception {
+        String v1;
+        try (InputStream entrada = MigradorEsquemaTest.class.getClassLoader()
+                .getResourceAsStream("db/migracion/V1.sql");
+                Scanner lector = new Scanner(entrada, StandardCharsets.UTF_8.name())) {
+            v1 = lector.useDelimiter("\\A").next();
+        }
+        try (Statement st = conexion.createStatement()) {
+            for (String sentencia : MigradorEsquema.separarSentencias(v1)) {
+                if (!sentencia.contains("OXFILES") && !sentencia.contains("OXEMAILSUBSCRIPTIONS")) {
+                    st.execute(sentencia);
+                }
+            }
+            if (cambio != null) {
+                st.execute(cambio);
+            }
+        }
+    }
+
+    /**
+     * Dos citas registradas del mismo médico, fecha y slot (ids 1 y 2).
+     */
+    private static void crearCitasEnElMismoSlot(Connection conexion) throws Exception {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("INSERT INTO ESPECIALIDAD(NOMBRE) VALUES ('General')");
+            st.execute("INSERT INTO MEDICO(CEDULA, NOMBRE, ESPECIALIDAD_IDESPECIALIDAD) VALUES ('0000000001', 'M', 1)");
+            st.execute("INSERT INTO PACIENTE(CEDULA, NOMBRE) VALUES ('0000000002', 'P')");
+            for (int i = 0; i < 2; i++) {
+                st.execute("INSERT INTO CITA(ESTADO, FECHACITA, NUMEROSLOT, MEDICO_IDMEDICO, PACIENTE_IDPACIENTE) " +
+                        "VALUES ('REGISTRADA', DATE '2024-03-04', 3, 1, 1)");
+            }
+        }
+    }
+
+    private static String consultar(Connection conexion, String sql) throws Exception {
+        try (Statement st = conexion.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.persistence.EntityManager;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+import com.gestionmedica.gestionmedica.servicios.*;
+
+/**
+ * Prueba de carga de reservas concurrentes con JPA en proceso, sobre la base
+ * de datos de prueba (migrada con MigradorEsquema).
+ *
+ * Varios hilos reservan, reprograman y cancelan citas concentradas en pocos
+ * slots de pocos médicos. Al final ningún (médico, fecha, slot) puede tener
+ * más de una cita no cancelada, y tiene que haber habido conflictos (si no,
+ * la prueba no ejercitó nada). Throughput, latencias y tasas se registran
+ * en el log.
+ *
+ * El tamaño se ajusta con propiedades del sistema, p. ej.
+ * -Dcarga.hilos=16 -Dcarga.operaciones=5000.
+ */
+public class CitaCargaTest extends TestCase {
+
+    private static final Logger log = Logger.getLogger(CitaCargaTest.class.getName());
+
+    private static final int MAX_REINTENTOS = 3;
+    // Turno COMPLETO con la duración por defecto, como los médicos de BaseDatosPrueba
+    private static final int SLOTS_POR_DIA =
+            TablaSlots.de(TurnoTrabajo.COMPLETO, TablaSlots.DURACION_POR_DEFECTO).getCantidad();
+
+    private final int medicos = Integer.getInteger("carga.medicos", 3);
+    private final int pacientes = Integer.getInteger("carga.pacientes", 50);
+    private final int hilos = Integer.getInteger("carga.hilos", 8);
+    private final int operaciones = Integer.getInteger("carga.operaciones", 600);
+    private final int dias = Integer.getInteger("carga.dias", 2);
+    private final int slotsCalientes = Math.min(Integer.getInteger("carga.slotsCalientes", 4), SLOTS_POR_DIA);
+
+    private List<Integer> idsMedicos;
+    private List<Integer> idsPacientes;
+    private final List<LocalDate> fechas = new ArrayList<>();
+
+    private final AtomicInteger siguienteOperacion = new AtomicInteger();
+    private final AtomicLong exitos = new AtomicLong();
+    private final AtomicLong conflictos = new AtomicLong();
+    private final AtomicLong reintentos = new AtomicLong();
+    private final AtomicLong fallidas = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        idsMedicos = BaseDatosPrueba.crearMedicos(medicos);
+        idsPacientes = BaseDatosPrueba.crearPacientes(pacientes);
+        // Fechas lejanas para no coincidir con las de otras pruebas sobre la misma base de datos
+        for (int d = 1; d <= dias; d++) {
+            fechas.add(LocalDate.now().plusDays(200 + d));
+        }
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testReservasConcurrentes() throws Exception {
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        List<long[]> latenciasPorHilo = Collections.synchronizedList(new ArrayList<>());
+        long inicio = System.nanoTime();
+        for (int h = 0; h < hilos; h++) {
+            ejecutor.execute(() -> latenciasPorHilo.add(trabajar()));
+        }
+        ejecutor.shutdown();
+        assertTrue("La carga no terminó a tiempo", ejecutor.awaitTermination(10, TimeUnit.MINUTES));
+        registrarResultado(latenciasPorHilo, (System.nanoTime() - inicio) / 1e9);
+
+        assertEquals("Errores que no son conflictos de slot (ver el log)", 0, errores.get());
+        assertTrue("Sin conflictos: la carga no compitió por los slots", conflictos.get() > 0);
+        assertEquals(Collections.emptyList(), dobleReserva());
+    }
+
+    /**
+     * Ejecuta operaciones hasta agotar el total. Retorna {n, latencia1, ..., latenciaN} en nanosegundos.
+     */
+    private long[] trabajar() {
+        BaseDatosPrueba.usar();
+        Random random = ThreadLocalRandom.current();
+        List<Integer> misCitas = new ArrayList<>();
+        long[] latencias = new long[operaciones + 1];
+        int n = 0;
+        try {
+            while (siguienteOperacion.getAndIncrement() < operaciones) {
+                long inicio = System.nanoTime();
+                int tipo = random.nextInt(100);
+                if (tipo < 60 || misCitas.isEmpty()) {
+                    reservar(random, misCitas);
+                } else if (tipo < 85) {
+                    reprogramar(random, misCitas);
+                } else {
+                    cancelar(random, misCitas);
+                }
+                latencias[++n] = System.nanoTime() - inicio;
+            }
+        } finally {
+            BaseDatosPrueba.deshacer();
+        }
+        latencias[0] = n;
+        return latencias;
+    }
+
+    private void reservar(Random random, List<Integer> misCitas) {
+        Integer medicoId = idsMedicos.get(random.nextInt(idsMedicos.size()));
+        LocalDate fecha = fechas.get(random.nextInt(fechas.size()));
+        int slot = 1 + random.nextInt(slotsCalientes);
+        for (int intento = 0; intento <= MAX_REINTENTOS; intento++) {
+            if (intento > 0) {
+                reintentos.incrementAndGet();
+                slot = 1 + random.nextInt(SLOTS_POR_DIA);
+            }
+            try {
+                Cita cita = BaseDatosPrueba.nuevaCita(medicoId,
+                        idsPacientes.get(random.nextInt(idsPacientes.size())), fecha, slot);
+                XPersistence.commit();
+                misCitas.add(cita.getIdCita());
+                exitos.incrementAndGet();
+                return;
+            } catch (RuntimeException ex) {
+                if (!esConflicto(ex)) {
+                    return;
+                }
+            }
+        }
+        fallidas.incrementAndGet();
+    }
+
+    private void reprogramar(Random random, List<Integer> misCitas) {
+        Integer idCita = misCitas.get(random.nextInt(misCitas.size()));
+        try {
+            Cita cita = XPersistence.getManager().find(Cita.class, idCita);
+            if (cita == null || cita.getEstado() != EstadoCita.REGISTRADA) {
+                XPersistence.rollback();
+                return;
+            }
+            cita.setNumeroSlot(1 + random.nextInt(slotsCalientes));
+            XPersistence.commit();
+            exitos.incrementAndGet();
+        } catch (RuntimeException ex) {
+            esConflicto(ex);
+        }
+    }
+
+    private void cancelar(Random random, List<Integer> misCitas) {
+        Integer idCita = misCitas.remove(random.nextInt(misCitas.size()));
+        try {
+            Cita cita = XPersistence.getManager().find(Cita.class, idCita);
+            if (cita == null || cita.getEstado() != EstadoCita.REGISTRADA) {
+                XPersistence.rollback();
+                return;
+            }
+            cita.setEstado(EstadoCita.CANCELADA);
+            cita.setFechaCancelacion(LocalDate.now());
+            XPersistence.commit();
+            exitos.incrementAndGet();
+        } catch (RuntimeException ex) {
+            esConflicto(ex);
+        }
+    }
+
+    /**
+     * Deshace la transacción y clasifica el fallo; retorna true si fue por slot ocupado.
+     */
+    private boolean esConflicto(RuntimeException ex) {
+        BaseDatosPrueba.deshacer();
+        if (esValidacion(ex) || Cita.esSlotDuplicado(ex)) {
+            conflictos.incrementAndGet();
+            return true;
+        }
+        errores.incrementAndGet();
+        log.log(Level.WARNING, "Error inesperado en la prueba de carga", ex);
+        return false;
+    }
+
+    // Las validaciones de @PreUpdate llegan al commit envueltas en RollbackException
+    private static boolean esValidacion(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof ValidationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * (médico, fecha, slot) de los médicos de la prueba con más de una cita no cancelada.
+     */
+    private List<String> dobleReserva() {
+        EntityManager em = XPersistence.getManager();
+        List<Object[]> duplicados = em
+                .createQuery("SELECT c.medico.idMedico, c.fechaCita, c.numeroSlot, COUNT(c) FROM Cita c " +
+                        "WHERE c.estado != 'CANCELADA' AND c.medico.idMedico IN :medicos " +
+                        "GROUP BY c.medico.idMedico, c.fechaCita, c.numeroSlot HAVING COUNT(c) > 1", Object[].class)
+                .setParameter("medicos", idsMedicos)
+                .getResultList();
+        XPersistence.commit();
+        List<String> resultado = new ArrayList<>();
+        for (Object[] d : duplicados) {
+            resultado.add("médico " + d[0] + ", " + d[1] + ", slot " + d[2] + " (" + d[3] + " citas)");
+        }
+        return resultado;
+    }
+
+    private void registrarResultado(List<long[]> latenciasPorHilo, double segundos) {
+        int total = 0;
+        for (long[] l : latenciasPorHilo) {
+            total += (int) l[0];
+        }
+        long[] latencias = new long[total];
+        int i = 0;
+        for (long[] l : latenciasPorHilo) {
+            System.arraycopy(l, 1, latencias, i, (int) l[0]);
+            i += (int) l[0];
+        }
+        Arrays.sort(latencias);
+        log.info(String.format("Operaciones: %d en %.2f s (%.1f op/s); latencia p50 %.2f ms, p99 %.2f ms; " +
+                "éxitos %d, conflictos %d (%.1f%%), reintentos %d (%.1f%%), sin slot tras reintentar %d, errores %d",
+                total, segundos, total / segundos,
+                percentil(latencias, 0.50) / 1e6, percentil(latencias, 0.99) / 1e6,
+                exitos.get(), conflictos.get(), 100.0 * conflictos.get() / Math.max(1, total),
+                reintentos.get(), 100.0 * reintentos.get() / Math.max(1, total), fallidas.get(), errores.get()));
+    }
+
+    private static long percentil(long[] ordenados, double p) {
+        if (ordenados.length == 0) {
+            return 0;
+        }
+        return ordenados[Math.min(ordenados.length - 1, (int) Math.ceil(ordenados.length * p) - 1)];
+    }
+}
@@ -0,0 +1,104 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import java.time.LocalDate;
+import java.util.List;
+import junit.framework.TestCase;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openxava.component.MetaComponent;
+import org.openxava.jpa.XPersistence;
+import org.openxava.tab.impl.EntityTab;
+import org.openxava.tab.impl.EntityTabFactory;
+import org.openxava.tab.impl.IXTableModel;
+import org.openxava.tab.meta.MetaTab;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * La lista de citas se carga con el mismo número de sentencias SQL sea
+ * cual sea el tamaño de la página: la hora sale de la columna horaInicio y
+ * los nombres del join de la consulta, sin una consulta por fila.
+ */
+public class CitaListaTest extends TestCase {
+
+    private static final int FILAS = 1000;
+    private static final int MEDICOS = 5;
+    private static final int DIAS = 10;
+    private static final int SLOTS_POR_DIA = FILAS / (MEDICOS * DIAS);
+
+    private static boolean sembrada;
+    private static int primerMedico;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        sembrar();
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testSentenciasConstantesPorPagina() throws Exception {
+        long pequena = sentenciasAlLeer(10);
+        long grande = sentenciasAlLeer(FILAS);
+        assertEquals("Sentencias de una página de " + FILAS + " filas frente a una de 10", pequena, grande);
+    }
+
+    public void testHoraSinConsultarHorarios() {
+        List<Cita> citas = XPersistence.getManager()
+                .createQuery("FROM Cita c WHERE c.medico.idMedico >= :medico", Cita.class)
+                .setParameter("medico", primerMedico)
+                .setMaxResults(FILAS)
+                .getResultList();
+        assertEquals(FILAS, citas.size());
+        Statistics estadisticas = estadisticas();
+        estadisticas.clear();
+        for (Cita cita : citas) {
+            assertFalse(cita.getHoraDelSlotTexto().isEmpty());
+        }
+        assertEquals(0, estadisticas.getPrepareStatementCount());
+    }
+
+    private long sentenciasAlLeer(int filas) throws Exception {
+        MetaTab metaTab = MetaComponent.get("Cita").getMetaTab();
+        EntityTab tab = EntityTabFactory.create(metaTab, filas);
+        Statistics estadisticas = estadisticas();
+        estadisticas.clear();
+        tab.search("${medico.idMedico} >= ?", new Object[] { primerMedico });
+        IXTableModel tabla = tab.getTable();
+        assertEquals(FILAS, tabla.getTotalSize());
+        for (int fila = 0; fila < filas; fila++) {
+            for (int columna = 0; columna < tabla.getColumnCount(); columna++) {
+                tabla.getValueAt(fila, columna);
+            }
+        }
+        long sentencias = estadisticas.getPrepareStatementCount();
+        XPersistence.commit();
+        return sentencias;
+    }
+
+    private static Statistics estadisticas() {
+        Statistics estadisticas = XPersistence.getManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        estadisticas.setStatisticsEnabled(true);
+        return estadisticas;
+    }
+
+    private static synchronized void sembrar() {
+        if (sembrada) {
+            return;
+        }
+        List<Integer> medicos = BaseDatosPrueba.crearMedicos(MEDICOS);
+        List<Integer> pacientes = BaseDatosPrueba.crearPacientes(SLOTS_POR_DIA);
+        primerMedico = medicos.get(0);
+        LocalDate manana = LocalDate.now().plusDays(1);
+        for (Integer medicoId : medicos) {
+            for (int dia = 0; dia < DIAS; dia++) {
+                for (int slot = 1; slot <= SLOTS_POR_DIA; slot++) {
+                    BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(slot - 1), manana.plusDays(dia), slot);
+                }
+            }
+            XPersistence.commit();
+        }
+        sembrada = true;
+    }
+}
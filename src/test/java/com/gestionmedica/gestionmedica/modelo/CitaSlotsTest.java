@@ -0,0 +1,74 @@
+package com.gestionmedica.gestionmedica.modelo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Citas en slots que ya no están en la tabla de su turno: los turnos de 6 h
+ * tenían 16 slots y ahora tienen 12, y las citas de los slots 13 a 16 se
+ * tienen que poder atender y cancelar.
+ */
+public class CitaSlotsTest extends TestCase {
+
+    private Integer medicoId;
+    private List<Integer> pacientes;
+    private LocalDate fecha;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        pacientes = BaseDatosPrueba.crearPacientes(2);
+        fecha = LocalDate.now().plusDays(3);
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement(
+                        "UPDATE HORARIODISPONIBLE SET TURNO = 'MATUTINO' WHERE MEDICO_IDMEDICO = ?")) {
+            ps.setInt(1, medicoId);
+            ps.executeUpdate();
+        }
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testCitaFueraDeLaTablaSePuedeAtenderYCancelar() throws Exception {
+        int atendida = BaseDatosPrueba.insertarCita(medicoId, pacientes.get(0), fecha, 14, EstadoCita.REGISTRADA);
+        int cancelada = BaseDatosPrueba.insertarCita(medicoId, pacientes.get(1), fecha, 15, EstadoCita.REGISTRADA);
+
+        XPersistence.getManager().find(Cita.class, atendida).setEstado(EstadoCita.ATENDIDA);
+        XPersistence.getManager().find(Cita.class, cancelada).setEstado(EstadoCita.CANCELADA);
+        XPersistence.commit();
+
+        assertEquals(EstadoCita.ATENDIDA, XPersistence.getManager().find(Cita.class, atendida).getEstado());
+        assertEquals(EstadoCita.CANCELADA, XPersistence.getManager().find(Cita.class, cancelada).getEstado());
+        XPersistence.commit();
+    }
+
+    public void testNoSePuedeMoverAUnSlotFueraDeLaTabla() throws Exception {
+        int id = BaseDatosPrueba.insertarCita(medicoId, pacientes.get(0), fecha, 14, EstadoCita.REGISTRADA);
+
+        Cita cita = XPersistence.getManager().find(Cita.class, id);
+        cita.setNumeroSlot(16);
+        try {
+            XPersistence.getManager().flush();
+            fail("Movida a un slot que el turno ya no tiene");
+        } catch (ValidationException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("entre 1 y 12"));
+        }
+        XPersistence.rollback();
+
+        cita = XPersistence.getManager().find(Cita.class, id);
+        cita.setNumeroSlot(12);
+        XPersistence.commit();
+        assertEquals(LocalTime.of(13, 30), XPersistence.getManager().find(Cita.class, id).getHoraInicio());
+        XPersistence.commit();
+    }
+}
@@ -0,0 +1,105 @@
+package com.gestionmedica.gestionmedica.persistencia;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openxava.component.MetaComponent;
+import org.openxava.jpa.XPersistence;
+import org.openxava.tab.impl.EntityTab;
+import org.openxava.tab.impl.EntityTabFactory;
+import com.gestionmedica.gestionmedica.instrumentacion.*;
+import com.gestionmedica.gestionmedica.migracion.*;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Con la petición marcada, la lista de OpenXava se lee de la réplica y lo
+ * que se escribe después en la misma transacción va a la principal.
+ *
+ * La réplica es otra base de datos en memoria con el mismo esquema y una
+ * especialidad que la principal no tiene; la unidad "junit" usa aquí
+ * ProveedorConexionesMedido, como la aplicación.
+ */
+public class EnrutadorLecturaTest extends TestCase {
+
+    private static final String URL_REPLICA = "jdbc:hsqldb:mem:replica-enrutado";
+    private static final String SOLO_EN_REPLICA = "Solo en la replica";
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        try (Connection replica = DriverManager.getConnection(URL_REPLICA, "sa", "")) {
+            new MigradorEsquema(replica).migrar();
+            try (Statement st = replica.createStatement()) {
+                st.executeUpdate("DELETE FROM ESPECIALIDAD");
+                st.executeUpdate("INSERT INTO ESPECIALIDAD (NOMBRE) VALUES ('" + SOLO_EN_REPLICA + "')");
+            }
+            // Réplica al día
+            try (PreparedStatement ps = replica.prepareStatement("UPDATE LATIDOREPLICA SET INSTANTE = ? WHERE ID = 1")) {
+                ps.setLong(1, System.currentTimeMillis());
+                ps.executeUpdate();
+            }
+        }
+        EnrutadorLectura.configurar(dataSource(URL_REPLICA), "*", 60_000);
+
+        XPersistence.setPersistenceUnit("junit");
+        Map<String, Object> propiedades = new HashMap<>();
+        propiedades.put("hibernate.connection.provider_class", ProveedorConexionesMedido.class.getName());
+        propiedades.put("hibernate.connection.datasource", dataSource(BaseDatosPrueba.getUrl()));
+        XPersistence.setPersistenceUnitProperties(propiedades);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+        EnrutadorLectura.limpiar();
+        EnrutadorLectura.configurar(null, null, 0);
+        BaseDatosPrueba.usar();
+    }
+
+    public void testListaDeLaReplicaYEscrituraEnLaPrincipal() throws Exception {
+        EnrutadorLectura.marcarLectura();
+        assertEquals(1, buscarEnLista(SOLO_EN_REPLICA));
+
+        Especialidad especialidad = new Especialidad();
+        especialidad.setNombre("Escrita tras la lista");
+        XPersistence.getManager().persist(especialidad);
+        XPersistence.commit();
+
+        assertEquals(especialidad.getNombre(), BaseDatosPrueba.consultar(
+                "SELECT NOMBRE FROM ESPECIALIDAD WHERE IDESPECIALIDAD = ?", especialidad.getIdEspecialidad()));
+        try (Connection replica = DriverManager.getConnection(URL_REPLICA, "sa", "");
+                Statement st = replica.createStatement();
+                ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM ESPECIALIDAD")) {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    public void testSinMarcaLaListaEsDeLaPrincipal() throws Exception {
+        assertEquals(0, buscarEnLista(SOLO_EN_REPLICA));
+    }
+
+    public void testSoloLosSelectDeLaLista() {
+        assertFalse(ConexionEnrutada.esConsultaDeLista("select 1 from ESPECIALIDAD"));
+        assertFalse(ConexionEnrutada.esConsultaDeLista("insert into ESPECIALIDAD (NOMBRE) values (?)"));
+    }
+
+    private static int buscarEnLista(String nombre) throws Exception {
+        EntityTab tab = EntityTabFactory.create(MetaComponent.get("Especialidad").getMetaTab());
+        tab.search("${nombre} = ?", new Object[] { nombre });
+        return tab.getTable().getTotalSize();
+    }
+
+    private static JDBCDataSource dataSource(String url) {
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl(url);
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        return dataSource;
+    }
+}
@@ -0,0 +1,206 @@
+package com.gestionmedica.gestionmedica.pruebas;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.migracion.*;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+
+/**
+ * Base de datos HSQLDB en memoria para las pruebas, creada con las
+ * migraciones de db/migracion como en producción. La unidad de persistencia
+ * "junit" apunta a ella en los hilos que llaman a usar().
+ *
+ * Es una sola por JVM: cada prueba siembra sus propios médicos y pacientes
+ * (con cédulas únicas) en vez de vaciar las tablas.
+ */
+public class BaseDatosPrueba {
+
+    private static final String URL = "jdbc:hsqldb:mem:gestionmedica-pruebas";
+    // Las cédulas empiezan en un valor distinto en cada ejecución, por si la base de datos se reutiliza
+    private static final long BASE_CEDULAS = System.currentTimeMillis() % 100_000_000L * 10;
+    private static final AtomicInteger cedulas = new AtomicInteger();
+    private static boolean migrada;
+
+    /**
+     * Migra la base de datos la primera vez y deja la unidad "junit" en el hilo actual.
+     */
+    public static synchronized void iniciar() throws Exception {
+        if (!migrada) {
+            try (Connection conexion = conectar()) {
+                new MigradorEsquema(conexion).migrar();
+            }
+            migrada = true;
+        }
+        usar();
+    }
+
+    /**
+     * Apunta XPersistence a la base de datos de prueba en el hilo actual.
+     */
+    public static void usar() {
+        XPersistence.setPersistenceUnit("junit");
+        Map<String, Object> propiedades = new HashMap<>();
+        propiedades.put("hibernate.connection.url", URL);
+        propiedades.put("hibernate.connection.username", "sa");
+        propiedades.put("hibernate.connection.password", "");
+        XPersistence.setPersistenceUnitProperties(propiedades);
+    }
+
+    public static String getUrl() {
+        return URL;
+    }
+
+    public static Connection conectar() throws SQLException {
+        return DriverManager.getConnection(URL, "sa", "");
+    }
+
+    /**
+     * Crea médicos con horario COMPLETO todos los días, de una especialidad nueva. Retorna sus ids.
+     */
+    public static List<Integer> crearMedicos(int cantidad) {
+        EntityManager em = XPersistence.getManager();
+        Especialidad especialidad = new Especialidad();
+        especialidad.setNombre("Prueba " + cedulas.incrementAndGet());
+        em.persist(especialidad);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            int numero = cedulas.incrementAndGet();
+            Medico medico = new Medico();
+            medico.setCedula(cedula(numero));
+            medico.setNombre("Medico");
+            medico.setApellido(letras(numero));
+            medico.setTelefono("0999999999");
+            medico.setCorreo("medico" + numero + "@prueba.test");
+            medico.setEspecialidad(especialidad);
+            em.persist(medico);
+            for (DiaSemana dia : DiaSemana.values()) {
+                HorarioDisponible horario = new HorarioDisponible();
+                horario.setMedico(medico);
+                horario.setDiaSemana(dia);
+                horario.setTurno(TurnoTrabajo.COMPLETO);
+                em.persist(horario);
+            }
+            ids.add(medico.getIdMedico());
+        }
+        XPersistence.commit();
+        return ids;
+    }
+
+    public static List<Integer> crearPacientes(int cantidad) {
+        EntityManager em = XPersistence.getManager();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            int numero = cedulas.incrementAndGet();
+            Paciente paciente = new Paciente();
+            paciente.setCedula(cedula(numero));
+            paciente.setNombre("Paciente");
+            paciente.setApellido(letras(numero));
+            paciente.setFechaNacimiento(LocalDate.of(1980, 1, 1));
+            paciente.setTelefono("0988888888");
+            paciente.setCorreo("paciente" + numero + "@prueba.test");
+            em.persist(paciente);
+            ids.add(paciente.getIdPaciente());
+            if (i % 100 == 99) {
+                XPersistence.commit();
+                em = XPersistence.getManager();
+            }
+        }
+        XPersistence.commit();
+        return ids;
+    }
+
+    /**
+     * Reserva una cita en la transacción en curso, sin confirmarla.
+     */
+    public static Cita nuevaCita(Integer medicoId, Integer pacienteId, LocalDate fecha, int slot) {
+        EntityManager em = XPersistence.getManager();
+        Cita cita = new Cita();
+        cita.setMedico(em.getReference(Medico.class, medicoId));
+        cita.setPaciente(em.getReference(Paciente.class, pacienteId));
+        cita.setFechaCita(fecha);
+        cita.setNumeroSlot(slot);
+        cita.setMotivoConsulta("Prueba");
+        em.persist(cita);
+        return cita;
+    }
+
+    /**
+     * Inserta una cita por JDBC, sin los callbacks ni las validaciones de
+     * Cita (p. ej. citas de días pasados). Retorna su id.
+     */
+    public static int insertarCita(Integer medicoId, Integer pacienteId, LocalDate fecha, int slot,
+            EstadoCita estado) throws SQLException {
+        try (Connection conexion = conectar();
+                PreparedStatement ps = conexion.prepareStatement("INSERT INTO CITA (PACIENTE_IDPACIENTE, " +
+                        "MEDICO_IDMEDICO, FECHACITA, NUMEROSLOT, SLOTRESERVADO, ESTADO, MOTIVOCONSULTA, FECHAREGISTRO) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, 'Prueba', CURRENT_DATE)", Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, pacienteId);
+            ps.setInt(2, medicoId);
+            ps.setDate(3, Date.valueOf(fecha));
+            ps.setInt(4, slot);
+            if (estado == EstadoCita.CANCELADA) {
+                ps.setNull(5, Types.INTEGER);
+            } else {
+                ps.setInt(5, slot);
+            }
+            ps.setString(6, estado.name());
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Resultado de una consulta de una fila y una columna, o null si no hay filas.
+     */
+    public static Object consultar(String sql, Object... parametros) throws SQLException {
+        try (Connection conexion = conectar();
+                PreparedStatement ps = conexion.prepareStatement(sql)) {
+            for (int i = 0; i < parametros.length; i++) {
+                ps.setObject(i + 1, parametros[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getObject(1) : null;
+            }
+        }
+    }
+
+    public static void deshacer() {
+        try {
+            XPersistence.rollback();
+        } catch (RuntimeException ex) {
+            // La transacción ya estaba cerrada
+        }
+    }
+
+    private static String cedula(int numero) {
+        return String.format("%010d", BASE_CEDULAS + numero);
+    }
+
+    // Apellidos solo con letras, como exige ValidadorNombre
+    private static String letras(int n) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('A' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return "Prueba" + sb.reverse().toString().toLowerCase();
+    }
+}
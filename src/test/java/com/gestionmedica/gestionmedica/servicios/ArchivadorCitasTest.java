@@ -0,0 +1,55 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import junit.framework.TestCase;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Archivo de citas antiguas contra la base de datos de prueba.
+ */
+public class ArchivadorCitasTest extends TestCase {
+
+    private Integer medicoId;
+    private Integer pacienteId;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        pacienteId = BaseDatosPrueba.crearPacientes(1).get(0);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testMueveSoloLasCerradasAntiguas() throws Exception {
+        LocalDate antigua = LocalDate.now().minusDays(400);
+        int atendida = BaseDatosPrueba.insertarCita(medicoId, pacienteId, antigua, 1, EstadoCita.ATENDIDA);
+        int cancelada = BaseDatosPrueba.insertarCita(medicoId, pacienteId, antigua, 1, EstadoCita.CANCELADA);
+        int registrada = BaseDatosPrueba.insertarCita(medicoId, pacienteId, antigua, 2, EstadoCita.REGISTRADA);
+        int reciente = BaseDatosPrueba.insertarCita(medicoId, pacienteId, LocalDate.now().minusDays(10), 1,
+                EstadoCita.ATENDIDA);
+
+        int movidas;
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            movidas = new ArchivadorCitas(conexion).archivar(ArchivadorCitas.DIAS_ANTIGUEDAD_DEFECTO);
+        }
+        assertTrue(movidas >= 2);
+        for (int id : new int[] { atendida, cancelada }) {
+            assertNull(BaseDatosPrueba.consultar("SELECT IDCITA FROM CITA WHERE IDCITA = ?", id));
+            assertEquals(id, BaseDatosPrueba.consultar("SELECT IDCITA FROM CITAHISTORICA WHERE IDCITA = ?", id));
+        }
+        for (int id : new int[] { registrada, reciente }) {
+            assertEquals(id, BaseDatosPrueba.consultar("SELECT IDCITA FROM CITA WHERE IDCITA = ?", id));
+        }
+
+        // Relanzarlo no encuentra nada más de este médico
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            new ArchivadorCitas(conexion).archivar(ArchivadorCitas.DIAS_ANTIGUEDAD_DEFECTO);
+        }
+        assertEquals(2L, ((Number) BaseDatosPrueba.consultar(
+                "SELECT COUNT(*) FROM CITAHISTORICA WHERE MEDICO_IDMEDICO = ?", medicoId)).longValue());
+    }
+}
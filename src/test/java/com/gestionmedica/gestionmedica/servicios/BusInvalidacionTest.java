@@ -0,0 +1,110 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.migracion.*;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Lectura de CAMBIOCACHE en un solo proceso: los avisos de "otro nodo" se
+ * insertan con otro NODO. La prueba con varias JVM es run.PruebaInvalidacionCluster.
+ *
+ * Usa su propia base de datos en memoria con MVCC, como el servidor de
+ * PruebaInvalidacionCluster, para que una transacción sin confirmar no
+ * bloquee la lectura.
+ */
+public class BusInvalidacionTest extends TestCase {
+
+    private static final String URL = "jdbc:hsqldb:mem:bus-invalidacion";
+    private static final String OTRO_NODO = "otro-nodo";
+
+    private Connection conexion;
+    private final List<Integer> recibidos = new ArrayList<>();
+    private BusInvalidacion bus;
+
+    protected void setUp() throws Exception {
+        conexion = DriverManager.getConnection(URL, "sa", "");
+        new MigradorEsquema(conexion).migrar();
+        try (Statement st = conexion.createStatement()) {
+            st.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+            st.execute("DELETE FROM CAMBIOCACHE");
+        }
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl(URL);
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        bus = new BusInvalidacion(dataSource, cambio -> recibidos.add(cambio.getIdentificador()));
+        // La primera lectura solo fija la marca
+        bus.run();
+    }
+
+    protected void tearDown() throws Exception {
+        conexion.close();
+    }
+
+    public void testAplicaUnaVezLosCambiosDeOtrosNodos() throws Exception {
+        insertar(conexion, 1);
+        BusInvalidacion.publicar(conexion, BusInvalidacion.MEDICO, 2, 2);
+        insertar(conexion, 3);
+
+        bus.run();
+        bus.run();
+
+        // El cambio 2 es de este nodo
+        assertEquals(Arrays.asList(1, 3), recibidos);
+    }
+
+    public void testTransaccionLentaQueConfirmaDespues() throws Exception {
+        try (Connection lenta = DriverManager.getConnection(URL, "sa", "")) {
+            lenta.setAutoCommit(false);
+            // Id menor que el del cambio siguiente, pero confirma más tarde
+            insertar(lenta, 1);
+            insertar(conexion, 2);
+
+            bus.run();
+            assertEquals(Arrays.asList(2), recibidos);
+
+            lenta.commit();
+        }
+        bus.run();
+        bus.run();
+        assertEquals(Arrays.asList(2, 1), recibidos);
+    }
+
+    /**
+     * El aplicador de la aplicación corre en el hilo de tareas: no debe
+     * confirmar la transacción de XPersistence de ese hilo.
+     */
+    public void testInvalidadorNoConfirmaLaTransaccionDelHilo() throws Exception {
+        BaseDatosPrueba.iniciar();
+        Especialidad especialidad = new Especialidad();
+        especialidad.setNombre("Sin confirmar");
+        XPersistence.getManager().persist(especialidad);
+        XPersistence.getManager().flush();
+
+        InvalidadorCaches.aplicar(new BusInvalidacion.Cambio(BusInvalidacion.MEDICO, 1, 1));
+        XPersistence.rollback();
+
+        assertNull(BaseDatosPrueba.consultar("SELECT IDESPECIALIDAD FROM ESPECIALIDAD WHERE IDESPECIALIDAD = ?",
+                especialidad.getIdEspecialidad()));
+    }
+
+    private static void insertar(Connection conexion, int identificador) throws Exception {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "INSERT INTO CAMBIOCACHE (ENTIDAD, IDENTIFICADOR, NODO) VALUES (?, ?, ?)")) {
+            ps.setString(1, BusInvalidacion.MEDICO);
+            ps.setInt(2, identificador);
+            ps.setString(3, OTRO_NODO);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.time.LocalDate;
+import java.util.List;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Los slots ocupados salen de AgendaDiaria, que se actualiza en la misma
+ * transacción que la cita.
+ */
+public class BuscadorDisponibilidadTest extends TestCase {
+
+    private List<Integer> medicos;
+    private Integer especialidadId;
+    private LocalDate fecha;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicos = BaseDatosPrueba.crearMedicos(2);
+        especialidadId = XPersistence.getManager().find(Medico.class, medicos.get(0))
+                .getEspecialidad().getIdEspecialidad();
+        XPersistence.commit();
+        fecha = LocalDate.now().plusDays(1);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testSaltaLosSlotsOcupados() {
+        Integer pacienteId = BaseDatosPrueba.crearPacientes(1).get(0);
+        BaseDatosPrueba.nuevaCita(medicos.get(0), pacienteId, fecha, 1);
+        BaseDatosPrueba.nuevaCita(medicos.get(1), pacienteId, fecha, 1);
+        BaseDatosPrueba.nuevaCita(medicos.get(1), pacienteId, fecha, 2);
+        XPersistence.commit();
+
+        List<SlotLibre> libres = BuscadorDisponibilidad.buscar(especialidadId, fecha, fecha.plusDays(5), null, 3);
+        XPersistence.commit();
+        assertEquals(3, libres.size());
+        assertSlot(libres.get(0), medicos.get(0), 2);
+        // En el slot 3 están libres los dos; el orden entre ellos es por nombre
+        assertEquals(3, libres.get(1).getNumeroSlot());
+        assertEquals(3, libres.get(2).getNumeroSlot());
+        assertFalse(libres.get(1).getMedicoId().equals(libres.get(2).getMedicoId()));
+    }
+
+    private void assertSlot(SlotLibre libre, Integer medicoId, int slot) {
+        assertEquals(fecha, libre.getFecha());
+        assertEquals(medicoId, libre.getMedicoId());
+        assertEquals(slot, libre.getNumeroSlot());
+    }
+}
@@ -0,0 +1,102 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * La caché de turnos solo guarda lo confirmado en la base de datos, y el
+ * turno de un día no cambia mientras haya citas pendientes ese día.
+ */
+public class CacheHorariosTest extends TestCase {
+
+    private Integer medicoId;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testCambioConfirmado() {
+        assertEquals(TurnoTrabajo.COMPLETO, CacheHorarios.getTurnoActivo(medicoId, DiaSemana.LUNES));
+        cambiarTurno(DiaSemana.LUNES, TurnoTrabajo.MATUTINO);
+        assertEquals(TurnoTrabajo.MATUTINO, CacheHorarios.getTurnoActivo(medicoId, DiaSemana.LUNES));
+        XPersistence.commit();
+        assertEquals(TurnoTrabajo.MATUTINO, CacheHorarios.getTurnoActivo(medicoId, DiaSemana.LUNES));
+    }
+
+    /**
+     * Lo que la transacción leyó de su propio cambio no queda en la caché si se deshace.
+     */
+    public void testCambioDeshecho() {
+        assertEquals(TurnoTrabajo.COMPLETO, CacheHorarios.getTurnoActivo(medicoId, DiaSemana.MARTES));
+        cambiarTurno(DiaSemana.MARTES, TurnoTrabajo.VESPERTINO);
+        assertEquals(TurnoTrabajo.VESPERTINO, CacheHorarios.getTurnoActivo(medicoId, DiaSemana.MARTES));
+        XPersistence.rollback();
+        assertEquals(TurnoTrabajo.COMPLETO, CacheHorarios.getTurnoActivo(medicoId, DiaSemana.MARTES));
+    }
+
+    /**
+     * Los callbacks de Cita leen el turno durante el flush: sin caché, la
+     * consulta no debe volver a volcar la sesión y repetir los callbacks.
+     */
+    public void testReprogramarSinElTurnoEnCache() throws Exception {
+        Integer pacienteId = BaseDatosPrueba.crearPacientes(1).get(0);
+        LocalDate fecha = LocalDate.now().plusDays(2);
+        Cita cita = BaseDatosPrueba.nuevaCita(medicoId, pacienteId, fecha, 1);
+        XPersistence.commit();
+        CacheHorarios.invalidarMedico(medicoId);
+
+        XPersistence.getManager().find(Cita.class, cita.getIdCita()).setFechaCita(fecha.plusDays(1));
+        XPersistence.commit();
+
+        assertEquals(Date.valueOf(fecha.plusDays(1)),
+                BaseDatosPrueba.consultar("SELECT FECHACITA FROM CITA WHERE IDCITA = ?", cita.getIdCita()));
+    }
+
+    public void testNoCambiaElTurnoConCitasPendientes() throws Exception {
+        Integer pacienteId = BaseDatosPrueba.crearPacientes(1).get(0);
+        LocalDate fecha = LocalDate.now().plusDays(1);
+        DiaSemana dia = DiaSemana.desdeFecha(fecha);
+        Cita cita = BaseDatosPrueba.nuevaCita(medicoId, pacienteId, fecha, 1);
+        XPersistence.commit();
+
+        try {
+            cambiarTurno(dia, TurnoTrabajo.VESPERTINO);
+            fail("Cambi\u00f3 el turno con una cita pendiente");
+        } catch (ValidationException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("1 citas pendientes"));
+        }
+        XPersistence.rollback();
+        // Otro día de la semana sí
+        cambiarTurno(DiaSemana.desdeFecha(fecha.plusDays(1)), TurnoTrabajo.VESPERTINO);
+        XPersistence.commit();
+
+        XPersistence.getManager().find(Cita.class, cita.getIdCita()).setEstado(EstadoCita.CANCELADA);
+        XPersistence.commit();
+        cambiarTurno(dia, TurnoTrabajo.VESPERTINO);
+        XPersistence.commit();
+        assertEquals(TurnoTrabajo.VESPERTINO, CacheHorarios.getTurnoActivo(medicoId, dia));
+    }
+
+    private void cambiarTurno(DiaSemana dia, TurnoTrabajo turno) {
+        List<HorarioDisponible> horarios = XPersistence.getManager()
+                .createQuery("FROM HorarioDisponible h WHERE h.medico.id = :medicoId AND h.diaSemana = :dia",
+                        HorarioDisponible.class)
+                .setParameter("medicoId", medicoId)
+                .setParameter("dia", dia)
+                .getResultList();
+        horarios.get(0).setTurno(turno);
+        XPersistence.getManager().flush();
+    }
+}
@@ -0,0 +1,130 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import junit.framework.TestCase;
+import org.hsqldb.jdbc.JDBCDataSource;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Cierre de citas vencidas y su tarea programada contra la base de datos de prueba.
+ */
+public class CierreCitasVencidasTest extends TestCase {
+
+    private Integer medicoId;
+    private Integer pacienteId;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        pacienteId = BaseDatosPrueba.crearPacientes(1).get(0);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testCierraLasVencidasComoNoAsistidas() throws Exception {
+        LocalDate ayer = LocalDate.now().minusDays(1);
+        int vencida = BaseDatosPrueba.insertarCita(medicoId, pacienteId, ayer, 4, EstadoCita.REGISTRADA);
+        int futura = BaseDatosPrueba.insertarCita(medicoId, pacienteId, LocalDate.now().plusDays(1), 4,
+                EstadoCita.REGISTRADA);
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            // insertarCita no pasa por ActualizadorAgenda: la agenda y el mes se cuentan aquí
+            new VerificadorAgenda(conexion).reconstruir(
+                    Collections.singletonMap(medicoId, Collections.singletonList(ayer)));
+            conexion.setAutoCommit(false);
+            new ConsolidadorEstadisticas(conexion).recontar(
+                    Collections.singletonMap(medicoId, Collections.singletonList(YearMonth.from(ayer))));
+            conexion.commit();
+        }
+        long avisos = avisosOcupacion();
+
+        int cerradas;
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            cerradas = new CierreCitasVencidas(conexion).cerrar();
+        }
+        assertTrue(cerradas >= 1);
+        assertEquals("NO_ASISTIO", BaseDatosPrueba.consultar("SELECT ESTADO FROM CITA WHERE IDCITA = ?", vencida));
+        assertEquals(4, BaseDatosPrueba.consultar("SELECT SLOTRESERVADO FROM CITA WHERE IDCITA = ?", vencida));
+        assertEquals("REGISTRADA", BaseDatosPrueba.consultar("SELECT ESTADO FROM CITA WHERE IDCITA = ?", futura));
+        assertEquals(avisos, avisosOcupacion());
+
+        // El slot sigue ocupado y las canceladas no cambian
+        assertEquals(8L, ((Number) BaseDatosPrueba.consultar("SELECT SLOTSOCUPADOS FROM AGENDADIARIA " +
+                "WHERE MEDICO_IDMEDICO = ? AND FECHA = ?", medicoId, ayer)).longValue());
+        assertEquals("0/0/1", BaseDatosPrueba.consultar("SELECT REGISTRADAS || '/' || CANCELADAS || '/' || " +
+                "NOASISTIDAS FROM AGENDADIARIA WHERE MEDICO_IDMEDICO = ? AND FECHA = ?", medicoId, ayer));
+        assertEquals("0/0/1", BaseDatosPrueba.consultar("SELECT REGISTRADAS || '/' || CANCELADAS || '/' || " +
+                "NOASISTIDAS FROM ESTADISTICAMENSUAL WHERE MEDICO_IDMEDICO = ? AND ANYO = ? AND MES = ?",
+                medicoId, ayer.getYear(), ayer.getMonthValue()));
+    }
+
+    public void testCancelaLasVencidasYAvisaALosNodos() throws Exception {
+        int vencida = BaseDatosPrueba.insertarCita(medicoId, pacienteId, LocalDate.now().minusDays(1), 4,
+                EstadoCita.REGISTRADA);
+        int futura = BaseDatosPrueba.insertarCita(medicoId, pacienteId, LocalDate.now().plusDays(1), 4,
+                EstadoCita.REGISTRADA);
+        long avisos = avisosOcupacion();
+
+        int cerradas;
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            cerradas = new CierreCitasVencidas(conexion, EstadoCita.CANCELADA).cerrar();
+        }
+        assertTrue(cerradas >= 1);
+        assertEquals("CANCELADA", BaseDatosPrueba.consultar("SELECT ESTADO FROM CITA WHERE IDCITA = ?", vencida));
+        assertNull(BaseDatosPrueba.consultar("SELECT SLOTRESERVADO FROM CITA WHERE IDCITA = ?", vencida));
+        assertEquals("REGISTRADA", BaseDatosPrueba.consultar("SELECT ESTADO FROM CITA WHERE IDCITA = ?", futura));
+        assertEquals(1L, ((Number) BaseDatosPrueba.consultar(
+                "SELECT COUNT(*) FROM AUDITORIACITA WHERE IDCITA = ? AND USUARIO = ?",
+                vencida, CierreCitasVencidas.USUARIO_AUDITORIA)).longValue());
+        assertTrue(avisosOcupacion() > avisos);
+    }
+
+    public void testLaTareaSoloCierraEnElNodoQueTomaElBloqueo() throws Exception {
+        int vencida = BaseDatosPrueba.insertarCita(medicoId, pacienteId, LocalDate.now().minusDays(1), 5,
+                EstadoCita.REGISTRADA);
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl(BaseDatosPrueba.getUrl());
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        long ahora = System.currentTimeMillis();
+        try {
+            bloqueo("otro-nodo", ahora + 60_000);
+            new TareaCierreCitas(dataSource).run();
+            assertEquals("REGISTRADA", BaseDatosPrueba.consultar("SELECT ESTADO FROM CITA WHERE IDCITA = ?", vencida));
+
+            // Caducado: lo toma este nodo y lo conserva tras cerrar, para que otro no repita el cierre
+            bloqueo("otro-nodo", ahora - 1);
+            new TareaCierreCitas(dataSource).run();
+            assertEquals("NO_ASISTIO", BaseDatosPrueba.consultar("SELECT ESTADO FROM CITA WHERE IDCITA = ?", vencida));
+            assertEquals(BusInvalidacion.NODO, BaseDatosPrueba.consultar(
+                    "SELECT NODO FROM BLOQUEOTAREA WHERE NOMBRE = ?", TareaCierreCitas.NOMBRE_BLOQUEO));
+            assertTrue(((Timestamp) BaseDatosPrueba.consultar("SELECT HASTA FROM BLOQUEOTAREA WHERE NOMBRE = ?",
+                    TareaCierreCitas.NOMBRE_BLOQUEO)).getTime() > System.currentTimeMillis());
+        } finally {
+            bloqueo(null, ahora - 1);
+        }
+    }
+
+    private static void bloqueo(String nodo, long hasta) throws Exception {
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement(
+                        "UPDATE BLOQUEOTAREA SET NODO = ?, HASTA = ? WHERE NOMBRE = ?")) {
+            ps.setString(1, nodo);
+            ps.setTimestamp(2, new Timestamp(hasta));
+            ps.setString(3, TareaCierreCitas.NOMBRE_BLOQUEO);
+            assertEquals(1, ps.executeUpdate());
+        }
+    }
+
+    private static long avisosOcupacion() throws Exception {
+        return ((Number) BaseDatosPrueba.consultar("SELECT COUNT(*) FROM CAMBIOCACHE WHERE ENTIDAD = ?",
+                BusInvalidacion.OCUPACION)).longValue();
+    }
+}
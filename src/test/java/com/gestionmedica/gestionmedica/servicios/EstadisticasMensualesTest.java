@@ -0,0 +1,141 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import javax.persistence.EntityManager;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * EstadisticaMensual mantenida desde los callbacks de Cita y HorarioDisponible,
+ * y rehecha con ConsolidadorEstadisticas, contra la base de datos de prueba.
+ */
+public class EstadisticasMensualesTest extends TestCase {
+
+    // Turno COMPLETO con slots de 30 minutos
+    private static final int SLOTS_DIA = 24;
+
+    private Integer medicoId;
+    private List<Integer> pacientes;
+    private YearMonth mes;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        pacientes = BaseDatosPrueba.crearPacientes(3);
+        mes = YearMonth.now().plusMonths(1);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testContadoresYCapacidadSeMantienenComoAlConsolidar() throws Exception {
+        Cita atendida = BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), mes.atDay(1), 1);
+        Cita cancelada = BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(1), mes.atDay(1), 2);
+        Cita movida = BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(2), mes.atDay(2), 1);
+        XPersistence.commit();
+        assertEquals(Arrays.asList(mes.lengthOfMonth() * SLOTS_DIA, 3, 0, 0), fila(mes));
+
+        EntityManager em = XPersistence.getManager();
+        em.find(Cita.class, atendida.getIdCita()).setEstado(EstadoCita.ATENDIDA);
+        em.find(Cita.class, cancelada.getIdCita()).setEstado(EstadoCita.CANCELADA);
+        em.find(Cita.class, movida.getIdCita()).setFechaCita(mes.plusMonths(1).atDay(3));
+        XPersistence.commit();
+        assertEquals(Arrays.asList(mes.lengthOfMonth() * SLOTS_DIA, 0, 1, 1), fila(mes));
+        assertEquals(Arrays.asList(mes.plusMonths(1).lengthOfMonth() * SLOTS_DIA, 1, 0, 0), fila(mes.plusMonths(1)));
+
+        EstadisticaMensual estadistica = XPersistence.getManager().createQuery(
+                "from EstadisticaMensual e where e.medico.idMedico = :medico and e.anyo = :anyo and e.mes = :mes",
+                EstadisticaMensual.class).setParameter("medico", medicoId)
+                .setParameter("anyo", mes.getYear()).setParameter("mes", mes.getMonthValue()).getSingleResult();
+        assertEquals(0, new BigDecimal("50.0").compareTo(estadistica.getPorcentajeCancelacion()));
+        assertEquals(0, new BigDecimal("100.0").compareTo(estadistica.getPorcentajeAsistencia()));
+        XPersistence.commit();
+
+        XPersistence.getManager().remove(XPersistence.getManager().find(Cita.class, movida.getIdCita()));
+        XPersistence.commit();
+        assertEquals(Arrays.asList(mes.plusMonths(1).lengthOfMonth() * SLOTS_DIA, 0, 0, 0), fila(mes.plusMonths(1)));
+
+        // Un día sin horario: el mes en curso y los siguientes pierden su capacidad
+        em = XPersistence.getManager();
+        HorarioDisponible lunes = em.createQuery("from HorarioDisponible h where h.medico.idMedico = :medico " +
+                "and h.diaSemana = :dia", HorarioDisponible.class).setParameter("medico", medicoId)
+                .setParameter("dia", DiaSemana.LUNES).getSingleResult();
+        lunes.setEstado(EstadoHorario.INACTIVO);
+        XPersistence.commit();
+        int lunesDelMes = 0;
+        for (LocalDate dia = mes.atDay(1); !dia.isAfter(mes.atEndOfMonth()); dia = dia.plusDays(1)) {
+            if (DiaSemana.desdeFecha(dia) == DiaSemana.LUNES) {
+                lunesDelMes++;
+            }
+        }
+        assertEquals((mes.lengthOfMonth() - lunesDelMes) * SLOTS_DIA, fila(mes).get(0).intValue());
+
+        List<Integer> mantenido = fila(mes);
+        List<Integer> mantenidoSiguiente = fila(mes.plusMonths(1));
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            new ConsolidadorEstadisticas(conexion).reconstruir(mes, mes.plusMonths(1));
+        }
+        assertEquals(mantenido, fila(mes));
+        assertEquals(mantenidoSiguiente, fila(mes.plusMonths(1)));
+    }
+
+    public void testFilaCreadaALaVezSeActualizaSinPerderLaTransaccion() throws Exception {
+        YearMonth otroMes = mes.plusMonths(6);
+        String insertar = "INSERT INTO ESTADISTICAMENSUAL (MEDICO_IDMEDICO, ANYO, MES, REGISTRADAS) VALUES (?, ?, ?, 1)";
+        try (Connection conexion = BaseDatosPrueba.conectar()) {
+            conexion.setAutoCommit(false);
+            try (PreparedStatement ps = conexion.prepareStatement(insertar)) {
+                asignarMes(ps, otroMes);
+                ps.executeUpdate();
+            }
+            // El INSERT choca con la fila anterior, como si otra transacción la hubiera creado a la vez
+            try (PreparedStatement ps = conexion.prepareStatement(insertar)) {
+                asignarMes(ps, otroMes);
+                ActualizadorAgenda.insertarOActualizar(conexion, ps, () -> {
+                    try (PreparedStatement actualizar = conexion.prepareStatement("UPDATE ESTADISTICAMENSUAL " +
+                            "SET REGISTRADAS = REGISTRADAS + 1 WHERE MEDICO_IDMEDICO = ? AND ANYO = ? AND MES = ?")) {
+                        asignarMes(actualizar, otroMes);
+                        return actualizar.executeUpdate();
+                    }
+                });
+            }
+            conexion.commit();
+        }
+        assertEquals(Arrays.asList(0, 2, 0, 0), fila(otroMes));
+    }
+
+    private void asignarMes(PreparedStatement ps, YearMonth mes) throws SQLException {
+        ps.setInt(1, medicoId);
+        ps.setInt(2, mes.getYear());
+        ps.setInt(3, mes.getMonthValue());
+    }
+
+    /**
+     * Capacidad, registradas, atendidas y canceladas del médico en el mes
+     */
+    private List<Integer> fila(YearMonth mes) throws Exception {
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement("SELECT CAPACIDAD, REGISTRADAS, ATENDIDAS, " +
+                        "CANCELADAS FROM ESTADISTICAMENSUAL WHERE MEDICO_IDMEDICO = ? AND ANYO = ? AND MES = ?")) {
+            ps.setInt(1, medicoId);
+            ps.setInt(2, mes.getYear());
+            ps.setInt(3, mes.getMonthValue());
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue("Sin fila para " + mes, rs.next());
+                return Arrays.asList(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4));
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import org.openxava.validators.ValidationException;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Reservas concurrentes y transacciones deshechas sobre el IndiceOcupacion,
+ * con la base de datos de prueba.
+ */
+public class IndiceOcupacionTest extends TestCase {
+
+    private static final int SLOT = 3;
+    // Sin base de datos de por medio las reservas rechazadas no esperan nada
+    private static final long ESPERA_SEGUNDOS = 30;
+
+    private Integer medicoId;
+    private List<Integer> pacientes;
+    private LocalDate fecha;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        pacientes = BaseDatosPrueba.crearPacientes(10);
+        fecha = LocalDate.now().plusDays(1);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    /**
+     * Mientras una reserva está sin confirmar, las demás reservas del mismo
+     * slot se rechazan en el índice, sin llegar a la base de datos.
+     */
+    public void testDobleReservaConcurrente() throws Exception {
+        BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), fecha, SLOT);
+
+        int intentos = pacientes.size() - 1;
+        ExecutorService hilos = Executors.newFixedThreadPool(intentos);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<String>> resultados = new ArrayList<>();
+        try {
+            for (int i = 1; i <= intentos; i++) {
+                Integer pacienteId = pacientes.get(i);
+                resultados.add(hilos.submit(() -> {
+                    BaseDatosPrueba.usar();
+                    salida.await();
+                    try {
+                        BaseDatosPrueba.nuevaCita(medicoId, pacienteId, fecha, SLOT);
+                        XPersistence.commit();
+                        return "reservada";
+                    } catch (ValidationException ex) {
+                        return "rechazada";
+                    } catch (RuntimeException ex) {
+                        return "error: " + ex;
+                    } finally {
+                        BaseDatosPrueba.deshacer();
+                    }
+                }));
+            }
+            salida.countDown();
+            for (Future<String> resultado : resultados) {
+                assertEquals("rechazada", resultado.get(ESPERA_SEGUNDOS, TimeUnit.SECONDS));
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        XPersistence.commit();
+        assertEquals(1, citasActivas());
+    }
+
+    public void testReservaDeshechaLiberaElSlot() throws Exception {
+        BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), fecha, SLOT);
+        assertTrue(IndiceOcupacion.estaOcupado(medicoId, fecha, SLOT));
+        XPersistence.rollback();
+        assertFalse(IndiceOcupacion.estaOcupado(medicoId, fecha, SLOT));
+
+        BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(1), fecha, SLOT);
+        XPersistence.commit();
+        assertEquals(1, citasActivas());
+    }
+
+    public void testCancelacionDeshechaMantieneElSlot() throws Exception {
+        Cita cita = BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), fecha, SLOT);
+        XPersistence.commit();
+
+        cita = XPersistence.getManager().find(Cita.class, cita.getIdCita());
+        cita.setEstado(EstadoCita.CANCELADA);
+        XPersistence.getManager().flush();
+        assertTrue("Liberado antes del commit", IndiceOcupacion.estaOcupado(medicoId, fecha, SLOT));
+        XPersistence.rollback();
+        assertTrue(IndiceOcupacion.estaOcupado(medicoId, fecha, SLOT));
+
+        try {
+            BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(1), fecha, SLOT);
+            fail("Reservado un slot ocupado");
+        } catch (ValidationException ex) {
+            // Rechazada por el índice, antes del insert
+        }
+    }
+
+    public void testCancelacionConfirmadaLiberaElSlot() throws Exception {
+        Cita cita = BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), fecha, SLOT);
+        XPersistence.commit();
+
+        cita = XPersistence.getManager().find(Cita.class, cita.getIdCita());
+        cita.setEstado(EstadoCita.CANCELADA);
+        XPersistence.commit();
+        assertFalse(IndiceOcupacion.estaOcupado(medicoId, fecha, SLOT));
+
+        BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(1), fecha, SLOT);
+        XPersistence.commit();
+        assertEquals(1, citasActivas());
+    }
+
+    /**
+     * Un slot liberado fuera de este proceso sigue marcado en el índice; se
+     * comprueba en la base de datos en vez de rechazarlo.
+     */
+    public void testMarcaViejaSeCompruebaEnLaBaseDeDatos() throws Exception {
+        Cita cita = BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(0), fecha, SLOT);
+        XPersistence.commit();
+        try (Connection conexion = BaseDatosPrueba.conectar();
+                PreparedStatement ps = conexion.prepareStatement(
+                        "UPDATE CITA SET ESTADO = 'CANCELADA', SLOTRESERVADO = NULL WHERE IDCITA = ?")) {
+            ps.setInt(1, cita.getIdCita());
+            ps.executeUpdate();
+        }
+        assertTrue(IndiceOcupacion.estaOcupado(medicoId, fecha, SLOT));
+
+        BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(1), fecha, SLOT);
+        XPersistence.commit();
+        assertEquals(1, citasActivas());
+    }
+
+    private long citasActivas() {
+        long citas = XPersistence.getManager()
+                .createQuery("SELECT COUNT(c) FROM Cita c WHERE c.medico.id = :medicoId AND c.fechaCita = :fecha " +
+                        "AND c.numeroSlot = :slot AND c.estado != 'CANCELADA'", Long.class)
+                .setParameter("medicoId", medicoId)
+                .setParameter("fecha", fecha)
+                .setParameter("slot", SLOT)
+                .getSingleResult();
+        XPersistence.commit();
+        return citas;
+    }
+}
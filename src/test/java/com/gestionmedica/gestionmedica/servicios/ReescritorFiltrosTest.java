@@ -0,0 +1,60 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import junit.framework.TestCase;
+
+/**
+ * Las sentencias son las que genera Hibernate para las listas de OpenXava
+ * con filtros "empieza por", "=", "<>" y "no contiene".
+ */
+public class ReescritorFiltrosTest extends TestCase {
+
+    public void testNombresDePacienteYMedicoVanALasColumnasDeBusqueda() {
+        assertEquals("select paciente0_.idPaciente as col_0_0_ from Paciente paciente0_ " +
+                "where (paciente0_.apellidoBusqueda like ?) and paciente0_.nombreBusqueda=? " +
+                "and paciente0_.cedula<>? order by paciente0_.apellido asc limit ?",
+                ReescritorFiltros.reescribir("select paciente0_.idPaciente as col_0_0_ from Paciente paciente0_ " +
+                        "where (upper(paciente0_.apellido) like ?) and upper(paciente0_.nombre)=? " +
+                        "and upper(paciente0_.cedula)<>? order by paciente0_.apellido asc limit ?"));
+    }
+
+    public void testOtrasColumnasDeUnaListaFiltradaSinAcentos() {
+        String sql = ReescritorFiltros.reescribir("select count(*) as col_0_0_ from Medico medico0_ " +
+                "left outer join Especialidad especialid1_ on medico0_.especialidad_idEspecialidad=especialid1_.idEspecialidad " +
+                "where (upper(medico0_.telefono) not like ?) and (upper(especialid1_.nombre) like ?)");
+        assertTrue(sql, sql.contains("where (translate(upper(medico0_.telefono), '"));
+        assertTrue(sql, sql.contains("') not like ?) and (translate(upper(especialid1_.nombre), '"));
+        // "Í" pasa a "I"
+        assertTrue(sql, sql.contains("\u00cd"));
+    }
+
+    public void testReferenciaDesdeOtraLista() {
+        assertEquals("select cita0_.idCita as col_0_0_ from Cita cita0_ " +
+                "inner join Medico medico1_ on cita0_.medico_idMedico=medico1_.idMedico " +
+                "where (medico1_.apellidoBusqueda like ?)",
+                ReescritorFiltros.reescribir("select cita0_.idCita as col_0_0_ from Cita cita0_ " +
+                        "inner join Medico medico1_ on cita0_.medico_idMedico=medico1_.idMedico " +
+                        "where (upper(medico1_.apellido) like ?)"));
+    }
+
+    public void testNoTocaElRestoDelSql() {
+        String[] sinCambios = {
+                // upper fuera de una condición de filtro
+                "select upper(paciente0_.apellido) as col_0_0_ from Paciente paciente0_ where paciente0_.idPaciente=?",
+                "select paciente0_.idPaciente as col_0_0_ from Paciente paciente0_ " +
+                        "order by upper(paciente0_.apellido) asc",
+                // Comparación con otra columna o con un literal
+                "select medico0_.idMedico as col_0_0_ from Medico medico0_ where upper(medico0_.nombre)=upper(medico0_.apellido)",
+                "select medico0_.idMedico as col_0_0_ from Medico medico0_ where upper(medico0_.nombre) like 'A%'",
+                // Entidades cuyo @Tab no normaliza los valores
+                "select especialid0_.idEspecialidad as col_0_0_ from Especialidad especialid0_ " +
+                        "where (upper(especialid0_.nombre) like ?)",
+                "select horariodis0_.idHorario as col_0_0_ from HorarioDisponible horariodis0_ " +
+                        "where upper(horariodis0_.turno)=?",
+                // SQL escrito a mano, sin alias de Hibernate
+                "SELECT COUNT(*) FROM PACIENTE WHERE upper(APELLIDO) LIKE ?"
+        };
+        for (String sql : sinCambios) {
+            assertEquals(sql, ReescritorFiltros.reescribir(sql));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.gestionmedica.gestionmedica.servicios;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.migracion.*;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * Orden de las versiones de agenda con MVCC, en su propia base de datos en
+ * memoria (con LOCKS la tabla CITA ya serializa las escrituras), y versión
+ * de las citas escritas con JPA tomada al confirmar, en la base de datos de
+ * prueba.
+ */
+public class VersionAgendaTest extends TestCase {
+
+    private static final String URL = "jdbc:hsqldb:mem:version-agenda";
+
+    protected void setUp() throws Exception {
+        try (Connection conexion = DriverManager.getConnection(URL, "sa", "");
+                Statement st = conexion.createStatement()) {
+            new MigradorEsquema(conexion).migrar();
+            st.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        }
+    }
+
+    public void testLaSiguienteVersionEsperaAlCommitDeLaAnterior() throws Exception {
+        try (Connection primera = conectar(); Connection segunda = conectar()) {
+            long version = VersionAgenda.tomar(primera);
+
+            CompletableFuture<Long> siguiente = CompletableFuture.supplyAsync(() -> {
+                try {
+                    long valor = VersionAgenda.tomar(segunda);
+                    segunda.commit();
+                    return valor;
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            try {
+                siguiente.get(300, TimeUnit.MILLISECONDS);
+                fail("Tomó una versión mientras la anterior seguía sin confirmar");
+            } catch (TimeoutException ex) {
+                // Esperando el commit de la primera
+            }
+
+            primera.commit();
+            assertEquals(version + 1, siguiente.get(5, TimeUnit.SECONDS).longValue());
+        }
+    }
+
+    public void testLasCitasTomanLaVersionAlConfirmar() throws Exception {
+        BaseDatosPrueba.iniciar();
+        try {
+            Integer medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+            Integer pacienteId = BaseDatosPrueba.crearPacientes(1).get(0);
+            Cita cita = BaseDatosPrueba.nuevaCita(medicoId, pacienteId, LocalDate.now().plusDays(1), 1);
+            XPersistence.getManager().flush();
+
+            // Validada e insertada sin confirmar: otra transacción puede tomar versión sin esperar
+            CompletableFuture<Long> otra = CompletableFuture.supplyAsync(() -> {
+                try (Connection conexion = BaseDatosPrueba.conectar()) {
+                    conexion.setAutoCommit(false);
+                    long valor = VersionAgenda.tomar(conexion);
+                    conexion.commit();
+                    return valor;
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            long version = otra.get(5, TimeUnit.SECONDS);
+
+            XPersistence.commit();
+            assertEquals(version + 1, ((Number) BaseDatosPrueba.consultar(
+                    "SELECT VERSIONAGENDA FROM CITA WHERE IDCITA = ?", cita.getIdCita())).longValue());
+        } finally {
+            BaseDatosPrueba.deshacer();
+        }
+    }
+
+    private static Connection conectar() throws Exception {
+        Connection conexion = DriverManager.getConnection(URL, "sa", "");
+        conexion.setAutoCommit(false);
+        return conexion;
+    }
+}
@@ -0,0 +1,97 @@
+package com.gestionmedica.gestionmedica.validadores;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+
+/**
+ * Compara los validadores de MotorValidacion con las expresiones regulares
+ * que sustituyeron, sobre cadenas aleatorias con dígitos, letras, acentos,
+ * espacios y caracteres parecidos.
+ */
+public class MotorValidacionTest extends TestCase {
+
+    private static final Pattern DIGITOS = Pattern.compile("^\\d{10}$");
+    // Las letras de la expresión original, con escapes: á é í ó ú ñ Á É Í Ó Ú Ñ
+    private static final String LETRAS = "a-z\u00e1\u00e9\u00ed\u00f3\u00fa\u00f1A-Z\u00c1\u00c9\u00cd\u00d3\u00da\u00d1";
+    private static final Pattern NOMBRE = Pattern.compile("^[" + LETRAS + "\\s]+$");
+
+    private static final String DIGITOS_ASCII = "0123456789";
+    // Incluye dígitos no ASCII (\d no los acepta), ü, Ã y ¡ (á leída como ISO-8859-1) y espacios no \s
+    private static final String ALFABETO = "0123456789aZz\u00e1\u00c9\u00f1\u00d1\u00fc\u00c3\u00a1" +
+            " \t\n\u000B\f\r\u00a0\u0663\uff11-.'";
+    private static final int CASOS = 200_000;
+
+    public void testCedulaYTelefonoComoLaExpresion() {
+        Random aleatorio = new Random(7);
+        for (int i = 0; i < CASOS; i++) {
+            String valor = cadena(aleatorio, aleatorio.nextInt(3) == 0 ? DIGITOS_ASCII : ALFABETO);
+            boolean esperado = DIGITOS.matcher(valor).matches();
+            assertEquals("C\u00e9dula '" + valor + "'", esperado, ValidadorCedula.esValida(valor));
+            assertEquals("Tel\u00e9fono '" + valor + "'", esperado, ValidadorTelefono.esValido(valor));
+        }
+        assertFalse(ValidadorCedula.esValida(null));
+        assertFalse(ValidadorTelefono.esValido(null));
+    }
+
+    public void testNombreComoLaExpresion() {
+        Random aleatorio = new Random(11);
+        for (int i = 0; i < CASOS; i++) {
+            String valor = cadena(aleatorio, ALFABETO);
+            boolean esperado = !valor.trim().isEmpty() && NOMBRE.matcher(valor).matches();
+            assertEquals("Nombre '" + valor + "'", esperado, ValidadorNombre.esValido(valor));
+        }
+        assertFalse(ValidadorNombre.esValido(null));
+    }
+
+    public void testLotes() {
+        Random aleatorio = new Random(13);
+        String[] valores = new String[1000];
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = cadena(aleatorio, aleatorio.nextBoolean() ? DIGITOS_ASCII : ALFABETO);
+        }
+        assertPosiciones(valores, ValidadorCedula.posicionesInvalidas(valores), DIGITOS, false);
+        assertPosiciones(valores, ValidadorNombre.posicionesInvalidas(valores), NOMBRE, true);
+    }
+
+    /**
+     * El pom compila como ISO-8859-1 y el fuente es UTF-8: la expresión
+     * original quedaba con los bytes de cada acento como dos caracteres.
+     * Con los escapes se acepta "José" y ya no "JosÃ©"; es el comportamiento
+     * que describe ValidadorNombre.
+     */
+    public void testAcentosNoDependenDeLaCodificacion() {
+        String letrasCompiladas = new String(LETRAS.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        Pattern compilada = Pattern.compile("^[" + letrasCompiladas + "\\s]+$");
+        String jose = "Jos\u00e9 \u00d1\u00fa\u00f1ez";
+        String joseMalLeido = "Jos\u00c3\u00a9";
+
+        assertFalse(compilada.matcher(jose).matches());
+        assertTrue(compilada.matcher(joseMalLeido).matches());
+        assertTrue(ValidadorNombre.esValido(jose));
+        assertFalse(ValidadorNombre.esValido(joseMalLeido));
+    }
+
+    private static String cadena(Random aleatorio, String alfabeto) {
+        // Longitudes alrededor de 10 para las cédulas
+        int longitud = aleatorio.nextInt(13);
+        StringBuilder sb = new StringBuilder(longitud);
+        for (int i = 0; i < longitud; i++) {
+            sb.append(alfabeto.charAt(aleatorio.nextInt(alfabeto.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void assertPosiciones(String[] valores, int[] posiciones, Pattern regla, boolean nombre) {
+        int j = 0;
+        for (int i = 0; i < valores.length; i++) {
+            boolean valido = (!nombre || !valores[i].trim().isEmpty()) && regla.matcher(valores[i]).matches();
+            if (!valido) {
+                assertTrue("Falta la posici\u00f3n " + i, j < posiciones.length);
+                assertEquals(i, posiciones[j++]);
+            }
+        }
+        assertEquals(j, posiciones.length);
+    }
+}
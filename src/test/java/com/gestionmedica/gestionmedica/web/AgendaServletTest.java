@@ -0,0 +1,201 @@
+package com.gestionmedica.gestionmedica.web;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import junit.framework.TestCase;
+import org.openxava.jpa.XPersistence;
+import com.gestionmedica.gestionmedica.modelo.*;
+import com.gestionmedica.gestionmedica.modelo.enums.*;
+import com.gestionmedica.gestionmedica.pruebas.*;
+
+/**
+ * /agenda contra la base de datos de prueba: ETag con 304 y sincronización
+ * incremental con since tras cambiar y borrar citas.
+ *
+ * VersionAgenda.actual se reutiliza durante un segundo, así que tras cada
+ * cambio se espera a que caduque antes de volver a pedir la agenda.
+ */
+public class AgendaServletTest extends TestCase {
+
+    private static final Pattern VERSION = Pattern.compile("^\\{\"version\":(\\d+)");
+    private static final long VIGENCIA_VERSION_MS = 1100;
+
+    private final AgendaServlet servlet = new AgendaServlet();
+    private Integer medicoId;
+    private LocalDate fecha;
+    private Integer cancelada;
+    private Integer borrada;
+
+    protected void setUp() throws Exception {
+        BaseDatosPrueba.iniciar();
+        medicoId = BaseDatosPrueba.crearMedicos(1).get(0);
+        List<Integer> pacientes = BaseDatosPrueba.crearPacientes(3);
+        fecha = LocalDate.now().plusDays(1);
+        for (int i = 0; i < pacientes.size(); i++) {
+            BaseDatosPrueba.nuevaCita(medicoId, pacientes.get(i), fecha, i + 1);
+        }
+        XPersistence.commit();
+        List<Integer> citas = XPersistence.getManager().createQuery(
+                "select c.idCita from Cita c where c.medico.idMedico = :medico order by c.numeroSlot", Integer.class)
+                .setParameter("medico", medicoId).getResultList();
+        XPersistence.commit();
+        cancelada = citas.get(0);
+        borrada = citas.get(1);
+    }
+
+    protected void tearDown() {
+        BaseDatosPrueba.deshacer();
+    }
+
+    public void testEtagYSincronizacionIncremental() throws Exception {
+        Respuesta completa = pedir(null, null);
+        assertEquals(HttpServletResponse.SC_OK, completa.estado);
+        assertNotNull(completa.etag);
+        assertTrue(completa.cuerpo, completa.cuerpo.contains("\"completa\":true"));
+        assertTrue(completa.cuerpo, completa.cuerpo.contains("\"citas\":3}"));
+        assertEquals(3, completa.citas());
+        long version = completa.version();
+
+        Respuesta igual = pedir(completa.etag, null);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, igual.estado);
+        assertEquals(completa.etag, igual.etag);
+        assertEquals("", igual.cuerpo);
+
+        Cita cita = XPersistence.getManager().find(Cita.class, cancelada);
+        cita.setEstado(EstadoCita.CANCELADA);
+        XPersistence.commit();
+        Thread.sleep(VIGENCIA_VERSION_MS);
+
+        Respuesta cambios = pedir(completa.etag, version);
+        assertEquals(HttpServletResponse.SC_OK, cambios.estado);
+        assertFalse(completa.etag.equals(cambios.etag));
+        assertTrue(cambios.cuerpo, cambios.cuerpo.contains("\"completa\":false"));
+        assertEquals(1, cambios.citas());
+        assertTrue(cambios.cuerpo, cambios.cuerpo.contains("\"id\":" + cancelada + ",") &&
+                cambios.cuerpo.contains("\"estado\":\"CANCELADA\""));
+        assertTrue(cambios.version() > version);
+
+        // Desde la versión recibida ya no hay cambios
+        Respuesta sinCambios = pedir(null, cambios.version());
+        assertEquals(0, sinCambios.citas());
+        assertEquals(cambios.etag, sinCambios.etag);
+
+        XPersistence.getManager().remove(XPersistence.getManager().find(Cita.class, borrada));
+        XPersistence.commit();
+        Thread.sleep(VIGENCIA_VERSION_MS);
+
+        // El borrado no llega como cita pero cambia la ETag y el número de citas del día
+        Respuesta trasBorrar = pedir(cambios.etag, cambios.version());
+        assertEquals(HttpServletResponse.SC_OK, trasBorrar.estado);
+        assertFalse(cambios.etag.equals(trasBorrar.etag));
+        assertEquals(0, trasBorrar.citas());
+        assertTrue(trasBorrar.cuerpo, trasBorrar.cuerpo.contains("\"citas\":2}"));
+    }
+
+    public void testSinSesionNoResponde() throws Exception {
+        Respuesta respuesta = new Respuesta();
+        servlet.doGet(request(false, null, null), respuesta.response());
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, respuesta.estado);
+    }
+
+    private Respuesta pedir(String ifNoneMatch, Long since) throws Exception {
+        Respuesta respuesta = new Respuesta();
+        servlet.doGet(request(true, ifNoneMatch, since), respuesta.response());
+        return respuesta;
+    }
+
+    private HttpServletRequest request(boolean conSesion, String ifNoneMatch, Long since) {
+        Map<String, String> parametros = new HashMap<>();
+        parametros.put("medico", String.valueOf(medicoId));
+        parametros.put("desde", fecha.toString());
+        parametros.put("dias", "1");
+        if (since != null) {
+            parametros.put("since", String.valueOf(since));
+        }
+        HttpSession sesion = stub(HttpSession.class, (metodo, args) ->
+                metodo.equals("getAttribute") && "naviox.user".equals(args[0]) ? "admin" : null);
+        return stub(HttpServletRequest.class, (metodo, args) -> {
+            switch (metodo) {
+                case "getSession":
+                    return conSesion ? sesion : null;
+                case "getParameter":
+                    return parametros.get(args[0]);
+                case "getParameterValues":
+                    String valor = parametros.get(args[0]);
+                    return valor == null ? null : new String[] { valor };
+                case "getHeader":
+                    return "If-None-Match".equals(args[0]) ? ifNoneMatch : null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private interface Metodo {
+        Object invocar(String nombre, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> tipo, Metodo metodo) {
+        return (T) Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[] { tipo },
+                (proxy, m, args) -> metodo.invocar(m.getName(), args));
+    }
+
+    /**
+     * Lo que el servlet escribe en la respuesta
+     */
+    private static class Respuesta {
+
+        int estado = HttpServletResponse.SC_OK;
+        String etag;
+        String cuerpo = "";
+        private final StringWriter salida = new StringWriter();
+
+        HttpServletResponse response() {
+            return stub(HttpServletResponse.class, (metodo, args) -> {
+                switch (metodo) {
+                    case "setStatus":
+                    case "sendError":
+                        estado = (Integer) args[0];
+                        return null;
+                    case "setHeader":
+                        if ("ETag".equals(args[0])) {
+                            etag = (String) args[1];
+                        }
+                        return null;
+                    case "getWriter":
+                        return new PrintWriter(salida, true) {
+                            @Override
+                            public void print(String texto) {
+                                super.print(texto);
+                                cuerpo = salida.toString();
+                            }
+                        };
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        long version() {
+            Matcher m = VERSION.matcher(cuerpo);
+            assertTrue(cuerpo, m.find());
+            return Long.parseLong(m.group(1));
+        }
+
+        // Citas de la lista "citas" (las del resumen de cada día no llevan estado)
+        int citas() {
+            return cuerpo.split("\"estado\":\"", -1).length - 1;
+        }
+    }
+}